@@ -6,6 +6,7 @@ plugins {
     id("io.freefair.lombok") version "8.10.2"
     id("com.diffplug.spotless") version "6.25.0"
     id("com.adarshr.test-logger") version "4.0.0"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 java {
@@ -43,6 +44,8 @@ application {
 // Configure run task for interactive CLI applications
 tasks.named<JavaExec>("run") {
     standardInput = System.`in`
+    // ./gradlew run -PdataDir=<dir> keeps the home between runs
+    providers.gradleProperty("dataDir").orNull?.let { systemProperty("smarthome.dataDir", it) }
 }
 
 tasks.named<Test>("test") {
@@ -51,6 +54,16 @@ tasks.named<Test>("test") {
     finalizedBy(tasks.jacocoTestReport)
 }
 
+// Microbenchmarks live in src/jmh/java; run with ./gradlew jmh
+jmh {
+    jmhVersion = "1.37"
+    // Machine-readable results so runs can be diffed between commits
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+    // Narrow a run with -PjmhInclude=<regex>, e.g. -PjmhInclude=HomeManager
+    (findProperty("jmhInclude") as String?)?.let { includes.add(it) }
+}
+
 tasks.jacocoTestReport {
   dependsOn(tasks.test)
   reports {
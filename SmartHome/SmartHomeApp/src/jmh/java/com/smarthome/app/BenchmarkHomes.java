@@ -0,0 +1,39 @@
+package com.smarthome.app;
+
+import com.smarthome.devices.Light;
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.Journals;
+
+/** Shared fixtures for the JMH benchmarks. */
+public final class BenchmarkHomes {
+  /** Devices per room when building large homes. */
+  public static final int DEVICES_PER_ROOM = 100;
+
+  private BenchmarkHomes() {}
+
+  /** Builds a home holding {@code lightCount} lights named "Light i" with ids "L_i". */
+  public static HomeManager withLights(int lightCount) {
+    HomeManager homeManager = new HomeManager("bench");
+    Room room = null;
+    for (int i = 0; i < lightCount; i++) {
+      if (i % DEVICES_PER_ROOM == 0) {
+        room = new Room("Room " + (i / DEVICES_PER_ROOM));
+        homeManager.addRoom(room);
+      }
+      homeManager.addDevice(new Light("L_" + i, "Light " + i), room);
+    }
+    return homeManager;
+  }
+
+  /**
+   * Installs the silent journal so device and engine logging does not dominate the measurement.
+   * Returns the previous journal for {@link #restoreJournal(Journal)}.
+   */
+  public static Journal silenceJournal() {
+    return Journals.set(Journal.silent());
+  }
+
+  public static void restoreJournal(Journal original) {
+    Journals.set(original);
+  }
+}
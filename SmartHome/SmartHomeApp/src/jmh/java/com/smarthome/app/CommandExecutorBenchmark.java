@@ -0,0 +1,96 @@
+package com.smarthome.app;
+
+import com.smarthome.devices.Device;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SecurityCamera;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.exceptions.InvalidCommandException;
+import com.smarthome.journal.Journal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of a single CommandExecutor.execute call per command type, both parsing the
+ * command on every call and replaying a precompiled {@link CommandPlan}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandExecutorBenchmark {
+
+  @Param({
+    "turnOn",
+    "turnOff",
+    "setBrightness",
+    "setTemp",
+    "getTemp",
+    "startRecording",
+    "stopRecording",
+    "isRecording"
+  })
+  private String command;
+
+  private final CommandExecutor commandExecutor = new CommandExecutor();
+  private Device device;
+  private String value;
+  private CommandPlan plan;
+  private Journal originalJournal;
+
+  @Setup(Level.Trial)
+  public void setUp() throws InvalidCommandException {
+    originalJournal = BenchmarkHomes.silenceJournal();
+    switch (command) {
+      case "setBrightness" -> {
+        Light light = new Light("L_1", "Bench Light");
+        light.turnOn();
+        device = light;
+        value = "75";
+      }
+      case "setTemp", "getTemp" -> {
+        device = new Thermostat("T_1", "Bench Thermostat");
+        value = command.equals("setTemp") ? "21.5" : null;
+      }
+      case "startRecording", "stopRecording", "isRecording" ->
+          device = new SecurityCamera("C_1", "Bench Camera");
+      default -> device = new Light("L_1", "Bench Light");
+    }
+    plan =
+        value == null
+            ? commandExecutor.compile(device.getClass(), command)
+            : commandExecutor.compile(device.getClass(), command, value);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkHomes.restoreJournal(originalJournal);
+  }
+
+  @Benchmark
+  public void execute() throws InvalidCommandException {
+    if (value == null) {
+      commandExecutor.execute(device, command);
+    } else {
+      commandExecutor.execute(device, command, value);
+    }
+  }
+
+  @Benchmark
+  public void executePlan() throws InvalidCommandException {
+    commandExecutor.execute(device, plan);
+  }
+}
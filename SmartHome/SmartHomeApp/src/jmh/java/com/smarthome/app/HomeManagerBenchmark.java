@@ -0,0 +1,93 @@
+package com.smarthome.app;
+
+import com.smarthome.devices.Device;
+import com.smarthome.exceptions.InvalidCommandException;
+import com.smarthome.journal.Journal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures device lookup and command dispatch through HomeManager as the home grows. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HomeManagerBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  private int deviceCount;
+
+  private HomeManager homeManager;
+  private Device[] devices;
+  private String[] names;
+  private int cursor;
+  private List<Command> sliderBatch;
+  private Journal originalJournal;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    originalJournal = BenchmarkHomes.silenceJournal();
+    homeManager = BenchmarkHomes.withLights(deviceCount);
+    devices = new Device[deviceCount];
+    names = new String[deviceCount];
+    for (int i = 0; i < deviceCount; i++) {
+      names[i] = "light " + i; // exercise the case-insensitive path
+      devices[i] = homeManager.getDeviceById("L_" + i);
+    }
+    // A dashboard frame: up to 10 sliders, each reporting 6 intermediate positions
+    sliderBatch = new ArrayList<>();
+    for (int step = 0; step < 6; step++) {
+      for (int i = 0; i < Math.min(10, deviceCount); i++) {
+        sliderBatch.add(new Command(devices[i], "setBrightness", step * 10));
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkHomes.restoreJournal(originalJournal);
+  }
+
+  @Benchmark
+  public Device getDevicebyName() {
+    return homeManager.getDevicebyName(names[next()]);
+  }
+
+  @Benchmark
+  public void sendCommand() throws InvalidCommandException {
+    homeManager.sendCommand(devices[next()], "turnOn", null);
+  }
+
+  @Benchmark
+  public List<CommandOutcome> sendCommandsSliderBatch() {
+    return homeManager.sendCommands(sliderBatch);
+  }
+
+  @Benchmark
+  public void sendCommandSliderLoop() throws InvalidCommandException {
+    for (Command command : sliderBatch) {
+      homeManager.sendCommand(command.getDevice(), command.getCommand(), command.getValue());
+    }
+  }
+
+  private int next() {
+    int i = cursor;
+    cursor = i + 1 == deviceCount ? 0 : i + 1;
+    return i;
+  }
+}
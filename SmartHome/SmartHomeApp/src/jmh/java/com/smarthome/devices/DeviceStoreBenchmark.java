@@ -0,0 +1,82 @@
+package com.smarthome.devices;
+
+import com.smarthome.app.BenchmarkHomes;
+import com.smarthome.app.CommandExecutor;
+import com.smarthome.app.CommandPlan;
+import com.smarthome.exceptions.InvalidCommandException;
+import com.smarthome.journal.Journal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a compiled command on heap {@link Light}s with the same command on flyweight views of a
+ * {@link DeviceStore}, and with the store's primitive API.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeviceStoreBenchmark {
+
+  @Param({"1000", "1000000"})
+  private int deviceCount;
+
+  private Light[] lights;
+  private DeviceStore store;
+  private CommandPlan setBrightness;
+  private int cursor;
+  private Journal originalJournal;
+
+  @Setup(Level.Trial)
+  public void setUp() throws InvalidCommandException {
+    originalJournal = BenchmarkHomes.silenceJournal();
+    lights = new Light[deviceCount];
+    store = new DeviceStore(deviceCount);
+    for (int i = 0; i < deviceCount; i++) {
+      lights[i] = new Light("L_" + i, "Light " + i);
+      lights[i].turnOn();
+      store.turnOn(store.add(DeviceStore.Kind.LIGHT, "L_" + i, "Light " + i));
+    }
+    setBrightness = new CommandExecutor().compile(Light.class, "setBrightness", 70);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkHomes.restoreJournal(originalJournal);
+  }
+
+  @Benchmark
+  public void planOnHeapLight() {
+    setBrightness.invoke(lights[next()]);
+  }
+
+  @Benchmark
+  public void planOnStoreView() {
+    setBrightness.invoke(store.view(next()));
+  }
+
+  @Benchmark
+  public void storeSetBrightness() {
+    store.setBrightness(next(), 70);
+  }
+
+  private int next() {
+    int i = cursor;
+    cursor = i + 1 == deviceCount ? 0 : i + 1;
+    return i;
+  }
+}
@@ -0,0 +1,51 @@
+package com.smarthome.metrics;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of recording one operation: the bare counters, the sampled timer used on hot paths and an
+ * unsampled timer (two clock reads per call) for comparison. The sampled timer is also measured
+ * with four threads hitting the same stats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+  private final OperationStats stats = new MetricsRegistry().command("turnOn");
+
+  @Benchmark
+  public void recordOnly() {
+    stats.record(1_000, true);
+  }
+
+  @Benchmark
+  public void sampledTimer() {
+    stats.stopTimer(stats.startTimer(), true);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void sampledTimerContended() {
+    stats.stopTimer(stats.startTimer(), true);
+  }
+
+  @Benchmark
+  public void everyCallTimed() {
+    long start = System.nanoTime();
+    stats.record(System.nanoTime() - start, true);
+  }
+}
@@ -0,0 +1,112 @@
+package com.smarthome.persistence;
+
+import com.smarthome.app.BenchmarkHomes;
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Device;
+import com.smarthome.devices.Light;
+import com.smarthome.exceptions.InvalidCommandException;
+import com.smarthome.journal.Journal;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures restoring a persisted home from its snapshot and the cost a command log adds to {@code
+ * sendCommand}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HomeStoreBenchmark {
+
+  @Param({"10000", "1000000"})
+  private int deviceCount;
+
+  private Path restoreDirectory;
+  private Path appendDirectory;
+  private HomeStore appendStore;
+  private Device[] devices;
+  private int cursor;
+  private Journal originalJournal;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    originalJournal = BenchmarkHomes.silenceJournal();
+    restoreDirectory = Files.createTempDirectory("home-store-restore");
+    try (HomeStore store = HomeStore.open(restoreDirectory, "bench")) {
+      populate(store.getHomeManager());
+      store.snapshot();
+    }
+
+    appendDirectory = Files.createTempDirectory("home-store-append");
+    appendStore = HomeStore.open(appendDirectory, "bench");
+    devices = populate(appendStore.getHomeManager());
+    appendStore.snapshot();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    appendStore.close();
+    delete(restoreDirectory);
+    delete(appendDirectory);
+    BenchmarkHomes.restoreJournal(originalJournal);
+  }
+
+  @Benchmark
+  public int restore() throws IOException {
+    try (HomeStore store = HomeStore.open(restoreDirectory, "bench")) {
+      return store.getHomeManager().getDeviceCount();
+    }
+  }
+
+  @Benchmark
+  public void sendCommandPersisted() throws InvalidCommandException {
+    Device device = devices[cursor];
+    cursor = cursor + 1 == deviceCount ? 0 : cursor + 1;
+    appendStore.getHomeManager().sendCommand(device, "setBrightness", 40);
+  }
+
+  private Device[] populate(HomeManager homeManager) {
+    Device[] added = new Device[deviceCount];
+    Room room = null;
+    for (int i = 0; i < deviceCount; i++) {
+      if (i % BenchmarkHomes.DEVICES_PER_ROOM == 0) {
+        room = new Room("Room " + (i / BenchmarkHomes.DEVICES_PER_ROOM));
+        homeManager.addRoom(room);
+      }
+      Light light = new Light("L_" + i, "Light " + i);
+      light.turnOn();
+      homeManager.addDevice(light, room);
+      added[i] = light;
+    }
+    return added;
+  }
+
+  private static void delete(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.smarthome.scene;
+
+import com.smarthome.app.BenchmarkHomes;
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.exceptions.RuleConflictException;
+import com.smarthome.journal.Journal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the incremental state-rule matcher with re-evaluating every condition on each change.
+ * Each rule reads "Thermostat i temp > 26 AND Light i is off"; each operation moves one thermostat
+ * between 20 and 21 degrees so no rule fires and only matching cost is measured. The incremental
+ * figure should stay flat as the rule count grows while the rescan degrades linearly.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConditionMatcherBenchmark {
+
+  @Param({"10", "1000", "10000"})
+  private int ruleCount;
+
+  /** "incremental": the engine follows the home; "fullRescan": every condition is re-read. */
+  @Param({"incremental", "fullRescan"})
+  private String matcher;
+
+  private HomeManager homeManager;
+  private Thermostat[] thermostats;
+  private List<Rule> rules;
+  private RuleEngine ruleEngine;
+  private int cursor;
+  private double temperature = 20;
+  private Journal originalJournal;
+
+  @Setup(Level.Trial)
+  public void setUp() throws RuleConflictException {
+    originalJournal = BenchmarkHomes.silenceJournal();
+
+    homeManager = BenchmarkHomes.withLights(ruleCount);
+    Room room = new Room("Thermostats");
+    homeManager.addRoom(room);
+    thermostats = new Thermostat[ruleCount];
+    for (int i = 0; i < ruleCount; i++) {
+      thermostats[i] = new Thermostat("T_" + i, "Thermostat " + i);
+      homeManager.addDevice(thermostats[i], room);
+    }
+
+    SceneManager sceneManager = new SceneManager(homeManager);
+    Scene scene = new Scene("Empty");
+    sceneManager.addScene(scene);
+    ruleEngine = new RuleEngine(sceneManager, message -> {});
+    for (int i = 0; i < ruleCount; i++) {
+      ruleEngine.addRule(
+          Rule.when(
+              Condition.parse("Thermostat " + i + " temp > 26 AND Light " + i + " is off"), scene));
+    }
+    rules = ruleEngine.getRules();
+    if (matcher.equals("incremental")) {
+      ruleEngine.subscribeToDeviceChanges(homeManager);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    ruleEngine.unsubscribeFromDeviceChanges(homeManager);
+    BenchmarkHomes.restoreJournal(originalJournal);
+  }
+
+  @Benchmark
+  public void temperatureChange(Blackhole blackhole) {
+    // Every thermostat is visited once per pass, so flip the target temperature between passes
+    if (cursor == 0) {
+      temperature = temperature == 20 ? 21 : 20;
+    }
+    thermostats[cursor].setTemp(temperature);
+    cursor = cursor + 1 == thermostats.length ? 0 : cursor + 1;
+
+    if (matcher.equals("fullRescan")) {
+      for (Rule rule : rules) {
+        blackhole.consume(rule.getCondition().isSatisfied(homeManager));
+      }
+    }
+  }
+}
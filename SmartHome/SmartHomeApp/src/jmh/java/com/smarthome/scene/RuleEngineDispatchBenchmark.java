@@ -0,0 +1,87 @@
+package com.smarthome.scene;
+
+import com.smarthome.app.BenchmarkHomes;
+import com.smarthome.app.HomeManager;
+import com.smarthome.exceptions.RuleConflictException;
+import com.smarthome.journal.Journal;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures RuleEngine event dispatch as the rule count grows. With indexed dispatch the events/sec
+ * figure should stay roughly flat from 10 to 1M rules.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleEngineDispatchBenchmark {
+
+  @Param({"10", "1000", "100000", "1000000"})
+  private int ruleCount;
+
+  private static final LocalTime NOON = LocalTime.NOON;
+
+  private RuleEngine ruleEngine;
+  private String[] deviceNames;
+  private int cursor;
+  private Journal originalJournal;
+
+  @Setup(Level.Trial)
+  public void setUp() throws RuleConflictException {
+    // The engine still logs every event; keep console I/O out of the measurement
+    originalJournal = BenchmarkHomes.silenceJournal();
+
+    SceneManager sceneManager = new SceneManager(new HomeManager("bench"));
+    Scene scene = new Scene("Empty");
+    sceneManager.addScene(scene);
+    ruleEngine = new RuleEngine(sceneManager, message -> {});
+
+    deviceNames = new String[ruleCount];
+    for (int i = 0; i < ruleCount; i++) {
+      deviceNames[i] = "Sensor_" + i;
+      ruleEngine.addRule(new Rule("motion_detected", deviceNames[i], scene));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkHomes.restoreJournal(originalJournal);
+  }
+
+  @Benchmark
+  public void matchingEvent() {
+    ruleEngine.handleEvent("motion_detected", nextDevice(), NOON);
+  }
+
+  @Benchmark
+  public void missingEvent() {
+    ruleEngine.handleEvent("door_opened", nextDevice(), NOON);
+  }
+
+  @Benchmark
+  public void globalEventMiss() {
+    ruleEngine.handleGlobalEvent("sunset", NOON);
+  }
+
+  private String nextDevice() {
+    String name = deviceNames[cursor];
+    cursor = cursor + 1 == deviceNames.length ? 0 : cursor + 1;
+    return name;
+  }
+}
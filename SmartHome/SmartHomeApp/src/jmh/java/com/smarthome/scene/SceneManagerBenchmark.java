@@ -0,0 +1,70 @@
+package com.smarthome.scene;
+
+import com.smarthome.app.BenchmarkHomes;
+import com.smarthome.exceptions.SceneExecutionException;
+import com.smarthome.journal.Journal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures end-to-end scene execution for scenes of increasing size. Every run after the first
+ * finds the lights already in place, so with {@code diffing} it measures a repeated trigger.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SceneManagerBenchmark {
+
+  @Param({"1", "10", "100", "1000"})
+  private int actionCount;
+
+  @Param({"SEQUENTIAL", "PARALLEL"})
+  private SceneExecutionMode mode;
+
+  @Param({"false", "true"})
+  private boolean diffing;
+
+  private SceneManager sceneManager;
+  private Scene scene;
+  private Journal originalJournal;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    originalJournal = BenchmarkHomes.silenceJournal();
+    sceneManager = new SceneManager(BenchmarkHomes.withLights(actionCount));
+    sceneManager.setExecutionMode(mode);
+    sceneManager.setDiffing(diffing);
+    scene = new Scene("Bench " + actionCount);
+    for (int i = 0; i < actionCount; i++) {
+      String name = "Light " + i;
+      scene.addAction(
+          i % 2 == 0 ? new Action(name, "turnOn") : new Action(name, "setBrightness", "40"));
+    }
+    sceneManager.addScene(scene);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkHomes.restoreJournal(originalJournal);
+  }
+
+  @Benchmark
+  public void executeScene() throws SceneExecutionException {
+    sceneManager.executeScene(scene);
+  }
+}
@@ -0,0 +1,43 @@
+package com.smarthome.app;
+
+import com.smarthome.devices.Device;
+
+/** One command addressed to a device, for {@link HomeManager#sendCommands}. */
+public class Command {
+  private final Device device;
+  private final String command;
+  private final Object value;
+
+  public Command(Device device, String command) {
+    this(device, command, null);
+  }
+
+  public Command(Device device, String command, Object value) {
+    this.device = device;
+    this.command = command;
+    this.value = value;
+  }
+
+  public Device getDevice() {
+    return device;
+  }
+
+  public String getCommand() {
+    return command;
+  }
+
+  /** The command's argument, or null if it takes none. */
+  public Object getValue() {
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return "Command{"
+        + (device != null ? device.getDeviceId() : "null")
+        + " "
+        + command
+        + (value != null ? " " + value : "")
+        + '}';
+  }
+}
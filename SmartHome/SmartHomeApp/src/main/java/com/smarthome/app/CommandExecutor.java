@@ -6,17 +6,34 @@ import com.smarthome.devices.SecurityCamera;
 import com.smarthome.devices.SwitchableDevice;
 import com.smarthome.devices.Thermostat;
 import com.smarthome.exceptions.InvalidCommandException;
+import com.smarthome.metrics.Metrics;
+import com.smarthome.metrics.MetricsRegistry;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.BiConsumer;
 
 /**
  * Executes commands on devices using a functional approach. Replaces reflection-based command
  * execution with type-safe lambda functions.
+ *
+ * <p>Each command is registered as a compiler that validates the device type and parses the
+ * arguments once, producing a {@link CommandPlan}. {@link #execute} compiles and runs in one step;
+ * callers that replay the same command (such as scenes) can {@link #compile} once and reuse the
+ * plan.
  */
 public class CommandExecutor {
 
-  private static final Map<String, BiConsumer<Device, Object[]>> COMMANDS = new HashMap<>();
+  /** Either a plan or the reason the command cannot run on that device type. */
+  public record Compilation(CommandPlan plan, String error) {}
+
+  /** Validates a device type and arguments, returning the typed call or throwing if invalid. */
+  @FunctionalInterface
+  private interface PlanCompiler {
+    CommandPlan.Invocation compile(Class<? extends Device> deviceType, Object[] args);
+  }
+
+  private static final Object[] NO_ARGS = new Object[0];
+
+  private static final Map<String, PlanCompiler> COMMANDS = new HashMap<>();
 
   static {
     // Register all supported commands
@@ -29,124 +46,174 @@ public class CommandExecutor {
   private static void registerSwitchableDeviceCommands() {
     COMMANDS.put(
         "turnOn",
-        (device, args) -> {
-          if (device instanceof SwitchableDevice) {
-            ((SwitchableDevice) device).turnOn();
-          } else {
-            throw new RuntimeException(
-                "Device does not support turnOn: " + device.getClass().getSimpleName());
+        (deviceType, args) -> {
+          if (!SwitchableDevice.class.isAssignableFrom(deviceType)) {
+            throw new IllegalArgumentException(
+                "Device does not support turnOn: " + deviceType.getSimpleName());
           }
+          // A light comes on at its default brightness, even if it was already on
+          CommandPlan.Effect effect =
+              Light.class.isAssignableFrom(deviceType)
+                  ? state -> state.withPower(true).withBrightness(Light.DEFAULT_BRIGHTNESS)
+                  : state -> state.withPower(true);
+          return CommandPlan.Invocation.writing(
+              device -> ((SwitchableDevice) device).turnOn(), effect);
         });
 
     COMMANDS.put(
         "turnOff",
-        (device, args) -> {
-          if (device instanceof SwitchableDevice) {
-            ((SwitchableDevice) device).turnOff();
-          } else {
-            throw new RuntimeException(
-                "Device does not support turnOff: " + device.getClass().getSimpleName());
+        (deviceType, args) -> {
+          if (!SwitchableDevice.class.isAssignableFrom(deviceType)) {
+            throw new IllegalArgumentException(
+                "Device does not support turnOff: " + deviceType.getSimpleName());
           }
+          CommandPlan.Effect effect =
+              Light.class.isAssignableFrom(deviceType)
+                  ? state -> state.withPower(false).withBrightness(0)
+                  : state -> state.withPower(false);
+          return CommandPlan.Invocation.writing(
+              device -> ((SwitchableDevice) device).turnOff(), effect);
         });
   }
 
   private static void registerLightCommands() {
     COMMANDS.put(
         "setBrightness",
-        (device, args) -> {
-          if (!(device instanceof Light)) {
-            throw new RuntimeException(
-                "Device is not a Light: " + device.getClass().getSimpleName());
-          }
+        (deviceType, args) -> {
+          requireType(deviceType, Light.class, "Device is not a Light: ");
           if (args.length == 0) {
-            throw new RuntimeException("setBrightness requires brightness value");
+            throw new IllegalArgumentException("setBrightness requires brightness value");
           }
 
-
           int brightness;
           if (args[0] instanceof String) {
             brightness = Integer.parseInt((String) args[0]);
           } else if (args[0] instanceof Integer) {
             brightness = (Integer) args[0];
           } else {
-            throw new RuntimeException("setBrightness requires integer brightness value");
+            throw new IllegalArgumentException("setBrightness requires integer brightness value");
           }
 
-          ((Light) device).setBrightness(brightness);
+          int clamped = Light.clampBrightness(brightness);
+          return CommandPlan.Invocation.writing(
+              device -> ((Light) device).setBrightness(brightness),
+              state -> state.on() ? state.withBrightness(clamped) : state);
         });
   }
 
   private static void registerThermostatCommands() {
     COMMANDS.put(
         "setTemp",
-        (device, args) -> {
-          if (!(device instanceof Thermostat)) {
-            throw new RuntimeException(
-                "Device is not a Thermostat: " + device.getClass().getSimpleName());
-          }
+        (deviceType, args) -> {
+          requireType(deviceType, Thermostat.class, "Device is not a Thermostat: ");
           if (args.length == 0) {
-            throw new RuntimeException("setTemp requires temperature value");
+            throw new IllegalArgumentException("setTemp requires temperature value");
           }
 
-
           double temperature;
           if (args[0] instanceof String) {
             temperature = Double.parseDouble((String) args[0]);
           } else if (args[0] instanceof Number) {
             temperature = ((Number) args[0]).doubleValue();
           } else {
-            throw new RuntimeException("setTemp requires numeric temperature value");
+            throw new IllegalArgumentException("setTemp requires numeric temperature value");
           }
 
-          ((Thermostat) device).setTemp(temperature);
+          return CommandPlan.Invocation.writing(
+              device -> ((Thermostat) device).setTemp(temperature),
+              state -> state.withTemperature(temperature));
         });
 
     COMMANDS.put(
         "getTemp",
-        (device, args) -> {
-          if (!(device instanceof Thermostat)) {
-            throw new RuntimeException(
-                "Device is not a Thermostat: " + device.getClass().getSimpleName());
-          }
+        (deviceType, args) -> {
+          requireType(deviceType, Thermostat.class, "Device is not a Thermostat: ");
           // For read operations, we just call the method
           // The return value would need to be handled by the caller
-          ((Thermostat) device).getTemp();
+          return device -> ((Thermostat) device).getTemp();
         });
   }
 
   private static void registerSecurityCameraCommands() {
     COMMANDS.put(
         "startRecording",
-        (device, args) -> {
-          if (!(device instanceof SecurityCamera)) {
-            throw new RuntimeException(
-                "Device is not a SecurityCamera: " + device.getClass().getSimpleName());
-          }
-          ((SecurityCamera) device).startRecording();
+        (deviceType, args) -> {
+          requireType(deviceType, SecurityCamera.class, "Device is not a SecurityCamera: ");
+          return CommandPlan.Invocation.writing(
+              device -> ((SecurityCamera) device).startRecording(),
+              state -> state.withPower(true));
         });
 
     COMMANDS.put(
         "stopRecording",
-        (device, args) -> {
-          if (!(device instanceof SecurityCamera)) {
-            throw new RuntimeException(
-                "Device is not a SecurityCamera: " + device.getClass().getSimpleName());
-          }
-          ((SecurityCamera) device).stopRecording();
+        (deviceType, args) -> {
+          requireType(deviceType, SecurityCamera.class, "Device is not a SecurityCamera: ");
+          return CommandPlan.Invocation.writing(
+              device -> ((SecurityCamera) device).stopRecording(),
+              state -> state.withPower(false));
         });
 
     COMMANDS.put(
         "isRecording",
-        (device, args) -> {
-          if (!(device instanceof SecurityCamera)) {
-            throw new RuntimeException(
-                "Device is not a SecurityCamera: " + device.getClass().getSimpleName());
-          }
+        (deviceType, args) -> {
+          requireType(deviceType, SecurityCamera.class, "Device is not a SecurityCamera: ");
           // For read operations, the return value would need to be handled by the caller
-          ((SecurityCamera) device).isRecording();
+          return device -> ((SecurityCamera) device).isRecording();
         });
   }
 
+  private static void requireType(
+      Class<? extends Device> deviceType, Class<?> required, String message) {
+    if (!required.isAssignableFrom(deviceType)) {
+      throw new IllegalArgumentException(message + deviceType.getSimpleName());
+    }
+  }
+
+  /**
+   * Validates a command for a device type and parses its arguments once.
+   *
+   * @param deviceType The concrete device class the plan will run on
+   * @param command The command name (e.g., "turnOn", "setBrightness")
+   * @param args Arguments for the command
+   * @return a plan that can be invoked repeatedly on devices of that type
+   * @throws InvalidCommandException if the command is unknown, unsupported by the device type or
+   *     has invalid arguments
+   */
+  public CommandPlan compile(Class<? extends Device> deviceType, String command, Object... args)
+      throws InvalidCommandException {
+    if (deviceType == null) {
+      throw new InvalidCommandException("Device", new Throwable("Device cannot be null"));
+    }
+
+    PlanCompiler compiler = COMMANDS.get(command);
+    if (compiler == null) {
+      throw new InvalidCommandException(
+          deviceType.getSimpleName(), new Throwable("Unknown command: " + command));
+    }
+
+    try {
+      return new CommandPlan(command, deviceType, compiler.compile(deviceType, argsOrEmpty(args)));
+    } catch (RuntimeException e) {
+      throw new InvalidCommandException(deviceType.getSimpleName(), e);
+    }
+  }
+
+  /**
+   * Compiles a command taking at most one argument, reporting a rejection as a value instead of
+   * throwing, for callers that cache the result per device type.
+   *
+   * @param value the command's argument, or null if it takes none
+   */
+  public Compilation tryCompile(Class<? extends Device> deviceType, String command, Object value) {
+    try {
+      CommandPlan plan =
+          value == null ? compile(deviceType, command) : compile(deviceType, command, value);
+      return new Compilation(plan, null);
+    } catch (InvalidCommandException e) {
+      return new Compilation(null, CommandOutcome.describe(e));
+    }
+  }
+
   /**
    * Executes a command on a device.
    *
@@ -161,19 +228,69 @@ public class CommandExecutor {
       throw new InvalidCommandException("Device", new Throwable("Device cannot be null"));
     }
 
-    BiConsumer<Device, Object[]> cmd = COMMANDS.get(command);
-    if (cmd == null) {
+    CommandPlan plan;
+    try {
+      plan = compile(device.getClass(), command, args);
+    } catch (InvalidCommandException e) {
+      recordRejected(command);
+      throw e;
+    }
+    execute(device, plan);
+  }
+
+  /**
+   * Runs a precompiled plan on a device.
+   *
+   * @throws InvalidCommandException if the plan was compiled for another device type or the device
+   *     fails
+   */
+  public void execute(Device device, CommandPlan plan) throws InvalidCommandException {
+    if (device == null) {
+      throw new InvalidCommandException("Device", new Throwable("Device cannot be null"));
+    }
+    if (!plan.appliesTo(device)) {
+      recordRejected(plan.getCommand());
       throw new InvalidCommandException(
-          device.getClass().getSimpleName(), new Throwable("Unknown command: " + command));
+          device.getClass().getSimpleName(),
+          new Throwable(plan + " does not apply to " + device.getClass().getSimpleName()));
     }
 
     try {
-      cmd.accept(device, args);
-    } catch (Exception e) {
+      plan.invoke(device);
+    } catch (RuntimeException e) {
       throw new InvalidCommandException(device.getClass().getSimpleName(), e);
     }
   }
 
+  /** Counts a command that failed validation, keeping unknown names out of the registry. */
+  private static void recordRejected(String command) {
+    MetricsRegistry metrics = Metrics.get();
+    if (metrics.isEnabled()) {
+      String name = COMMANDS.containsKey(command) ? command : MetricsRegistry.UNKNOWN_COMMAND;
+      metrics.command(name).recordFailure();
+    }
+  }
+
+  private static Object[] argsOrEmpty(Object[] args) {
+    return args == null ? NO_ARGS : args;
+  }
+
+  /**
+   * Returns the device attribute a command writes, or null for reads and unknown commands. Two
+   * writes to the same attribute of a device can be coalesced into the later one.
+   */
+  static String attributeOf(String command) {
+    if (command == null) {
+      return null;
+    }
+    return switch (command) {
+      case "turnOn", "turnOff", "startRecording", "stopRecording" -> "power";
+      case "setBrightness" -> "brightness";
+      case "setTemp" -> "temperature";
+      default -> null;
+    };
+  }
+
   /** Checks if a command is supported. */
   public boolean isCommandSupported(String command) {
     return COMMANDS.containsKey(command);
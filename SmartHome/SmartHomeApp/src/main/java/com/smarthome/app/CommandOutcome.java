@@ -0,0 +1,64 @@
+package com.smarthome.app;
+
+/** What happened to one command of a {@link HomeManager#sendCommands} batch. */
+public class CommandOutcome {
+
+  public enum Status {
+    APPLIED,
+    /** Not run because a later command in the batch sets the same attribute of the device. */
+    COALESCED,
+    FAILED
+  }
+
+  private final Command command;
+  private final Status status;
+  private final String error;
+
+  public CommandOutcome(Command command, Status status, String error) {
+    this.command = command;
+    this.status = status;
+    this.error = error;
+  }
+
+  static CommandOutcome applied(Command command) {
+    return new CommandOutcome(command, Status.APPLIED, null);
+  }
+
+  static CommandOutcome coalesced(Command command) {
+    return new CommandOutcome(command, Status.COALESCED, null);
+  }
+
+  static CommandOutcome failed(Command command, String error) {
+    return new CommandOutcome(command, Status.FAILED, error);
+  }
+
+  /**
+   * Describes a failure for an outcome or report: the message, followed by the cause's message if
+   * it has one, or the exception's class name when there is no message at all.
+   */
+  public static String describe(Throwable e) {
+    Throwable cause = e.getCause();
+    if (cause != null && cause.getMessage() != null) {
+      return e.getMessage() + ": " + cause.getMessage();
+    }
+    return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+  }
+
+  public Command getCommand() {
+    return command;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  /** Failure description, or null unless the status is FAILED. */
+  public String getError() {
+    return error;
+  }
+
+  @Override
+  public String toString() {
+    return status + " " + command + (error != null ? ": " + error : "");
+  }
+}
@@ -0,0 +1,113 @@
+package com.smarthome.app;
+
+import com.smarthome.devices.Device;
+import com.smarthome.devices.DeviceState;
+import com.smarthome.metrics.Metrics;
+import com.smarthome.metrics.MetricsRegistry;
+import com.smarthome.metrics.OperationStats;
+
+/**
+ * A command that has been validated against a device type, with its argument already parsed into
+ * a primitive. Invoking a plan does no lookup, parsing or boxing.
+ *
+ * <p>Plans are created by {@link CommandExecutor#compile}. Check {@link #appliesTo(Device)} before
+ * invoking a plan on a device it was not compiled for.
+ *
+ * <p>Writes also know their effect on {@link DeviceState}, so callers can predict with {@link
+ * #predict} whether a command would change anything before sending it.
+ *
+ * <p>Every invocation is counted, and a sample timed, under the command name in {@link Metrics};
+ * the stats are resolved when the plan is compiled, not per call.
+ */
+public final class CommandPlan {
+
+  /** The typed call a plan performs. */
+  @FunctionalInterface
+  interface Invocation {
+    void invoke(Device device);
+
+    /** How the call changes device state, or null if that is not modelled (e.g. reads). */
+    default Effect effect() {
+      return null;
+    }
+
+    /** Pairs a call with its modelled effect. */
+    static Invocation writing(Invocation call, Effect effect) {
+      return new Invocation() {
+        @Override
+        public void invoke(Device device) {
+          call.invoke(device);
+        }
+
+        @Override
+        public Effect effect() {
+          return effect;
+        }
+      };
+    }
+  }
+
+  /** The state a device of the plan's type ends up in after the call. */
+  @FunctionalInterface
+  interface Effect {
+    DeviceState apply(DeviceState state);
+  }
+
+  private final String command;
+  private final Class<? extends Device> deviceType;
+  private final Invocation invocation;
+  private final Effect effect;
+  private final OperationStats stats;
+
+  CommandPlan(String command, Class<? extends Device> deviceType, Invocation invocation) {
+    this.command = command;
+    this.deviceType = deviceType;
+    this.invocation = invocation;
+    this.effect = invocation.effect();
+    this.stats = Metrics.get().command(command);
+  }
+
+  public String getCommand() {
+    return command;
+  }
+
+  /** The device type the plan was validated against. */
+  public Class<? extends Device> getDeviceType() {
+    return deviceType;
+  }
+
+  /** True if the plan was validated for this device's type. */
+  public boolean appliesTo(Device device) {
+    return deviceType.isInstance(device);
+  }
+
+  /**
+   * Predicts the state after running the command on a device in {@code state}, without running
+   * it. Returns null when the command's effect is not modelled.
+   */
+  public DeviceState predict(DeviceState state) {
+    return effect != null ? effect.apply(state) : null;
+  }
+
+  /** Runs the command on a device of the compiled type. */
+  public void invoke(Device device) {
+    MetricsRegistry metrics = Metrics.get();
+    if (!metrics.isEnabled()) {
+      invocation.invoke(device);
+      return;
+    }
+    long timer = stats.startTimer();
+    boolean succeeded = false;
+    try {
+      invocation.invoke(device);
+      succeeded = true;
+    } finally {
+      stats.stopTimer(timer, succeeded);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CommandPlan{" + command + " on " + deviceType.getSimpleName() + '}';
+  }
+}
@@ -0,0 +1,97 @@
+package com.smarthome.app;
+
+import com.smarthome.devices.Device;
+import java.util.function.Predicate;
+
+/**
+ * Selects devices of a home for {@link HomeManager#sendGroupCommand}: those of one room, of one
+ * device type and matching a predicate, each criterion optional. Groups are immutable, so one can
+ * be kept and reused; the devices are selected when the command is sent.
+ *
+ * <pre>{@code
+ * homeManager.sendGroupCommand(DeviceGroup.ofType(Light.class).inRoom(kitchen), "turnOff", null);
+ * }</pre>
+ */
+public final class DeviceGroup {
+  private static final DeviceGroup ALL = new DeviceGroup(null, Device.class, null);
+
+  private final Room room;
+  private final Class<? extends Device> type;
+  private final Predicate<? super Device> filter;
+
+  private DeviceGroup(Room room, Class<? extends Device> type, Predicate<? super Device> filter) {
+    this.room = room;
+    this.type = type;
+    this.filter = filter;
+  }
+
+  /** Every device of the home. */
+  public static DeviceGroup all() {
+    return ALL;
+  }
+
+  /** Every device in the room. */
+  public static DeviceGroup of(Room room) {
+    return ALL.inRoom(room);
+  }
+
+  /** Every device of the type or one of its subtypes. */
+  public static DeviceGroup ofType(Class<? extends Device> type) {
+    return ALL.withType(type);
+  }
+
+  /** Narrows the group to the devices in the room. */
+  public DeviceGroup inRoom(Room room) {
+    if (room == null) {
+      throw new IllegalArgumentException("room must not be null");
+    }
+    return new DeviceGroup(room, type, filter);
+  }
+
+  /** Narrows the group to devices of the type or one of its subtypes. */
+  public DeviceGroup withType(Class<? extends Device> type) {
+    if (type == null) {
+      throw new IllegalArgumentException("type must not be null");
+    }
+    if (this.type.isAssignableFrom(type)) {
+      return new DeviceGroup(room, type, filter);
+    }
+    // Already as narrow, or an unrelated type such as an interface: both must hold
+    return type.isAssignableFrom(this.type) ? this : matching(type::isInstance);
+  }
+
+  /** Narrows the group to the devices the predicate accepts, on top of any earlier predicate. */
+  public DeviceGroup matching(Predicate<? super Device> predicate) {
+    if (predicate == null) {
+      throw new IllegalArgumentException("predicate must not be null");
+    }
+    Predicate<? super Device> previous = filter;
+    Predicate<? super Device> combined =
+        previous == null ? predicate : device -> previous.test(device) && predicate.test(device);
+    return new DeviceGroup(room, type, combined);
+  }
+
+  /** The room the group is limited to, or null for the whole home. */
+  public Room getRoom() {
+    return room;
+  }
+
+  public Class<? extends Device> getType() {
+    return type;
+  }
+
+  /** Checks the type and predicate; the room is applied by the home when selecting. */
+  boolean accepts(Device device) {
+    return type.isInstance(device) && (filter == null || filter.test(device));
+  }
+
+  @Override
+  public String toString() {
+    return "DeviceGroup{"
+        + (room != null ? "room=" + room.getRoomName() + ", " : "")
+        + "type="
+        + type.getSimpleName()
+        + (filter != null ? ", filtered" : "")
+        + '}';
+  }
+}
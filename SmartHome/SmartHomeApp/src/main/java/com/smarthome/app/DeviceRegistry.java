@@ -0,0 +1,107 @@
+package com.smarthome.app;
+
+import com.smarthome.devices.Device;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the devices of a {@link HomeManager} indexed by case-folded id, case-folded name and owning
+ * room so lookups do not have to walk every room.
+ *
+ * <p>When two devices share a name (or id) the first one registered wins, matching the "first
+ * match" behaviour of the old linear scan. The others wait, in registration order, in a short
+ * per-key list, so removing the indexed device promotes the next one without a rescan.
+ */
+final class DeviceRegistry {
+  private final Map<Device, Room> roomsByDevice = new HashMap<>();
+  private final Map<String, Device> devicesById = new HashMap<>();
+  private final Map<String, Device> devicesByName = new HashMap<>();
+  // Devices whose key is taken by an earlier one, in registration order; only for colliding keys
+  private final Map<String, List<Device>> shadowedIds = new HashMap<>();
+  private final Map<String, List<Device>> shadowedNames = new HashMap<>();
+
+  static String fold(String key) {
+    return key == null ? null : key.toLowerCase(Locale.ROOT);
+  }
+
+  void register(Device device, Room room) {
+    roomsByDevice.put(device, room);
+    index(devicesById, shadowedIds, fold(device.getDeviceId()), device);
+    index(devicesByName, shadowedNames, fold(device.getDeviceName()), device);
+  }
+
+  void unregister(Device device) {
+    if (roomsByDevice.remove(device) == null) {
+      return;
+    }
+    unindex(devicesById, shadowedIds, fold(device.getDeviceId()), device);
+    unindex(devicesByName, shadowedNames, fold(device.getDeviceName()), device);
+  }
+
+  void rename(Device device, String oldName) {
+    if (!roomsByDevice.containsKey(device)) {
+      return;
+    }
+    unindex(devicesByName, shadowedNames, fold(oldName), device);
+    index(devicesByName, shadowedNames, fold(device.getDeviceName()), device);
+  }
+
+  boolean contains(Device device) {
+    return roomsByDevice.containsKey(device);
+  }
+
+  Room roomOf(Device device) {
+    return roomsByDevice.get(device);
+  }
+
+  Device byId(String id) {
+    return id == null ? null : devicesById.get(fold(id));
+  }
+
+  Device byName(String name) {
+    return name == null ? null : devicesByName.get(fold(name));
+  }
+
+  Set<Device> devices() {
+    return roomsByDevice.keySet();
+  }
+
+  int size() {
+    return roomsByDevice.size();
+  }
+
+  private static void index(
+      Map<String, Device> index, Map<String, List<Device>> shadowed, String key, Device device) {
+    if (key == null) {
+      return;
+    }
+    Device existing = index.putIfAbsent(key, device);
+    if (existing != null && existing != device) {
+      shadowed.computeIfAbsent(key, k -> new ArrayList<>(2)).add(device);
+    }
+  }
+
+  private static void unindex(
+      Map<String, Device> index, Map<String, List<Device>> shadowed, String key, Device device) {
+    if (key == null) {
+      return;
+    }
+    List<Device> waiting = shadowed.get(key);
+    if (index.remove(key, device)) {
+      if (waiting == null) {
+        return;
+      }
+      // Promote the earliest device that still shares the key
+      index.put(key, waiting.remove(0));
+    } else if (waiting == null || !waiting.remove(device)) {
+      return;
+    }
+    if (waiting.isEmpty()) {
+      shadowed.remove(key);
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package com.smarthome.app;
+
+import com.smarthome.devices.Device;
+
+/**
+ * Receives every successful change to a {@link HomeManager}: topology changes and executed
+ * commands. Callbacks run synchronously on the thread that made the change, so implementations
+ * should hand slow work off rather than block.
+ */
+public interface HomeChangeListener {
+
+  default void roomAdded(Room room) {}
+
+  /** Called after the room was removed; its devices are reported through deviceRemoved first. */
+  default void roomDeleted(Room room) {}
+
+  default void deviceAdded(Device device, Room room) {}
+
+  default void deviceRemoved(Device device, Room room) {}
+
+  default void deviceRenamed(Device device, String oldName) {}
+
+  /** Called after {@code command} ran on the device; {@code value} is null for no argument. */
+  default void commandExecuted(Device device, String command, Object value) {}
+}
@@ -1,19 +1,47 @@
 package com.smarthome.app;
 
+import com.smarthome.app.CommandExecutor.Compilation;
 import com.smarthome.devices.Device;
+import com.smarthome.devices.DeviceChange;
+import com.smarthome.devices.DeviceChangeListener;
 import com.smarthome.exceptions.DeviceNotFoundException;
 import com.smarthome.exceptions.InvalidCommandException;
 import com.smarthome.exceptions.RoomNotFoundException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
-public class HomeManager {
+public class HomeManager implements AutoCloseable {
   private final String accountId;
   private final Set<Room> rooms = new HashSet<>();
+  private final DeviceRegistry registry = new DeviceRegistry();
 
   private final CommandExecutor commandExecutor = new CommandExecutor();
+  private List<HomeChangeListener> changeListeners = List.of();
+  private HomeChangeListener changeListener = NO_LISTENER;
+  private volatile int groupFanOut;
+  private ExecutorService groupExecutor;
+  private boolean closed;
+
+  private static final HomeChangeListener NO_LISTENER = new HomeChangeListener() {};
+  private static final List<Integer> NOT_IN_HOME = List.of();
+
+  /** Batch-local cache key: a command compiles to the same plan for every device of a type. */
+  private record PlanKey(String command, Object value) {}
 
   public HomeManager(String accountId) {
     this.accountId = accountId;
@@ -23,12 +51,88 @@ public class HomeManager {
     return accountId;
   }
 
+  /**
+   * Replaces all change listeners with this one; pass null to detach every listener. Prefer {@link
+   * #addChangeListener} when other components may be listening too.
+   */
+  public void setChangeListener(HomeChangeListener changeListener) {
+    changeListeners = changeListener != null ? List.of(changeListener) : List.of();
+    this.changeListener = combine(changeListeners);
+  }
+
+  /** Adds a listener told about every successful change, after those already registered. */
+  public void addChangeListener(HomeChangeListener listener) {
+    if (listener == null || changeListeners.contains(listener)) {
+      return;
+    }
+    List<HomeChangeListener> updated = new ArrayList<>(changeListeners);
+    updated.add(listener);
+    changeListeners = List.copyOf(updated);
+    changeListener = combine(changeListeners);
+  }
+
+  public boolean removeChangeListener(HomeChangeListener listener) {
+    if (!changeListeners.contains(listener)) {
+      return false;
+    }
+    List<HomeChangeListener> updated = new ArrayList<>(changeListeners);
+    updated.remove(listener);
+    changeListeners = List.copyOf(updated);
+    changeListener = combine(changeListeners);
+    return true;
+  }
+
+  /** Collapses the listeners into one callback; the common single-listener case is not wrapped. */
+  private static HomeChangeListener combine(List<HomeChangeListener> listeners) {
+    return switch (listeners.size()) {
+      case 0 -> NO_LISTENER;
+      case 1 -> listeners.get(0);
+      default -> new MulticastListener(listeners);
+    };
+  }
+
+  public int getGroupFanOut() {
+    return groupFanOut;
+  }
+
+  /**
+   * Splits group commands over more than {@code devicesPerThread} devices into chunks of that
+   * size, each run on its own virtual thread, so slow devices overlap instead of adding up. Only
+   * the device commands themselves run on those threads: the {@link DeviceChange}s they publish
+   * are delivered to {@link DeviceChangeListener}s on the sending thread once every chunk is done,
+   * followed by {@link HomeChangeListener#commandExecuted}. 0, the default, runs every group on the
+   * caller's thread.
+   */
+  public void setGroupFanOut(int devicesPerThread) {
+    if (devicesPerThread < 0) {
+      throw new IllegalArgumentException("devicesPerThread must not be negative");
+    }
+    groupFanOut = devicesPerThread;
+  }
+
+  /**
+   * Stops the threads that run fanned-out group commands; groups already running finish. The home
+   * stays usable, and later group commands run on the caller's thread.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (groupExecutor != null) {
+      groupExecutor.shutdown();
+      groupExecutor = null;
+    }
+  }
+
   public Set<Room> getRooms() {
     return Collections.unmodifiableSet(rooms);
   }
 
   public boolean addRoom(Room room) {
-    return rooms.add(room);
+    if (!rooms.add(room)) {
+      return false;
+    }
+    changeListener.roomAdded(room);
+    return true;
   }
 
   public boolean deleteRoom(Room room) throws RoomNotFoundException {
@@ -36,24 +140,54 @@ public class HomeManager {
       throw new RoomNotFoundException(
           "Room not found: " + (room != null ? room.getRoomName() : "null"));
     }
+    List<Device> removed = new ArrayList<>(room.getDevices());
+    for (Device device : removed) {
+      unregister(device);
+    }
     room.clearDevices();
     rooms.remove(room);
+    for (Device device : removed) {
+      changeListener.deviceRemoved(device, room);
+    }
+    changeListener.roomDeleted(room);
     return true;
   }
 
   public Set<Device> getAllDevices() {
-    Set<Device> all = new HashSet<>();
-    for (Room r : rooms) {
-      all.addAll(r.getDevices());
-    }
-    return Collections.unmodifiableSet(all);
+    return Collections.unmodifiableSet(new HashSet<>(registry.devices()));
+  }
+
+  /** Returns the number of devices across all rooms without building a snapshot. */
+  public int getDeviceCount() {
+    return registry.size();
+  }
+
+  /** Checks whether the device belongs to one of this home's rooms. */
+  public boolean containsDevice(Device device) {
+    return device != null && registry.contains(device);
+  }
+
+  /** Returns the room that holds the device, or null if the device is not in this home. */
+  public Room getRoomOfDevice(Device device) {
+    return device == null ? null : registry.roomOf(device);
   }
 
   public boolean addDevice(Device device, Room room) {
-    if (rooms.contains(room)) {
-      return room.addDevice(device);
+    if (device == null || !rooms.contains(room)) {
+      return false;
+    }
+    Room current = registry.roomOf(device);
+    if (current != null && current != room) {
+      // A device lives in exactly one room; move it with removeDevice + addDevice
+      return false;
     }
-    return false;
+    if (!room.addDevice(device)) {
+      return false;
+    }
+    registry.register(device, room);
+    device.setNameChangeListener(this::deviceRenamed);
+    changeListener.deviceAdded(device, room);
+    return true;
   }
 
   public boolean removeDevice(Device device) throws DeviceNotFoundException {
@@ -61,23 +195,25 @@ public class HomeManager {
       throw new DeviceNotFoundException("Device cannot be null");
     }
 
-    boolean removed = false;
-    for (Room r : rooms) {
-      try {
-        if (r.removeDevice(device)) {
-          removed = true;
-        }
-      } catch (DeviceNotFoundException e) {
-        // Continue to next room if device not found in this room
-        continue;
-      }
-    }
-
-    if (!removed) {
+    Room room = registry.roomOf(device);
+    if (room == null) {
       throw new DeviceNotFoundException("Device not found in any room: " + device.getDeviceName());
     }
 
-    return true; // Always true if we reach here (device was removed successfully)
+    room.removeDevice(device);
+    unregister(device);
+    changeListener.deviceRemoved(device, room);
+    return true;
+  }
+
+  private void deviceRenamed(Device device, String oldName) {
+    registry.rename(device, oldName);
+    changeListener.deviceRenamed(device, oldName);
+  }
+
+  private void unregister(Device device) {
+    registry.unregister(device);
+    device.setNameChangeListener(null);
   }
 
   public Room getRoombyName(String name) {
@@ -89,26 +225,19 @@ public class HomeManager {
     throw new RoomNotFoundException("Room not found: " + name);
   }
 
+  /** Looks up a device by name, ignoring case. */
   public Device getDevicebyName(String name) {
-    for (Device d : getAllDevices()) {
-      if (d.getDeviceName().equalsIgnoreCase(name)) {
-        return d;
-      }
-    }
-    return null;
+    return registry.byName(name);
   }
+
+  /** Looks up a device by id, ignoring case. */
   public Device getDeviceById(String id) {
-    for (Device d : getAllDevices()) {
-      if (d.getDeviceId().equalsIgnoreCase(id)) {
-        return d;
-      }
-    }
-    return null;
+    return registry.byId(id);
   }
 
   public void sendCommand(Device device, String command, Object value)
       throws InvalidCommandException {
-    if (device == null || !getAllDevices().contains(device)) {
+    if (!containsDevice(device)) {
       throw new DeviceNotFoundException(
           "Device not found: " + (device != null ? device.getDeviceId() : "null"));
     }
@@ -118,5 +247,294 @@ public class HomeManager {
     } else {
       commandExecutor.execute(device, command, value);
     }
+    changeListener.commandExecuted(device, command, value);
+  }
+
+  /**
+   * Runs a batch of commands and returns each one's outcome, in input order.
+   *
+   * <p>Membership is checked once per device. For each device and attribute (power, brightness,
+   * temperature) only the last write runs, so a slider dragged through many positions costs one
+   * call; earlier writes are reported as {@link CommandOutcome.Status#COALESCED}. Commands are
+   * compiled once per device type, command and value before coalescing, so a write that fails to
+   * compile is reported as failed and does not supersede earlier ones. Surviving commands keep
+   * their order per device and run grouped by device type.
+   */
+  public List<CommandOutcome> sendCommands(Collection<Command> commands) {
+    if (commands == null) {
+      throw new IllegalArgumentException("commands must not be null");
+    }
+    Command[] batch = commands.toArray(new Command[0]);
+    CommandOutcome[] outcomes = new CommandOutcome[batch.length];
+
+    Map<Device, List<Integer>> indexesByDevice = new LinkedHashMap<>();
+    for (int i = 0; i < batch.length; i++) {
+      Command command = batch[i];
+      if (command == null) {
+        throw new IllegalArgumentException("commands must not contain null");
+      }
+      List<Integer> indexes = indexesByDevice.get(command.getDevice());
+      if (indexes == null) {
+        indexes = containsDevice(command.getDevice()) ? new ArrayList<>() : NOT_IN_HOME;
+        indexesByDevice.put(command.getDevice(), indexes);
+      }
+      if (indexes == NOT_IN_HOME) {
+        Device device = command.getDevice();
+        outcomes[i] =
+            CommandOutcome.failed(
+                command, "Device not found: " + (device != null ? device.getDeviceId() : "null"));
+      } else {
+        indexes.add(i);
+      }
+    }
+
+    // Walk each device's commands backwards so the last write to an attribute wins; only a
+    // command that compiles may supersede earlier writes
+    Map<Class<? extends Device>, List<Integer>> survivorsByType = new LinkedHashMap<>();
+    Map<Class<? extends Device>, Map<PlanKey, Compilation>> plansByType = new HashMap<>();
+    Compilation[] plans = new Compilation[batch.length];
+    Set<String> written = new HashSet<>();
+    for (Map.Entry<Device, List<Integer>> entry : indexesByDevice.entrySet()) {
+      List<Integer> indexes = entry.getValue();
+      if (indexes == NOT_IN_HOME) {
+        continue;
+      }
+      Class<? extends Device> type = entry.getKey().getClass();
+      List<Integer> survivors = survivorsByType.computeIfAbsent(type, t -> new ArrayList<>());
+      Map<PlanKey, Compilation> typePlans =
+          plansByType.computeIfAbsent(type, t -> new HashMap<>());
+      int start = survivors.size();
+      written.clear();
+      for (int j = indexes.size() - 1; j >= 0; j--) {
+        int i = indexes.get(j);
+        Command command = batch[i];
+        plans[i] =
+            typePlans.computeIfAbsent(
+                new PlanKey(command.getCommand(), command.getValue()),
+                key -> commandExecutor.tryCompile(type, key.command(), key.value()));
+        if (plans[i].plan() == null) {
+          outcomes[i] = CommandOutcome.failed(command, plans[i].error());
+          continue;
+        }
+        String attribute = CommandExecutor.attributeOf(command.getCommand());
+        if (attribute != null && !written.add(attribute)) {
+          outcomes[i] = CommandOutcome.coalesced(command);
+        } else {
+          survivors.add(i);
+        }
+      }
+      Collections.reverse(survivors.subList(start, survivors.size()));
+    }
+
+    for (List<Integer> survivors : survivorsByType.values()) {
+      for (int i : survivors) {
+        outcomes[i] = run(batch[i], plans[i]);
+      }
+    }
+    return Collections.unmodifiableList(Arrays.asList(outcomes));
+  }
+
+  /**
+   * Returns the devices the group selects, in no particular order.
+   *
+   * @throws RoomNotFoundException if the group is limited to a room that is not in this home
+   */
+  public List<Device> selectDevices(DeviceGroup group) {
+    if (group == null) {
+      throw new IllegalArgumentException("group must not be null");
+    }
+    Room room = group.getRoom();
+    if (room != null && !rooms.contains(room)) {
+      throw new RoomNotFoundException("Room not found: " + room.getRoomName());
+    }
+    Collection<Device> candidates = room != null ? room.getDevices() : registry.devices();
+    List<Device> selected = new ArrayList<>(candidates.size());
+    for (Device device : candidates) {
+      if (group.accepts(device)) {
+        selected.add(device);
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Sends one command to every device the group selects and returns each device's outcome, in
+   * selection order.
+   *
+   * <p>The command is validated and compiled once per device type, so turning off a hundred lights
+   * costs one compilation and a hundred direct calls. If it does not compile for a type, every
+   * device of that type fails with the same error and none of them is touched. Large groups can
+   * run in parallel, see {@link #setGroupFanOut}.
+   *
+   * @param value the command's argument, or null if it takes none
+   * @throws RoomNotFoundException if the group is limited to a room that is not in this home
+   */
+  public List<CommandOutcome> sendGroupCommand(DeviceGroup group, String command, Object value) {
+    if (command == null) {
+      throw new IllegalArgumentException("command must not be null");
+    }
+    List<Device> devices = selectDevices(group);
+    Command[] commands = new Command[devices.size()];
+    Compilation[] plans = new Compilation[commands.length];
+    Map<Class<? extends Device>, Compilation> plansByType = new HashMap<>();
+    for (int i = 0; i < commands.length; i++) {
+      Device device = devices.get(i);
+      commands[i] = new Command(device, command, value);
+      plans[i] =
+          plansByType.computeIfAbsent(
+              device.getClass(), type -> commandExecutor.tryCompile(type, command, value));
+    }
+
+    CommandOutcome[] outcomes = new CommandOutcome[commands.length];
+    int fanOut = groupFanOut;
+    ExecutorService executor = fanOut > 0 && commands.length > fanOut ? groupExecutor() : null;
+    if (executor != null) {
+      invokeInChunks(executor, commands, plans, outcomes, fanOut);
+    } else {
+      invokeRange(commands, plans, outcomes, 0, commands.length);
+    }
+    for (CommandOutcome outcome : outcomes) {
+      if (outcome.getStatus() == CommandOutcome.Status.APPLIED) {
+        changeListener.commandExecuted(outcome.getCommand().getDevice(), command, value);
+      }
+    }
+    return Collections.unmodifiableList(Arrays.asList(outcomes));
+  }
+
+  /**
+   * Runs the first chunk on the caller and the others on virtual threads, then waits for all. The
+   * device changes each chunk publishes are collected and delivered afterwards on the caller, chunk
+   * by chunk in command order, so device change listeners such as a subscribed rule engine never
+   * run concurrently. A chunk the executor refuses because the home is closing runs on the caller.
+   */
+  private static void invokeInChunks(
+      ExecutorService executor,
+      Command[] commands,
+      Compilation[] plans,
+      CommandOutcome[] outcomes,
+      int chunkSize) {
+    List<Future<List<DeviceChange>>> chunks = new ArrayList<>(commands.length / chunkSize);
+    for (int from = chunkSize; from < commands.length; from += chunkSize) {
+      int start = from;
+      int end = Math.min(from + chunkSize, commands.length);
+      Runnable chunk = () -> invokeRange(commands, plans, outcomes, start, end);
+      try {
+        chunks.add(executor.submit(() -> Device.collectChanges(chunk)));
+      } catch (RejectedExecutionException e) {
+        chunks.add(CompletableFuture.completedFuture(Device.collectChanges(chunk)));
+      }
+    }
+    List<DeviceChange> changes =
+        Device.collectChanges(() -> invokeRange(commands, plans, outcomes, 0, chunkSize));
+    // Chunks write into outcomes, so wait for every one even if interrupted
+    boolean interrupted = false;
+    List<List<DeviceChange>> chunkChanges = new ArrayList<>(chunks.size());
+    for (Future<List<DeviceChange>> chunk : chunks) {
+      while (true) {
+        try {
+          chunkChanges.add(chunk.get());
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          // invoke reports RuntimeExceptions as outcomes, so only errors get here
+          if (e.getCause() instanceof Error error) {
+            throw error;
+          }
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    changes.forEach(Device::deliver);
+    for (List<DeviceChange> chunk : chunkChanges) {
+      chunk.forEach(Device::deliver);
+    }
+  }
+
+  private static void invokeRange(
+      Command[] commands, Compilation[] plans, CommandOutcome[] outcomes, int start, int end) {
+    for (int i = start; i < end; i++) {
+      outcomes[i] = invoke(commands[i], plans[i]);
+    }
+  }
+
+  /** The executor for group chunks, or null once the home is closed. */
+  private synchronized ExecutorService groupExecutor() {
+    if (closed) {
+      return null;
+    }
+    if (groupExecutor == null) {
+      groupExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+    return groupExecutor;
+  }
+
+  private CommandOutcome run(Command command, Compilation plan) {
+    CommandOutcome outcome = invoke(command, plan);
+    if (outcome.getStatus() == CommandOutcome.Status.APPLIED) {
+      changeListener.commandExecuted(
+          command.getDevice(), command.getCommand(), command.getValue());
+    }
+    return outcome;
+  }
+
+  /** Runs the plan on the command's device without telling the change listener. */
+  private static CommandOutcome invoke(Command command, Compilation plan) {
+    if (plan.plan() == null) {
+      return CommandOutcome.failed(command, plan.error());
+    }
+    try {
+      plan.plan().invoke(command.getDevice());
+    } catch (RuntimeException e) {
+      return CommandOutcome.failed(command, CommandOutcome.describe(e));
+    }
+    return CommandOutcome.applied(command);
+  }
+
+  /**
+   * Reports a command that ran without going through {@link #sendCommand}, such as a precompiled
+   * scene action, so the change listener still sees it.
+   */
+  public void recordCommand(Device device, String command, Object value) {
+    changeListener.commandExecuted(device, command, value);
+  }
+
+  /** Forwards each callback to several listeners in registration order. */
+  private record MulticastListener(List<HomeChangeListener> listeners)
+      implements HomeChangeListener {
+    @Override
+    public void roomAdded(Room room) {
+      listeners.forEach(listener -> listener.roomAdded(room));
+    }
+
+    @Override
+    public void roomDeleted(Room room) {
+      listeners.forEach(listener -> listener.roomDeleted(room));
+    }
+
+    @Override
+    public void deviceAdded(Device device, Room room) {
+      listeners.forEach(listener -> listener.deviceAdded(device, room));
+    }
+
+    @Override
+    public void deviceRemoved(Device device, Room room) {
+      listeners.forEach(listener -> listener.deviceRemoved(device, room));
+    }
+
+    @Override
+    public void deviceRenamed(Device device, String oldName) {
+      listeners.forEach(listener -> listener.deviceRenamed(device, oldName));
+    }
+
+    @Override
+    public void commandExecuted(Device device, String command, Object value) {
+      for (HomeChangeListener listener : listeners) {
+        listener.commandExecuted(device, command, value);
+      }
+    }
   }
 }
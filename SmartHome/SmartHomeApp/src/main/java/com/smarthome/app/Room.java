@@ -2,8 +2,10 @@ package com.smarthome.app;
 
 import com.smarthome.devices.Device;
 import com.smarthome.exceptions.DeviceNotFoundException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
@@ -13,7 +15,12 @@ public class Room {
   private final Set<Device> devices = new HashSet<>();
 
   public Room(String roomName) {
-    this.roomID = UUID.randomUUID();
+    this(roomName, UUID.randomUUID());
+  }
+
+  /** Creates a room with a known id, e.g. one restored from disk. */
+  public Room(String roomName, UUID roomID) {
+    this.roomID = roomID;
     this.roomName = roomName;
   }
 
@@ -29,12 +36,29 @@ public class Room {
     return Collections.unmodifiableSet(devices);
   }
 
-  public boolean addDevice(Device device) {
+  /** Returns this room's devices of the type or one of its subtypes. */
+  public <T extends Device> List<T> getDevices(Class<T> type) {
+    List<T> matching = new ArrayList<>();
+    for (Device device : devices) {
+      if (type.isInstance(device)) {
+        matching.add(type.cast(device));
+      }
+    }
+    return matching;
+  }
+
+  /** Selects this room's devices, to narrow further or pass to a group command. */
+  public DeviceGroup asGroup() {
+    return DeviceGroup.of(this);
+  }
+
+  /** Only {@link HomeManager} adds devices, so its indexes and listeners see every one. */
+  boolean addDevice(Device device) {
     device.setLinked(true);
     return devices.add(device);
   }
 
-  public boolean removeDevice(Device device) {
+  boolean removeDevice(Device device) {
     if (device == null || !devices.contains(device)) {
       throw new DeviceNotFoundException("Device not found in: " + roomName);
     }
@@ -42,7 +66,7 @@ public class Room {
     return devices.remove(device);
   }
 
-  public void clearDevices() {
+  void clearDevices() {
     devices.forEach(device -> device.setLinked(false));
     devices.clear();
   }
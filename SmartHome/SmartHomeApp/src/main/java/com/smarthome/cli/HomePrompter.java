@@ -3,7 +3,11 @@ package com.smarthome.cli;
 import com.smarthome.app.HomeManager;
 import com.smarthome.app.Room;
 import com.smarthome.devices.*;
+import com.smarthome.exceptions.InvalidCommandException;
+import com.smarthome.journal.Journals;
+import com.smarthome.metrics.Metrics;
 import com.smarthome.scene.Action;
+import com.smarthome.scene.Condition;
 import com.smarthome.scene.Rule;
 import com.smarthome.scene.RuleEngine;
 import com.smarthome.scene.Scene;
@@ -63,6 +67,9 @@ public class HomePrompter {
         case "11":
           simulateEvent();
           break;
+        case "12":
+          showMetrics();
+          break;
         default:
           System.out.println("Invalid option.");
           break;
@@ -72,6 +79,7 @@ public class HomePrompter {
   }
 
   private void printMenu() {
+    Journals.get().flush(); // let device and rule output appear before the menu
     System.out.println("\nSmartHome Menu");
     System.out.println("1. Add Room");
     System.out.println("2. List Rooms");
@@ -84,6 +92,7 @@ public class HomePrompter {
     System.out.println("9. Add Rule");
     System.out.println("10. Exit");
     System.out.println("11. Simulate Event");
+    System.out.println("12. Show Metrics");
     System.out.print(">> Your choice: ");
   }
 
@@ -172,11 +181,15 @@ public class HomePrompter {
       System.out.println("Device is not switchable.");
       return;
     }
-    SwitchableDevice s = (SwitchableDevice) device;
     System.out.print("Turn ON or OFF? ");
     String cmd = scanner.nextLine().trim().toLowerCase();
-    if (cmd.equals("on")) s.turnOn();
-    else if (cmd.equals("off")) s.turnOff();
+    try {
+      // Through the home so the change is persisted when a data directory is configured
+      if (cmd.equals("on")) homeManager.sendCommand(device, "turnOn", null);
+      else if (cmd.equals("off")) homeManager.sendCommand(device, "turnOff", null);
+    } catch (InvalidCommandException e) {
+      System.out.println("❌ " + e.getMessage());
+    }
     System.out.println(device.getStatus());
   }
 
@@ -240,7 +253,8 @@ public class HomePrompter {
       return;
     }
 
-    System.out.print("Enter trigger device name (or press enter for global event): ");
+    System.out.print(
+        "Enter trigger device name (or press enter for a global event or state condition): ");
     String deviceName = scanner.nextLine().trim();
     Device device = null;
     if (!deviceName.isEmpty()) {
@@ -251,12 +265,19 @@ public class HomePrompter {
       }
     }
 
-    System.out.print("Enter trigger event (e.g., motion_detected): ");
+    System.out.print(
+        device != null
+            ? "Enter trigger event (e.g., motion_detected): "
+            : "Enter trigger event (e.g., sunset) or 'when <condition>'"
+                + " (e.g., when Thermostat temp > 26 AND Lamp is off): ");
     String event = scanner.nextLine().trim();
 
     try {
       Rule rule;
-      if (device != null) {
+      if (device == null && event.regionMatches(true, 0, "when ", 0, 5)) {
+        // State rule, fired when the condition becomes true
+        rule = Rule.when(Condition.parse(event.substring(5)), scene);
+      } else if (device != null) {
         // Device-specific rule
         rule = new Rule(event, device.getDeviceName(), scene);
       } else {
@@ -283,4 +304,9 @@ public class HomePrompter {
     System.out.println("\nSimulating event: " + eventType + " on " + deviceName);
     ruleEngine.handleEvent(eventType, device.getDeviceId());
   }
+
+  private void showMetrics() {
+    System.out.println("\n📊 Metrics since start:");
+    System.out.print(Metrics.get().format());
+  }
 }
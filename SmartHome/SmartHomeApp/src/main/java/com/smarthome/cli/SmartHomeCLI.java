@@ -4,23 +4,86 @@ import com.smarthome.app.HomeManager;
 import com.smarthome.app.Room;
 import com.smarthome.devices.Light;
 import com.smarthome.devices.SecurityCamera;
+import com.smarthome.journal.AsyncJournal;
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.JournalLevel;
+import com.smarthome.journal.JournalSink;
+import com.smarthome.journal.Journals;
+import com.smarthome.load.LoadDriver;
+import com.smarthome.load.LoadProfile;
+import com.smarthome.metrics.Metrics;
+import com.smarthome.persistence.HomeStore;
 import com.smarthome.scene.Action;
+import com.smarthome.scene.BufferedNotificationService;
 import com.smarthome.scene.ConsoleNotificationService;
 import com.smarthome.scene.RuleEngine;
 import com.smarthome.scene.Scene;
 import com.smarthome.scene.SceneManager;
+import com.smarthome.script.ScriptRunner;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class SmartHomeCLI {
+  private static final String ACCOUNT_ID = "Account123";
+  private static final String DATA_DIR_PROPERTY = "smarthome.dataDir";
+  private static final String LOAD_FLAG = "--load";
+  private static final String SCRIPT_FLAG = "--script";
+  private static final String STDIN = "-";
+  private static final Duration ALERT_BATCH_WINDOW = Duration.ofMillis(50);
+  private static final double ALERTS_PER_SECOND = 2;
+  private static final int ALERT_BURST = 5;
+
   public static void main(String[] args) {
+    // --load [key=value ...] runs the headless load driver instead of the menu
+    if (args.length > 0 && LOAD_FLAG.equals(args[0])) {
+      runLoad(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    // --script <file|-> replays a command script without the menu
+    if (args.length > 0 && SCRIPT_FLAG.equals(args[0])) {
+      if (args.length != 2) {
+        System.err.println("Usage: --script <file|->");
+        return;
+      }
+      runScript(args[1]);
+      return;
+    }
+
     Scanner scanner = new Scanner(System.in);
+    // Counters are also visible in JConsole under com.smarthome:type=Metrics
+    Metrics.registerMBean();
 
-    HomeManager homeManager = new HomeManager("Account123");
+    // With -Dsmarthome.dataDir=<dir> the home survives restarts
+    String dataDir = System.getProperty(DATA_DIR_PROPERTY);
+    HomeStore store = openStore(dataDir);
+    HomeManager homeManager = store != null ? store.getHomeManager() : new HomeManager(ACCOUNT_ID);
     SceneManager sceneManager = new SceneManager(homeManager);
-    RuleEngine ruleEngine = new RuleEngine(sceneManager, new ConsoleNotificationService());
+    // Alerts print off the engine thread; a flapping sensor is held to a few alerts per second
+    BufferedNotificationService notifications =
+        BufferedNotificationService.builder(new ConsoleNotificationService())
+            .batchWindow(ALERT_BATCH_WINDOW)
+            .rateLimit(ALERTS_PER_SECOND, ALERT_BURST)
+            .build();
+    RuleEngine ruleEngine = new RuleEngine(sceneManager, notifications);
+
+    if (store != null && store.wasRestored()) {
+      System.out.println("💾 Restored " + homeManager.getDeviceCount() + " devices from " + dataDir);
+      createLivingRoomLightsScene(sceneManager);
+      createKitchenLightsScene(sceneManager);
+    } else {
+      // Set up initial rooms, devices, and scenes
+      setupInitialData(homeManager, sceneManager);
+    }
 
-    // Set up initial rooms, devices, and scenes
-    setupInitialData(homeManager, sceneManager);
+    // Device state changes (e.g. "turned_on") fire rules on their own
+    ruleEngine.subscribeToDeviceChanges(homeManager);
 
     // Pass all dependencies to HomePrompter
     HomePrompter prompter = new HomePrompter(scanner, homeManager, sceneManager, ruleEngine);
@@ -31,6 +94,91 @@ public class SmartHomeCLI {
 
     prompter.startMenuLoop();
     scanner.close();
+    sceneManager.close();
+    homeManager.close();
+    notifications.close();
+    closeStore(store);
+    // The journal writes from a daemon thread; let it catch up before the JVM exits
+    Journals.get().flush();
+  }
+
+  private static void runLoad(String[] settings) {
+    LoadProfile profile;
+    try {
+      profile = LoadProfile.parse(settings);
+    } catch (IllegalArgumentException e) {
+      System.err.println("❌ " + e.getMessage());
+      System.err.println(
+          "Usage: --load [devices=N] [rate=N] [duration=10s] [warmup=2s] [global=0.05] [zipf=1.0]"
+              + " [seed=N]");
+      return;
+    }
+    System.out.println("🚦 Running load: " + profile);
+    System.out.print(new LoadDriver(profile).run().format());
+  }
+
+  private static void runScript(String source) {
+    // Per-command device chatter would swamp the summary; errors still print
+    AsyncJournal journal =
+        new AsyncJournal(JournalLevel.ERROR, Journals.DEFAULT_CAPACITY, JournalSink.console());
+    Journal previous = Journals.set(journal);
+    String dataDir = System.getProperty(DATA_DIR_PROPERTY);
+    HomeStore store = openStore(dataDir);
+    HomeManager homeManager = store != null ? store.getHomeManager() : new HomeManager(ACCOUNT_ID);
+    SceneManager sceneManager = new SceneManager(homeManager);
+    BufferedNotificationService notifications =
+        BufferedNotificationService.builder(new ConsoleNotificationService())
+            .batchWindow(ALERT_BATCH_WINDOW)
+            .rateLimit(ALERTS_PER_SECOND, ALERT_BURST)
+            .build();
+    RuleEngine ruleEngine = new RuleEngine(sceneManager, notifications);
+    ruleEngine.subscribeToDeviceChanges(homeManager);
+
+    ScriptRunner runner = new ScriptRunner(homeManager, sceneManager, ruleEngine);
+    try (Reader script = openScript(source)) {
+      System.out.print(runner.run(script).format());
+    } catch (IOException e) {
+      System.err.println("❌ Could not read script " + source + ": " + e.getMessage());
+    } finally {
+      sceneManager.close();
+      homeManager.close();
+      notifications.close();
+      closeStore(store);
+      Journals.set(previous);
+      journal.close();
+    }
+  }
+
+  private static Reader openScript(String source) throws IOException {
+    if (STDIN.equals(source)) {
+      return new InputStreamReader(System.in, StandardCharsets.UTF_8);
+    }
+    return Files.newBufferedReader(Path.of(source), StandardCharsets.UTF_8);
+  }
+
+  private static HomeStore openStore(String dataDir) {
+    if (dataDir == null || dataDir.isBlank()) {
+      return null;
+    }
+    try {
+      return HomeStore.open(Path.of(dataDir), ACCOUNT_ID);
+    } catch (IOException e) {
+      System.err.println("❌ Could not open data directory, running in memory: " + e.getMessage());
+      return null;
+    }
+  }
+
+  private static void closeStore(HomeStore store) {
+    if (store == null) {
+      return;
+    }
+    try {
+      // A fresh snapshot makes the next start a single mapped read
+      store.snapshot();
+      store.close();
+    } catch (IOException e) {
+      System.err.println("❌ Could not save home state: " + e.getMessage());
+    }
   }
 
   private static void setupInitialData(HomeManager homeManager, SceneManager sceneManager) {
@@ -1,9 +1,22 @@
 package com.smarthome.devices;
 
+import com.smarthome.journal.Journals;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
 public abstract class Device {
+  static final DeviceChangeListener[] NO_LISTENERS = new DeviceChangeListener[0];
+  // Changes published on this thread while collecting, instead of being delivered
+  private static final ThreadLocal<List<DeviceChange>> COLLECTED = new ThreadLocal<>();
+
   private String deviceId;
   private String deviceName;
   private boolean isLinked;
+  private BiConsumer<Device, String> nameChangeListener;
+  // Copy-on-write: publishing reads the array without locking
+  private volatile DeviceChangeListener[] changeListeners = NO_LISTENERS;
 
   public Device(String deviceId, String deviceName) {
     this.deviceId = deviceId;
@@ -16,9 +29,130 @@ public abstract class Device {
   }
 
   public void setDeviceName(String deviceName) {
+    String oldName = getDeviceName();
+    storeDeviceName(deviceName);
+    if (nameChangeListener != null) {
+      nameChangeListener.accept(this, oldName);
+    }
+  }
+
+  /** Saves a new name; views over shared device storage keep it there instead. */
+  protected void storeDeviceName(String deviceName) {
     this.deviceName = deviceName;
   }
 
+  /**
+   * Sets the callback invoked with (device, oldName) after a rename. Used by the owning home to
+   * keep its name index current; pass null to detach.
+   */
+  public void setNameChangeListener(BiConsumer<Device, String> nameChangeListener) {
+    this.nameChangeListener = nameChangeListener;
+  }
+
+  /** Registers a listener for state changes; adding the same listener twice has no effect. */
+  public void addChangeListener(DeviceChangeListener listener) {
+    synchronized (listenerLock()) {
+      DeviceChangeListener[] current = loadListeners();
+      if (listener == null || Arrays.asList(current).contains(listener)) {
+        return;
+      }
+      DeviceChangeListener[] updated = Arrays.copyOf(current, current.length + 1);
+      updated[updated.length - 1] = listener;
+      storeListeners(updated);
+    }
+  }
+
+  public boolean removeChangeListener(DeviceChangeListener listener) {
+    synchronized (listenerLock()) {
+      DeviceChangeListener[] current = loadListeners();
+      int index = Arrays.asList(current).indexOf(listener);
+      if (index < 0) {
+        return false;
+      }
+      DeviceChangeListener[] updated = new DeviceChangeListener[current.length - 1];
+      System.arraycopy(current, 0, updated, 0, index);
+      System.arraycopy(current, index + 1, updated, index, updated.length - index);
+      storeListeners(updated.length == 0 ? NO_LISTENERS : updated);
+      return true;
+    }
+  }
+
+  /**
+   * The listeners of this device. Views over shared device storage keep them there instead, so
+   * every view of a device shares its subscribers.
+   */
+  DeviceChangeListener[] loadListeners() {
+    return changeListeners;
+  }
+
+  void storeListeners(DeviceChangeListener[] listeners) {
+    changeListeners = listeners;
+  }
+
+  /** Guards listener updates; shared by all views of a stored device. */
+  Object listenerLock() {
+    return this;
+  }
+
+  protected final void publishPower(boolean wasOn, boolean isOn) {
+    if (wasOn != isOn && loadListeners().length != 0) {
+      publish(new DeviceChange.PowerChanged(this, isOn));
+    }
+  }
+
+  protected final void publishBrightness(int oldBrightness, int newBrightness) {
+    if (oldBrightness != newBrightness && loadListeners().length != 0) {
+      publish(new DeviceChange.BrightnessChanged(this, oldBrightness, newBrightness));
+    }
+  }
+
+  protected final void publishTemperature(double oldTemperature, double newTemperature) {
+    if (Double.compare(oldTemperature, newTemperature) != 0 && loadListeners().length != 0) {
+      publish(new DeviceChange.TemperatureChanged(this, oldTemperature, newTemperature));
+    }
+  }
+
+  /**
+   * Runs {@code action} and returns, in order, the changes it published on this thread instead of
+   * delivering them; hand them to {@link #deliver} later, e.g. on another thread.
+   */
+  public static List<DeviceChange> collectChanges(Runnable action) {
+    List<DeviceChange> outer = COLLECTED.get();
+    List<DeviceChange> changes = new ArrayList<>();
+    COLLECTED.set(changes);
+    try {
+      action.run();
+    } finally {
+      COLLECTED.set(outer);
+    }
+    return changes;
+  }
+
+  /** Delivers a change collected by {@link #collectChanges} to its device's listeners now. */
+  public static void deliver(DeviceChange change) {
+    change.device().deliverChange(change);
+  }
+
+  private void publish(DeviceChange change) {
+    List<DeviceChange> collected = COLLECTED.get();
+    if (collected != null) {
+      collected.add(change);
+    } else {
+      deliverChange(change);
+    }
+  }
+
+  /** A failing listener is logged and does not stop the others or undo the change. */
+  private void deliverChange(DeviceChange change) {
+    for (DeviceChangeListener listener : loadListeners()) {
+      try {
+        listener.deviceChanged(change);
+      } catch (RuntimeException e) {
+        Journals.get().error("Device change listener failed on " + getDeviceId() + ": " + e);
+      }
+    }
+  }
+
   // Getters
   public String getDeviceId() {
     return deviceId;
@@ -0,0 +1,9 @@
+package com.smarthome.devices;
+
+/** A piece of device state that can change and be observed. */
+public enum DeviceAttribute {
+  /** On/off; for cameras, whether they are recording. */
+  POWER,
+  BRIGHTNESS,
+  TEMPERATURE
+}
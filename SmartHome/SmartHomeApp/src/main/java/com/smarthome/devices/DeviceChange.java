@@ -0,0 +1,62 @@
+package com.smarthome.devices;
+
+/**
+ * A change to one attribute of a device, published to its {@link DeviceChangeListener}s after the
+ * new state is in place. Only real changes are published: turning on a light that is already on
+ * publishes nothing.
+ *
+ * <p>Each change maps to a fixed, already normalized event name so the rule engine can dispatch it
+ * like any other event without building strings.
+ */
+public sealed interface DeviceChange {
+  String TURNED_ON = "turned_on";
+  String TURNED_OFF = "turned_off";
+  String BRIGHTNESS_CHANGED = "brightness_changed";
+  String TEMPERATURE_CHANGED = "temperature_changed";
+
+  Device device();
+
+  DeviceAttribute attribute();
+
+  /** The event name rules can trigger on, e.g. {@value #TURNED_ON}. */
+  String eventName();
+
+  /** A device was switched on or off (for cameras: started or stopped recording). */
+  record PowerChanged(Device device, boolean on) implements DeviceChange {
+    @Override
+    public DeviceAttribute attribute() {
+      return DeviceAttribute.POWER;
+    }
+
+    @Override
+    public String eventName() {
+      return on ? TURNED_ON : TURNED_OFF;
+    }
+  }
+
+  record BrightnessChanged(Device device, int oldBrightness, int newBrightness)
+      implements DeviceChange {
+    @Override
+    public DeviceAttribute attribute() {
+      return DeviceAttribute.BRIGHTNESS;
+    }
+
+    @Override
+    public String eventName() {
+      return BRIGHTNESS_CHANGED;
+    }
+  }
+
+  record TemperatureChanged(Device device, double oldTemperature, double newTemperature)
+      implements DeviceChange {
+    @Override
+    public DeviceAttribute attribute() {
+      return DeviceAttribute.TEMPERATURE;
+    }
+
+    @Override
+    public String eventName() {
+      return TEMPERATURE_CHANGED;
+    }
+  }
+}
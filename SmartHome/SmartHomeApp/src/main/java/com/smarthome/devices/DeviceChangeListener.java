@@ -0,0 +1,10 @@
+package com.smarthome.devices;
+
+/**
+ * Observes state changes of the devices it is registered with. Called synchronously on the thread
+ * that changed the device, so implementations should be quick.
+ */
+@FunctionalInterface
+public interface DeviceChangeListener {
+  void deviceChanged(DeviceChange change);
+}
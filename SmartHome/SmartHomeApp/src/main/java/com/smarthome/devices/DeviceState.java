@@ -0,0 +1,30 @@
+package com.smarthome.devices;
+
+/**
+ * A snapshot of the state commands can change, used to predict a command's effect without
+ * touching the device. Attributes a device does not have stay at zero.
+ */
+public record DeviceState(boolean on, int brightness, double temperature) {
+
+  /** Reads the current state of a device. */
+  public static DeviceState of(Device device) {
+    boolean on = device instanceof SwitchableDevice switchable && switchable.isOn();
+    int brightness = device instanceof Light light ? light.getBrightness() : 0;
+    double temperature = device instanceof Thermostat thermostat ? thermostat.getTemp() : 0;
+    return new DeviceState(on, brightness, temperature);
+  }
+
+  public DeviceState withPower(boolean on) {
+    return on == this.on ? this : new DeviceState(on, brightness, temperature);
+  }
+
+  public DeviceState withBrightness(int brightness) {
+    return brightness == this.brightness ? this : new DeviceState(on, brightness, temperature);
+  }
+
+  public DeviceState withTemperature(double temperature) {
+    return Double.compare(temperature, this.temperature) == 0
+        ? this
+        : new DeviceState(on, brightness, temperature);
+  }
+}
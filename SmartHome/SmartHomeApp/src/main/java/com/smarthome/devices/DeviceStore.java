@@ -0,0 +1,614 @@
+package com.smarthome.devices;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Columnar storage for very large simulated homes. Device state lives in primitive arrays (on/off
+ * and linked bits in {@code long[]} bitsets, brightness in a {@code byte[]}, temperature in a
+ * {@code float[]}) and ids and names are interned in a shared dictionary, so a device costs tens of
+ * bytes instead of a few hundred.
+ *
+ * <p>{@link #view(int)} returns a flyweight {@link Light}, {@link Thermostat} or {@link
+ * SecurityCamera} backed by the store, so views work with {@code CommandExecutor}, scenes and
+ * {@code HomeManager} unchanged. Views are cheap to create and equal when they address the same
+ * slot; only mount the ones you need into a home, since a home keeps its devices on the heap.
+ *
+ * <p>Views publish {@link DeviceChange}s like the devices they stand for. Their listeners are kept
+ * per slot, so every view of a device shares them.
+ *
+ * <p>State updates of different devices may run concurrently. {@link #add} must not run
+ * concurrently with anything else. Temperatures are kept as {@code float}.
+ */
+public final class DeviceStore {
+
+  public enum Kind {
+    LIGHT,
+    THERMOSTAT,
+    SECURITY_CAMERA
+  }
+
+  private static final VarHandle BITS = MethodHandles.arrayElementVarHandle(long[].class);
+  private static final VarHandle LISTENERS =
+      MethodHandles.arrayElementVarHandle(DeviceChangeListener[][].class);
+  private static final Kind[] KINDS = Kind.values();
+  private static final byte DEFAULT_BRIGHTNESS = 50;
+  private static final float DEFAULT_TEMPERATURE = 20.0f;
+
+  private final StringDictionary strings = new StringDictionary();
+  private byte[] kinds;
+  private long[] onBits;
+  private long[] linkedBits;
+  private byte[] brightness;
+  private float[] temperatures;
+  private int[] idCodes;
+  private int[] nameCodes;
+  // Device index + 1 for each id code (0 = none); the first device with an id wins
+  private int[] deviceByIdCode = new int[64];
+  // Change listeners per slot, shared by all views of it; allocated on first registration
+  private volatile DeviceChangeListener[][] listeners;
+  private int size;
+
+  public DeviceStore() {
+    this(1024);
+  }
+
+  public DeviceStore(int initialCapacity) {
+    int capacity = Math.max(64, initialCapacity);
+    kinds = new byte[capacity];
+    onBits = new long[words(capacity)];
+    linkedBits = new long[words(capacity)];
+    brightness = new byte[capacity];
+    temperatures = new float[capacity];
+    idCodes = new int[capacity];
+    nameCodes = new int[capacity];
+  }
+
+  /** Adds a device in its default state (off, thermostat at 20°C) and returns its index. */
+  public int add(Kind kind, String deviceId, String deviceName) {
+    if (kind == null || deviceId == null) {
+      throw new IllegalArgumentException("kind and deviceId must not be null");
+    }
+    if (size == kinds.length) {
+      grow(size + (size >> 1) + 1);
+    }
+    int index = size;
+    kinds[index] = (byte) kind.ordinal();
+    temperatures[index] = DEFAULT_TEMPERATURE;
+    int idCode = strings.intern(deviceId);
+    idCodes[index] = idCode;
+    nameCodes[index] = deviceName == null ? -1 : strings.intern(deviceName);
+    if (idCode >= deviceByIdCode.length) {
+      deviceByIdCode =
+          Arrays.copyOf(deviceByIdCode, Math.max(idCode + 1, deviceByIdCode.length * 2));
+    }
+    if (deviceByIdCode[idCode] == 0) {
+      deviceByIdCode[idCode] = index + 1;
+    }
+    size++;
+    return index;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public Kind kindOf(int index) {
+    return KINDS[kinds[checkIndex(index)]];
+  }
+
+  /** Returns the index of the first device with this id, or -1. Ids are case-sensitive here. */
+  public int indexOf(String deviceId) {
+    if (deviceId == null) {
+      return -1;
+    }
+    int code = strings.codeOf(deviceId);
+    return code < 0 || code >= deviceByIdCode.length ? -1 : deviceByIdCode[code] - 1;
+  }
+
+  /** Returns a view of the device at {@code index}. */
+  public Device view(int index) {
+    return switch (kindOf(index)) {
+      case LIGHT -> new LightView(this, index);
+      case THERMOSTAT -> new ThermostatView(this, index);
+      case SECURITY_CAMERA -> new CameraView(this, index);
+    };
+  }
+
+  /** Returns a view of the first device with this id, or null. */
+  public Device findById(String deviceId) {
+    int index = indexOf(deviceId);
+    return index < 0 ? null : view(index);
+  }
+
+  public String idOf(int index) {
+    return strings.get(idCodes[checkIndex(index)]);
+  }
+
+  public String nameOf(int index) {
+    int code = nameCodes[checkIndex(index)];
+    return code < 0 ? null : strings.get(code);
+  }
+
+  public void rename(int index, String deviceName) {
+    nameCodes[checkIndex(index)] = deviceName == null ? -1 : strings.intern(deviceName);
+  }
+
+  /** True if the device is on (for cameras: recording). */
+  public boolean isOn(int index) {
+    return testBit(onBits, checkIndex(index));
+  }
+
+  /** Switches a device on; a light also goes to its default brightness, as {@link Light} does. */
+  public void turnOn(int index) {
+    setBit(onBits, checkIndex(index), true);
+    if (kinds[index] == Kind.LIGHT.ordinal()) {
+      brightness[index] = DEFAULT_BRIGHTNESS;
+    }
+  }
+
+  public void turnOff(int index) {
+    setBit(onBits, checkIndex(index), false);
+    if (kinds[index] == Kind.LIGHT.ordinal()) {
+      brightness[index] = 0;
+    }
+  }
+
+  public int getBrightness(int index) {
+    return brightness[checkIndex(index)];
+  }
+
+  /** Sets a light's brightness, clamped to 0-100; ignored while the light is off. */
+  public void setBrightness(int index, int value) {
+    if (isOn(index)) {
+      brightness[index] = (byte) Math.max(0, Math.min(100, value));
+    }
+  }
+
+  public double getTemperature(int index) {
+    return temperatures[checkIndex(index)];
+  }
+
+  public void setTemperature(int index, double temperature) {
+    temperatures[checkIndex(index)] = (float) temperature;
+  }
+
+  public boolean isLinked(int index) {
+    return testBit(linkedBits, checkIndex(index));
+  }
+
+  public void setLinked(int index, boolean linked) {
+    setBit(linkedBits, checkIndex(index), linked);
+  }
+
+  /** Number of devices currently on. */
+  public int countOn() {
+    int on = 0;
+    for (int word = 0; word < words(size); word++) {
+      on += Long.bitCount((long) BITS.getVolatile(onBits, word));
+    }
+    return on;
+  }
+
+  /** Releases spare capacity once loading is done; later adds grow the arrays again. */
+  public void trimToSize() {
+    grow(Math.max(size, 1));
+    deviceByIdCode = Arrays.copyOf(deviceByIdCode, Math.max(strings.size(), 1));
+    strings.trimToSize();
+  }
+
+  /** Approximate heap bytes held by the store, including its dictionary. */
+  public long estimatedBytes() {
+    long perSlot = 1L + 1 + 4 + 4 + 4; // kind, brightness, temperature, id and name codes
+    return perSlot * kinds.length
+        + 8L * (onBits.length + linkedBits.length)
+        + 4L * deviceByIdCode.length
+        + (listeners == null ? 0 : 4L * listeners.length)
+        + strings.estimatedBytes();
+  }
+
+  DeviceChangeListener[] listenersOf(int index) {
+    DeviceChangeListener[][] all = listeners;
+    DeviceChangeListener[] slot =
+        all == null ? null : (DeviceChangeListener[]) LISTENERS.getVolatile(all, index);
+    return slot == null ? Device.NO_LISTENERS : slot;
+  }
+
+  /** Called under the store's lock by {@link Device#addChangeListener} on a view. */
+  void setListeners(int index, DeviceChangeListener[] slotListeners) {
+    if (listeners == null) {
+      listeners = new DeviceChangeListener[kinds.length][];
+    }
+    LISTENERS.setVolatile(listeners, index, slotListeners);
+  }
+
+  private int checkIndex(int index) {
+    return Objects.checkIndex(index, size);
+  }
+
+  private void grow(int capacity) {
+    kinds = Arrays.copyOf(kinds, capacity);
+    onBits = Arrays.copyOf(onBits, words(capacity));
+    linkedBits = Arrays.copyOf(linkedBits, words(capacity));
+    brightness = Arrays.copyOf(brightness, capacity);
+    temperatures = Arrays.copyOf(temperatures, capacity);
+    idCodes = Arrays.copyOf(idCodes, capacity);
+    nameCodes = Arrays.copyOf(nameCodes, capacity);
+    if (listeners != null) {
+      listeners = Arrays.copyOf(listeners, capacity);
+    }
+  }
+
+  private static int words(int bits) {
+    return (bits + 63) >>> 6;
+  }
+
+  private static boolean testBit(long[] bits, int index) {
+    return ((long) BITS.getVolatile(bits, index >>> 6) & (1L << index)) != 0;
+  }
+
+  /** Atomic, so neighbouring devices sharing a word can be updated from different threads. */
+  private static void setBit(long[] bits, int index, boolean value) {
+    if (value) {
+      BITS.getAndBitwiseOr(bits, index >>> 6, 1L << index);
+    } else {
+      BITS.getAndBitwiseAnd(bits, index >>> 6, ~(1L << index));
+    }
+  }
+
+  private static boolean sameSlot(DeviceStore store, int index, Object other) {
+    return other instanceof StoredDevice view && view.store() == store && view.index() == index;
+  }
+
+  private static int slotHash(DeviceStore store, int index) {
+    return 31 * System.identityHashCode(store) + index;
+  }
+
+  /** A view's address in its store. */
+  private interface StoredDevice {
+    DeviceStore store();
+
+    int index();
+  }
+
+  private static final class LightView extends Light implements StoredDevice {
+    private final DeviceStore store;
+    private final int index;
+
+    LightView(DeviceStore store, int index) {
+      super(null, null);
+      this.store = store;
+      this.index = index;
+    }
+
+    @Override
+    public DeviceStore store() {
+      return store;
+    }
+
+    @Override
+    public int index() {
+      return index;
+    }
+
+    @Override
+    DeviceChangeListener[] loadListeners() {
+      return store.listenersOf(index);
+    }
+
+    @Override
+    void storeListeners(DeviceChangeListener[] listeners) {
+      store.setListeners(index, listeners);
+    }
+
+    @Override
+    Object listenerLock() {
+      return store;
+    }
+
+    @Override
+    public String getDeviceId() {
+      return store.idOf(index);
+    }
+
+    @Override
+    public String getDeviceName() {
+      return store.nameOf(index);
+    }
+
+    @Override
+    protected void storeDeviceName(String deviceName) {
+      store.rename(index, deviceName);
+    }
+
+    @Override
+    public boolean isLinked() {
+      return store.isLinked(index);
+    }
+
+    @Override
+    public void setLinked(boolean linked) {
+      store.setLinked(index, linked);
+    }
+
+    @Override
+    public void turnOn() {
+      boolean wasOn = store.isOn(index);
+      int oldBrightness = store.getBrightness(index);
+      store.turnOn(index);
+      journalState("ON");
+      publishPower(wasOn, true);
+      publishBrightness(oldBrightness, store.getBrightness(index));
+    }
+
+    @Override
+    public void turnOff() {
+      boolean wasOn = store.isOn(index);
+      int oldBrightness = store.getBrightness(index);
+      store.turnOff(index);
+      journalState("OFF");
+      publishPower(wasOn, false);
+      publishBrightness(oldBrightness, 0);
+    }
+
+    @Override
+    public boolean isOn() {
+      return store.isOn(index);
+    }
+
+    @Override
+    public void setBrightness(int brightness) {
+      int oldBrightness = store.getBrightness(index);
+      store.setBrightness(index, brightness);
+      publishBrightness(oldBrightness, store.getBrightness(index));
+    }
+
+    @Override
+    public int getBrightness() {
+      return store.getBrightness(index);
+    }
+
+    @Override
+    public String getStatus() {
+      return "Light ID: "
+          + getDeviceId()
+          + ", Status: "
+          + (isOn() ? "ON" : "OFF")
+          + ", Brightness: "
+          + getBrightness();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return sameSlot(store, index, o);
+    }
+
+    @Override
+    public int hashCode() {
+      return slotHash(store, index);
+    }
+  }
+
+  private static final class ThermostatView extends Thermostat implements StoredDevice {
+    private final DeviceStore store;
+    private final int index;
+
+    ThermostatView(DeviceStore store, int index) {
+      super(null, null);
+      this.store = store;
+      this.index = index;
+    }
+
+    @Override
+    public DeviceStore store() {
+      return store;
+    }
+
+    @Override
+    public int index() {
+      return index;
+    }
+
+    @Override
+    DeviceChangeListener[] loadListeners() {
+      return store.listenersOf(index);
+    }
+
+    @Override
+    void storeListeners(DeviceChangeListener[] listeners) {
+      store.setListeners(index, listeners);
+    }
+
+    @Override
+    Object listenerLock() {
+      return store;
+    }
+
+    @Override
+    public String getDeviceId() {
+      return store.idOf(index);
+    }
+
+    @Override
+    public String getDeviceName() {
+      return store.nameOf(index);
+    }
+
+    @Override
+    protected void storeDeviceName(String deviceName) {
+      store.rename(index, deviceName);
+    }
+
+    @Override
+    public boolean isLinked() {
+      return store.isLinked(index);
+    }
+
+    @Override
+    public void setLinked(boolean linked) {
+      store.setLinked(index, linked);
+    }
+
+    @Override
+    public double getTemp() {
+      return store.getTemperature(index);
+    }
+
+    @Override
+    public void setTemp(double temperature) {
+      double oldTemperature = store.getTemperature(index);
+      store.setTemperature(index, temperature);
+      publishTemperature(oldTemperature, store.getTemperature(index));
+    }
+
+    @Override
+    public void turnOn() {
+      boolean wasOn = store.isOn(index);
+      store.turnOn(index);
+      publishPower(wasOn, true);
+    }
+
+    @Override
+    public void turnOff() {
+      boolean wasOn = store.isOn(index);
+      store.turnOff(index);
+      publishPower(wasOn, false);
+    }
+
+    @Override
+    public boolean isOn() {
+      return store.isOn(index);
+    }
+
+    @Override
+    public String getStatus() {
+      return String.format(
+          "Thermostat ID: %s, Name: %s, Status: %s, Temperature: %.1f°C",
+          getDeviceId(), getDeviceName(), (isOn() ? "ON" : "OFF"), getTemp());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return sameSlot(store, index, o);
+    }
+
+    @Override
+    public int hashCode() {
+      return slotHash(store, index);
+    }
+  }
+
+  private static final class CameraView extends SecurityCamera implements StoredDevice {
+    private final DeviceStore store;
+    private final int index;
+
+    CameraView(DeviceStore store, int index) {
+      super(null, null);
+      this.store = store;
+      this.index = index;
+    }
+
+    @Override
+    public DeviceStore store() {
+      return store;
+    }
+
+    @Override
+    public int index() {
+      return index;
+    }
+
+    @Override
+    DeviceChangeListener[] loadListeners() {
+      return store.listenersOf(index);
+    }
+
+    @Override
+    void storeListeners(DeviceChangeListener[] listeners) {
+      store.setListeners(index, listeners);
+    }
+
+    @Override
+    Object listenerLock() {
+      return store;
+    }
+
+    @Override
+    public String getDeviceId() {
+      return store.idOf(index);
+    }
+
+    @Override
+    public String getDeviceName() {
+      return store.nameOf(index);
+    }
+
+    @Override
+    protected void storeDeviceName(String deviceName) {
+      store.rename(index, deviceName);
+    }
+
+    @Override
+    public boolean isLinked() {
+      return store.isLinked(index);
+    }
+
+    @Override
+    public void setLinked(boolean linked) {
+      store.setLinked(index, linked);
+    }
+
+    @Override
+    public void startRecording() {
+      boolean wasRecording = store.isOn(index);
+      store.turnOn(index);
+      publishPower(wasRecording, true);
+    }
+
+    @Override
+    public void stopRecording() {
+      boolean wasRecording = store.isOn(index);
+      store.turnOff(index);
+      publishPower(wasRecording, false);
+    }
+
+    @Override
+    public boolean isRecording() {
+      return store.isOn(index);
+    }
+
+    @Override
+    public void turnOn() {
+      startRecording();
+    }
+
+    @Override
+    public void turnOff() {
+      stopRecording();
+    }
+
+    @Override
+    public boolean isOn() {
+      return isRecording();
+    }
+
+    @Override
+    public String getStatus() {
+      return String.format(
+          "Camera ID: %s, Name: %s, Recording: %s",
+          getDeviceId(), getDeviceName(), isRecording() ? "Yes" : "No");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return sameSlot(store, index, o);
+    }
+
+    @Override
+    public int hashCode() {
+      return slotHash(store, index);
+    }
+  }
+}
@@ -1,6 +1,13 @@
 package com.smarthome.devices;
 
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.JournalLevel;
+import com.smarthome.journal.Journals;
+
 public class Light extends Device implements SwitchableDevice {
+  /** Brightness a light comes on at. */
+  public static final int DEFAULT_BRIGHTNESS = 50;
+
   private boolean isOn;
   private int brightness;
 
@@ -12,16 +19,31 @@ public class Light extends Device implements SwitchableDevice {
 
   @Override
   public void turnOn() {
+    boolean wasOn = this.isOn;
+    int oldBrightness = this.brightness;
     this.isOn = true;
-    this.brightness = 50; // A default brightness when turned on
-    System.out.println("Light " + getDeviceId() + " is now ON.");
+    this.brightness = DEFAULT_BRIGHTNESS;
+    journalState("ON");
+    publishPower(wasOn, true);
+    publishBrightness(oldBrightness, this.brightness);
   }
 
   @Override
   public void turnOff() {
+    boolean wasOn = this.isOn;
+    int oldBrightness = this.brightness;
     this.isOn = false;
     this.brightness = 0;
-    System.out.println("Light " + getDeviceId() + " is now OFF.");
+    journalState("OFF");
+    publishPower(wasOn, false);
+    publishBrightness(oldBrightness, 0);
+  }
+
+  void journalState(String state) {
+    Journal journal = Journals.get();
+    if (journal.isEnabled(JournalLevel.INFO)) {
+      journal.record(JournalLevel.INFO, "Light " + getDeviceId() + " is now " + state + ".");
+    }
   }
 
   @Override
@@ -42,12 +64,18 @@ public class Light extends Device implements SwitchableDevice {
   // A unique method for the Light class
   public void setBrightness(int brightness) {
     if (this.isOn) {
-
-      this.brightness = Math.max(0, Math.min(100, brightness));
+      int oldBrightness = this.brightness;
+      this.brightness = clampBrightness(brightness);
+      publishBrightness(oldBrightness, this.brightness);
     }
   }
 
   public int getBrightness() {
     return this.brightness;
   }
+
+  /** Limits a requested brightness to the supported 0-100 range. */
+  public static int clampBrightness(int brightness) {
+    return Math.max(0, Math.min(100, brightness));
+  }
 }
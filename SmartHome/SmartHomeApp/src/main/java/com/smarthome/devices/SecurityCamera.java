@@ -9,11 +9,15 @@ public class SecurityCamera extends Device implements SwitchableDevice {
   }
 
   public void startRecording() {
+    boolean wasRecording = isRecording;
     isRecording = true;
+    publishPower(wasRecording, true);
   }
 
   public void stopRecording() {
+    boolean wasRecording = isRecording;
     isRecording = false;
+    publishPower(wasRecording, false);
   }
 
   public boolean isRecording() {
@@ -0,0 +1,107 @@
+package com.smarthome.devices;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns strings as int codes, storing their UTF-8 bytes in one shared arena instead of one
+ * String object each. Equal strings get the same code.
+ */
+final class StringDictionary {
+  private byte[] arena = new byte[1024];
+  private int arenaSize;
+  // offsets[code] .. offsets[code + 1] is the code's slice of the arena
+  private int[] offsets = new int[65];
+  private int count;
+  // Open-addressing table of code + 1 (0 = empty), kept at most three quarters full
+  private int[] slots = new int[128];
+
+  /** Returns the code for {@code value}, adding it if new. */
+  int intern(String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    int slot = find(bytes, 0, bytes.length);
+    if (slots[slot] != 0) {
+      return slots[slot] - 1;
+    }
+    int code = add(bytes);
+    slots[slot] = code + 1;
+    if (count * 4 > slots.length * 3) {
+      rehash(slots.length * 2);
+    }
+    return code;
+  }
+
+  /** Returns the code for {@code value}, or -1 if it was never interned. */
+  int codeOf(String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    return slots[find(bytes, 0, bytes.length)] - 1;
+  }
+
+  String get(int code) {
+    int start = offsets[code];
+    return new String(arena, start, offsets[code + 1] - start, StandardCharsets.UTF_8);
+  }
+
+  int size() {
+    return count;
+  }
+
+  /** Releases spare capacity left by growth, for stores that are done loading. */
+  void trimToSize() {
+    arena = Arrays.copyOf(arena, arenaSize);
+    offsets = Arrays.copyOf(offsets, count + 1);
+  }
+
+  /** Approximate heap bytes held by the dictionary's arrays. */
+  long estimatedBytes() {
+    return arena.length + 4L * (offsets.length + slots.length);
+  }
+
+  private int find(byte[] bytes, int from, int to) {
+    int mask = slots.length - 1;
+    int slot = hash(bytes, from, to) & mask;
+    while (slots[slot] != 0) {
+      int code = slots[slot] - 1;
+      if (Arrays.equals(arena, offsets[code], offsets[code + 1], bytes, from, to)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private int add(byte[] bytes) {
+    if (arenaSize + bytes.length > arena.length) {
+      int grown = arena.length + (arena.length >> 1);
+      arena = Arrays.copyOf(arena, Math.max(grown, arenaSize + bytes.length));
+    }
+    System.arraycopy(bytes, 0, arena, arenaSize, bytes.length);
+    arenaSize += bytes.length;
+    if (count + 2 > offsets.length) {
+      offsets = Arrays.copyOf(offsets, Math.max(count + 2, offsets.length + (offsets.length >> 1)));
+    }
+    offsets[count + 1] = arenaSize;
+    return count++;
+  }
+
+  private void rehash(int capacity) {
+    int[] table = new int[capacity];
+    int mask = capacity - 1;
+    for (int code = 0; code < count; code++) {
+      int slot = hash(arena, offsets[code], offsets[code + 1]) & mask;
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = code + 1;
+    }
+    slots = table;
+  }
+
+  private static int hash(byte[] bytes, int from, int to) {
+    int hash = 1;
+    for (int i = from; i < to; i++) {
+      hash = 31 * hash + bytes[i];
+    }
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -15,12 +15,16 @@ public class Thermostat extends Device implements SwitchableDevice {
   }
 
   public void setTemp(double temperature) {
+    double oldTemperature = this.temperature;
     this.temperature = temperature;
+    publishTemperature(oldTemperature, temperature);
   }
 
   @Override
   public void turnOn() {
+    boolean wasOn = isOn;
     isOn = true;
+    publishPower(wasOn, true);
   }
 
   @Override
@@ -30,7 +34,9 @@ public class Thermostat extends Device implements SwitchableDevice {
 
   @Override
   public void turnOff() {
+    boolean wasOn = isOn;
     isOn = false;
+    publishPower(wasOn, false);
   }
 
   @Override
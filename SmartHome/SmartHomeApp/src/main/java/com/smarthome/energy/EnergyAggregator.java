@@ -0,0 +1,366 @@
+package com.smarthome.energy;
+
+import com.smarthome.app.HomeChangeListener;
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Device;
+import com.smarthome.devices.DeviceChange;
+import com.smarthome.devices.DeviceChangeListener;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SecurityCamera;
+import com.smarthome.devices.SwitchableDevice;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.exceptions.DeviceNotFoundException;
+import com.smarthome.exceptions.RoomNotFoundException;
+import com.smarthome.scene.VirtualClock;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps running on-time, energy and switch counts for the lights, thermostats and cameras of one
+ * home, per device and rolled up per room and for the whole home, each also split by device type.
+ *
+ * <p>The aggregator listens to the devices' {@link DeviceChange}s. Every counter holds its current
+ * rate (devices on, watts drawn) next to its totals, and a change settles the totals of the
+ * device, its room and the home before adjusting their rates, so it costs O(1) whatever the
+ * history. A query extrapolates the totals to now the same way and never rescans anything.
+ *
+ * <p>Energy is an estimate from each type's rated power: a thermostat or camera draws its rating
+ * while on, a light its rating scaled by brightness. Totals count from creation or the last {@link
+ * #reset()}; call it at midnight to get "today". A device that leaves the home takes its own
+ * counters with it, but what it used stays in its room's and the home's totals.
+ */
+public final class EnergyAggregator implements AutoCloseable {
+  /** Rated power of a light at full brightness, in watts. */
+  public static final double DEFAULT_LIGHT_WATTS = 9.0;
+
+  /** Rated power of a thermostat while heating, in watts. */
+  public static final double DEFAULT_THERMOSTAT_WATTS = 1500.0;
+
+  /** Rated power of a recording camera, in watts. */
+  public static final double DEFAULT_CAMERA_WATTS = 4.0;
+
+  // Tracked types; their position is the kind index used in the counter layouts
+  private static final List<Class<? extends Device>> TYPES =
+      List.of(Light.class, Thermostat.class, SecurityCamera.class);
+  private static final int KINDS = TYPES.size();
+  private static final int LIGHT = 0;
+  private static final double NANOS_PER_HOUR = Duration.ofHours(1).toNanos();
+
+  private final HomeManager homeManager;
+  private final LongSupplier nanoTime;
+  private final double[] ratedWatts;
+
+  // Rows: device slot; room slot * KINDS + kind; kind
+  private final UsageCounters deviceCounters = new UsageCounters(64);
+  private final UsageCounters roomCounters = new UsageCounters(16 * KINDS);
+  private final UsageCounters homeCounters = new UsageCounters(KINDS);
+  private byte[] kinds = new byte[64];
+  private int[] roomOf = new int[64];
+  private int[] brightness = new int[64];
+  private final Map<Device, Integer> deviceSlots = new HashMap<>();
+  private final Map<Room, Integer> roomSlots = new HashMap<>();
+  private final ArrayDeque<Integer> freeDeviceSlots = new ArrayDeque<>();
+  private final ArrayDeque<Integer> freeRoomSlots = new ArrayDeque<>();
+  private int nextDeviceSlot;
+  private int nextRoomSlot;
+
+  private final DeviceChangeListener changeListener = this::deviceChanged;
+  private final HomeChangeListener topologyListener =
+      new HomeChangeListener() {
+        @Override
+        public void roomAdded(Room room) {
+          addRoom(room);
+        }
+
+        @Override
+        public void roomDeleted(Room room) {
+          removeRoom(room);
+        }
+
+        @Override
+        public void deviceAdded(Device device, Room room) {
+          addDevice(device, room);
+        }
+
+        @Override
+        public void deviceRemoved(Device device, Room room) {
+          removeDevice(device);
+        }
+      };
+
+  private EnergyAggregator(Builder builder) {
+    this.homeManager = builder.homeManager;
+    this.nanoTime =
+        builder.clock instanceof VirtualClock virtualClock
+            ? virtualClock::nanoTime
+            : System::nanoTime;
+    this.ratedWatts = builder.ratedWatts.clone();
+    long now = nanoTime.getAsLong();
+    for (int kind = 0; kind < KINDS; kind++) {
+      homeCounters.reset(kind, now);
+    }
+    homeManager.addChangeListener(topologyListener);
+    for (Room room : homeManager.getRooms()) {
+      addRoom(room);
+      for (Device device : room.getDevices()) {
+        addDevice(device, room);
+      }
+    }
+  }
+
+  /** Starts configuring an aggregator for {@code homeManager}. */
+  public static Builder builder(HomeManager homeManager) {
+    return new Builder(homeManager);
+  }
+
+  /** Stops following the home; totals stop growing once the listeners are gone. */
+  @Override
+  public synchronized void close() {
+    homeManager.removeChangeListener(topologyListener);
+    for (Device device : deviceSlots.keySet()) {
+      device.removeChangeListener(changeListener);
+    }
+  }
+
+  /** Usage of the whole home. */
+  public synchronized EnergyUsage getUsage() {
+    return usage(homeCounters, 0, KINDS);
+  }
+
+  /**
+   * Usage of the home's devices of one type: Light, Thermostat or SecurityCamera, or Device for
+   * all of them.
+   */
+  public synchronized EnergyUsage getUsage(Class<? extends Device> type) {
+    int kind = kindOf(type);
+    return kind < 0 ? getUsage() : usage(homeCounters, kind, 1);
+  }
+
+  /**
+   * Usage of one room's devices.
+   *
+   * @throws RoomNotFoundException if the room is not in the home
+   */
+  public synchronized EnergyUsage getUsage(Room room) {
+    return usage(roomCounters, roomSlot(room) * KINDS, KINDS);
+  }
+
+  /** Usage of one room's devices of a type, e.g. how long its lights were on. */
+  public synchronized EnergyUsage getUsage(Room room, Class<? extends Device> type) {
+    int kind = kindOf(type);
+    int first = roomSlot(room) * KINDS;
+    return kind < 0 ? usage(roomCounters, first, KINDS) : usage(roomCounters, first + kind, 1);
+  }
+
+  /**
+   * Usage of one device; {@link EnergyUsage#NONE} for devices of other types than the tracked ones.
+   *
+   * @throws DeviceNotFoundException if the device is not in the home
+   */
+  public synchronized EnergyUsage getUsage(Device device) {
+    Integer slot = deviceSlots.get(device);
+    if (slot != null) {
+      return usage(deviceCounters, slot, 1);
+    }
+    if (homeManager.containsDevice(device)) {
+      return EnergyUsage.NONE;
+    }
+    throw new DeviceNotFoundException(
+        "Device not found: " + (device != null ? device.getDeviceName() : "null"));
+  }
+
+  /** Zeroes all totals, e.g. at midnight; devices that are on keep counting from now. */
+  public synchronized void reset() {
+    long now = nanoTime.getAsLong();
+    deviceCounters.clearTotals(nextDeviceSlot, now);
+    roomCounters.clearTotals(nextRoomSlot * KINDS, now);
+    homeCounters.clearTotals(KINDS, now);
+  }
+
+  private EnergyUsage usage(UsageCounters counters, int first, int count) {
+    long now = nanoTime.getAsLong();
+    long onNanos = 0;
+    double energy = 0;
+    long transitions = 0;
+    int devicesOn = 0;
+    double watts = 0;
+    for (int index = first; index < first + count; index++) {
+      onNanos += counters.onNanos(index, now);
+      energy += counters.energy(index, now);
+      transitions += counters.transitions(index);
+      devicesOn += counters.devicesOn(index);
+      watts += counters.watts(index);
+    }
+    return new EnergyUsage(
+        Duration.ofNanos(onNanos), energy / NANOS_PER_HOUR, transitions, devicesOn, watts);
+  }
+
+  private int roomSlot(Room room) {
+    Integer slot = roomSlots.get(room);
+    if (slot == null) {
+      throw new RoomNotFoundException(
+          "Room not found: " + (room != null ? room.getRoomName() : "null"));
+    }
+    return slot;
+  }
+
+  /** Kind index of a tracked type, -1 for Device itself, which means all of them. */
+  private static int kindOf(Class<? extends Device> type) {
+    int kind = TYPES.indexOf(type);
+    if (kind < 0 && type != Device.class) {
+      throw new IllegalArgumentException("Usage is not tracked for " + type);
+    }
+    return kind;
+  }
+
+  private static int kindOf(Device device) {
+    for (int kind = 0; kind < KINDS; kind++) {
+      if (TYPES.get(kind).isInstance(device)) {
+        return kind;
+      }
+    }
+    return -1;
+  }
+
+  private synchronized void addRoom(Room room) {
+    if (roomSlots.containsKey(room)) {
+      return;
+    }
+    int slot = freeRoomSlots.isEmpty() ? nextRoomSlot++ : freeRoomSlots.pop();
+    roomCounters.ensureCapacity((slot + 1) * KINDS);
+    long now = nanoTime.getAsLong();
+    for (int kind = 0; kind < KINDS; kind++) {
+      roomCounters.reset(slot * KINDS + kind, now);
+    }
+    roomSlots.put(room, slot);
+  }
+
+  private synchronized void removeRoom(Room room) {
+    Integer slot = roomSlots.remove(room);
+    if (slot != null) {
+      freeRoomSlots.push(slot);
+    }
+  }
+
+  private synchronized void addDevice(Device device, Room room) {
+    int kind = kindOf(device);
+    if (kind < 0 || deviceSlots.containsKey(device)) {
+      return;
+    }
+    addRoom(room);
+    int slot = freeDeviceSlots.isEmpty() ? nextDeviceSlot++ : freeDeviceSlots.pop();
+    if (slot >= kinds.length) {
+      int grown = kinds.length * 2;
+      kinds = Arrays.copyOf(kinds, grown);
+      roomOf = Arrays.copyOf(roomOf, grown);
+      brightness = Arrays.copyOf(brightness, grown);
+      deviceCounters.ensureCapacity(grown);
+    }
+    kinds[slot] = (byte) kind;
+    roomOf[slot] = roomSlots.get(room);
+    deviceSlots.put(device, slot);
+    long now = nanoTime.getAsLong();
+    deviceCounters.reset(slot, now);
+    // Listen before reading the state; a change racing this waits for the lock and is idempotent
+    device.addChangeListener(changeListener);
+    brightness[slot] = device instanceof Light light ? light.getBrightness() : 0;
+    if (((SwitchableDevice) device).isOn()) {
+      apply(slot, now, 1, 0, wattsOf(slot, true));
+    }
+  }
+
+  private synchronized void removeDevice(Device device) {
+    Integer slot = deviceSlots.remove(device);
+    if (slot == null) {
+      return;
+    }
+    device.removeChangeListener(changeListener);
+    if (deviceCounters.devicesOn(slot) != 0) {
+      apply(slot, nanoTime.getAsLong(), -1, 0, 0);
+    }
+    freeDeviceSlots.push(slot);
+  }
+
+  private synchronized void deviceChanged(DeviceChange change) {
+    Integer slot = deviceSlots.get(change.device());
+    if (slot == null) {
+      return;
+    }
+    long now = nanoTime.getAsLong();
+    boolean on = deviceCounters.devicesOn(slot) != 0;
+    switch (change) {
+      case DeviceChange.PowerChanged power -> {
+        if (power.on() != on) {
+          apply(slot, now, power.on() ? 1 : -1, 1, wattsOf(slot, power.on()));
+        }
+      }
+      case DeviceChange.BrightnessChanged changed -> {
+        brightness[slot] = changed.newBrightness();
+        apply(slot, now, 0, 0, wattsOf(slot, on));
+      }
+      case DeviceChange.TemperatureChanged temperature -> {}
+    }
+  }
+
+  private double wattsOf(int slot, boolean on) {
+    if (!on) {
+      return 0;
+    }
+    int kind = kinds[slot];
+    return kind == LIGHT ? ratedWatts[kind] * brightness[slot] / 100.0 : ratedWatts[kind];
+  }
+
+  /** Moves a device to a new power draw, carrying the deltas up to its room and the home. */
+  private void apply(int slot, long now, int devicesOnDelta, int transitions, double watts) {
+    double wattsDelta = watts - deviceCounters.watts(slot);
+    int kind = kinds[slot];
+    deviceCounters.add(slot, now, devicesOnDelta, wattsDelta, transitions);
+    roomCounters.add(roomOf[slot] * KINDS + kind, now, devicesOnDelta, wattsDelta, transitions);
+    homeCounters.add(kind, now, devicesOnDelta, wattsDelta, transitions);
+  }
+
+  /** Configures an {@link EnergyAggregator}. */
+  public static final class Builder {
+    private final HomeManager homeManager;
+    private final double[] ratedWatts = {
+      DEFAULT_LIGHT_WATTS, DEFAULT_THERMOSTAT_WATTS, DEFAULT_CAMERA_WATTS
+    };
+    private Clock clock = Clock.systemDefaultZone();
+
+    private Builder(HomeManager homeManager) {
+      this.homeManager = Objects.requireNonNull(homeManager, "homeManager cannot be null");
+    }
+
+    /** Rated power of a Light (at full brightness), Thermostat or SecurityCamera. */
+    public Builder ratedWatts(Class<? extends Device> type, double watts) {
+      int kind = TYPES.indexOf(type);
+      if (kind < 0) {
+        throw new IllegalArgumentException("Usage is not tracked for " + type);
+      }
+      if (!(watts >= 0) || Double.isInfinite(watts)) {
+        throw new IllegalArgumentException("watts must be a non-negative number");
+      }
+      ratedWatts[kind] = watts;
+      return this;
+    }
+
+    /** Clock to measure on-time with; a {@link VirtualClock} makes the aggregator simulated. */
+    public Builder clock(Clock clock) {
+      this.clock = Objects.requireNonNull(clock, "clock cannot be null");
+      return this;
+    }
+
+    /** Creates the aggregator and starts following the home's devices. */
+    public EnergyAggregator build() {
+      return new EnergyAggregator(this);
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package com.smarthome.energy;
+
+import java.time.Duration;
+
+/**
+ * Usage of a device or a set of devices since the aggregator started or was last reset.
+ *
+ * @param onTime time spent on, summed over the devices: two lights on for an hour make two hours
+ * @param wattHours estimated energy used
+ * @param transitions number of times a device was switched on or off
+ * @param devicesOn devices on right now
+ * @param watts estimated power drawn right now
+ */
+public record EnergyUsage(
+    Duration onTime, double wattHours, long transitions, int devicesOn, double watts) {
+
+  public static final EnergyUsage NONE = new EnergyUsage(Duration.ZERO, 0, 0, 0, 0);
+}
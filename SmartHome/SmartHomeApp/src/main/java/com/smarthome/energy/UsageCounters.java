@@ -0,0 +1,97 @@
+package com.smarthome.energy;
+
+import java.util.Arrays;
+
+/**
+ * Columns of running usage counters, one row per index. Each row holds its current rates (devices
+ * on, watts drawn) and the totals integrated up to {@code since}; a change settles the totals up to
+ * now before adjusting the rates, so reading a total at any time is a multiply-add instead of a
+ * rescan. Not thread-safe; the aggregator synchronizes.
+ */
+final class UsageCounters {
+  private long[] since;
+  private int[] devicesOn;
+  private double[] watts;
+  // Device-nanoseconds on and watt-nanoseconds used, up to since
+  private long[] onNanos;
+  private double[] energy;
+  private long[] transitions;
+
+  UsageCounters(int capacity) {
+    since = new long[capacity];
+    devicesOn = new int[capacity];
+    watts = new double[capacity];
+    onNanos = new long[capacity];
+    energy = new double[capacity];
+    transitions = new long[capacity];
+  }
+
+  int capacity() {
+    return since.length;
+  }
+
+  void ensureCapacity(int capacity) {
+    if (capacity <= since.length) {
+      return;
+    }
+    int grown = Math.max(capacity, since.length * 2);
+    since = Arrays.copyOf(since, grown);
+    devicesOn = Arrays.copyOf(devicesOn, grown);
+    watts = Arrays.copyOf(watts, grown);
+    onNanos = Arrays.copyOf(onNanos, grown);
+    energy = Arrays.copyOf(energy, grown);
+    transitions = Arrays.copyOf(transitions, grown);
+  }
+
+  /** Zeroes a row and starts it at {@code now}. */
+  void reset(int index, long now) {
+    since[index] = now;
+    devicesOn[index] = 0;
+    watts[index] = 0;
+    onNanos[index] = 0;
+    energy[index] = 0;
+    transitions[index] = 0;
+  }
+
+  /** Zeroes the totals of rows {@code 0..count-1}, keeping their rates. */
+  void clearTotals(int count, long now) {
+    Arrays.fill(since, 0, count, now);
+    Arrays.fill(onNanos, 0, count, 0);
+    Arrays.fill(energy, 0, count, 0);
+    Arrays.fill(transitions, 0, count, 0);
+  }
+
+  /** Settles a row up to {@code now}, then applies the rate and transition deltas. */
+  void add(int index, long now, int devicesOnDelta, double wattsDelta, int transitionsDelta) {
+    long elapsed = now - since[index];
+    if (elapsed > 0) {
+      onNanos[index] += devicesOn[index] * elapsed;
+      energy[index] += watts[index] * elapsed;
+      since[index] = now;
+    }
+    devicesOn[index] += devicesOnDelta;
+    // Clear the rounding left by adding and subtracting the same wattages
+    watts[index] = devicesOn[index] == 0 ? 0 : watts[index] + wattsDelta;
+    transitions[index] += transitionsDelta;
+  }
+
+  int devicesOn(int index) {
+    return devicesOn[index];
+  }
+
+  double watts(int index) {
+    return watts[index];
+  }
+
+  long onNanos(int index, long now) {
+    return onNanos[index] + devicesOn[index] * Math.max(0, now - since[index]);
+  }
+
+  double energy(int index, long now) {
+    return energy[index] + watts[index] * Math.max(0, now - since[index]);
+  }
+
+  long transitions(int index) {
+    return transitions[index];
+  }
+}
@@ -0,0 +1,64 @@
+package com.smarthome.hub;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.journal.Journals;
+import com.smarthome.persistence.HomeStore;
+import com.smarthome.scene.RuleEngine;
+import com.smarthome.scene.SceneManager;
+import java.io.IOException;
+
+/**
+ * One account's home as loaded by a {@link HomeHub}: its {@link HomeManager} with the scene
+ * manager and rule engine wired to it.
+ *
+ * <p>Only use a home inside the task the hub handed it to. Once the task returns, the home may be
+ * evicted and a later task may see a freshly loaded instance.
+ */
+public final class Home {
+  private final String accountId;
+  private final HomeStore store;
+  private final SceneManager sceneManager;
+  private final RuleEngine ruleEngine;
+
+  Home(String accountId, HomeStore store, SceneManager sceneManager, RuleEngine ruleEngine) {
+    this.accountId = accountId;
+    this.store = store;
+    this.sceneManager = sceneManager;
+    this.ruleEngine = ruleEngine;
+  }
+
+  public String getAccountId() {
+    return accountId;
+  }
+
+  public HomeManager getHomeManager() {
+    return store.getHomeManager();
+  }
+
+  public SceneManager getSceneManager() {
+    return sceneManager;
+  }
+
+  public RuleEngine getRuleEngine() {
+    return ruleEngine;
+  }
+
+  /** Snapshots the home so it reloads from a single file, then releases it. */
+  void unload() {
+    ruleEngine.unsubscribeFromDeviceChanges(store.getHomeManager());
+    ruleEngine.stopSuppression();
+    sceneManager.close();
+    store.getHomeManager().close();
+    try {
+      store.snapshot();
+    } catch (IOException e) {
+      // The command log still holds every change; the next load just replays more of it
+      Journals.get().error("Could not snapshot home " + accountId + ": " + e.getMessage());
+    }
+    try {
+      store.close();
+    } catch (IOException e) {
+      Journals.get().error("Could not close home " + accountId + ": " + e.getMessage());
+    }
+  }
+}
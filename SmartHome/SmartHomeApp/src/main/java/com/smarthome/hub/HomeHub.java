@@ -0,0 +1,560 @@
+package com.smarthome.hub;
+
+import com.smarthome.journal.Journals;
+import com.smarthome.persistence.HomeStore;
+import com.smarthome.scene.NotificationService;
+import com.smarthome.scene.RuleEngine;
+import com.smarthome.scene.SceneManager;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Hosts the homes of many accounts in one process, keyed by account id.
+ *
+ * <p>Each account has a mailbox of tasks that run one at a time, in submission order, on a worker
+ * pool shared by all accounts. A worker runs at most a few tasks of one account before that
+ * account goes to the back of the pool's queue, and each mailbox is bounded, so a noisy home
+ * delays only itself: other accounts keep getting turns, and its excess work is rejected instead
+ * of piling up.
+ *
+ * <p>A home is loaded from its own directory under the hub's data directory when a task first
+ * needs it. Homes idle for longer than the idle timeout, and the least recently used homes beyond
+ * the resident limit, are snapshotted and dropped from memory by a periodic sweep; the next task
+ * loads them again. All stores share one sync thread and one name interner through {@link
+ * HomeStore.Shared}, so a room called "Kitchen" in a thousand homes is one string.
+ *
+ * <p>Scenes and rules are not persisted. Install them with {@link Builder#onLoad}, which runs
+ * every time a home is loaded.
+ */
+public final class HomeHub implements AutoCloseable {
+  public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+  public static final int DEFAULT_MAX_RESIDENT_HOMES = 1024;
+  public static final int DEFAULT_MAILBOX_CAPACITY = 1024;
+  public static final int DEFAULT_TASKS_PER_TURN = 16;
+
+  private static final Pattern ACCOUNT_ID = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]{0,127}");
+  private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
+  private final Path dataDirectory;
+  private final long idleTimeoutNanos;
+  private final int maxResidentHomes;
+  private final int mailboxCapacity;
+  private final int tasksPerTurn;
+  private final Function<String, NotificationService> notifications;
+  private final Consumer<Home> onLoad;
+  private final LongSupplier nanoTime;
+  private final HomeStore.Shared shared;
+  private final ExecutorService workers;
+  private final ScheduledExecutorService sweeper;
+  private final ConcurrentMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+  private final AtomicInteger residentHomes = new AtomicInteger();
+  private final AtomicBoolean sweepRequested = new AtomicBoolean();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+  private volatile boolean closed;
+
+  private HomeHub(Builder builder) {
+    this.dataDirectory = builder.dataDirectory;
+    this.idleTimeoutNanos = builder.idleTimeout.toNanos();
+    this.maxResidentHomes = builder.maxResidentHomes;
+    this.mailboxCapacity = builder.mailboxCapacity;
+    this.tasksPerTurn = builder.tasksPerTurn;
+    this.notifications = builder.notifications;
+    this.onLoad = builder.onLoad;
+    this.nanoTime = builder.nanoTime;
+    this.shared = new HomeStore.Shared();
+    AtomicInteger workerNumber = new AtomicInteger();
+    this.workers =
+        Executors.newFixedThreadPool(
+            builder.workers,
+            runnable -> {
+              Thread thread = new Thread(runnable, "home-hub-" + workerNumber.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.sweeper =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "home-hub-sweeper");
+              thread.setDaemon(true);
+              return thread;
+            });
+    if (builder.sweepInterval != null) {
+      long interval = builder.sweepInterval.toNanos();
+      sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /** Starts configuring a hub that keeps each account's home under {@code dataDirectory}. */
+  public static Builder builder(Path dataDirectory) {
+    return new Builder(dataDirectory);
+  }
+
+  /**
+   * Queues a task for the account's home, loading the home first if it is not in memory. Tasks of
+   * one account run one at a time in submission order.
+   *
+   * @return the task's result; completes exceptionally with {@link RejectedExecutionException} if
+   *     the account's mailbox is full or the hub is closed, or with the task's own exception
+   * @throws IllegalArgumentException if the account id is not 1-128 letters, digits, '.', '_' or
+   *     '-' starting with a letter or digit
+   */
+  public <T> CompletableFuture<T> submit(String accountId, Function<Home, T> task) {
+    Objects.requireNonNull(task, "task cannot be null");
+    CompletableFuture<T> result = new CompletableFuture<>();
+    if (closed) {
+      result.completeExceptionally(new RejectedExecutionException("Hub is closed"));
+      return result;
+    }
+    Mailbox mailbox = mailboxes.computeIfAbsent(checkAccountId(accountId), Mailbox::new);
+    Runnable run =
+        () -> {
+          if (result.isDone()) {
+            return;
+          }
+          try {
+            Home home = mailbox.home();
+            mailbox.lastUsed = nanoTime.getAsLong();
+            result.complete(task.apply(home));
+          } catch (Throwable e) {
+            // Errors too: the caller is waiting on the result, and the mailbox must keep going
+            result.completeExceptionally(e);
+          }
+        };
+    boolean queued;
+    try {
+      queued = mailbox.offer(run, result);
+    } catch (RejectedExecutionException e) {
+      result.completeExceptionally(e);
+      return result;
+    }
+    if (!queued) {
+      rejections.increment();
+      result.completeExceptionally(
+          new RejectedExecutionException("Mailbox of account " + accountId + " is full"));
+    }
+    return result;
+  }
+
+  /** Queues a task that needs no result; see {@link #submit}. */
+  public CompletableFuture<Void> execute(String accountId, Consumer<Home> task) {
+    Objects.requireNonNull(task, "task cannot be null");
+    return submit(
+        accountId,
+        home -> {
+          task.accept(home);
+          return null;
+        });
+  }
+
+  /**
+   * Snapshots the account's home and drops it from memory once its queued tasks have run.
+   *
+   * @return true if the home was evicted; false if it was not in memory or more tasks were queued
+   *     behind the eviction
+   */
+  public CompletableFuture<Boolean> evict(String accountId) {
+    Mailbox mailbox = mailboxes.get(checkAccountId(accountId));
+    if (mailbox == null) {
+      return CompletableFuture.completedFuture(false);
+    }
+    return mailbox.requestUnload(false);
+  }
+
+  /**
+   * Evicts homes idle for longer than the idle timeout, then the least recently used homes until
+   * no more than the resident limit remain. Runs periodically; evictions happen on the homes'
+   * own mailboxes, after the tasks already queued there.
+   *
+   * @return the number of homes evicted, once every eviction has run
+   */
+  public CompletableFuture<Integer> sweep() {
+    sweepRequested.set(false);
+    // Last-use times keep changing, so sort on the values read here
+    record Resident(Mailbox mailbox, long lastUsed) {}
+    long now = nanoTime.getAsLong();
+    List<Resident> resident = new ArrayList<>();
+    List<CompletableFuture<Boolean>> unloads = new ArrayList<>();
+    for (Mailbox mailbox : mailboxes.values()) {
+      long lastUsed = mailbox.lastUsed;
+      if (!mailbox.resident) {
+        continue;
+      }
+      if (now - lastUsed >= idleTimeoutNanos) {
+        unloads.add(mailbox.requestUnload(true));
+      } else {
+        resident.add(new Resident(mailbox, lastUsed));
+      }
+    }
+    int excess = resident.size() - maxResidentHomes;
+    if (excess > 0) {
+      resident.sort(Comparator.comparingLong(Resident::lastUsed));
+      for (Resident leastRecent : resident.subList(0, excess)) {
+        unloads.add(leastRecent.mailbox().requestUnload(false));
+      }
+    }
+    return CompletableFuture.allOf(unloads.toArray(new CompletableFuture<?>[0]))
+        .thenApply(done -> (int) unloads.stream().filter(CompletableFuture::join).count());
+  }
+
+  /** Number of homes currently in memory. */
+  public int getResidentCount() {
+    return residentHomes.get();
+  }
+
+  /** Number of accounts that have been used since the hub started. */
+  public int getAccountCount() {
+    return mailboxes.size();
+  }
+
+  /** Number of times a home was loaded, including reloads after eviction. */
+  public long getLoadCount() {
+    return loads.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /** Number of tasks refused because their account's mailbox was full. */
+  public long getRejectedCount() {
+    return rejections.sum();
+  }
+
+  /** Number of distinct room and device names shared between the loaded homes. */
+  public int getInternedNameCount() {
+    return shared.internedCount();
+  }
+
+  /** Rejects new tasks, runs the queued ones, then snapshots and releases every home. */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    sweeper.shutdownNow();
+    // Each unload runs after the tasks already queued for its home
+    List<CompletableFuture<Boolean>> unloads = new ArrayList<>();
+    for (Mailbox mailbox : mailboxes.values()) {
+      unloads.add(mailbox.requestFinalUnload());
+    }
+    try {
+      CompletableFuture.allOf(unloads.toArray(new CompletableFuture<?>[0]))
+          .get(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      Journals.get().error("Home hub did not drain within " + CLOSE_TIMEOUT + ": " + e);
+    }
+    workers.shutdownNow();
+    shared.close();
+  }
+
+  private static String checkAccountId(String accountId) {
+    if (accountId == null || !ACCOUNT_ID.matcher(accountId).matches()) {
+      throw new IllegalArgumentException("Invalid account id: " + accountId);
+    }
+    return accountId;
+  }
+
+  private void requestSweep() {
+    if (sweepRequested.compareAndSet(false, true)) {
+      try {
+        sweeper.execute(this::sweep);
+      } catch (RejectedExecutionException e) {
+        // Closing
+      }
+    }
+  }
+
+  /** A queued task; counted tasks are the callers' own and count against the capacity. */
+  private record Queued(Runnable task, CompletableFuture<?> result, boolean counted) {}
+
+  /**
+   * One account's task queue and its home. At most one worker runs the mailbox at a time, so the
+   * home itself needs no locking.
+   */
+  private final class Mailbox implements Runnable {
+    private final String accountId;
+    private final Queue<Queued> tasks = new ConcurrentLinkedQueue<>();
+    // Callers' tasks queued or running; evictions are not counted
+    private final AtomicInteger counted = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // Read by the sweeper
+    private volatile boolean resident;
+    private volatile long lastUsed;
+    // Only touched by the worker running this mailbox
+    private Home home;
+
+    Mailbox(String accountId) {
+      this.accountId = accountId;
+    }
+
+    /**
+     * Queues a caller's task, or returns false if the mailbox is full.
+     *
+     * @throws RejectedExecutionException if the hub is closed, so the task cannot end up behind
+     *     the final unload and load the home again
+     */
+    synchronized boolean offer(Runnable task, CompletableFuture<?> result) {
+      if (closed) {
+        throw new RejectedExecutionException("Hub is closed");
+      }
+      if (counted.incrementAndGet() > mailboxCapacity) {
+        counted.decrementAndGet();
+        return false;
+      }
+      tasks.add(new Queued(task, result, true));
+      schedule();
+      return true;
+    }
+
+    /** Queues the unload of a closing hub; any offer after it sees the hub closed. */
+    synchronized CompletableFuture<Boolean> requestFinalUnload() {
+      return requestUnload(false);
+    }
+
+    /** Queues an eviction behind the tasks already waiting; false if it declined or failed. */
+    CompletableFuture<Boolean> requestUnload(boolean onlyIfIdle) {
+      CompletableFuture<Boolean> unloaded = new CompletableFuture<>();
+      Runnable task =
+          () -> {
+            boolean done = false;
+            try {
+              done = unload(onlyIfIdle);
+            } finally {
+              unloaded.complete(done);
+            }
+          };
+      tasks.add(new Queued(task, unloaded, false));
+      schedule();
+      return unloaded;
+    }
+
+    private void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        try {
+          workers.execute(this);
+        } catch (RejectedExecutionException e) {
+          // Closed while this was being queued
+          scheduled.set(false);
+          Queued queued;
+          while ((queued = tasks.poll()) != null) {
+            if (queued.counted()) {
+              counted.decrementAndGet();
+            }
+            queued.result().completeExceptionally(e);
+          }
+        }
+      }
+    }
+
+    /** Runs up to one turn's worth of tasks, then yields the worker to other accounts. */
+    @Override
+    public void run() {
+      for (int i = 0; i < tasksPerTurn; i++) {
+        Queued queued = tasks.poll();
+        if (queued == null) {
+          break;
+        }
+        try {
+          queued.task().run();
+        } catch (Throwable e) {
+          // Escaping would leave the mailbox marked scheduled and stall the account for good
+          Journals.get().error("Task of account " + accountId + " failed: " + e);
+        } finally {
+          if (queued.counted()) {
+            counted.decrementAndGet();
+          }
+        }
+      }
+      scheduled.set(false);
+      if (!tasks.isEmpty()) {
+        schedule();
+      }
+    }
+
+    Home home() {
+      if (home == null) {
+        home = load();
+        lastUsed = nanoTime.getAsLong();
+        resident = true;
+        loads.increment();
+        if (residentHomes.incrementAndGet() > maxResidentHomes) {
+          requestSweep();
+        }
+      }
+      return home;
+    }
+
+    private Home load() {
+      HomeStore store;
+      try {
+        store = HomeStore.open(dataDirectory.resolve(accountId), accountId, shared);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not load home " + accountId, e);
+      }
+      SceneManager sceneManager = new SceneManager(store.getHomeManager());
+      RuleEngine ruleEngine = new RuleEngine(sceneManager, notifications.apply(accountId));
+      ruleEngine.subscribeToDeviceChanges(store.getHomeManager());
+      Home loaded = new Home(accountId, store, sceneManager, ruleEngine);
+      try {
+        onLoad.accept(loaded);
+      } catch (Throwable e) {
+        loaded.unload();
+        throw e;
+      }
+      return loaded;
+    }
+
+    /**
+     * Releases the home unless more tasks are waiting for it or, for an idle eviction, it was
+     * used since the sweep looked.
+     */
+    private boolean unload(boolean onlyIfIdle) {
+      if (home == null) {
+        return false;
+      }
+      boolean busy = counted.get() > 0;
+      boolean used = onlyIfIdle && nanoTime.getAsLong() - lastUsed < idleTimeoutNanos;
+      if ((busy || used) && !closed) {
+        return false;
+      }
+      home.unload();
+      home = null;
+      resident = false;
+      residentHomes.decrementAndGet();
+      evictions.increment();
+      return true;
+    }
+  }
+
+  public static final class Builder {
+    private final Path dataDirectory;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int maxResidentHomes = DEFAULT_MAX_RESIDENT_HOMES;
+    private Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private Duration sweepInterval;
+    private boolean sweepIntervalSet;
+    private int mailboxCapacity = DEFAULT_MAILBOX_CAPACITY;
+    private int tasksPerTurn = DEFAULT_TASKS_PER_TURN;
+    private Function<String, NotificationService> notifications =
+        accountId -> message -> Journals.get().info(accountId + ": " + message);
+    private Consumer<Home> onLoad = home -> {};
+    private LongSupplier nanoTime = System::nanoTime;
+
+    private Builder(Path dataDirectory) {
+      this.dataDirectory = Objects.requireNonNull(dataDirectory, "dataDirectory cannot be null");
+    }
+
+    /** Size of the worker pool shared by all accounts; defaults to the number of CPUs. */
+    public Builder workers(int workers) {
+      if (workers <= 0) {
+        throw new IllegalArgumentException("workers must be positive");
+      }
+      this.workers = workers;
+      return this;
+    }
+
+    /** How many homes may stay in memory before the least recently used are evicted. */
+    public Builder maxResidentHomes(int maxResidentHomes) {
+      if (maxResidentHomes <= 0) {
+        throw new IllegalArgumentException("maxResidentHomes must be positive");
+      }
+      this.maxResidentHomes = maxResidentHomes;
+      return this;
+    }
+
+    /** How long a home may go without tasks before it is evicted. */
+    public Builder idleTimeout(Duration idleTimeout) {
+      if (idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero()) {
+        throw new IllegalArgumentException("idleTimeout must be positive");
+      }
+      this.idleTimeout = idleTimeout;
+      return this;
+    }
+
+    /**
+     * How often to {@link HomeHub#sweep()}; defaults to a quarter of the idle timeout. Null turns
+     * periodic sweeps off.
+     */
+    public Builder sweepInterval(Duration sweepInterval) {
+      if (sweepInterval != null && (sweepInterval.isNegative() || sweepInterval.isZero())) {
+        throw new IllegalArgumentException("sweepInterval must be positive");
+      }
+      this.sweepInterval = sweepInterval;
+      this.sweepIntervalSet = true;
+      return this;
+    }
+
+    /** Maximum number of queued tasks per account; more are rejected. */
+    public Builder mailboxCapacity(int mailboxCapacity) {
+      if (mailboxCapacity <= 0) {
+        throw new IllegalArgumentException("mailboxCapacity must be positive");
+      }
+      this.mailboxCapacity = mailboxCapacity;
+      return this;
+    }
+
+    /** How many tasks of one account a worker runs before moving on to other accounts. */
+    public Builder tasksPerTurn(int tasksPerTurn) {
+      if (tasksPerTurn <= 0) {
+        throw new IllegalArgumentException("tasksPerTurn must be positive");
+      }
+      this.tasksPerTurn = tasksPerTurn;
+      return this;
+    }
+
+    /** Creates the notification service of each account's rule engine; defaults to the journal. */
+    public Builder notifications(Function<String, NotificationService> notifications) {
+      this.notifications = Objects.requireNonNull(notifications, "notifications cannot be null");
+      return this;
+    }
+
+    /** Runs in the account's mailbox each time its home is loaded, e.g. to add scenes and rules. */
+    public Builder onLoad(Consumer<Home> onLoad) {
+      this.onLoad = Objects.requireNonNull(onLoad, "onLoad cannot be null");
+      return this;
+    }
+
+    /** Clock for idle tracking (for testing). */
+    Builder nanoTime(LongSupplier nanoTime) {
+      this.nanoTime = nanoTime;
+      return this;
+    }
+
+    public HomeHub build() {
+      if (!sweepIntervalSet) {
+        sweepInterval = idleTimeout.dividedBy(4);
+      }
+      return new HomeHub(this);
+    }
+  }
+}
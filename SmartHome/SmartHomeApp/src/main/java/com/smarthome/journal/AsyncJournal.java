@@ -0,0 +1,139 @@
+package com.smarthome.journal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Journal that hands entries to a background drain thread through a bounded, lock-free ring buffer.
+ *
+ * <p>Any number of threads may record; a single daemon thread writes entries to the {@link
+ * JournalSink}. Recording never blocks: when the ring is full the entry is dropped and counted in
+ * {@link #getDroppedCount()}.
+ */
+public final class AsyncJournal implements Journal, AutoCloseable {
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private record Entry(JournalLevel level, String message) {}
+
+  private final JournalSink sink;
+  private final AtomicReferenceArray<Entry> ring;
+  private final int mask;
+  // Next slot to claim (producers) and next slot to drain (drain thread only writes it)
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+  private final LongAdder dropped = new LongAdder();
+  private final Thread drainThread;
+  private volatile JournalLevel level;
+  private volatile boolean closed;
+
+  /**
+   * @param capacity ring size, rounded up to a power of two
+   */
+  public AsyncJournal(JournalLevel level, int capacity, JournalSink sink) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.level = level;
+    this.sink = sink;
+    this.ring = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+    this.drainThread = new Thread(this::drainLoop, "journal-drain");
+    drainThread.setDaemon(true);
+    drainThread.start();
+  }
+
+  public JournalLevel getLevel() {
+    return level;
+  }
+
+  public void setLevel(JournalLevel level) {
+    this.level = level;
+  }
+
+  public long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  @Override
+  public boolean isEnabled(JournalLevel entryLevel) {
+    return !closed && level.includes(entryLevel);
+  }
+
+  @Override
+  public void record(JournalLevel entryLevel, String message) {
+    if (!isEnabled(entryLevel)) {
+      return;
+    }
+    long slot;
+    do {
+      slot = tail.get();
+      if (slot - head.get() >= ring.length()) {
+        dropped.increment();
+        return;
+      }
+    } while (!tail.compareAndSet(slot, slot + 1));
+    ring.lazySet((int) slot & mask, new Entry(entryLevel, message));
+  }
+
+  @Override
+  public void flush() {
+    long target = tail.get();
+    LockSupport.unpark(drainThread);
+    while (head.get() < target && drainThread.isAlive()) {
+      LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+    }
+  }
+
+  /** Stops accepting entries, drains what is queued and stops the drain thread. */
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(drainThread);
+    try {
+      drainThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void drainLoop() {
+    while (true) {
+      boolean wasClosed = closed;
+      if (drainAvailable() == 0) {
+        if (wasClosed && head.get() == tail.get()) {
+          return;
+        }
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+    }
+  }
+
+  private int drainAvailable() {
+    int drained = 0;
+    long next = head.get();
+    while (next < tail.get()) {
+      int index = (int) next & mask;
+      Entry entry = ring.get(index);
+      if (entry == null) {
+        break; // slot claimed but not yet published
+      }
+      try {
+        sink.write(entry.level(), entry.message());
+      } catch (RuntimeException e) {
+        // A failing sink must not kill the drain thread
+      }
+      // Free the slot only after the write so flush() returns once entries reached the sink
+      ring.lazySet(index, null);
+      head.lazySet(++next);
+      drained++;
+    }
+    return drained;
+  }
+}
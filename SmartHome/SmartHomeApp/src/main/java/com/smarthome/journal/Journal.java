@@ -0,0 +1,35 @@
+package com.smarthome.journal;
+
+/**
+ * Destination for the diagnostic messages of devices, scenes and the rule engine.
+ *
+ * <p>Callers on hot paths should check {@link #isEnabled(JournalLevel)} before building a message
+ * so that a quiet journal costs no string concatenation.
+ */
+public interface Journal {
+
+  boolean isEnabled(JournalLevel level);
+
+  /** Records a message; must never block the caller on I/O. */
+  void record(JournalLevel level, String message);
+
+  default void info(String message) {
+    if (isEnabled(JournalLevel.INFO)) {
+      record(JournalLevel.INFO, message);
+    }
+  }
+
+  default void error(String message) {
+    if (isEnabled(JournalLevel.ERROR)) {
+      record(JournalLevel.ERROR, message);
+    }
+  }
+
+  /** Waits until previously recorded entries have reached the sink. */
+  default void flush() {}
+
+  /** A journal that discards everything. */
+  static Journal silent() {
+    return SilentJournal.INSTANCE;
+  }
+}
@@ -0,0 +1,15 @@
+package com.smarthome.journal;
+
+/** Verbosity of a {@link Journal}, from quietest to noisiest. */
+public enum JournalLevel {
+  /** Records nothing; used by benchmarks and load tests. */
+  SILENT,
+  ERROR,
+  INFO,
+  DEBUG;
+
+  /** True if a journal at this level records entries of {@code entryLevel}. */
+  public boolean includes(JournalLevel entryLevel) {
+    return entryLevel != SILENT && entryLevel.ordinal() <= ordinal();
+  }
+}
@@ -0,0 +1,18 @@
+package com.smarthome.journal;
+
+/** Where drained journal entries end up (console, file, test buffer, ...). */
+@FunctionalInterface
+public interface JournalSink {
+  void write(JournalLevel level, String message);
+
+  /** Writes errors to System.err and everything else to System.out. */
+  static JournalSink console() {
+    return (level, message) -> {
+      if (level == JournalLevel.ERROR) {
+        System.err.println(message);
+      } else {
+        System.out.println(message);
+      }
+    };
+  }
+}
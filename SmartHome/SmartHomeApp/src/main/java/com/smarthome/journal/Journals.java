@@ -0,0 +1,38 @@
+package com.smarthome.journal;
+
+/**
+ * Holds the process-wide {@link Journal}. Defaults to an {@link AsyncJournal} at {@link
+ * JournalLevel#INFO} writing to the console.
+ */
+public final class Journals {
+  /** Ring size of the default journal. */
+  public static final int DEFAULT_CAPACITY = 8192;
+
+  private static volatile Journal current;
+
+  private Journals() {}
+
+  public static Journal get() {
+    Journal journal = current;
+    if (journal == null) {
+      synchronized (Journals.class) {
+        journal = current;
+        if (journal == null) {
+          journal = new AsyncJournal(JournalLevel.INFO, DEFAULT_CAPACITY, JournalSink.console());
+          current = journal;
+        }
+      }
+    }
+    return journal;
+  }
+
+  /** Installs a journal and returns the previous one so callers can restore it. */
+  public static Journal set(Journal journal) {
+    if (journal == null) {
+      throw new IllegalArgumentException("journal must not be null");
+    }
+    Journal previous = get();
+    current = journal;
+    return previous;
+  }
+}
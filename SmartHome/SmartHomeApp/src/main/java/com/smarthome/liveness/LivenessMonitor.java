@@ -0,0 +1,451 @@
+package com.smarthome.liveness;
+
+import com.smarthome.app.HomeChangeListener;
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Device;
+import com.smarthome.journal.Journals;
+import com.smarthome.scene.RuleEngine;
+import com.smarthome.scene.VirtualClock;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks whether devices are still sending heartbeats and reports the ones that go quiet.
+ *
+ * <p>Each registered device gets a slot. A heartbeat is one store of the current tick into a
+ * {@code long[]} indexed by slot, so it costs the same for one device as for a million and never
+ * takes a lock; a heartbeat by device first looks its slot up in a concurrent map. Deadlines live
+ * in a {@link SlotTimingWheel} that links slots through int arrays, so there is no timer object
+ * per device either. A slot's wheel entry is not moved on every heartbeat; when it comes due the
+ * monitor compares it with the last heartbeat and re-files it if the device was heard from since,
+ * which leaves only genuinely silent devices to be marked offline.
+ *
+ * <p>A device is offline once it misses the configured number of heartbeats and comes back online
+ * with its next heartbeat. Both transitions are sent to the {@link RuleEngine} as {@link
+ * #DEVICE_OFFLINE} and {@link #DEVICE_ONLINE} events for the device, in the order they happened.
+ */
+public final class LivenessMonitor implements AutoCloseable {
+  /** Event sent to the rule engine when a device misses its heartbeats. */
+  public static final String DEVICE_OFFLINE = "device_offline";
+
+  /** Event sent to the rule engine when an offline device is heard from again. */
+  public static final String DEVICE_ONLINE = "device_online";
+
+  static final int DEFAULT_CAPACITY = 1024;
+  static final int DEFAULT_MISSED_HEARTBEATS = 3;
+  // The wheel ticks this many times per heartbeat interval, bounding how late a miss is noticed
+  private static final int TICKS_PER_INTERVAL = 4;
+  private static final long MIN_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static final byte FREE = 0;
+  private static final byte ONLINE = 1;
+  private static final byte OFFLINE = 2;
+  private static final VarHandle LAST_SEEN = MethodHandles.arrayElementVarHandle(long[].class);
+  private static final VarHandle STATE = MethodHandles.arrayElementVarHandle(byte[].class);
+
+  private record Transition(Device device, boolean online) {}
+
+  private final int capacity;
+  private final long tickNanos;
+  private final long timeoutTicks;
+  private final Clock clock;
+  private final LongSupplier nanoTime;
+  private final long origin;
+  private final Instant originInstant;
+  private final RuleEngine ruleEngine;
+
+  // Tick of the last heartbeat per slot; written without the lock
+  private final long[] lastSeen;
+  private final byte[] states;
+  // Read without the lock; written under it
+  private final Map<Device, Integer> slots = new ConcurrentHashMap<>();
+  // The fields below are guarded by this
+  private final Device[] devices;
+  private final Map<HomeManager, HomeChangeListener> watched = new IdentityHashMap<>();
+  private final int[] freeSlots;
+  private int freeCount;
+  private int nextSlot;
+  private int offlineCount;
+  private final SlotTimingWheel wheel;
+  private ScheduledExecutorService ticker;
+  private VirtualClock.Task nextTick;
+  private boolean closed;
+
+  private final Queue<Transition> transitions = new ConcurrentLinkedQueue<>();
+  private final ReentrantLock delivering = new ReentrantLock();
+
+  private LivenessMonitor(Builder builder) {
+    this.capacity = builder.capacity;
+    long intervalNanos = builder.heartbeatInterval.toNanos();
+    this.tickNanos = Math.max(MIN_TICK_NANOS, intervalNanos / TICKS_PER_INTERVAL);
+    long timeoutNanos = Math.multiplyExact(intervalNanos, (long) builder.missedHeartbeats);
+    this.timeoutTicks = Math.max(1, (timeoutNanos + tickNanos - 1) / tickNanos);
+    this.clock = builder.clock;
+    this.nanoTime =
+        clock instanceof VirtualClock virtualClock ? virtualClock::nanoTime : System::nanoTime;
+    this.origin = nanoTime.getAsLong();
+    this.originInstant = clock.instant();
+    this.ruleEngine = builder.ruleEngine;
+    this.lastSeen = new long[capacity];
+    this.states = new byte[capacity];
+    this.devices = new Device[capacity];
+    this.freeSlots = new int[capacity];
+    this.wheel = new SlotTimingWheel(capacity, 0);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Starts advancing the monitor every tick: on a daemon thread, or as a recurring task on the
+   * clock if it is a {@link VirtualClock}. Without this, call {@link #advance()} yourself.
+   */
+  public synchronized LivenessMonitor start() {
+    if (closed) {
+      throw new IllegalStateException("Liveness monitor is closed");
+    }
+    if (ticker != null || nextTick != null) {
+      return this;
+    }
+    if (clock instanceof VirtualClock virtualClock) {
+      scheduleVirtualTick(virtualClock);
+      return this;
+    }
+    ticker =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "liveness-monitor");
+              thread.setDaemon(true);
+              return thread;
+            });
+    ticker.scheduleAtFixedRate(this::advanceLogged, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    return this;
+  }
+
+  private void scheduleVirtualTick(VirtualClock virtualClock) {
+    nextTick =
+        virtualClock.schedule(
+            Duration.ofNanos(tickNanos),
+            () -> {
+              synchronized (this) {
+                if (closed) {
+                  return;
+                }
+                scheduleVirtualTick(virtualClock);
+              }
+              advance();
+            });
+  }
+
+  /**
+   * Stops the ticker and stops following the homes passed to {@link #watch}; devices keep their
+   * state and {@link #advance()} still works.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    watched.forEach(HomeManager::removeChangeListener);
+    watched.clear();
+    if (ticker != null) {
+      ticker.shutdownNow();
+      ticker = null;
+    }
+    if (nextTick != null) {
+      nextTick.cancel();
+      nextTick = null;
+    }
+  }
+
+  /**
+   * Registers every device of the home and keeps following it: added devices are registered,
+   * removed ones unregistered, and every executed command counts as a heartbeat from its device.
+   * Watching the same home again does nothing; {@link #close()} stops following it.
+   *
+   * @throws IllegalStateException if the monitor is closed
+   */
+  public void watch(HomeManager homeManager) {
+    HomeChangeListener listener =
+        new HomeChangeListener() {
+          @Override
+          public void deviceAdded(Device device, Room room) {
+            register(device);
+          }
+
+          @Override
+          public void deviceRemoved(Device device, Room room) {
+            unregister(device);
+          }
+
+          @Override
+          public void commandExecuted(Device device, String command, Object value) {
+            heartbeat(device);
+          }
+        };
+    synchronized (this) {
+      if (closed) {
+        throw new IllegalStateException("Liveness monitor is closed");
+      }
+      if (watched.putIfAbsent(homeManager, listener) != null) {
+        return;
+      }
+      homeManager.addChangeListener(listener);
+    }
+    for (Device device : homeManager.getAllDevices()) {
+      register(device);
+    }
+  }
+
+  /**
+   * Starts tracking a device as online, as if it had just sent a heartbeat, and returns its slot
+   * for {@link #heartbeat(int)}. Registering a device twice returns the same slot; slots of
+   * unregistered devices are reused.
+   *
+   * @throws IllegalStateException if all slots are taken
+   */
+  public synchronized int register(Device device) {
+    Objects.requireNonNull(device, "device cannot be null");
+    Integer existing = slots.get(device);
+    if (existing != null) {
+      return existing;
+    }
+    int slot;
+    if (freeCount > 0) {
+      slot = freeSlots[--freeCount];
+    } else if (nextSlot < capacity) {
+      slot = nextSlot++;
+    } else {
+      throw new IllegalStateException("Liveness monitor is full (" + capacity + " devices)");
+    }
+    long now = currentTick();
+    devices[slot] = device;
+    slots.put(device, slot);
+    LAST_SEEN.setVolatile(lastSeen, slot, now);
+    STATE.setVolatile(states, slot, ONLINE);
+    wheel.schedule(slot, now + timeoutTicks);
+    return slot;
+  }
+
+  /** Stops tracking a device; returns false if it was not registered. */
+  public synchronized boolean unregister(Device device) {
+    Integer slot = slots.remove(device);
+    if (slot == null) {
+      return false;
+    }
+    if (states[slot] == OFFLINE) {
+      offlineCount--;
+    }
+    STATE.setVolatile(states, slot, FREE);
+    wheel.cancel(slot);
+    devices[slot] = null;
+    freeSlots[freeCount++] = slot;
+    return true;
+  }
+
+  /** Slot of a registered device, or -1. */
+  public int slotOf(Device device) {
+    Integer slot = slots.get(device);
+    return slot == null ? -1 : slot;
+  }
+
+  /**
+   * Records a heartbeat from the device in {@code slot}. Lock-free unless the device was offline,
+   * in which case it is brought back online.
+   */
+  public void heartbeat(int slot) {
+    LAST_SEEN.setVolatile(lastSeen, slot, currentTick());
+    if ((byte) STATE.getVolatile(states, slot) == OFFLINE) {
+      revive(slot);
+    }
+  }
+
+  /**
+   * Records a heartbeat from a registered device; unknown devices are ignored. Lock-free on the
+   * same terms as {@link #heartbeat(int)}.
+   */
+  public void heartbeat(Device device) {
+    int slot = slotOf(device);
+    if (slot >= 0) {
+      heartbeat(slot);
+    }
+  }
+
+  private void revive(int slot) {
+    synchronized (this) {
+      if (states[slot] != OFFLINE) {
+        return;
+      }
+      STATE.setVolatile(states, slot, ONLINE);
+      offlineCount--;
+      wheel.schedule(slot, (long) LAST_SEEN.getVolatile(lastSeen, slot) + timeoutTicks);
+      transitions.add(new Transition(devices[slot], true));
+    }
+    deliverTransitions();
+  }
+
+  /** Marks every device whose heartbeats are overdue as offline. Called on each tick. */
+  public void advance() {
+    synchronized (this) {
+      wheel.advance(currentTick(), this::expire);
+    }
+    deliverTransitions();
+  }
+
+  private void advanceLogged() {
+    try {
+      advance();
+    } catch (RuntimeException e) {
+      Journals.get().error("Liveness monitor tick failed: " + e.getMessage());
+    }
+  }
+
+  /** Called by the wheel, under the lock, when a slot's deadline has passed. */
+  private void expire(int slot) {
+    long seen = (long) LAST_SEEN.getVolatile(lastSeen, slot);
+    if (seen + timeoutTicks > wheel.currentTick()) {
+      wheel.schedule(slot, seen + timeoutTicks);
+      return;
+    }
+    STATE.setVolatile(states, slot, OFFLINE);
+    // A heartbeat that raced the store above saw the device online, so it is revived here instead
+    long latest = (long) LAST_SEEN.getVolatile(lastSeen, slot);
+    if (latest != seen) {
+      STATE.setVolatile(states, slot, ONLINE);
+      wheel.schedule(slot, latest + timeoutTicks);
+      return;
+    }
+    offlineCount++;
+    transitions.add(new Transition(devices[slot], false));
+  }
+
+  /**
+   * Hands queued transitions to the rule engine outside the monitor's lock, so rules may send
+   * heartbeats or register devices. One thread delivers at a time, which keeps them in order.
+   */
+  private void deliverTransitions() {
+    while (!transitions.isEmpty() && delivering.tryLock()) {
+      try {
+        Transition transition;
+        while ((transition = transitions.poll()) != null) {
+          if (ruleEngine != null) {
+            ruleEngine.handleEvent(
+                transition.online() ? DEVICE_ONLINE : DEVICE_OFFLINE,
+                transition.device().getDeviceName());
+          }
+        }
+      } finally {
+        delivering.unlock();
+      }
+    }
+  }
+
+  /** True if the device is registered and has not missed its heartbeats. */
+  public boolean isOnline(Device device) {
+    int slot = slotOf(device);
+    return slot >= 0 && isOnline(slot);
+  }
+
+  public boolean isOnline(int slot) {
+    return (byte) STATE.getVolatile(states, slot) == ONLINE;
+  }
+
+  /** When the device last sent a heartbeat, to the precision of one tick; null if unknown. */
+  public Instant getLastSeen(Device device) {
+    int slot = slotOf(device);
+    if (slot < 0) {
+      return null;
+    }
+    long ticks = (long) LAST_SEEN.getVolatile(lastSeen, slot);
+    return originInstant.plusNanos(ticks * tickNanos);
+  }
+
+  public int getDeviceCount() {
+    return slots.size();
+  }
+
+  public synchronized int getOfflineCount() {
+    return offlineCount;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  private long currentTick() {
+    return (nanoTime.getAsLong() - origin) / tickNanos;
+  }
+
+  /** Configures a {@link LivenessMonitor}. */
+  public static final class Builder {
+    private Duration heartbeatInterval;
+    private int missedHeartbeats = DEFAULT_MISSED_HEARTBEATS;
+    private int capacity = DEFAULT_CAPACITY;
+    private Clock clock = Clock.systemDefaultZone();
+    private RuleEngine ruleEngine;
+
+    private Builder() {}
+
+    /** How often devices are expected to send a heartbeat. Required. */
+    public Builder heartbeatInterval(Duration heartbeatInterval) {
+      if (heartbeatInterval == null
+          || heartbeatInterval.isNegative()
+          || heartbeatInterval.isZero()) {
+        throw new IllegalArgumentException("heartbeatInterval must be positive");
+      }
+      this.heartbeatInterval = heartbeatInterval;
+      return this;
+    }
+
+    /** How many heartbeats in a row a device may miss before it is offline; defaults to 3. */
+    public Builder missedHeartbeats(int missedHeartbeats) {
+      if (missedHeartbeats <= 0) {
+        throw new IllegalArgumentException("missedHeartbeats must be positive");
+      }
+      this.missedHeartbeats = missedHeartbeats;
+      return this;
+    }
+
+    /** Maximum number of devices tracked at once; all slots are allocated up front. */
+    public Builder capacity(int capacity) {
+      if (capacity <= 0) {
+        throw new IllegalArgumentException("capacity must be positive");
+      }
+      this.capacity = capacity;
+      return this;
+    }
+
+    /** Clock to measure heartbeats with; a {@link VirtualClock} makes the monitor simulated. */
+    public Builder clock(Clock clock) {
+      this.clock = Objects.requireNonNull(clock, "clock cannot be null");
+      return this;
+    }
+
+    /** Engine that receives {@link #DEVICE_OFFLINE} and {@link #DEVICE_ONLINE} events. */
+    public Builder ruleEngine(RuleEngine ruleEngine) {
+      this.ruleEngine = ruleEngine;
+      return this;
+    }
+
+    public LivenessMonitor build() {
+      if (heartbeatInterval == null) {
+        throw new IllegalStateException("heartbeatInterval is required");
+      }
+      return new LivenessMonitor(this);
+    }
+  }
+}
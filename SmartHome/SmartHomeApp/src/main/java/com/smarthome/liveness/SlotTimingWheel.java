@@ -0,0 +1,154 @@
+package com.smarthome.liveness;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Hierarchical timing wheel over int slots: four levels of 64 buckets, each level 64 times coarser
+ * than the one below, so deadlines up to 2^24 ticks ahead are filed in O(1) and each entry is
+ * cascaded at most three times before it expires. Entries are slot numbers linked through {@code
+ * int[]} arrays, so scheduling allocates nothing and a million entries cost a few arrays instead of
+ * a million objects. Deadlines beyond the top level are parked there and re-filed when reached.
+ *
+ * <p>Time is measured in ticks chosen by the caller. Not thread-safe; callers synchronize.
+ */
+final class SlotTimingWheel {
+  private static final int BITS = 6;
+  private static final int BUCKETS = 1 << BITS;
+  private static final int MASK = BUCKETS - 1;
+  private static final int LEVELS = 4;
+  private static final long RANGE = 1L << (BITS * LEVELS);
+  private static final int NONE = -1;
+
+  // Head slot per bucket, level-major
+  private final int[] heads = new int[LEVELS * BUCKETS];
+  private final int[] next;
+  private final int[] prev;
+  // Bucket holding the slot, or NONE when it is not scheduled
+  private final int[] bucketOf;
+  private final long[] deadlines;
+  private int[] expired = new int[64];
+  private long currentTick;
+  private int size;
+
+  /** Creates a wheel for slots {@code 0..capacity-1} standing at {@code startTick}. */
+  SlotTimingWheel(int capacity, long startTick) {
+    Arrays.fill(heads, NONE);
+    next = new int[capacity];
+    prev = new int[capacity];
+    bucketOf = new int[capacity];
+    Arrays.fill(bucketOf, NONE);
+    deadlines = new long[capacity];
+    currentTick = startTick;
+  }
+
+  long currentTick() {
+    return currentTick;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isScheduled(int slot) {
+    return bucketOf[slot] != NONE;
+  }
+
+  /** Schedules or moves a slot; deadlines not after the current tick expire on the next tick. */
+  void schedule(int slot, long deadline) {
+    if (bucketOf[slot] != NONE) {
+      unlink(slot);
+    }
+    deadlines[slot] = Math.max(deadline, currentTick + 1);
+    link(slot);
+  }
+
+  void cancel(int slot) {
+    if (isScheduled(slot)) {
+      unlink(slot);
+    }
+  }
+
+  /**
+   * Moves the wheel to {@code tick} one tick at a time, handing every slot whose deadline has
+   * passed to {@code onExpiry} after unlinking it, so the callback may schedule it again. An empty
+   * wheel jumps straight to {@code tick}.
+   */
+  void advance(long tick, IntConsumer onExpiry) {
+    while (currentTick < tick) {
+      if (size == 0) {
+        currentTick = tick;
+        return;
+      }
+      long t = ++currentTick;
+      int count = 0;
+      // Cascade coarser buckets whose span starts now, top level first
+      for (int level = LEVELS - 1; level > 0; level--) {
+        if ((t & ((1L << (BITS * level)) - 1)) == 0) {
+          count = drain(level, (int) ((t >>> (BITS * level)) & MASK), t, count);
+        }
+      }
+      count = drain(0, (int) (t & MASK), t, count);
+      for (int i = 0; i < count; i++) {
+        onExpiry.accept(expired[i]);
+      }
+    }
+  }
+
+  /** Empties a bucket, collecting due slots in {@code expired} and re-filing the rest. */
+  private int drain(int level, int bucket, long tick, int count) {
+    int index = level * BUCKETS + bucket;
+    int slot = heads[index];
+    heads[index] = NONE;
+    while (slot != NONE) {
+      int following = next[slot];
+      bucketOf[slot] = NONE;
+      size--;
+      if (deadlines[slot] <= tick) {
+        if (count == expired.length) {
+          expired = Arrays.copyOf(expired, count * 2);
+        }
+        expired[count++] = slot;
+      } else {
+        link(slot);
+      }
+      slot = following;
+    }
+    return count;
+  }
+
+  private void link(int slot) {
+    long deadline = deadlines[slot];
+    long delta = deadline - currentTick;
+    int level = 0;
+    while (level < LEVELS - 1 && delta >= (1L << (BITS * (level + 1)))) {
+      level++;
+    }
+    // Too far for the top level: park in the farthest bucket and re-file on the way
+    long filed = delta >= RANGE ? currentTick + RANGE - 1 : deadline;
+    int index = level * BUCKETS + (int) ((filed >>> (BITS * level)) & MASK);
+    int head = heads[index];
+    next[slot] = head;
+    prev[slot] = NONE;
+    if (head != NONE) {
+      prev[head] = slot;
+    }
+    heads[index] = slot;
+    bucketOf[slot] = index;
+    size++;
+  }
+
+  private void unlink(int slot) {
+    int index = bucketOf[slot];
+    if (prev[slot] != NONE) {
+      next[prev[slot]] = next[slot];
+    } else {
+      heads[index] = next[slot];
+    }
+    if (next[slot] != NONE) {
+      prev[next[slot]] = prev[slot];
+    }
+    bucketOf[slot] = NONE;
+    size--;
+  }
+}
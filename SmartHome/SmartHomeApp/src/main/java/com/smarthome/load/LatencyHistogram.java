@@ -0,0 +1,97 @@
+package com.smarthome.load;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram.
+ *
+ * <p>Values below 256 get one bucket each. Above that, every power of two is split into 128
+ * equal sub-buckets, so a reported value is within 1/128 (under 0.8%) of the recorded one across
+ * the whole {@code long} range. Recording is a couple of shifts and one atomic increment and never
+ * allocates; any number of threads may record concurrently.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_LIMIT = SUB_BUCKETS << 1;
+  private static final int FIRST_EXPONENT = SUB_BUCKET_BITS + 1;
+  private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - FIRST_EXPONENT) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong maxValue = new AtomicLong();
+
+  /** Records one value; negative values count as zero. */
+  public void record(long value) {
+    long clamped = Math.max(0, value);
+    counts.incrementAndGet(indexOf(clamped));
+    totalCount.incrementAndGet();
+    if (clamped > maxValue.get()) {
+      maxValue.accumulateAndGet(clamped, Math::max);
+    }
+  }
+
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  /** The largest value recorded, exactly. */
+  public long getMax() {
+    return maxValue.get();
+  }
+
+  /**
+   * Returns the value at the given percentile (0-100): the highest value that falls in the same
+   * bucket as the recorded value at that rank. Returns 0 when nothing was recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100");
+    }
+    long total = totalCount.get();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+    long seen = 0;
+    for (int index = 0; index < BUCKET_COUNT; index++) {
+      seen += counts.get(index);
+      if (seen >= rank) {
+        return Math.min(highestValueIn(index), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /** Clears all counts, e.g. at the end of a warm-up phase. */
+  public void reset() {
+    for (int index = 0; index < BUCKET_COUNT; index++) {
+      counts.set(index, 0);
+    }
+    totalCount.set(0);
+    maxValue.set(0);
+  }
+
+  static int indexOf(long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+    return LINEAR_LIMIT + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+  }
+
+  static long highestValueIn(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + FIRST_EXPONENT;
+    long mantissa = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+    int shift = exponent - SUB_BUCKET_BITS;
+    if (exponent == 62 && mantissa == 2 * SUB_BUCKETS - 1) {
+      return Long.MAX_VALUE;
+    }
+    return ((mantissa + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,198 @@
+package com.smarthome.load;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SecurityCamera;
+import com.smarthome.exceptions.RuleConflictException;
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.Journals;
+import com.smarthome.scene.Action;
+import com.smarthome.scene.NotificationService;
+import com.smarthome.scene.Rule;
+import com.smarthome.scene.RuleEngine;
+import com.smarthome.scene.Scene;
+import com.smarthome.scene.SceneManager;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a synthetic home through the event → rule → scene → notification pipeline at a fixed rate
+ * and measures end-to-end latency.
+ *
+ * <p>The home has one camera per configured device, each with a "motion_detected" rule whose scene
+ * turns on a matching light, plus global "sunset" and "leave_home" rules. Device events pick a
+ * camera from a Zipf distribution so a few devices are hot, as in a real home.
+ *
+ * <p>The schedule is open-loop: event {@code k} is due at {@code start + k / rate} whatever
+ * happened before it, and its latency is measured from that due time. A stall therefore shows up
+ * in the latency of every event it delayed, not just the one that stalled (no coordinated
+ * omission).
+ */
+public final class LoadDriver {
+  static final String DEVICE_EVENT = "motion_detected";
+  static final String[] GLOBAL_EVENTS = {"sunset", "leave_home"};
+
+  private static final int DEVICES_PER_ROOM = 100;
+  private static final int GLOBAL_SCENE_LIGHTS = 10;
+  private static final long SPIN_THRESHOLD_NANOS = 50_000;
+
+  private final LoadProfile profile;
+  private final RuleEngine ruleEngine;
+  private final TimestampingNotifier notifier = new TimestampingNotifier();
+  private final String[] cameraNames;
+  private final ZipfDistribution popularity;
+
+  public LoadDriver(LoadProfile profile) {
+    this.profile = profile;
+    this.cameraNames = new String[profile.devices()];
+    this.popularity = new ZipfDistribution(profile.devices(), profile.zipfExponent());
+
+    HomeManager homeManager = new HomeManager("load");
+    SceneManager sceneManager = new SceneManager(homeManager);
+    this.ruleEngine = new RuleEngine(sceneManager, notifier);
+
+    Journal original = Journals.set(Journal.silent());
+    try {
+      buildHome(homeManager, sceneManager);
+    } catch (RuleConflictException e) {
+      throw new IllegalStateException("Generated rules conflict", e);
+    } finally {
+      Journals.set(original);
+    }
+  }
+
+  private void buildHome(HomeManager homeManager, SceneManager sceneManager)
+      throws RuleConflictException {
+    Room room = null;
+    for (int i = 0; i < cameraNames.length; i++) {
+      if (i % (DEVICES_PER_ROOM / 2) == 0) {
+        room = new Room("Zone " + (i / (DEVICES_PER_ROOM / 2)));
+        homeManager.addRoom(room);
+      }
+      cameraNames[i] = "Camera " + i;
+      homeManager.addDevice(new SecurityCamera("C_" + i, cameraNames[i]), room);
+      homeManager.addDevice(new Light("L_" + i, "Light " + i), room);
+
+      Scene scene = new Scene("Motion " + i);
+      scene.addAction(new Action("Light " + i, "turnOn"));
+      scene.addAction(new Action("Light " + i, "setBrightness", "80"));
+      sceneManager.addScene(scene);
+      ruleEngine.addRule(new Rule(DEVICE_EVENT, cameraNames[i], scene));
+    }
+
+    Scene evening = new Scene("Evening");
+    Scene away = new Scene("Away");
+    for (int i = 0; i < Math.min(GLOBAL_SCENE_LIGHTS, cameraNames.length); i++) {
+      evening.addAction(new Action("Light " + i, "turnOn"));
+      evening.addAction(new Action("Light " + i, "setBrightness", "60"));
+      away.addAction(new Action("Light " + i, "turnOff"));
+    }
+    sceneManager.addScene(evening);
+    sceneManager.addScene(away);
+    ruleEngine.addRule(new Rule(GLOBAL_EVENTS[0], evening));
+    ruleEngine.addRule(new Rule(GLOBAL_EVENTS[1], away));
+  }
+
+  public LoadProfile getProfile() {
+    return profile;
+  }
+
+  /** Runs the warm-up and measured phases on the calling thread. */
+  public LoadReport run() {
+    Journal original = Journals.set(Journal.silent());
+    try {
+      SplittableRandom random = new SplittableRandom(profile.seed());
+      LatencyHistogram latencies = new LatencyHistogram();
+      runPhase(profile.eventsIn(profile.warmup()), random, latencies, new long[2]);
+      latencies.reset();
+
+      long[] counters = new long[2];
+      long allocatedBefore = allocatedBytes();
+      long start = System.nanoTime();
+      long events = runPhase(profile.eventsIn(profile.duration()), random, latencies, counters);
+      Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+      long allocatedAfter = allocatedBytes();
+
+      long allocated =
+          allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+      return new LoadReport(
+          profile, events, counters[0], counters[1], elapsed, latencies, allocated);
+    } finally {
+      Journals.set(original);
+    }
+  }
+
+  /** Fires {@code eventCount} events; counters receive global events and fired rules. */
+  private long runPhase(
+      long eventCount, SplittableRandom random, LatencyHistogram latencies, long[] counters) {
+    long start = System.nanoTime();
+    for (long k = 0; k < eventCount; k++) {
+      long due = start + dueOffsetNanos(k, profile.rate());
+      waitUntil(due);
+
+      notifier.notifiedAt = 0;
+      if (random.nextDouble() < profile.globalFraction()) {
+        counters[0]++;
+        ruleEngine.handleGlobalEvent(GLOBAL_EVENTS[random.nextInt(GLOBAL_EVENTS.length)]);
+      } else {
+        ruleEngine.handleEvent(DEVICE_EVENT, cameraNames[popularity.sample(random)]);
+      }
+      long finished = notifier.notifiedAt;
+      if (finished != 0) {
+        counters[1]++;
+      } else {
+        finished = System.nanoTime();
+      }
+      latencies.record(finished - due);
+    }
+    return eventCount;
+  }
+
+  /**
+   * When event {@code k} is due, relative to the start of its phase. Whole seconds and the
+   * remainder are scaled apart so that {@code k * 10^9} never has to fit a long.
+   */
+  static long dueOffsetNanos(long k, int rate) {
+    return k / rate * 1_000_000_000L + k % rate * 1_000_000_000L / rate;
+  }
+
+  private static void waitUntil(long due) {
+    long remaining;
+    while ((remaining = due - System.nanoTime()) > 0) {
+      if (remaining > SPIN_THRESHOLD_NANOS) {
+        LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+      } else {
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+  /** JVM-wide allocated bytes, or the current thread's if that is all the JVM offers. */
+  private static long allocatedBytes() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean extended
+        && extended.isThreadAllocatedMemorySupported()
+        && extended.isThreadAllocatedMemoryEnabled()) {
+      try {
+        return extended.getTotalThreadAllocatedBytes();
+      } catch (UnsupportedOperationException e) {
+        return extended.getCurrentThreadAllocatedBytes();
+      }
+    }
+    return -1;
+  }
+
+  /** Remembers when the last alert was sent instead of printing it. */
+  private static final class TimestampingNotifier implements NotificationService {
+    long notifiedAt;
+
+    @Override
+    public void sendAlert(String message) {
+      notifiedAt = System.nanoTime();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package com.smarthome.load;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Settings for a {@link LoadDriver} run.
+ *
+ * @param devices number of trigger devices (cameras), each with its own rule and target light
+ * @param rate target events per second
+ * @param duration how long to measure
+ * @param warmup how long to run before measuring
+ * @param globalFraction share of events that are global (0-1)
+ * @param zipfExponent skew of device popularity; 0 is uniform, 1 is classic Zipf
+ * @param seed seed for the event sequence, so runs are repeatable
+ */
+public record LoadProfile(
+    int devices,
+    int rate,
+    Duration duration,
+    Duration warmup,
+    double globalFraction,
+    double zipfExponent,
+    long seed) {
+
+  public LoadProfile {
+    if (devices <= 0) {
+      throw new IllegalArgumentException("devices must be positive");
+    }
+    if (rate <= 0) {
+      throw new IllegalArgumentException("rate must be positive");
+    }
+    if (duration.isNegative() || duration.isZero()) {
+      throw new IllegalArgumentException("duration must be positive");
+    }
+    if (warmup.isNegative()) {
+      throw new IllegalArgumentException("warmup must not be negative");
+    }
+    requireSchedulable("duration", duration, rate);
+    requireSchedulable("warmup", warmup, rate);
+    if (globalFraction < 0 || globalFraction > 1) {
+      throw new IllegalArgumentException("global must be between 0 and 1");
+    }
+    if (zipfExponent < 0) {
+      throw new IllegalArgumentException("zipf must not be negative");
+    }
+  }
+
+  /** Number of events a phase of this length fires at the profile's rate. */
+  long eventsIn(Duration phase) {
+    return eventsIn(phase, rate);
+  }
+
+  /** Counts whole seconds and the remainder apart, so the product stays within a long. */
+  private static long eventsIn(Duration phase, int rate) {
+    long wholeSeconds = Math.multiplyExact(phase.getSeconds(), (long) rate);
+    return Math.addExact(wholeSeconds, (long) phase.getNano() * rate / 1_000_000_000L);
+  }
+
+  /** Events are scheduled in nanoseconds from the start of a phase, so both must fit a long. */
+  private static void requireSchedulable(String name, Duration phase, int rate) {
+    try {
+      phase.toNanos();
+      eventsIn(phase, rate);
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException(
+          name + " is too long to schedule at " + rate + " events per second");
+    }
+  }
+
+  public static LoadProfile defaults() {
+    return new LoadProfile(
+        1000, 10_000, Duration.ofSeconds(10), Duration.ofSeconds(2), 0.05, 1.0, 42L);
+  }
+
+  /**
+   * Parses {@code key=value} arguments over the defaults. Keys are {@code devices}, {@code rate},
+   * {@code duration}, {@code warmup}, {@code global}, {@code zipf} and {@code seed}; durations take
+   * an {@code ms} or {@code s} suffix (seconds if omitted).
+   */
+  public static LoadProfile parse(String... args) {
+    LoadProfile profile = defaults();
+    int devices = profile.devices;
+    int rate = profile.rate;
+    Duration duration = profile.duration;
+    Duration warmup = profile.warmup;
+    double global = profile.globalFraction;
+    double zipf = profile.zipfExponent;
+    long seed = profile.seed;
+
+    for (String arg : args) {
+      int separator = arg.indexOf('=');
+      if (separator <= 0) {
+        throw new IllegalArgumentException("Expected key=value but got: " + arg);
+      }
+      String key = arg.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+      String value = arg.substring(separator + 1).trim();
+      try {
+        switch (key) {
+          case "devices" -> devices = Integer.parseInt(value);
+          case "rate" -> rate = Integer.parseInt(value);
+          case "duration" -> duration = parseDuration(value);
+          case "warmup" -> warmup = parseDuration(value);
+          case "global" -> global = Double.parseDouble(value);
+          case "zipf" -> zipf = Double.parseDouble(value);
+          case "seed" -> seed = Long.parseLong(value);
+          default -> throw new IllegalArgumentException("Unknown load setting: " + key);
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid value for " + key + ": " + value);
+      }
+    }
+    return new LoadProfile(devices, rate, duration, warmup, global, zipf, seed);
+  }
+
+  private static Duration parseDuration(String value) {
+    String lower = value.toLowerCase(Locale.ROOT);
+    if (lower.endsWith("ms")) {
+      return Duration.ofMillis(Long.parseLong(lower.substring(0, lower.length() - 2)));
+    }
+    if (lower.endsWith("s")) {
+      lower = lower.substring(0, lower.length() - 1);
+    }
+    return Duration.ofMillis(Math.round(Double.parseDouble(lower) * 1000));
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.ROOT,
+        "devices=%d rate=%d/s duration=%dms warmup=%dms global=%.2f zipf=%.2f seed=%d",
+        devices,
+        rate,
+        duration.toMillis(),
+        warmup.toMillis(),
+        globalFraction,
+        zipfExponent,
+        seed);
+  }
+}
@@ -0,0 +1,77 @@
+package com.smarthome.load;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Result of a {@link LoadDriver} run. Latencies are in nanoseconds, measured from the moment each
+ * event was scheduled to start until its notification was sent.
+ *
+ * @param allocatedBytes bytes allocated by the JVM during the measured phase, or -1 when the JVM
+ *     cannot report it
+ */
+public record LoadReport(
+    LoadProfile profile,
+    long events,
+    long globalEvents,
+    long firedRules,
+    Duration elapsed,
+    LatencyHistogram latencies,
+    long allocatedBytes) {
+
+  /** Events completed per second of wall-clock time. */
+  public double throughput() {
+    return events / seconds();
+  }
+
+  /** Bytes allocated per second, or -1 if unknown. */
+  public double allocationRate() {
+    return allocatedBytes < 0 ? -1 : allocatedBytes / seconds();
+  }
+
+  private double seconds() {
+    return Math.max(elapsed.toNanos(), 1) / 1e9;
+  }
+
+  public String format() {
+    StringBuilder report = new StringBuilder();
+    report.append("Load profile: ").append(profile).append('\n');
+    report.append(
+        String.format(
+            Locale.ROOT,
+            "Events: %d (%d global), rules fired: %d, elapsed: %d ms%n",
+            events,
+            globalEvents,
+            firedRules,
+            elapsed.toMillis()));
+    report.append(
+        String.format(
+            Locale.ROOT,
+            "Throughput: %.0f events/s (target %d/s)%n",
+            throughput(),
+            profile.rate()));
+    report.append(
+        String.format(
+            Locale.ROOT,
+            "Latency (us): p50=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+            micros(latencies.getValueAtPercentile(50)),
+            micros(latencies.getValueAtPercentile(99)),
+            micros(latencies.getValueAtPercentile(99.9)),
+            micros(latencies.getMax())));
+    if (allocatedBytes < 0) {
+      report.append("Allocation: not available on this JVM\n");
+    } else {
+      report.append(
+          String.format(
+              Locale.ROOT,
+              "Allocation: %.1f MB/s, %.0f bytes/event%n",
+              allocationRate() / (1024 * 1024),
+              events == 0 ? 0.0 : (double) allocatedBytes / events));
+    }
+    return report.toString();
+  }
+
+  private static double micros(long nanos) {
+    return nanos / 1000.0;
+  }
+}
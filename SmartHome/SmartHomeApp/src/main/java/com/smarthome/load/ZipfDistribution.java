@@ -0,0 +1,48 @@
+package com.smarthome.load;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Samples ranks {@code 0..n-1} where rank {@code k} has weight {@code 1 / (k + 1)^exponent}.
+ *
+ * <p>The cumulative distribution is computed once, so each sample is one uniform draw and a binary
+ * search. An exponent of 0 gives a uniform distribution.
+ */
+final class ZipfDistribution {
+  private final double[] cumulative;
+
+  ZipfDistribution(int size, double exponent) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("size must be positive");
+    }
+    if (exponent < 0) {
+      throw new IllegalArgumentException("exponent must not be negative");
+    }
+    cumulative = new double[size];
+    double sum = 0;
+    for (int rank = 0; rank < size; rank++) {
+      sum += 1.0 / Math.pow(rank + 1, exponent);
+      cumulative[rank] = sum;
+    }
+    for (int rank = 0; rank < size; rank++) {
+      cumulative[rank] /= sum;
+    }
+    cumulative[size - 1] = 1.0;
+  }
+
+  int size() {
+    return cumulative.length;
+  }
+
+  /** Probability of drawing {@code rank}. */
+  double probability(int rank) {
+    return rank == 0 ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+  }
+
+  int sample(SplittableRandom random) {
+    int index = Arrays.binarySearch(cumulative, random.nextDouble());
+    // A miss returns -(insertion point) - 1; the insertion point is the sampled rank
+    return index >= 0 ? index : -index - 1;
+  }
+}
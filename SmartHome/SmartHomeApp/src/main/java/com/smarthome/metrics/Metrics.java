@@ -0,0 +1,35 @@
+package com.smarthome.metrics;
+
+import java.lang.management.ManagementFactory;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** Holds the process-wide {@link MetricsRegistry} and publishes it over JMX on request. */
+public final class Metrics {
+  public static final String OBJECT_NAME = "com.smarthome:type=Metrics";
+
+  private static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+  private Metrics() {}
+
+  public static MetricsRegistry get() {
+    return REGISTRY;
+  }
+
+  /**
+   * Registers the registry with the platform MBean server under {@link #OBJECT_NAME}. Calling it
+   * again is harmless.
+   */
+  public static void registerMBean() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.registerMBean(REGISTRY, new ObjectName(OBJECT_NAME));
+    } catch (InstanceAlreadyExistsException e) {
+      // Already published
+    } catch (JMException e) {
+      throw new IllegalStateException("Could not register metrics MBean", e);
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.smarthome.metrics;
+
+import java.util.Map;
+
+/** JMX view of the {@link MetricsRegistry}, registered as {@value Metrics#OBJECT_NAME}. */
+public interface MetricsMXBean {
+
+  /** Per command name, e.g. "turnOn". Unknown command names are counted under "unknown". */
+  Map<String, OperationSnapshot> getCommands();
+
+  /** Per rule trigger, "event" for global rules and "event@device" for device rules. */
+  Map<String, OperationSnapshot> getRules();
+
+  /** Per scene name. */
+  Map<String, OperationSnapshot> getScenes();
+
+  OperationSnapshot getNotifications();
+
+  /** Events that found a rule whose time window was open. */
+  long getEventsMatched();
+
+  /** Events no rule was registered for. */
+  long getEventsUnmatched();
+
+  /** Events whose rule exists but was outside its time window. */
+  long getEventsOutsideWindow();
+
+  /** Events held back by a rule's debounce or throttle policy. */
+  long getEventsSuppressed();
+
+  void reset();
+}
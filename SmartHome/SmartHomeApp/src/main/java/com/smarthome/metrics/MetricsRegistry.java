@@ -0,0 +1,183 @@
+package com.smarthome.metrics;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers for commands, rules, scenes and notifications.
+ *
+ * <p>Lookups by name go through a {@link ConcurrentHashMap}, so hot paths resolve their {@link
+ * OperationStats} once (when a command is compiled, a rule is added or a scene is compiled) and
+ * keep the reference. Stats objects are never replaced; {@link #reset()} zeroes them in place so
+ * held references stay valid.
+ */
+public final class MetricsRegistry implements MetricsMXBean {
+  /** Stats name for command names that are not registered with the executor. */
+  public static final String UNKNOWN_COMMAND = "unknown";
+
+  private final Map<String, OperationStats> commands = new ConcurrentHashMap<>();
+  private final Map<String, OperationStats> rules = new ConcurrentHashMap<>();
+  private final Map<String, OperationStats> scenes = new ConcurrentHashMap<>();
+  private final OperationStats notifications = new OperationStats("notifications");
+  private final LongAdder eventsMatched = new LongAdder();
+  private final LongAdder eventsUnmatched = new LongAdder();
+  private final LongAdder eventsOutsideWindow = new LongAdder();
+  private final LongAdder eventsSuppressed = new LongAdder();
+  private volatile boolean enabled = true;
+
+  /** When disabled, instrumented code skips both timing and recording. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public OperationStats command(String name) {
+    return stats(commands, name == null ? UNKNOWN_COMMAND : name);
+  }
+
+  public OperationStats rule(String name) {
+    return stats(rules, name);
+  }
+
+  public OperationStats scene(String name) {
+    return stats(scenes, name);
+  }
+
+  public OperationStats notifications() {
+    return notifications;
+  }
+
+  public void eventMatched() {
+    eventsMatched.increment();
+  }
+
+  public void eventUnmatched() {
+    eventsUnmatched.increment();
+  }
+
+  public void eventOutsideWindow() {
+    eventsOutsideWindow.increment();
+  }
+
+  public void eventSuppressed() {
+    eventsSuppressed.increment();
+  }
+
+  private static OperationStats stats(Map<String, OperationStats> byName, String name) {
+    OperationStats stats = byName.get(name);
+    return stats != null ? stats : byName.computeIfAbsent(name, OperationStats::new);
+  }
+
+  @Override
+  public Map<String, OperationSnapshot> getCommands() {
+    return snapshot(commands);
+  }
+
+  @Override
+  public Map<String, OperationSnapshot> getRules() {
+    return snapshot(rules);
+  }
+
+  @Override
+  public Map<String, OperationSnapshot> getScenes() {
+    return snapshot(scenes);
+  }
+
+  @Override
+  public OperationSnapshot getNotifications() {
+    return notifications.snapshot();
+  }
+
+  @Override
+  public long getEventsMatched() {
+    return eventsMatched.sum();
+  }
+
+  @Override
+  public long getEventsUnmatched() {
+    return eventsUnmatched.sum();
+  }
+
+  @Override
+  public long getEventsOutsideWindow() {
+    return eventsOutsideWindow.sum();
+  }
+
+  @Override
+  public long getEventsSuppressed() {
+    return eventsSuppressed.sum();
+  }
+
+  @Override
+  public void reset() {
+    commands.values().forEach(OperationStats::reset);
+    rules.values().forEach(OperationStats::reset);
+    scenes.values().forEach(OperationStats::reset);
+    notifications.reset();
+    eventsMatched.reset();
+    eventsUnmatched.reset();
+    eventsOutsideWindow.reset();
+    eventsSuppressed.reset();
+  }
+
+  /** Busiest first; operations that never ran are left out. */
+  private static Map<String, OperationSnapshot> snapshot(Map<String, OperationStats> byName) {
+    List<OperationSnapshot> snapshots =
+        byName.values().stream()
+            .map(OperationStats::snapshot)
+            .filter(snapshot -> snapshot.getCount() > 0)
+            .sorted(Comparator.comparingLong(OperationSnapshot::getCount).reversed())
+            .toList();
+    Map<String, OperationSnapshot> result = new LinkedHashMap<>();
+    for (OperationSnapshot snapshot : snapshots) {
+      result.put(snapshot.getName(), snapshot);
+    }
+    return result;
+  }
+
+  /** Human-readable report for the CLI. */
+  public String format() {
+    StringBuilder report = new StringBuilder();
+    report.append(
+        String.format(
+            Locale.ROOT,
+            "Events: %d matched, %d unmatched, %d outside window, %d suppressed%n",
+            getEventsMatched(),
+            getEventsUnmatched(),
+            getEventsOutsideWindow(),
+            getEventsSuppressed()));
+    appendSection(report, "Commands", getCommands());
+    appendSection(report, "Rules", getRules());
+    appendSection(report, "Scenes", getScenes());
+    appendSection(report, "Notifications", Map.of("sent", getNotifications()));
+    return report.toString();
+  }
+
+  private static void appendSection(
+      StringBuilder report, String title, Map<String, OperationSnapshot> snapshots) {
+    report.append(title).append(':').append(System.lineSeparator());
+    if (snapshots.values().stream().allMatch(snapshot -> snapshot.getCount() == 0)) {
+      report.append("  (none)").append(System.lineSeparator());
+      return;
+    }
+    for (OperationSnapshot snapshot : snapshots.values()) {
+      report.append(
+          String.format(
+              Locale.ROOT,
+              "  %-24s count=%-8d failures=%-6d mean=%.1fus max=%.1fus%n",
+              snapshot.getName(),
+              snapshot.getCount(),
+              snapshot.getFailures(),
+              snapshot.getMeanNanos() / 1000.0,
+              snapshot.getMaxNanos() / 1000.0));
+    }
+  }
+}
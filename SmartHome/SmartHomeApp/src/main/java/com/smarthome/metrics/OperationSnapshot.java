@@ -0,0 +1,60 @@
+package com.smarthome.metrics;
+
+/**
+ * Point-in-time copy of an {@link OperationStats}. A plain getter class so JMX can expose it as
+ * composite data.
+ */
+public final class OperationSnapshot {
+  private final String name;
+  private final long count;
+  private final long failures;
+  private final long timedCount;
+  private final long totalNanos;
+  private final long maxNanos;
+
+  public OperationSnapshot(
+      String name, long count, long failures, long timedCount, long totalNanos, long maxNanos) {
+    this.name = name;
+    this.count = count;
+    this.failures = failures;
+    this.timedCount = timedCount;
+    this.totalNanos = totalNanos;
+    this.maxNanos = maxNanos;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getFailures() {
+    return failures;
+  }
+
+  /** Calls whose duration was measured; at most {@link #getCount()} when timing is sampled. */
+  public long getTimedCount() {
+    return timedCount;
+  }
+
+  /** Total time of the timed calls. */
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /** Mean over the timed calls. */
+  public long getMeanNanos() {
+    return timedCount == 0 ? 0 : totalNanos / timedCount;
+  }
+
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  @Override
+  public String toString() {
+    return name + "{count=" + count + ", failures=" + failures + ", mean=" + getMeanNanos() + "ns}";
+  }
+}
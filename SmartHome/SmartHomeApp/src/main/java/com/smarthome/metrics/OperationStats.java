@@ -0,0 +1,101 @@
+package com.smarthome.metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter and timer for one named operation (a command, rule, scene or the notification sink).
+ *
+ * <p>All fields are striped {@link LongAdder}s, so recording from many threads does not contend on
+ * a single cache line. Reads sum the stripes and are only approximately consistent with each other
+ * while recording is in progress.
+ *
+ * <p>Counts are exact. Two clock reads cost more than the counters themselves, so {@link
+ * #startTimer()} times only one call in {@value #TIMING_SAMPLE_INTERVAL}; mean and max latency are
+ * computed over the timed calls.
+ */
+public final class OperationStats {
+  /** On average one call in this many is timed by {@link #startTimer()}. */
+  public static final int TIMING_SAMPLE_INTERVAL = 8;
+
+  private static final long UNTIMED = Long.MIN_VALUE;
+
+  private final String name;
+  private final LongAdder count = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder timedCount = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  OperationStats(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Starts a sampled timer for one call; pass the result to {@link #stopTimer}. Returns a marker
+   * instead of reading the clock for calls that are not sampled.
+   */
+  public long startTimer() {
+    return ThreadLocalRandom.current().nextInt(TIMING_SAMPLE_INTERVAL) == 0
+        ? System.nanoTime()
+        : UNTIMED;
+  }
+
+  /** Counts the call started with {@link #startTimer}, recording its time if it was sampled. */
+  public void stopTimer(long start, boolean succeeded) {
+    if (start == UNTIMED) {
+      count.increment();
+      if (!succeeded) {
+        failures.increment();
+      }
+    } else {
+      record(System.nanoTime() - start, succeeded);
+    }
+  }
+
+  /** Records one completed operation that took {@code nanos}. */
+  public void record(long nanos, boolean succeeded) {
+    count.increment();
+    timedCount.increment();
+    totalNanos.add(nanos);
+    if (!succeeded) {
+      failures.increment();
+    }
+    // Most calls are not a new maximum; skip the accumulator write for them
+    if (nanos > maxNanos.get()) {
+      maxNanos.accumulate(nanos);
+    }
+  }
+
+  /** Records an operation that failed before it could be timed, e.g. an invalid command. */
+  public void recordFailure() {
+    count.increment();
+    failures.increment();
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  public OperationSnapshot snapshot() {
+    return new OperationSnapshot(
+        name, count.sum(), failures.sum(), timedCount.sum(), totalNanos.sum(), maxNanos.get());
+  }
+
+  void reset() {
+    count.reset();
+    failures.reset();
+    timedCount.reset();
+    totalNanos.reset();
+    maxNanos.reset();
+  }
+}
@@ -0,0 +1,144 @@
+package com.smarthome.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of length-prefixed, checksummed records written through a memory mapping.
+ *
+ * <p>Each record is {@code [int length][int crc32][payload]}. Appends only copy into the mapped
+ * region; durability comes from {@link #force()}, which the owning store calls on a timer (group
+ * commit). A torn or zeroed record marks the end of the log.
+ */
+final class CommandLog implements AutoCloseable {
+  static final int HEADER_BYTES = 8;
+  static final int DEFAULT_REGION_SIZE = 8 << 20;
+  private static final long MAX_READ_WINDOW = 1L << 30;
+
+  /** Receives the payload of each valid record during replay. */
+  @FunctionalInterface
+  interface RecordHandler {
+    void accept(ByteBuffer payload) throws IOException;
+  }
+
+  private final FileChannel channel;
+  private final int regionSize;
+  private final CRC32 crc = new CRC32();
+  private MappedByteBuffer region;
+  private long regionStart;
+  private boolean dirty;
+
+  private CommandLog(FileChannel channel, long end, int regionSize) throws IOException {
+    this.channel = channel;
+    this.regionSize = regionSize;
+    this.regionStart = end;
+    this.region = channel.map(FileChannel.MapMode.READ_WRITE, end, regionSize);
+  }
+
+  /**
+   * Opens (or creates) a log for appending after its last valid record. Anything past that record
+   * is zeroed so a stale record can never reappear behind a newer, shorter one.
+   */
+  static CommandLog openForAppend(Path file, int regionSize) throws IOException {
+    FileChannel channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long end = scan(channel, payload -> {});
+      long size = channel.size();
+      if (size > end) {
+        MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_WRITE, end, size - end);
+        while (tail.hasRemaining()) {
+          tail.put((byte) 0);
+        }
+        tail.force();
+      }
+      return new CommandLog(channel, end, regionSize);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** Hands every valid record's payload to {@code handler}, in order. */
+  static void replay(Path file, RecordHandler handler) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      scan(channel, handler);
+    }
+  }
+
+  /** Reads records until the end of the valid prefix and returns its length in bytes. */
+  private static long scan(FileChannel channel, RecordHandler handler) throws IOException {
+    long size = channel.size();
+    long position = 0;
+    CRC32 checksum = new CRC32();
+    while (size - position >= HEADER_BYTES) {
+      MappedByteBuffer window =
+          channel.map(
+              FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, MAX_READ_WINDOW));
+      int consumed = 0;
+      while (window.limit() - consumed >= HEADER_BYTES) {
+        int length = window.getInt(consumed);
+        if (length <= 0 || length > size - position - consumed - HEADER_BYTES) {
+          return position + consumed; // zeroed tail or torn record
+        }
+        if (length > window.limit() - consumed - HEADER_BYTES) {
+          break; // record continues past this window
+        }
+        ByteBuffer payload = window.slice(consumed + HEADER_BYTES, length);
+        checksum.reset();
+        checksum.update(payload.duplicate());
+        if ((int) checksum.getValue() != window.getInt(consumed + 4)) {
+          return position + consumed;
+        }
+        handler.accept(payload);
+        consumed += HEADER_BYTES + length;
+      }
+      if (consumed == 0) {
+        break;
+      }
+      position += consumed;
+    }
+    return position;
+  }
+
+  synchronized void append(byte[] payload, int length) throws IOException {
+    int needed = HEADER_BYTES + length;
+    if (region.remaining() < needed) {
+      region.force();
+      regionStart += region.position();
+      region =
+          channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(regionSize, needed));
+    }
+    crc.reset();
+    crc.update(payload, 0, length);
+    region.putInt(length);
+    region.putInt((int) crc.getValue());
+    region.put(payload, 0, length);
+    dirty = true;
+  }
+
+  /** Flushes appended records to disk. Appends may continue while the flush runs. */
+  void force() {
+    MappedByteBuffer toForce;
+    synchronized (this) {
+      if (!dirty) {
+        return;
+      }
+      dirty = false;
+      toForce = region;
+    }
+    toForce.force();
+  }
+
+  @Override
+  public void close() throws IOException {
+    force();
+    channel.close();
+  }
+}
@@ -0,0 +1,243 @@
+package com.smarthome.persistence;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Device;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SecurityCamera;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.exceptions.InvalidCommandException;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+/** Binary encoding of devices, command values and command-log records, shared with snapshots. */
+final class HomeRecords {
+  static final byte ROOM_ADDED = 1;
+  static final byte ROOM_DELETED = 2;
+  static final byte DEVICE_ADDED = 3;
+  static final byte DEVICE_REMOVED = 4;
+  static final byte DEVICE_RENAMED = 5;
+  static final byte COMMAND = 6;
+
+  private static final byte LIGHT = 1;
+  private static final byte THERMOSTAT = 2;
+  private static final byte SECURITY_CAMERA = 3;
+
+  private static final byte NO_VALUE = 0;
+  private static final byte INT_VALUE = 1;
+  private static final byte DOUBLE_VALUE = 2;
+  private static final byte STRING_VALUE = 3;
+
+  private HomeRecords() {}
+
+  /** True for the device types whose state can be written. */
+  static boolean isSupported(Device device) {
+    return device instanceof Light
+        || device instanceof Thermostat
+        || device instanceof SecurityCamera;
+  }
+
+  static void writeDevice(DataOutput out, Device device) throws IOException {
+    if (device instanceof Light light) {
+      out.writeByte(LIGHT);
+      writeIdentity(out, device);
+      out.writeBoolean(light.isOn());
+      out.writeInt(light.getBrightness());
+    } else if (device instanceof Thermostat thermostat) {
+      out.writeByte(THERMOSTAT);
+      writeIdentity(out, device);
+      out.writeBoolean(thermostat.isOn());
+      out.writeDouble(thermostat.getTemp());
+    } else if (device instanceof SecurityCamera camera) {
+      out.writeByte(SECURITY_CAMERA);
+      writeIdentity(out, device);
+      out.writeBoolean(camera.isRecording());
+    } else {
+      throw new IllegalArgumentException(
+          "Unsupported device type: " + device.getClass().getSimpleName());
+    }
+  }
+
+  /** Reads a device, passing its id and name through {@code names} so they can be shared. */
+  static Device readDevice(ByteBuffer in, UnaryOperator<String> names) throws IOException {
+    byte type = in.get();
+    String id = readName(in, names);
+    String name = readName(in, names);
+    switch (type) {
+      case LIGHT -> {
+        Light light = new Light(id, name);
+        boolean on = in.get() != 0;
+        int brightness = in.getInt();
+        if (on) {
+          light.turnOn();
+          light.setBrightness(brightness);
+        }
+        return light;
+      }
+      case THERMOSTAT -> {
+        Thermostat thermostat = new Thermostat(id, name);
+        if (in.get() != 0) {
+          thermostat.turnOn();
+        }
+        thermostat.setTemp(in.getDouble());
+        return thermostat;
+      }
+      case SECURITY_CAMERA -> {
+        SecurityCamera camera = new SecurityCamera(id, name);
+        if (in.get() != 0) {
+          camera.startRecording();
+        }
+        return camera;
+      }
+      default -> throw new IOException("Unknown device type code: " + type);
+    }
+  }
+
+  private static void writeIdentity(DataOutput out, Device device) throws IOException {
+    writeString(out, device.getDeviceId());
+    writeString(out, device.getDeviceName());
+  }
+
+  /** Integers and other numbers keep their type so replay parses them exactly as before. */
+  static void writeValue(DataOutput out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(NO_VALUE);
+    } else if (value instanceof Integer number) {
+      out.writeByte(INT_VALUE);
+      out.writeInt(number);
+    } else if (value instanceof Number number) {
+      out.writeByte(DOUBLE_VALUE);
+      out.writeDouble(number.doubleValue());
+    } else {
+      out.writeByte(STRING_VALUE);
+      writeString(out, value.toString());
+    }
+  }
+
+  static Object readValue(ByteBuffer in) throws IOException {
+    byte kind = in.get();
+    return switch (kind) {
+      case NO_VALUE -> null;
+      case INT_VALUE -> in.getInt();
+      case DOUBLE_VALUE -> in.getDouble();
+      case STRING_VALUE -> readString(in);
+      default -> throw new IOException("Unknown value kind: " + kind);
+    };
+  }
+
+  static void writeRoomId(DataOutput out, Room room) throws IOException {
+    out.writeLong(room.getRoomID().getMostSignificantBits());
+    out.writeLong(room.getRoomID().getLeastSignificantBits());
+  }
+
+  static UUID readRoomId(ByteBuffer in) {
+    return new UUID(in.getLong(), in.getLong());
+  }
+
+  static void writeString(DataOutput out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(ByteBuffer in) {
+    int length = in.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static String readName(ByteBuffer in, UnaryOperator<String> names) {
+    String value = readString(in);
+    return value == null ? null : names.apply(value);
+  }
+
+  /**
+   * Applies logged records to a home during recovery. Rooms are matched by the id written with
+   * each record, so rooms that share a name, in any case, stay apart.
+   */
+  static final class Replayer {
+    private final HomeManager homeManager;
+    private final UnaryOperator<String> names;
+    private final Map<UUID, Room> roomsById = new HashMap<>();
+    private long applied;
+
+    Replayer(HomeManager homeManager, UnaryOperator<String> names) {
+      this.homeManager = homeManager;
+      this.names = names;
+      for (Room room : homeManager.getRooms()) {
+        roomsById.put(room.getRoomID(), room);
+      }
+    }
+
+    /** Number of records applied so far. */
+    long applied() {
+      return applied;
+    }
+
+    void apply(ByteBuffer record) throws IOException {
+      byte type = record.get();
+      switch (type) {
+        case ROOM_ADDED -> {
+          UUID id = readRoomId(record);
+          Room room = new Room(readName(record, names), id);
+          homeManager.addRoom(room);
+          roomsById.put(id, room);
+        }
+        case ROOM_DELETED -> {
+          Room room = roomsById.remove(readRoomId(record));
+          if (room != null) {
+            homeManager.deleteRoom(room);
+          }
+        }
+        case DEVICE_ADDED -> {
+          Room room = roomsById.get(readRoomId(record));
+          Device device = readDevice(record, names);
+          if (room != null) {
+            homeManager.addDevice(device, room);
+          }
+        }
+        case DEVICE_REMOVED -> {
+          Device device = homeManager.getDeviceById(readString(record));
+          if (device != null) {
+            homeManager.removeDevice(device);
+          }
+        }
+        case DEVICE_RENAMED -> {
+          Device device = homeManager.getDeviceById(readString(record));
+          String newName = readName(record, names);
+          if (device != null) {
+            device.setDeviceName(newName);
+          }
+        }
+        case COMMAND -> {
+          Device device = homeManager.getDeviceById(readString(record));
+          String command = readString(record);
+          Object value = readValue(record);
+          if (device != null) {
+            try {
+              homeManager.sendCommand(device, command, value);
+            } catch (InvalidCommandException e) {
+              // Only successful commands are logged; ignore one the device no longer accepts
+            }
+          }
+        }
+        default -> throw new IOException("Unknown record type: " + type);
+      }
+      applied++;
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package com.smarthome.persistence;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Device;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary image of a home: rooms with their ids, then devices with their state, then a
+ * CRC32 of everything before it. Written to a temporary file and atomically renamed; read back
+ * through a read-only memory mapping.
+ */
+final class HomeSnapshot {
+  private static final int MAGIC = 0x53485331; // "SHS1"
+  private static final int VERSION = 1;
+
+  private HomeSnapshot() {}
+
+  /**
+   * Encodes the home's current state, tagged with the log generation that follows it. Touches no
+   * files, so a caller can take the image under a lock and write it after releasing it.
+   */
+  static byte[] encode(long generation, HomeManager homeManager) {
+    List<Room> rooms = new ArrayList<>(homeManager.getRooms());
+    Map<Room, Integer> roomIndexes = new IdentityHashMap<>();
+    List<Device> devices = new ArrayList<>(homeManager.getDeviceCount());
+    for (Room room : rooms) {
+      roomIndexes.put(room, roomIndexes.size());
+      for (Device device : room.getDevices()) {
+        if (HomeRecords.isSupported(device)) {
+          devices.add(device);
+        }
+      }
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 64 * devices.size());
+    CheckedOutputStream checked = new CheckedOutputStream(bytes, new CRC32());
+    DataOutputStream out = new DataOutputStream(checked);
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(generation);
+      HomeRecords.writeString(out, homeManager.getAccountId());
+      out.writeInt(rooms.size());
+      for (Room room : rooms) {
+        HomeRecords.writeRoomId(out, room);
+        HomeRecords.writeString(out, room.getRoomName());
+      }
+      out.writeInt(devices.size());
+      for (Device device : devices) {
+        out.writeInt(roomIndexes.get(homeManager.getRoomOfDevice(device)));
+        HomeRecords.writeDevice(out, device);
+      }
+      out.writeInt((int) checked.getChecksum().getValue());
+    } catch (IOException e) {
+      throw new UncheckedIOException("In-memory stream failed", e); // cannot happen
+    }
+    return bytes.toByteArray();
+  }
+
+  /** Writes an encoded image to a temporary file, forces it and renames it over {@code file}. */
+  static void write(Path file, byte[] image) throws IOException {
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileOutputStream stream = new FileOutputStream(temp.toFile())) {
+      stream.write(image);
+      stream.getChannel().force(true);
+    }
+    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Loads a snapshot into an empty home and returns the log generation it precedes. Room and
+   * device names and ids pass through {@code names}, e.g. an interner shared between homes.
+   *
+   * @throws IOException if the file is corrupt or belongs to another account
+   */
+  static long read(Path file, HomeManager homeManager, UnaryOperator<String> names)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot too large to map: " + file);
+      }
+      MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (size < 4) {
+        throw new IOException("Truncated snapshot: " + file);
+      }
+      CRC32 crc = new CRC32();
+      crc.update(in.slice(0, (int) size - 4));
+      if ((int) crc.getValue() != in.getInt((int) size - 4)) {
+        throw new IOException("Snapshot checksum mismatch: " + file);
+      }
+      return parse(in, homeManager, names, file);
+    }
+  }
+
+  private static long parse(
+      ByteBuffer in, HomeManager homeManager, UnaryOperator<String> names, Path file)
+      throws IOException {
+    if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+      throw new IOException("Not a home snapshot: " + file);
+    }
+    long generation = in.getLong();
+    String accountId = HomeRecords.readString(in);
+    if (!homeManager.getAccountId().equals(accountId)) {
+      throw new IOException("Snapshot belongs to account " + accountId + ": " + file);
+    }
+    Room[] rooms = new Room[in.getInt()];
+    for (int i = 0; i < rooms.length; i++) {
+      UUID id = HomeRecords.readRoomId(in);
+      rooms[i] = new Room(HomeRecords.readName(in, names), id);
+      homeManager.addRoom(rooms[i]);
+    }
+    int deviceCount = in.getInt();
+    for (int i = 0; i < deviceCount; i++) {
+      Room room = rooms[in.getInt()];
+      homeManager.addDevice(HomeRecords.readDevice(in, names), room);
+    }
+    return generation;
+  }
+}
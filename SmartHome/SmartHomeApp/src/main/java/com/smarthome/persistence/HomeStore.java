@@ -0,0 +1,462 @@
+package com.smarthome.persistence;
+
+import com.smarthome.app.HomeChangeListener;
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Device;
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.Journals;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Durable storage for one {@link HomeManager}.
+ *
+ * <p>The home is restored from the latest snapshot plus the command logs written after it. From
+ * then on every successful topology change and command is appended to a memory-mapped command log.
+ * Appends never wait for the disk: a background thread forces the log every sync interval (group
+ * commit), so at most that much work can be lost in a crash. Once the log holds more records than
+ * the snapshot threshold and than the home has devices, the same thread writes a new snapshot and
+ * deletes older logs; replay after a restart is therefore bounded by the size of the home.
+ *
+ * <p>Appends run inside home change listeners, after the change has happened, so they never throw:
+ * a record that cannot be written is reported to the {@link Journals journal} instead.
+ *
+ * <p>A process hosting many homes opens their stores with one {@link Shared}, so they share a sync
+ * thread and interned names and use smaller log regions.
+ *
+ * <p>Files in the directory: {@code home.snapshot} and {@code commands-<generation>.log}. A
+ * snapshot of generation {@code g} contains everything logged before {@code commands-g.log}.
+ */
+public final class HomeStore implements AutoCloseable {
+  public static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofMillis(10);
+  public static final long DEFAULT_SNAPSHOT_THRESHOLD = 100_000;
+
+  private static final String SNAPSHOT_FILE = "home.snapshot";
+  private static final Pattern LOG_FILE = Pattern.compile("commands-(\\d+)\\.log");
+
+  private final Path directory;
+  private final HomeManager homeManager;
+  private final long snapshotThreshold;
+  private final boolean restored;
+  private final int logRegionSize;
+  // Null when the sync thread belongs to a Shared
+  private final ScheduledExecutorService ownSyncExecutor;
+  private final ScheduledFuture<?> syncTask;
+  private final RecordBuffer scratch = new RecordBuffer();
+  private final DataOutputStream scratchOut = new DataOutputStream(scratch);
+  private final Recorder recorder = new Recorder();
+  // Serializes snapshot file writes so they land in generation order
+  private final Object snapshotLock = new Object();
+  private CommandLog log;
+  private long generation;
+  private long recordsSinceSnapshot;
+  private boolean snapshotDue;
+  private boolean closed;
+
+  private HomeStore(
+      Path directory,
+      HomeManager homeManager,
+      long generation,
+      boolean restored,
+      Duration syncInterval,
+      long snapshotThreshold,
+      Shared shared)
+      throws IOException {
+    this.directory = directory;
+    this.homeManager = homeManager;
+    this.generation = generation;
+    this.restored = restored;
+    this.snapshotThreshold = snapshotThreshold;
+    this.logRegionSize = shared != null ? shared.logRegionSize : CommandLog.DEFAULT_REGION_SIZE;
+    this.log = CommandLog.openForAppend(logFile(generation), logRegionSize);
+    this.ownSyncExecutor = shared != null ? null : newSyncExecutor();
+    ScheduledExecutorService syncExecutor =
+        shared != null ? shared.syncExecutor : ownSyncExecutor;
+    long nanos = syncInterval.toNanos();
+    this.syncTask =
+        syncExecutor.scheduleWithFixedDelay(
+            this::syncInBackground, nanos, nanos, TimeUnit.NANOSECONDS);
+    homeManager.addChangeListener(recorder);
+  }
+
+  private static ScheduledExecutorService newSyncExecutor() {
+    return Executors.newSingleThreadScheduledExecutor(
+        runnable -> {
+          Thread thread = new Thread(runnable, "home-store-sync");
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /** Opens the store in {@code directory} with the default sync interval and snapshot threshold. */
+  public static HomeStore open(Path directory, String accountId) throws IOException {
+    return open(directory, accountId, DEFAULT_SYNC_INTERVAL, DEFAULT_SNAPSHOT_THRESHOLD);
+  }
+
+  /**
+   * Opens the store in {@code directory}, restoring its home or starting an empty one.
+   *
+   * @param syncInterval how often appended records are forced to disk
+   * @param snapshotThreshold minimum number of records between automatic snapshots
+   * @throws IOException if the directory cannot be used or the snapshot is corrupt
+   */
+  public static HomeStore open(
+      Path directory, String accountId, Duration syncInterval, long snapshotThreshold)
+      throws IOException {
+    return open(directory, accountId, syncInterval, snapshotThreshold, null);
+  }
+
+  /**
+   * Opens the store in {@code directory} with the default sync interval and snapshot threshold,
+   * using the sync thread, name interner and log region size of {@code shared}.
+   */
+  public static HomeStore open(Path directory, String accountId, Shared shared)
+      throws IOException {
+    if (shared == null) {
+      throw new IllegalArgumentException("shared must not be null");
+    }
+    return open(directory, accountId, DEFAULT_SYNC_INTERVAL, DEFAULT_SNAPSHOT_THRESHOLD, shared);
+  }
+
+  private static HomeStore open(
+      Path directory,
+      String accountId,
+      Duration syncInterval,
+      long snapshotThreshold,
+      Shared shared)
+      throws IOException {
+    if (syncInterval.isNegative() || syncInterval.isZero()) {
+      throw new IllegalArgumentException("syncInterval must be positive");
+    }
+    if (snapshotThreshold <= 0) {
+      throw new IllegalArgumentException("snapshotThreshold must be positive");
+    }
+    Files.createDirectories(directory);
+    HomeManager homeManager = new HomeManager(accountId);
+
+    // Restoring turns devices on and off; keep that out of the diagnostic journal
+    Journal previous = Journals.set(Journal.silent());
+    try {
+      Path snapshot = directory.resolve(SNAPSHOT_FILE);
+      boolean restored = Files.exists(snapshot);
+      UnaryOperator<String> names = shared != null ? shared::intern : UnaryOperator.identity();
+      long generation = restored ? HomeSnapshot.read(snapshot, homeManager, names) : 0;
+
+      HomeRecords.Replayer replayer = new HomeRecords.Replayer(homeManager, names);
+      long latest = generation;
+      for (long logGeneration : logGenerations(directory)) {
+        Path file = directory.resolve(logName(logGeneration));
+        if (logGeneration < generation) {
+          Files.delete(file); // already folded into the snapshot
+          continue;
+        }
+        CommandLog.replay(file, replayer::apply);
+        latest = logGeneration;
+      }
+      restored |= replayer.applied() > 0;
+      return new HomeStore(
+          directory, homeManager, latest, restored, syncInterval, snapshotThreshold, shared);
+    } finally {
+      Journals.set(previous);
+    }
+  }
+
+  public HomeManager getHomeManager() {
+    return homeManager;
+  }
+
+  /**
+   * True if state was loaded from disk: a snapshot or at least one logged record. False if the
+   * store started empty, including from logs that hold no records.
+   */
+  public boolean wasRestored() {
+    return restored;
+  }
+
+  /** The generation of the command log currently being appended to. */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Writes a snapshot of the current state, starts a new command log and deletes the old ones. A
+   * crash at any point leaves either the old snapshot with its logs or the new one.
+   *
+   * <p>Appends wait only while the log is switched and the home encoded in memory; the snapshot
+   * file is written and forced after they resume.
+   */
+  public void snapshot() throws IOException {
+    synchronized (snapshotLock) {
+      long next;
+      byte[] image;
+      CommandLog previousLog;
+      synchronized (this) {
+        requireOpen();
+        next = generation + 1;
+        previousLog = log;
+        log = CommandLog.openForAppend(logFile(next), logRegionSize);
+        image = HomeSnapshot.encode(next, homeManager);
+        generation = next;
+        recordsSinceSnapshot = 0;
+        snapshotDue = false;
+      }
+      previousLog.close();
+      HomeSnapshot.write(directory.resolve(SNAPSHOT_FILE), image);
+      for (long logGeneration : logGenerations(directory)) {
+        if (logGeneration < next) {
+          Files.deleteIfExists(logFile(logGeneration));
+        }
+      }
+    }
+  }
+
+  /**
+   * Forces appended records to disk now instead of waiting for the next group commit, and writes
+   * the snapshot if enough records have been appended to call for one.
+   */
+  public void sync() throws IOException {
+    forceLog();
+    boolean due;
+    synchronized (this) {
+      due = snapshotDue && !closed;
+    }
+    if (due) {
+      snapshot();
+    }
+  }
+
+  /**
+   * Waits for a snapshot in progress, forces outstanding records, stops the sync thread and
+   * detaches from the home.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (snapshotLock) {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        homeManager.removeChangeListener(recorder);
+        syncTask.cancel(false);
+        if (ownSyncExecutor != null) {
+          ownSyncExecutor.shutdownNow();
+        }
+        log.close();
+      }
+    }
+  }
+
+  private void forceLog() {
+    CommandLog current;
+    synchronized (this) {
+      current = log;
+    }
+    current.force();
+  }
+
+  /** The periodic task; an exception would cancel it, so failures go to the journal. */
+  private void syncInBackground() {
+    try {
+      sync();
+    } catch (IOException | RuntimeException e) {
+      Journals.get().error("Failed to sync home store " + directory + ": " + e);
+    }
+  }
+
+  private synchronized void append(RecordWriter writer) {
+    if (closed) {
+      return;
+    }
+    try {
+      scratch.reset();
+      writer.write(scratchOut);
+      scratchOut.flush();
+      log.append(scratch.array(), scratch.size());
+      // A snapshot costs time proportional to the home, so large homes snapshot less often
+      if (++recordsSinceSnapshot >= Math.max(snapshotThreshold, homeManager.getDeviceCount())) {
+        snapshotDue = true;
+      }
+    } catch (IOException e) {
+      Journals.get().error("Failed to persist home change to " + directory + ": " + e);
+    }
+  }
+
+  private void requireOpen() {
+    if (closed) {
+      throw new IllegalStateException("Home store is closed");
+    }
+  }
+
+  private Path logFile(long logGeneration) {
+    return directory.resolve(logName(logGeneration));
+  }
+
+  private static String logName(long logGeneration) {
+    return "commands-" + logGeneration + ".log";
+  }
+
+  private static List<Long> logGenerations(Path directory) throws IOException {
+    List<Long> generations = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      files.forEach(
+          file -> {
+            Matcher matcher = LOG_FILE.matcher(file.getFileName().toString());
+            if (matcher.matches()) {
+              generations.add(Long.parseLong(matcher.group(1)));
+            }
+          });
+    }
+    generations.sort(null);
+    return generations;
+  }
+
+  /**
+   * Resources shared by the stores of many homes in one process: a single sync thread instead of
+   * one per store, an interner so room and device names repeated across homes are held once, and a
+   * log region sized for small homes (a log maps a new region whenever one fills up).
+   */
+  public static final class Shared implements AutoCloseable {
+    /** Region size suited to homes with tens of devices. */
+    public static final int DEFAULT_LOG_REGION_SIZE = 64 << 10;
+
+    private final ScheduledExecutorService syncExecutor = newSyncExecutor();
+    private final ConcurrentMap<String, String> names = new ConcurrentHashMap<>();
+    private final int logRegionSize;
+
+    public Shared() {
+      this(DEFAULT_LOG_REGION_SIZE);
+    }
+
+    public Shared(int logRegionSize) {
+      if (logRegionSize < 4096) {
+        throw new IllegalArgumentException("logRegionSize must be at least 4096 bytes");
+      }
+      this.logRegionSize = logRegionSize;
+    }
+
+    /** Returns the shared instance equal to {@code name}. Names are never forgotten. */
+    public String intern(String name) {
+      String existing = names.putIfAbsent(name, name);
+      return existing != null ? existing : name;
+    }
+
+    /** Number of distinct names interned so far. */
+    public int internedCount() {
+      return names.size();
+    }
+
+    /** Stops the sync thread; close the stores first so their last records are forced. */
+    @Override
+    public void close() {
+      syncExecutor.shutdownNow();
+    }
+  }
+
+  @FunctionalInterface
+  private interface RecordWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  /** Reusable encode buffer; exposes its array so appends do not copy twice. */
+  private static final class RecordBuffer extends ByteArrayOutputStream {
+    RecordBuffer() {
+      super(256);
+    }
+
+    byte[] array() {
+      return buf;
+    }
+  }
+
+  /** Turns home changes into log records. */
+  private final class Recorder implements HomeChangeListener {
+    @Override
+    public void roomAdded(Room room) {
+      append(
+          out -> {
+            out.writeByte(HomeRecords.ROOM_ADDED);
+            HomeRecords.writeRoomId(out, room);
+            HomeRecords.writeString(out, room.getRoomName());
+          });
+    }
+
+    @Override
+    public void roomDeleted(Room room) {
+      append(
+          out -> {
+            out.writeByte(HomeRecords.ROOM_DELETED);
+            HomeRecords.writeRoomId(out, room);
+          });
+    }
+
+    @Override
+    public void deviceAdded(Device device, Room room) {
+      if (!HomeRecords.isSupported(device)) {
+        return;
+      }
+      append(
+          out -> {
+            out.writeByte(HomeRecords.DEVICE_ADDED);
+            HomeRecords.writeRoomId(out, room);
+            HomeRecords.writeDevice(out, device);
+          });
+    }
+
+    @Override
+    public void deviceRemoved(Device device, Room room) {
+      if (!HomeRecords.isSupported(device)) {
+        return;
+      }
+      append(
+          out -> {
+            out.writeByte(HomeRecords.DEVICE_REMOVED);
+            HomeRecords.writeString(out, device.getDeviceId());
+          });
+    }
+
+    @Override
+    public void deviceRenamed(Device device, String oldName) {
+      if (!HomeRecords.isSupported(device)) {
+        return;
+      }
+      append(
+          out -> {
+            out.writeByte(HomeRecords.DEVICE_RENAMED);
+            HomeRecords.writeString(out, device.getDeviceId());
+            HomeRecords.writeString(out, device.getDeviceName());
+          });
+    }
+
+    @Override
+    public void commandExecuted(Device device, String command, Object value) {
+      if (!HomeRecords.isSupported(device)) {
+        return;
+      }
+      append(
+          out -> {
+            out.writeByte(HomeRecords.COMMAND);
+            HomeRecords.writeString(out, device.getDeviceId());
+            HomeRecords.writeString(out, command);
+            HomeRecords.writeValue(out, value);
+          });
+    }
+  }
+}
@@ -28,4 +28,17 @@ public class Action {
   public String getValue() {
     return value;
   }
+
+  @Override
+  public String toString() {
+    return "Action{"
+        + "deviceId='"
+        + deviceId
+        + '\''
+        + ", command='"
+        + command
+        + '\''
+        + (value != null ? ", value='" + value + '\'' : "")
+        + '}';
+  }
 }
@@ -0,0 +1,69 @@
+package com.smarthome.scene;
+
+import java.time.Duration;
+
+/** Outcome of one scene action. */
+public class ActionResult {
+
+  public enum Status {
+    SUCCEEDED,
+    FAILED,
+    /** The action did not finish within the scene manager's action timeout. */
+    TIMED_OUT,
+    /** Not attempted because an earlier action on the same device timed out. */
+    CANCELLED,
+    /** Not sent because it would not change the device; see {@link SceneManager#setDiffing}. */
+    SKIPPED
+  }
+
+  private final Action action;
+  private final Status status;
+  private final String error;
+  private final Duration duration;
+
+  public ActionResult(Action action, Status status, String error, Duration duration) {
+    this.action = action;
+    this.status = status;
+    this.error = error;
+    this.duration = duration;
+  }
+
+  static ActionResult succeeded(Action action, long elapsedNanos) {
+    return new ActionResult(action, Status.SUCCEEDED, null, Duration.ofNanos(elapsedNanos));
+  }
+
+  static ActionResult skipped(Action action) {
+    return new ActionResult(action, Status.SKIPPED, null, Duration.ZERO);
+  }
+
+  static ActionResult failed(Action action, String error, long elapsedNanos) {
+    return new ActionResult(action, Status.FAILED, error, Duration.ofNanos(elapsedNanos));
+  }
+
+  public Action getAction() {
+    return action;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  /** Failure description, or null when the action succeeded. */
+  public String getError() {
+    return error;
+  }
+
+  public Duration getDuration() {
+    return duration;
+  }
+
+  /** True if the action took effect or was skipped because it had nothing to do. */
+  public boolean isSuccess() {
+    return status == Status.SUCCEEDED || status == Status.SKIPPED;
+  }
+
+  @Override
+  public String toString() {
+    return status + " " + action + (error != null ? ": " + error : "");
+  }
+}
@@ -0,0 +1,142 @@
+package com.smarthome.scene;
+
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Daily time window of a {@link Rule}, precomputed as minute-of-day bitmaps.
+ *
+ * <p>Minutes that lie wholly inside or outside the window are answered by a single bit test. Only
+ * the (at most two) minutes containing a window bound fall back to exact {@link LocalTime}
+ * comparison, so results match the original inclusive, second-precise semantics.
+ *
+ * <p>Windows are interned: rules with the same bounds share one instance, which keeps the bitmaps'
+ * memory proportional to the number of distinct windows rather than the number of rules.
+ */
+final class ActivationWindow {
+  private static final int MINUTES_PER_DAY = 24 * 60;
+  private static final Map<ActivationWindow, ActivationWindow> INTERNED = new ConcurrentHashMap<>();
+
+  private final LocalTime startAfter;
+  private final LocalTime endBefore;
+  private final long[] activeMinutes = new long[(MINUTES_PER_DAY + 63) / 64];
+  private final long[] boundaryMinutes = new long[(MINUTES_PER_DAY + 63) / 64];
+
+  private ActivationWindow(LocalTime startAfter, LocalTime endBefore) {
+    this.startAfter = startAfter;
+    this.endBefore = endBefore;
+  }
+
+  /** Returns the shared window for these bounds, or null when the rule is always active. */
+  static ActivationWindow of(LocalTime startAfter, LocalTime endBefore) {
+    if (startAfter == null && endBefore == null) {
+      return null;
+    }
+    ActivationWindow key = new ActivationWindow(startAfter, endBefore);
+    return INTERNED.computeIfAbsent(key, ActivationWindow::precompute);
+  }
+
+  private static ActivationWindow precompute(ActivationWindow window) {
+    if (window.startAfter != null) {
+      setBit(window.boundaryMinutes, minuteOf(window.startAfter));
+    }
+    if (window.endBefore != null) {
+      setBit(window.boundaryMinutes, minuteOf(window.endBefore));
+    }
+    for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+      if (!testBit(window.boundaryMinutes, minute)
+          && window.isActiveExactly(LocalTime.of(minute / 60, minute % 60))) {
+        setBit(window.activeMinutes, minute);
+      }
+    }
+    return window;
+  }
+
+  boolean isActiveAt(LocalTime time) {
+    int minute = minuteOf(time);
+    if (testBit(boundaryMinutes, minute)) {
+      return isActiveExactly(time);
+    }
+    return testBit(activeMinutes, minute);
+  }
+
+  /**
+   * Returns the next instant strictly after {@code time} at which the window may open or close,
+   * wrapping to the next day if needed. Midnight is always a candidate for open-ended windows.
+   */
+  LocalTime nextTransitionAfter(LocalTime time) {
+    LocalTime best = null;
+    for (LocalTime candidate : transitions()) {
+      if (candidate.isAfter(time) && (best == null || candidate.isBefore(best))) {
+        best = candidate;
+      }
+    }
+    if (best != null) {
+      return best;
+    }
+    // Nothing left today; the earliest transition tomorrow
+    LocalTime earliest = LocalTime.MIDNIGHT;
+    for (LocalTime candidate : transitions()) {
+      if (candidate.isBefore(earliest)) {
+        earliest = candidate;
+      }
+    }
+    return earliest;
+  }
+
+  private LocalTime[] transitions() {
+    LocalTime closing =
+        endBefore == null || endBefore.equals(LocalTime.MAX)
+            ? LocalTime.MIDNIGHT
+            : endBefore.plusNanos(1);
+    return new LocalTime[] {
+      startAfter != null ? startAfter : LocalTime.MIDNIGHT, closing, LocalTime.MIDNIGHT
+    };
+  }
+
+  /** The original window check, used at boundary minutes and to build the bitmaps. */
+  private boolean isActiveExactly(LocalTime now) {
+    if (startAfter == null) return !now.isAfter(endBefore);
+    if (endBefore == null) return !now.isBefore(startAfter);
+    // Check if time window crosses midnight (e.g., 23:00 to 02:00)
+    if (endBefore.isBefore(startAfter)) {
+      // Overnight window: active if after startAfter OR before endBefore
+      return !now.isBefore(startAfter) || !now.isAfter(endBefore);
+    } else {
+      // Same-day window: active if between startAfter and endBefore
+      return !now.isBefore(startAfter) && !now.isAfter(endBefore);
+    }
+  }
+
+  private static int minuteOf(LocalTime time) {
+    return time.getHour() * 60 + time.getMinute();
+  }
+
+  private static void setBit(long[] bits, int index) {
+    bits[index >>> 6] |= 1L << index;
+  }
+
+  private static boolean testBit(long[] bits, int index) {
+    return (bits[index >>> 6] & (1L << index)) != 0;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof ActivationWindow)) return false;
+    ActivationWindow other = (ActivationWindow) o;
+    return Objects.equals(startAfter, other.startAfter) && Objects.equals(endBefore, other.endBefore);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(startAfter, endBefore);
+  }
+
+  @Override
+  public String toString() {
+    return "ActivationWindow{" + startAfter + " - " + endBefore + '}';
+  }
+}
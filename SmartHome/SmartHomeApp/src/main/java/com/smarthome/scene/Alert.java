@@ -0,0 +1,66 @@
+package com.smarthome.scene;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A notification whose text is a {@link String#format} template and its arguments, formatted only
+ * when first read. Alerts with the same template and arguments are equal, so duplicates can be
+ * recognised without formatting either one.
+ */
+public final class Alert {
+  private static final Object[] NO_ARGS = new Object[0];
+
+  private final String source;
+  private final String template;
+  private final Object[] args;
+  private String message;
+
+  /**
+   * @param source what raised the alert, such as a rule's trigger; used for rate limiting and may
+   *     be null
+   */
+  public Alert(String source, String template, Object... args) {
+    this.source = source;
+    this.template = Objects.requireNonNull(template, "template cannot be null");
+    this.args = args == null ? NO_ARGS : args;
+  }
+
+  /** An alert with a ready-made message. */
+  public static Alert of(String message) {
+    Alert alert = new Alert(null, "%s", message);
+    alert.message = message;
+    return alert;
+  }
+
+  public String getSource() {
+    return source;
+  }
+
+  public String getMessage() {
+    String formatted = message;
+    if (formatted == null) {
+      formatted = args.length == 0 ? template : String.format(template, args);
+      message = formatted;
+    }
+    return formatted;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof Alert)) return false;
+    Alert other = (Alert) o;
+    return template.equals(other.template) && Arrays.equals(args, other.args);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * template.hashCode() + Arrays.hashCode(args);
+  }
+
+  @Override
+  public String toString() {
+    return "Alert{" + getMessage() + '}';
+  }
+}
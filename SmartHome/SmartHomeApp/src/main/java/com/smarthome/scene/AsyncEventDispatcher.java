@@ -0,0 +1,196 @@
+package com.smarthome.scene;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Bounded, sharded event queue drained by virtual-thread workers.
+ *
+ * <p>Each worker owns one shard. Events are routed by their ordering key (the normalized device
+ * name, or the event type for global events), so events from the same device are always handled by
+ * the same worker in submission order, while different devices proceed in parallel.
+ *
+ * <p>The queue capacity is split evenly across the shards, rounded up, so each shard holds {@code
+ * ceil(queueCapacity / workerCount)} events and the dispatcher holds at least {@code
+ * queueCapacity}. A shard fills up on its own: events for one busy device can be refused while
+ * other shards have room.
+ *
+ * <p>A worker never waits for space. Under {@link OverflowPolicy#BLOCK}, an event submitted from a
+ * worker, e.g. by a rule whose scene feeds events back in, is rejected when its shard is full
+ * instead of blocking; otherwise a worker waiting on its own shard, or two waiting on each other's,
+ * would deadlock.
+ */
+final class AsyncEventDispatcher {
+
+  /** Processes one event and reports whether a rule fired. */
+  @FunctionalInterface
+  interface EventHandler {
+    boolean handle(String eventType, String deviceName, LocalTime time);
+  }
+
+  private record PendingEvent(
+      String eventType, String deviceName, LocalTime time, CompletableFuture<Boolean> result) {}
+
+  private static final PendingEvent STOP = new PendingEvent(null, null, null, null);
+  // The dispatcher whose worker is running on this thread, if any
+  private static final ThreadLocal<AsyncEventDispatcher> DRAINING = new ThreadLocal<>();
+
+  private final List<BlockingQueue<PendingEvent>> shards;
+  private final List<Thread> workers;
+  private final OverflowPolicy overflowPolicy;
+  private final EventHandler handler;
+  private volatile boolean running = true;
+
+  AsyncEventDispatcher(
+      int workerCount, int queueCapacity, OverflowPolicy overflowPolicy, EventHandler handler) {
+    if (workerCount < 1) {
+      throw new IllegalArgumentException("workerCount must be at least 1");
+    }
+    if (queueCapacity < workerCount) {
+      throw new IllegalArgumentException("queueCapacity must be at least workerCount");
+    }
+    this.overflowPolicy = overflowPolicy;
+    this.handler = handler;
+    this.shards = new ArrayList<>(workerCount);
+    this.workers = new ArrayList<>(workerCount);
+    int shardCapacity = (queueCapacity + workerCount - 1) / workerCount;
+    for (int i = 0; i < workerCount; i++) {
+      BlockingQueue<PendingEvent> shard = new ArrayBlockingQueue<>(shardCapacity);
+      shards.add(shard);
+      workers.add(Thread.ofVirtual().name("rule-engine-worker-" + i).start(() -> drain(shard)));
+    }
+  }
+
+  CompletableFuture<Boolean> submit(
+      String eventType, String deviceName, String orderingKey, LocalTime time) {
+    CompletableFuture<Boolean> result = new CompletableFuture<>();
+    if (!running) {
+      result.completeExceptionally(new RejectedExecutionException("Async ingestion is stopped"));
+      return result;
+    }
+
+    PendingEvent event = new PendingEvent(eventType, deviceName, time, result);
+    BlockingQueue<PendingEvent> shard = shardFor(orderingKey);
+    OverflowPolicy policy =
+        overflowPolicy == OverflowPolicy.BLOCK && DRAINING.get() == this
+            ? OverflowPolicy.REJECT
+            : overflowPolicy;
+    switch (policy) {
+      case BLOCK -> {
+        try {
+          shard.put(event);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          result.completeExceptionally(e);
+          return result;
+        }
+      }
+      case REJECT -> {
+        if (!shard.offer(event)) {
+          result.completeExceptionally(new RejectedExecutionException("Event queue is full"));
+          return result;
+        }
+      }
+      case DROP_OLDEST -> {
+        while (!shard.offer(event)) {
+          PendingEvent dropped = shard.poll();
+          if (dropped == STOP) {
+            // stop() is in progress; hand the marker back instead of dropping it
+            putUninterruptibly(shard, STOP);
+            result.completeExceptionally(
+                new RejectedExecutionException("Async ingestion is stopped"));
+            return result;
+          }
+          if (dropped != null) {
+            dropped.result().cancel(false);
+          }
+        }
+      }
+    }
+
+    // Raced with stop(): nobody will drain this shard any more
+    if (!running && shard.remove(event)) {
+      result.completeExceptionally(new RejectedExecutionException("Async ingestion is stopped"));
+    }
+    return result;
+  }
+
+  /** Processes everything already queued, then stops the workers. */
+  void stop() throws InterruptedException {
+    running = false;
+    for (BlockingQueue<PendingEvent> shard : shards) {
+      shard.put(STOP);
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    for (BlockingQueue<PendingEvent> shard : shards) {
+      PendingEvent leftover;
+      while ((leftover = shard.poll()) != null) {
+        if (leftover != STOP) {
+          leftover.result().completeExceptionally(
+              new RejectedExecutionException("Async ingestion is stopped"));
+        }
+      }
+    }
+  }
+
+  int getWorkerCount() {
+    return workers.size();
+  }
+
+  /** Number of events waiting across all shards. */
+  int getQueuedEventCount() {
+    int queued = 0;
+    for (BlockingQueue<PendingEvent> shard : shards) {
+      queued += shard.size();
+    }
+    return queued;
+  }
+
+  private BlockingQueue<PendingEvent> shardFor(String orderingKey) {
+    int hash = orderingKey == null ? 0 : orderingKey.hashCode();
+    return shards.get(Math.floorMod(hash, shards.size()));
+  }
+
+  private static void putUninterruptibly(BlockingQueue<PendingEvent> shard, PendingEvent event) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        shard.put(event);
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void drain(BlockingQueue<PendingEvent> shard) {
+    DRAINING.set(this);
+    while (true) {
+      PendingEvent event;
+      try {
+        event = shard.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (event == STOP) {
+        return;
+      }
+      try {
+        boolean fired = handler.handle(event.eventType(), event.deviceName(), event.time());
+        event.result().complete(fired);
+      } catch (RuntimeException e) {
+        event.result().completeExceptionally(e);
+      }
+    }
+  }
+}
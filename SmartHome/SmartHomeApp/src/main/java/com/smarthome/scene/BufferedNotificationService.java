@@ -0,0 +1,264 @@
+package com.smarthome.scene;
+
+import com.smarthome.journal.Journals;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link NotificationService} decorator that takes alerts off the caller's thread.
+ *
+ * <p>Alerts go into a bounded queue and a background thread delivers them to the wrapped service
+ * in batches. The first alert of a batch opens a window; everything that arrives during the window
+ * is delivered together, with identical alerts merged into one message suffixed with a repeat count
+ * such as "(x12)". Messages are formatted on the sender thread, and only once per distinct alert.
+ *
+ * <p>Optionally each alert source (for rule alerts, the rule's trigger) gets a token bucket. Alerts
+ * over the limit are discarded before they are queued. Nothing here ever blocks the caller: a full
+ * queue drops the alert, and the counters below record every alert that is not delivered.
+ */
+public final class BufferedNotificationService implements NotificationService, AutoCloseable {
+  public static final int DEFAULT_CAPACITY = 1024;
+  public static final Duration DEFAULT_BATCH_WINDOW = Duration.ofMillis(200);
+
+  private static final long IDLE_POLL_MILLIS = 100;
+  private static final String NO_SOURCE = "";
+
+  private final NotificationService delegate;
+  private final BlockingQueue<Alert> queue;
+  private final long batchWindowNanos;
+  private final double permitsPerSecond;
+  private final int burst;
+  private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+  private final Thread sender;
+
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong processed = new AtomicLong();
+  private final AtomicInteger flushWaiters = new AtomicInteger();
+  private final LongAdder delivered = new LongAdder();
+  private final LongAdder duplicates = new LongAdder();
+  private final LongAdder rateLimited = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private volatile boolean closed;
+
+  private BufferedNotificationService(Builder builder) {
+    this.delegate = builder.delegate;
+    this.queue = new ArrayBlockingQueue<>(builder.capacity);
+    this.batchWindowNanos = builder.batchWindow.toNanos();
+    this.permitsPerSecond = builder.permitsPerSecond;
+    this.burst = builder.burst;
+    this.sender = new Thread(this::sendLoop, "notification-sender");
+    sender.setDaemon(true);
+    sender.start();
+  }
+
+  public static Builder builder(NotificationService delegate) {
+    return new Builder(delegate);
+  }
+
+  @Override
+  public void sendAlert(String message) {
+    send(Alert.of(message));
+  }
+
+  /** Queues the alert without waiting; it is dropped if rate-limited, full or closed. */
+  @Override
+  public void send(Alert alert) {
+    if (closed) {
+      dropped.increment();
+      return;
+    }
+    if (permitsPerSecond > 0 && !bucketFor(alert).tryAcquire(System.nanoTime())) {
+      rateLimited.increment();
+      return;
+    }
+    if (!queue.offer(alert)) {
+      dropped.increment();
+      return;
+    }
+    accepted.incrementAndGet();
+  }
+
+  private TokenBucket bucketFor(Alert alert) {
+    String source = alert.getSource() != null ? alert.getSource() : NO_SOURCE;
+    TokenBucket bucket = buckets.get(source);
+    if (bucket == null) {
+      bucket =
+          buckets.computeIfAbsent(
+              source, key -> new TokenBucket(permitsPerSecond, burst, System.nanoTime()));
+    }
+    return bucket;
+  }
+
+  /**
+   * Delivers everything queued so far without waiting for the batch window. Returns false if that
+   * did not finish within the timeout.
+   */
+  public boolean flush(Duration timeout) {
+    long target = accepted.get();
+    long deadline = System.nanoTime() + timeout.toNanos();
+    flushWaiters.incrementAndGet();
+    try {
+      LockSupport.unpark(sender);
+      while (processed.get() < target) {
+        if (System.nanoTime() - deadline >= 0 || !sender.isAlive()) {
+          return false;
+        }
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+      }
+      return true;
+    } finally {
+      flushWaiters.decrementAndGet();
+    }
+  }
+
+  /** Stops accepting alerts, delivers the queued ones and stops the sender thread. */
+  @Override
+  public void close() {
+    closed = true;
+    flush(Duration.ofSeconds(5));
+    sender.interrupt();
+    try {
+      sender.join(TimeUnit.SECONDS.toMillis(1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void sendLoop() {
+    List<Alert> batch = new ArrayList<>();
+    while (!closed || !queue.isEmpty()) {
+      Alert first;
+      try {
+        first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        continue; // close() interrupts; the loop condition decides whether to stop
+      }
+      if (first == null) {
+        continue;
+      }
+      batch.add(first);
+      awaitBatchWindow();
+      queue.drainTo(batch);
+      deliver(batch);
+      processed.addAndGet(batch.size());
+      batch.clear();
+    }
+  }
+
+  /** Sleeps out the batch window unless someone is waiting in {@link #flush}. */
+  private void awaitBatchWindow() {
+    long deadline = System.nanoTime() + batchWindowNanos;
+    long remaining;
+    while (flushWaiters.get() == 0 && (remaining = deadline - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+      if (Thread.interrupted()) {
+        // Only close() interrupts us, and it wants the queue drained first
+        return;
+      }
+    }
+  }
+
+  private void deliver(List<Alert> batch) {
+    Map<Alert, int[]> counts = new LinkedHashMap<>();
+    for (Alert alert : batch) {
+      counts.computeIfAbsent(alert, key -> new int[1])[0]++;
+    }
+    for (Map.Entry<Alert, int[]> entry : counts.entrySet()) {
+      int repeats = entry.getValue()[0];
+      String message = entry.getKey().getMessage();
+      if (repeats > 1) {
+        duplicates.add(repeats - 1);
+        message = message + " (x" + repeats + ")";
+      }
+      try {
+        delegate.sendAlert(message);
+        delivered.increment();
+      } catch (RuntimeException e) {
+        failed.increment();
+        Journals.get().error("Notification failed: " + e.getMessage());
+      }
+    }
+  }
+
+  /** Messages handed to the wrapped service, counting merged duplicates once. */
+  public long getDeliveredCount() {
+    return delivered.sum();
+  }
+
+  /** Alerts merged into an identical alert of the same batch. */
+  public long getDuplicateCount() {
+    return duplicates.sum();
+  }
+
+  public long getRateLimitedCount() {
+    return rateLimited.sum();
+  }
+
+  /** Alerts discarded because the queue was full or the service was closed. */
+  public long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  /** Messages the wrapped service threw on. */
+  public long getFailedCount() {
+    return failed.sum();
+  }
+
+  /** Configures a {@link BufferedNotificationService}. */
+  public static final class Builder {
+    private final NotificationService delegate;
+    private int capacity = DEFAULT_CAPACITY;
+    private Duration batchWindow = DEFAULT_BATCH_WINDOW;
+    private double permitsPerSecond;
+    private int burst;
+
+    private Builder(NotificationService delegate) {
+      this.delegate = Objects.requireNonNull(delegate, "delegate cannot be null");
+    }
+
+    /** Maximum number of queued alerts; more are dropped. */
+    public Builder capacity(int capacity) {
+      if (capacity <= 0) {
+        throw new IllegalArgumentException("capacity must be positive");
+      }
+      this.capacity = capacity;
+      return this;
+    }
+
+    /** How long a batch collects alerts after its first one; zero sends as soon as possible. */
+    public Builder batchWindow(Duration batchWindow) {
+      if (batchWindow == null || batchWindow.isNegative()) {
+        throw new IllegalArgumentException("batchWindow must not be negative");
+      }
+      this.batchWindow = batchWindow;
+      return this;
+    }
+
+    /** Limits each alert source to {@code permitsPerSecond}, allowing bursts of {@code burst}. */
+    public Builder rateLimit(double permitsPerSecond, int burst) {
+      if (permitsPerSecond <= 0 || burst <= 0) {
+        throw new IllegalArgumentException("rate and burst must be positive");
+      }
+      this.permitsPerSecond = permitsPerSecond;
+      this.burst = burst;
+      return this;
+    }
+
+    public BufferedNotificationService build() {
+      return new BufferedNotificationService(this);
+    }
+  }
+}
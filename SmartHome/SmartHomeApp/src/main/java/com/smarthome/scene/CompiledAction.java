@@ -0,0 +1,72 @@
+package com.smarthome.scene;
+
+import com.smarthome.app.CommandExecutor;
+import com.smarthome.app.CommandPlan;
+import com.smarthome.devices.Device;
+import java.util.Locale;
+
+/**
+ * A scene action bound to the device it targets, with its command compiled for that device's type.
+ * The plan is compiled once per device type, so replaying the action does no parsing; it is only
+ * recompiled if the device behind the name is replaced by one of a different type. The {@link
+ * SceneManager} rebinds the action when a device with its target name is added, removed or renamed,
+ * so running it does no name lookup.
+ */
+final class CompiledAction {
+
+  /** Either a plan or the reason the action cannot run on that device type. */
+  record Compilation(Class<? extends Device> deviceType, CommandPlan plan, String error) {}
+
+  private final Action action;
+  private final String deviceKey;
+  private volatile Device device;
+  private volatile Compilation compilation;
+
+  CompiledAction(Action action) {
+    this.action = action;
+    this.deviceKey = deviceKey(action.getDeviceId());
+  }
+
+  /** Folds a device name the way {@link com.smarthome.app.HomeManager} matches names. */
+  static String deviceKey(String deviceName) {
+    return deviceName == null ? null : deviceName.toLowerCase(Locale.ROOT);
+  }
+
+  Action getAction() {
+    return action;
+  }
+
+  /** The case-folded name of the target device. */
+  String getDeviceKey() {
+    return deviceKey;
+  }
+
+  /** The device the action is bound to, or null if no device in the home has its name. */
+  Device getDevice() {
+    return device;
+  }
+
+  /** Binds the action to a device, compiling its plan for the device's type up front. */
+  void bind(Device device, CommandExecutor commandExecutor) {
+    if (device != null) {
+      forDevice(device, commandExecutor);
+    }
+    this.device = device;
+  }
+
+  /** Returns the compilation for this device's type, compiling only if the type changed. */
+  Compilation forDevice(Device device, CommandExecutor commandExecutor) {
+    Compilation current = compilation;
+    if (current == null || current.deviceType() != device.getClass()) {
+      current = compile(device.getClass(), commandExecutor);
+      compilation = current;
+    }
+    return current;
+  }
+
+  private Compilation compile(Class<? extends Device> deviceType, CommandExecutor commandExecutor) {
+    CommandExecutor.Compilation compiled =
+        commandExecutor.tryCompile(deviceType, action.getCommand(), action.getValue());
+    return new Compilation(deviceType, compiled.plan(), compiled.error());
+  }
+}
@@ -0,0 +1,51 @@
+package com.smarthome.scene;
+
+import com.smarthome.app.CommandExecutor;
+import com.smarthome.app.HomeManager;
+import com.smarthome.metrics.Metrics;
+import com.smarthome.metrics.OperationStats;
+import java.util.List;
+
+/** The compiled actions of a scene, tagged with the scene version they were built from. */
+final class CompiledScene {
+  private final int version;
+  private final CompiledAction[] actions;
+  private final OperationStats stats;
+
+  private CompiledScene(int version, CompiledAction[] actions, OperationStats stats) {
+    this.version = version;
+    this.actions = actions;
+    this.stats = stats;
+  }
+
+  /** Compiles the scene's actions without binding them to devices yet. */
+  static CompiledScene compile(Scene scene) {
+    List<Action> sceneActions = scene.getActions();
+    CompiledAction[] actions = new CompiledAction[sceneActions.size()];
+    for (int i = 0; i < actions.length; i++) {
+      actions[i] = new CompiledAction(sceneActions.get(i));
+    }
+    return new CompiledScene(
+        scene.getVersion(), actions, Metrics.get().scene(scene.getName()));
+  }
+
+  /** Binds every action to the device currently holding its target name. */
+  void bind(HomeManager homeManager, CommandExecutor commandExecutor) {
+    for (CompiledAction action : actions) {
+      action.bind(homeManager.getDevicebyName(action.getAction().getDeviceId()), commandExecutor);
+    }
+  }
+
+  boolean isCurrent(Scene scene) {
+    return version == scene.getVersion();
+  }
+
+  CompiledAction[] getActions() {
+    return actions;
+  }
+
+  /** Metrics for executions of the scene, named after it. */
+  OperationStats getStats() {
+    return stats;
+  }
+}
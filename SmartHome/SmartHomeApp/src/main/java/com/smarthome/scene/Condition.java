@@ -0,0 +1,252 @@
+package com.smarthome.scene;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.devices.Device;
+import com.smarthome.devices.DeviceAttribute;
+import com.smarthome.devices.DeviceChange;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SwitchableDevice;
+import com.smarthome.devices.Thermostat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A condition on device state, such as "Thermostat temperature > 26 AND Living Room Light is off".
+ *
+ * <p>A condition is a conjunction of {@link Comparison}s, each reading one attribute of one device
+ * by name. A comparison on a device that does not exist, or that lacks the attribute, is false.
+ */
+public sealed interface Condition {
+
+  /** The comparisons that must all hold, in declaration order. */
+  List<Comparison> comparisons();
+
+  /** Evaluates the condition against the current state of the home's devices. */
+  default boolean isSatisfied(HomeManager homeManager) {
+    for (Comparison comparison : comparisons()) {
+      if (!comparison.test(homeManager.getDevicebyName(comparison.deviceName()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static Condition and(Comparison... comparisons) {
+    return comparisons.length == 1 ? comparisons[0] : new All(List.of(comparisons));
+  }
+
+  /**
+   * Parses clauses joined by "AND". Each clause is either {@code <device> is on|off} or {@code
+   * <device> <attribute> <op> <number>}, where the attribute is "power", "brightness" or
+   * "temperature" ("temp") and the operator one of {@code < <= > >= == !=}. An "and" that does not
+   * follow a complete clause is part of a device name, as in "Rock and Roll Lamp is on".
+   *
+   * @throws IllegalArgumentException if the text is not a valid condition
+   */
+  static Condition parse(String text) {
+    if (text == null || text.isBlank()) {
+      throw new IllegalArgumentException("Condition cannot be empty");
+    }
+    String trimmed = text.trim();
+    List<Comparison> comparisons = new ArrayList<>();
+    int start = 0;
+    Matcher and = Comparison.AND.matcher(trimmed);
+    while (and.find()) {
+      String clause = trimmed.substring(start, and.start());
+      if (Comparison.CLAUSE_END.matcher(clause).find()) {
+        comparisons.add(Comparison.parse(clause));
+        start = and.end();
+      }
+    }
+    comparisons.add(Comparison.parse(trimmed.substring(start)));
+    return and(comparisons.toArray(Comparison[]::new));
+  }
+
+  enum Operator {
+    LESS("<"),
+    LESS_OR_EQUAL("<="),
+    GREATER(">"),
+    GREATER_OR_EQUAL(">="),
+    EQUAL("=="),
+    NOT_EQUAL("!=");
+
+    private final String symbol;
+
+    Operator(String symbol) {
+      this.symbol = symbol;
+    }
+
+    public String symbol() {
+      return symbol;
+    }
+
+    /** NaN (an unreadable attribute) satisfies no operator. */
+    boolean test(double actual, double expected) {
+      if (Double.isNaN(actual)) {
+        return false;
+      }
+      return switch (this) {
+        case LESS -> actual < expected;
+        case LESS_OR_EQUAL -> actual <= expected;
+        case GREATER -> actual > expected;
+        case GREATER_OR_EQUAL -> actual >= expected;
+        case EQUAL -> actual == expected;
+        case NOT_EQUAL -> actual != expected;
+      };
+    }
+
+    static Operator of(String symbol) {
+      for (Operator operator : values()) {
+        if (operator.symbol.equals(symbol)) {
+          return operator;
+        }
+      }
+      if (symbol.equals("=")) {
+        return EQUAL;
+      }
+      throw new IllegalArgumentException("Unknown operator: " + symbol);
+    }
+  }
+
+  /** One attribute of one device compared against a constant; power reads as 1 (on) or 0. */
+  record Comparison(String deviceName, DeviceAttribute attribute, Operator operator, double value)
+      implements Condition {
+    private static final Pattern AND = Pattern.compile("\\s+(?i:and)\\s+");
+    // How every clause ends, whatever the device is called
+    private static final Pattern CLAUSE_END =
+        Pattern.compile(
+            "\\s(?i:is\\s+(?:on|off)|(?:power|brightness|temp|temperature)\\s+[<>=!]=?\\s+\\S+)$");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    public Comparison {
+      Objects.requireNonNull(deviceName, "deviceName cannot be null");
+      Objects.requireNonNull(attribute, "attribute cannot be null");
+      Objects.requireNonNull(operator, "operator cannot be null");
+    }
+
+    public static Comparison isOn(String deviceName) {
+      return new Comparison(deviceName, DeviceAttribute.POWER, Operator.EQUAL, 1);
+    }
+
+    public static Comparison isOff(String deviceName) {
+      return new Comparison(deviceName, DeviceAttribute.POWER, Operator.EQUAL, 0);
+    }
+
+    @Override
+    public List<Comparison> comparisons() {
+      return List.of(this);
+    }
+
+    String deviceKey() {
+      return Rule.normalize(deviceName);
+    }
+
+    /** Tests the device's current state; false when the device is missing. */
+    public boolean test(Device device) {
+      return operator.test(read(device, attribute), value);
+    }
+
+    /** Tests the new value carried by a change of this comparison's attribute. */
+    boolean test(DeviceChange change) {
+      return operator.test(valueOf(change), value);
+    }
+
+    static double read(Device device, DeviceAttribute attribute) {
+      return switch (attribute) {
+        case POWER -> device instanceof SwitchableDevice switchable
+            ? (switchable.isOn() ? 1 : 0)
+            : Double.NaN;
+        case BRIGHTNESS -> device instanceof Light light ? light.getBrightness() : Double.NaN;
+        case TEMPERATURE -> device instanceof Thermostat thermostat
+            ? thermostat.getTemp()
+            : Double.NaN;
+      };
+    }
+
+    static double valueOf(DeviceChange change) {
+      return switch (change) {
+        case DeviceChange.PowerChanged power -> power.on() ? 1 : 0;
+        case DeviceChange.BrightnessChanged brightness -> brightness.newBrightness();
+        case DeviceChange.TemperatureChanged temperature -> temperature.newTemperature();
+      };
+    }
+
+    static Comparison parse(String clause) {
+      String[] tokens = SPACES.split(clause.trim());
+      int n = tokens.length;
+      if (n >= 3 && tokens[n - 2].equalsIgnoreCase("is")) {
+        String name = join(tokens, n - 2);
+        return switch (tokens[n - 1].toLowerCase(Locale.ROOT)) {
+          case "on" -> isOn(name);
+          case "off" -> isOff(name);
+          default -> throw new IllegalArgumentException("Expected on or off in: " + clause);
+        };
+      }
+      if (n < 4) {
+        throw new IllegalArgumentException("Cannot parse condition: " + clause);
+      }
+      double value;
+      try {
+        value = Double.parseDouble(tokens[n - 1]);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Expected a number in: " + clause);
+      }
+      return new Comparison(
+          join(tokens, n - 3), attributeOf(tokens[n - 3]), Operator.of(tokens[n - 2]), value);
+    }
+
+    private static DeviceAttribute attributeOf(String token) {
+      return switch (token.toLowerCase(Locale.ROOT)) {
+        case "power" -> DeviceAttribute.POWER;
+        case "brightness" -> DeviceAttribute.BRIGHTNESS;
+        case "temp", "temperature" -> DeviceAttribute.TEMPERATURE;
+        default -> throw new IllegalArgumentException("Unknown attribute: " + token);
+      };
+    }
+
+    private static String join(String[] tokens, int count) {
+      return String.join(" ", List.of(tokens).subList(0, count));
+    }
+
+    @Override
+    public String toString() {
+      if (attribute == DeviceAttribute.POWER && operator == Operator.EQUAL) {
+        if (value == 1) {
+          return deviceName + " is on";
+        }
+        if (value == 0) {
+          return deviceName + " is off";
+        }
+      }
+      String number =
+          value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+      return deviceName
+          + " "
+          + attribute.name().toLowerCase(Locale.ROOT)
+          + " "
+          + operator.symbol()
+          + " "
+          + number;
+    }
+  }
+
+  /** A conjunction of comparisons; duplicates are dropped. */
+  record All(List<Comparison> comparisons) implements Condition {
+    public All {
+      comparisons = comparisons.stream().distinct().toList();
+      if (comparisons.isEmpty()) {
+        throw new IllegalArgumentException("A condition needs at least one comparison");
+      }
+    }
+
+    @Override
+    public String toString() {
+      return comparisons.stream().map(Comparison::toString).collect(Collectors.joining(" AND "));
+    }
+  }
+}
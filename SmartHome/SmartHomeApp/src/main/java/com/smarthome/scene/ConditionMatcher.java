@@ -0,0 +1,149 @@
+package com.smarthome.scene;
+
+import com.smarthome.devices.Device;
+import com.smarthome.devices.DeviceAttribute;
+import com.smarthome.devices.DeviceChange;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Incremental matcher for state-condition rules, in the style of a Rete network.
+ *
+ * <p>Each distinct {@link Condition.Comparison} is a node that remembers whether it currently
+ * holds, shared by every rule that uses it. Nodes are indexed by device and attribute, so a
+ * change re-tests only the comparisons reading that attribute of that device. Each rule keeps a
+ * count of its comparisons that hold; a rule fires when the count reaches its size, i.e. when its
+ * condition turns from false to true, not again while it stays true.
+ *
+ * <p>All methods are synchronized; changes are expected to be far more frequent than rule or
+ * topology updates, and the common case (no node on the changed attribute) is two map probes.
+ */
+final class ConditionMatcher {
+
+  /** A comparison and the rules that include it. */
+  private static final class ComparisonNode {
+    final Condition.Comparison comparison;
+    final List<RuleNode> rules = new ArrayList<>(1);
+    boolean holds;
+
+    ComparisonNode(Condition.Comparison comparison) {
+      this.comparison = comparison;
+    }
+  }
+
+  private static final class RuleNode {
+    final Rule rule;
+    final int size;
+    int holding;
+
+    RuleNode(Rule rule, int size) {
+      this.rule = rule;
+      this.size = size;
+    }
+
+    boolean isSatisfied() {
+      return holding == size;
+    }
+  }
+
+  private final Map<Condition.Comparison, ComparisonNode> nodes = new HashMap<>();
+  private final Map<String, EnumMap<DeviceAttribute, List<ComparisonNode>>> index =
+      new HashMap<>();
+  private volatile int ruleCount;
+
+  /**
+   * Adds a state rule, taking the current truth of its comparisons from {@code devices} (by
+   * normalized name). A rule whose condition already holds fires only after it turns false and
+   * true again.
+   */
+  synchronized void add(Rule rule, Function<String, Device> devices) {
+    List<Condition.Comparison> comparisons = rule.getCondition().comparisons();
+    RuleNode ruleNode = new RuleNode(rule, comparisons.size());
+    for (Condition.Comparison comparison : comparisons) {
+      ComparisonNode node = nodes.get(comparison);
+      if (node == null) {
+        node = new ComparisonNode(comparison);
+        node.holds = comparison.test(devices.apply(comparison.deviceKey()));
+        nodes.put(comparison, node);
+        index
+            .computeIfAbsent(comparison.deviceKey(), k -> new EnumMap<>(DeviceAttribute.class))
+            .computeIfAbsent(comparison.attribute(), k -> new ArrayList<>(1))
+            .add(node);
+      }
+      node.rules.add(ruleNode);
+      if (node.holds) {
+        ruleNode.holding++;
+      }
+    }
+    ruleCount++;
+  }
+
+  boolean isEmpty() {
+    return ruleCount == 0;
+  }
+
+  /**
+   * Applies a change from the device currently named {@code deviceKey} and returns the rules whose
+   * condition just became true.
+   */
+  synchronized List<Rule> changed(String deviceKey, DeviceChange change) {
+    EnumMap<DeviceAttribute, List<ComparisonNode>> byAttribute = index.get(deviceKey);
+    if (byAttribute == null) {
+      return List.of();
+    }
+    List<ComparisonNode> affected = byAttribute.get(change.attribute());
+    if (affected == null) {
+      return List.of();
+    }
+    List<Rule> fired = List.of();
+    for (ComparisonNode node : affected) {
+      boolean holds = node.comparison.test(change);
+      if (!update(node, holds) || !holds) {
+        continue;
+      }
+      for (RuleNode ruleNode : node.rules) {
+        if (ruleNode.isSatisfied()) {
+          if (fired.isEmpty()) {
+            fired = new ArrayList<>(2);
+          }
+          fired.add(ruleNode.rule);
+        }
+      }
+    }
+    return fired;
+  }
+
+  /**
+   * Re-reads every comparison on the device named {@code deviceKey}, e.g. after it was added,
+   * removed (null) or renamed. Rules whose condition becomes true this way do not fire, since no
+   * device state changed.
+   */
+  synchronized void refresh(String deviceKey, Device device) {
+    EnumMap<DeviceAttribute, List<ComparisonNode>> byAttribute = index.get(deviceKey);
+    if (byAttribute == null) {
+      return;
+    }
+    for (List<ComparisonNode> affected : byAttribute.values()) {
+      for (ComparisonNode node : affected) {
+        update(node, node.comparison.test(device));
+      }
+    }
+  }
+
+  /** Stores a comparison's new truth and adjusts its rules' counts; true if it flipped. */
+  private static boolean update(ComparisonNode node, boolean holds) {
+    if (node.holds == holds) {
+      return false;
+    }
+    node.holds = holds;
+    int delta = holds ? 1 : -1;
+    for (RuleNode ruleNode : node.rules) {
+      ruleNode.holding += delta;
+    }
+    return true;
+  }
+}
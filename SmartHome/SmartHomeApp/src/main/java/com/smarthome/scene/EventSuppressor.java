@@ -0,0 +1,211 @@
+package com.smarthome.scene;
+
+import com.smarthome.journal.Journals;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Applies {@link Suppression} policies to rule firings.
+ *
+ * <p>Each suppressed rule carries a small {@link State} that doubles as its entry in a shared
+ * {@link TimingWheel}, so there is no map lookup and no scheduled task per rule: admitting an event
+ * is O(1) under one lock, and a ticker thread advances the wheel to close windows and fire trailing
+ * edges. A debounce that is extended by further events just moves its window end; the wheel entry
+ * is re-filed only when it comes due.
+ *
+ * <p>On a {@link VirtualClock} there is no ticker: whenever a window is filed, a task on the clock
+ * advances the wheel when the window comes due, so idle simulated time costs nothing.
+ */
+final class EventSuppressor {
+  static final Duration DEFAULT_TICK = Duration.ofMillis(10);
+  private static final int WHEEL_SLOTS = 512;
+
+  /** Suppression state of one rule, guarded by the suppressor's lock. */
+  static final class State extends TimingWheel.Timeout {
+    private final Rule rule;
+    private final Suppression policy;
+    private final long windowTicks;
+    private long windowEnd;
+    // Whether an event was held back for the trailing edge
+    private boolean pending;
+    // On a virtual clock, the task that advances the wheel when the window comes due
+    private VirtualClock.Task wakeUp;
+
+    private State(Rule rule, Suppression policy, long windowTicks) {
+      this.rule = rule;
+      this.policy = policy;
+      this.windowTicks = windowTicks;
+    }
+  }
+
+  private final long tickNanos;
+  private final LongSupplier nanoTime;
+  private final long origin;
+  private final Consumer<Rule> trailingFire;
+  private final TimingWheel wheel;
+  private final ScheduledExecutorService ticker;
+  private final VirtualClock virtualClock;
+
+  /**
+   * Starts a daemon ticker that advances the wheel every {@code tick}, or wakes on {@code clock}
+   * if it is a {@link VirtualClock}. Other clocks are not consulted; windows are measured with
+   * System.nanoTime.
+   */
+  static EventSuppressor start(Duration tick, Clock clock, Consumer<Rule> trailingFire) {
+    if (clock instanceof VirtualClock virtualClock) {
+      return new EventSuppressor(tick, virtualClock::nanoTime, trailingFire, null, virtualClock);
+    }
+    ScheduledExecutorService ticker =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "rule-event-suppressor");
+              thread.setDaemon(true);
+              return thread;
+            });
+    EventSuppressor suppressor =
+        new EventSuppressor(tick, System::nanoTime, trailingFire, ticker, null);
+    long tickNanos = suppressor.tickNanos;
+    ticker.scheduleAtFixedRate(suppressor::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    return suppressor;
+  }
+
+  /** Creates a suppressor whose wheel is advanced only by calling {@link #advance()}. */
+  EventSuppressor(Duration tick, LongSupplier nanoTime, Consumer<Rule> trailingFire) {
+    this(tick, nanoTime, trailingFire, null, null);
+  }
+
+  private EventSuppressor(
+      Duration tick,
+      LongSupplier nanoTime,
+      Consumer<Rule> trailingFire,
+      ScheduledExecutorService ticker,
+      VirtualClock virtualClock) {
+    this.tickNanos = Math.max(1, tick.toNanos());
+    this.nanoTime = nanoTime;
+    this.origin = nanoTime.getAsLong();
+    this.trailingFire = trailingFire;
+    this.wheel = new TimingWheel(WHEEL_SLOTS, 0);
+    this.ticker = ticker;
+    this.virtualClock = virtualClock;
+  }
+
+  /**
+   * Records an event for the rule and returns true if the rule should fire now (a leading edge).
+   * The rule's state is created on its first event and replaced if its policy changed.
+   */
+  synchronized boolean admit(Rule rule, Suppression policy) {
+    long now = currentTick();
+    State state = rule.getSuppressionState();
+    if (state == null || !policy.equals(state.policy)) {
+      if (state != null) {
+        cancel(state);
+      }
+      state = new State(rule, policy, ticksOf(policy.window()));
+      rule.setSuppressionState(state);
+    }
+
+    if (!state.isScheduled()) {
+      // Opens a window
+      state.windowEnd = now + state.windowTicks;
+      state.pending = !policy.leading();
+      schedule(state, state.windowEnd);
+      return policy.leading();
+    }
+    state.pending = policy.trailing();
+    if (policy.kind() == Suppression.Kind.DEBOUNCE) {
+      state.windowEnd = now + state.windowTicks;
+    }
+    return false;
+  }
+
+  /** Forgets the rule's window, e.g. when its policy is removed. */
+  synchronized void release(Rule rule) {
+    State state = rule.getSuppressionState();
+    if (state != null) {
+      cancel(state);
+      rule.setSuppressionState(null);
+    }
+  }
+
+  /** Number of rules with an open window. */
+  synchronized int openWindows() {
+    return wheel.size();
+  }
+
+  /** Closes due windows and fires their trailing edges, outside the lock. */
+  void advance() {
+    List<Rule> due = new ArrayList<>(0);
+    synchronized (this) {
+      long now = currentTick();
+      wheel.advance(now, timeout -> expire((State) timeout, now, due));
+    }
+    for (Rule rule : due) {
+      try {
+        trailingFire.accept(rule);
+      } catch (RuntimeException e) {
+        Journals.get().error("Trailing firing of " + rule.key() + " failed: " + e.getMessage());
+      }
+    }
+  }
+
+  private void expire(State state, long now, List<Rule> due) {
+    if (state.windowEnd > now) {
+      // A debounce extended by later events
+      schedule(state, state.windowEnd);
+      return;
+    }
+    if (state.pending) {
+      state.pending = false;
+      due.add(state.rule);
+      if (state.policy.kind() == Suppression.Kind.THROTTLE) {
+        // The trailing firing opens the next window
+        state.windowEnd = now + state.windowTicks;
+        schedule(state, state.windowEnd);
+      }
+    }
+  }
+
+  /**
+   * Files the state in the wheel and, on a virtual clock, wakes the wheel when it comes due. The
+   * state's previous wake-up is cancelled, so a clock holds at most one per state.
+   */
+  private void schedule(State state, long tick) {
+    wheel.schedule(state, tick);
+    if (virtualClock != null) {
+      if (state.wakeUp != null) {
+        state.wakeUp.cancel();
+      }
+      state.wakeUp =
+          virtualClock.scheduleAtNanos(origin + state.deadline() * tickNanos, this::advance);
+    }
+  }
+
+  private void cancel(State state) {
+    wheel.cancel(state);
+    if (state.wakeUp != null) {
+      state.wakeUp.cancel();
+      state.wakeUp = null;
+    }
+  }
+
+  void stop() {
+    if (ticker != null) {
+      ticker.shutdownNow();
+    }
+  }
+
+  private long currentTick() {
+    return (nanoTime.getAsLong() - origin) / tickNanos;
+  }
+
+  private long ticksOf(Duration window) {
+    return Math.max(1, (window.toNanos() + tickNanos - 1) / tickNanos);
+  }
+}
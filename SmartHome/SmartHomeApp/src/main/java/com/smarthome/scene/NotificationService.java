@@ -3,4 +3,12 @@ package com.smarthome.scene;
 /** Abstraction for sending notifications (console, email, etc.) */
 public interface NotificationService {
   void sendAlert(String message);
-}
\ No newline at end of file
+
+  /**
+   * Sends an alert whose message may not have been formatted yet. The default formats it and
+   * calls {@link #sendAlert(String)}; services that queue or filter alerts can defer formatting.
+   */
+  default void send(Alert alert) {
+    sendAlert(alert.getMessage());
+  }
+}
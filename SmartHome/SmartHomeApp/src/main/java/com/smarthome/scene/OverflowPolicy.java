@@ -0,0 +1,14 @@
+package com.smarthome.scene;
+
+/** What {@link RuleEngine#submitEvent} does when the async event queue is full. */
+public enum OverflowPolicy {
+  /**
+   * Wait for space; the producer is slowed down to the engine's pace. Events submitted from the
+   * engine's own workers are rejected instead, since a worker waiting for itself would deadlock.
+   */
+  BLOCK,
+  /** Discard the oldest queued event for the same shard; its future is cancelled. */
+  DROP_OLDEST,
+  /** Refuse the new event; its future fails with a RejectedExecutionException. */
+  REJECT
+}
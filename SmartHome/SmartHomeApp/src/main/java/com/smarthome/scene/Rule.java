@@ -1,28 +1,68 @@
 package com.smarthome.scene;
 
+import com.smarthome.metrics.Metrics;
+import com.smarthome.metrics.OperationStats;
+import java.time.Clock;
 import java.time.LocalTime;
+import java.util.Locale;
 import java.util.Objects;
 
 public class Rule {
   private final String triggerEvent;
   private final String triggerDeviceName;
   private final Scene targetScene;
+  // Set for state rules, which fire when the condition becomes true instead of on an event
+  private final Condition condition;
 
   private final LocalTime startAfter;
   private final LocalTime endBefore;
 
+  // Case-folded trigger, used by RuleEngine's dispatch index
+  private final String eventKey;
+  private final String deviceKey;
+  private final String key;
+  // Precomputed, shared form of startAfter/endBefore; null when the rule has no time window
+  private final ActivationWindow activationWindow;
+  // Resolved on first firing so rules that never reach an engine stay out of the metrics
+  private OperationStats stats;
+  // Set through RuleEngine.setSuppression; the state is guarded by the engine's EventSuppressor
+  private volatile Suppression suppression;
+  private EventSuppressor.State suppressionState;
+
   public Rule(
       String triggerEvent,
       String triggerDeviceName,
       Scene targetScene,
       LocalTime startAfter,
       LocalTime endBefore) {
-    this.triggerEvent = Objects.requireNonNull(triggerEvent, "triggerEvent cannot be null");
+    this(triggerEvent, triggerDeviceName, null, targetScene, startAfter, endBefore);
+  }
+
+  private Rule(
+      String triggerEvent,
+      String triggerDeviceName,
+      Condition condition,
+      Scene targetScene,
+      LocalTime startAfter,
+      LocalTime endBefore) {
+    if (condition == null) {
+      Objects.requireNonNull(triggerEvent, "triggerEvent cannot be null");
+    }
+    this.triggerEvent = triggerEvent;
     this.triggerDeviceName = triggerDeviceName;
+    this.condition = condition;
 
     this.targetScene = Objects.requireNonNull(targetScene, "targetScene cannot be null");
     this.startAfter = startAfter;
     this.endBefore = endBefore;
+    this.eventKey = normalize(triggerEvent);
+    this.deviceKey = normalize(triggerDeviceName);
+    if (condition != null) {
+      this.key = stateKey(condition);
+    } else {
+      this.key = deviceKey == null ? eventKey : eventKey + "@" + deviceKey;
+    }
+    this.activationWindow = ActivationWindow.of(startAfter, endBefore);
   }
 
   public Rule(String triggerEvent, String triggerDeviceName, Scene targetScene) {
@@ -39,6 +79,22 @@ public class Rule {
     this(triggerEvent, null, targetScene, startAfter, endBefore);
   }
 
+  /**
+   * Creates a state rule that runs the scene whenever the condition turns from false to true, e.g.
+   * {@code Rule.when(Condition.parse("Thermostat temp > 26 AND Lamp is off"), coolDown)}. State
+   * rules are evaluated by engines subscribed to device changes.
+   */
+  public static Rule when(Condition condition, Scene targetScene) {
+    return when(condition, targetScene, null, null);
+  }
+
+  public static Rule when(
+      Condition condition, Scene targetScene, LocalTime startAfter, LocalTime endBefore) {
+    Objects.requireNonNull(condition, "condition cannot be null");
+    return new Rule(null, null, condition, targetScene, startAfter, endBefore);
+  }
+
+  /** The event that fires the rule, or null for state rules. */
   public String getTriggerEvent() {
     return triggerEvent;
   }
@@ -51,6 +107,15 @@ public class Rule {
     return targetScene;
   }
 
+  /** The state condition, or null for event rules. */
+  public Condition getCondition() {
+    return condition;
+  }
+
+  public boolean isStateRule() {
+    return condition != null;
+  }
+
   public LocalTime getStartAfter() {
     return startAfter;
   }
@@ -59,23 +124,76 @@ public class Rule {
     return endBefore;
   }
 
+  String getEventKey() {
+    return eventKey;
+  }
+
+  String getDeviceKey() {
+    return deviceKey;
+  }
+
+  /**
+   * Names the rule by its normalized trigger: "event", "event@device" for device rules, or
+   * "when condition" for state rules.
+   */
+  String key() {
+    return key;
+  }
+
+  /** The key of a state rule on this condition; conditions differing only in case share it. */
+  static String stateKey(Condition condition) {
+    return "when " + normalize(condition.toString());
+  }
+
+  /** Metrics for this rule, named after its {@link #key()}. */
+  OperationStats stats() {
+    OperationStats resolved = stats;
+    if (resolved == null) {
+      resolved = Metrics.get().rule(key);
+      stats = resolved;
+    }
+    return resolved;
+  }
+
+  /** The rule's own burst suppression, or null to use the engine's default. */
+  public Suppression getSuppression() {
+    return suppression;
+  }
+
+  void setSuppression(Suppression suppression) {
+    this.suppression = suppression;
+  }
+
+  EventSuppressor.State getSuppressionState() {
+    return suppressionState;
+  }
+
+  void setSuppressionState(EventSuppressor.State suppressionState) {
+    this.suppressionState = suppressionState;
+  }
+
+  /** Case-folds a trigger event or device name the same way equalsIgnoreCase would compare it. */
+  static String normalize(String value) {
+    return value == null ? null : value.toLowerCase(Locale.ROOT);
+  }
+
   public boolean isDeviceSpecific() {
     return triggerDeviceName != null;
   }
 
   public boolean isActiveNow(LocalTime now) {
     // Handle case where no time constraints are set
-    if (startAfter == null && endBefore == null) return true;
-    if (startAfter == null) return !now.isAfter(endBefore);
-    if (endBefore == null) return !now.isBefore(startAfter);
-    // Check if time window crosses midnight (e.g., 23:00 to 02:00)
-    if (endBefore.isBefore(startAfter)) {
-      // Overnight window: active if after startAfter OR before endBefore
-      return !now.isBefore(startAfter) || !now.isAfter(endBefore);
-    } else {
-      // Same-day window: active if between startAfter and endBefore
-      return !now.isBefore(startAfter) && !now.isAfter(endBefore);
-    }
+    if (activationWindow == null) return true;
+    return activationWindow.isActiveAt(now);
+  }
+
+  /** Checks the time window against the clock's current time of day. */
+  public boolean isActiveNow(Clock clock) {
+    return activationWindow == null || activationWindow.isActiveAt(LocalTime.now(clock));
+  }
+
+  ActivationWindow getActivationWindow() {
+    return activationWindow;
   }
 
   @Override
@@ -83,8 +201,9 @@ public class Rule {
     if (this == o) return true;
     if (!(o instanceof Rule)) return false;
     Rule rule = (Rule) o;
-    return triggerEvent.equals(rule.triggerEvent)
+    return java.util.Objects.equals(triggerEvent, rule.triggerEvent)
         && java.util.Objects.equals(triggerDeviceName, rule.triggerDeviceName)
+        && java.util.Objects.equals(condition, rule.condition)
         && targetScene.equals(rule.targetScene)
         && java.util.Objects.equals(startAfter, rule.startAfter)
         && java.util.Objects.equals(endBefore, rule.endBefore);
@@ -93,12 +212,22 @@ public class Rule {
   @Override
   public int hashCode() {
     return java.util.Objects.hash(
-        triggerEvent, triggerDeviceName, targetScene, startAfter, endBefore);
+        triggerEvent, triggerDeviceName, condition, targetScene, startAfter, endBefore);
   }
 
   @Override
   public String toString() {
-
+    if (condition != null) {
+      return "Rule{when='"
+          + condition
+          + "', targetScene='"
+          + targetScene.getName()
+          + "', startAfter="
+          + startAfter
+          + ", endBefore="
+          + endBefore
+          + '}';
+    }
 
     String deviceName =
         (triggerDeviceName != null ? "triggerDeviceName='" + triggerDeviceName + '\'' : "");
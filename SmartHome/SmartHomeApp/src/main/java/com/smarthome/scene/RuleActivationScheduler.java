@@ -0,0 +1,122 @@
+package com.smarthome.scene;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the set of currently open {@link ActivationWindow}s up to date so the RuleEngine can answer
+ * "is this rule active now?" without reading the clock per event.
+ *
+ * <p>The set is recomputed only at window transitions: after each refresh the scheduler sleeps
+ * until the earliest instant at which any tracked window opens or closes. With a {@link
+ * VirtualClock} the refresh is a task on the clock instead, run when the clock is advanced past the
+ * transition.
+ */
+final class RuleActivationScheduler {
+  private final Set<ActivationWindow> trackedWindows = ConcurrentHashMap.newKeySet();
+  private final Clock clock;
+  private final ScheduledExecutorService executor;
+  private volatile Set<ActivationWindow> openWindows = Set.of();
+  private volatile boolean stopped;
+  private Runnable cancelNextRefresh;
+
+  RuleActivationScheduler(Clock clock) {
+    this.clock = clock;
+    this.executor =
+        clock instanceof VirtualClock
+            ? null
+            : Executors.newSingleThreadScheduledExecutor(
+                runnable -> {
+                  Thread thread = new Thread(runnable, "rule-activation-scheduler");
+                  thread.setDaemon(true);
+                  return thread;
+                });
+  }
+
+  /** Starts tracking a window; refreshes immediately if it is new. */
+  void track(ActivationWindow window) {
+    if (window != null && trackedWindows.add(window)) {
+      refresh();
+    }
+  }
+
+  /** Starts tracking several windows with a single refresh. */
+  void trackAll(Collection<ActivationWindow> windows) {
+    for (ActivationWindow window : windows) {
+      if (window != null) {
+        trackedWindows.add(window);
+      }
+    }
+    refresh();
+  }
+
+  /** True if the window is open as of the last refresh. */
+  boolean isOpen(ActivationWindow window) {
+    return window == null || openWindows.contains(window);
+  }
+
+  synchronized void refresh() {
+    if (stopped) {
+      return;
+    }
+    LocalTime now = LocalTime.now(clock);
+    Set<ActivationWindow> open = new HashSet<>();
+    LocalTime next = null;
+    long untilNext = Long.MAX_VALUE;
+    for (ActivationWindow window : trackedWindows) {
+      if (window.isActiveAt(now)) {
+        open.add(window);
+      }
+      LocalTime transition = window.nextTransitionAfter(now);
+      long delay = nanosUntil(now, transition);
+      if (delay < untilNext) {
+        untilNext = delay;
+        next = transition;
+      }
+    }
+    openWindows = Set.copyOf(open);
+
+    if (cancelNextRefresh != null) {
+      cancelNextRefresh.run();
+    }
+    cancelNextRefresh = next == null ? null : scheduleRefresh(untilNext);
+  }
+
+  /** Schedules the next refresh and returns how to cancel it. */
+  private Runnable scheduleRefresh(long delayNanos) {
+    if (clock instanceof VirtualClock virtualClock) {
+      VirtualClock.Task task = virtualClock.schedule(Duration.ofNanos(delayNanos), this::refresh);
+      return task::cancel;
+    }
+    ScheduledFuture<?> future = executor.schedule(this::refresh, delayNanos, TimeUnit.NANOSECONDS);
+    return () -> future.cancel(false);
+  }
+
+  synchronized void stop() {
+    stopped = true;
+    if (cancelNextRefresh != null) {
+      cancelNextRefresh.run();
+      cancelNextRefresh = null;
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  private static long nanosUntil(LocalTime now, LocalTime transition) {
+    Duration delay = Duration.between(now, transition);
+    if (delay.isNegative() || delay.isZero()) {
+      delay = delay.plusDays(1); // transition is tomorrow
+    }
+    return delay.toNanos();
+  }
+}
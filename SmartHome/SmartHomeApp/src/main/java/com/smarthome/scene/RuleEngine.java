@@ -1,58 +1,116 @@
 package com.smarthome.scene;
 
 
+import com.smarthome.app.HomeChangeListener;
+import com.smarthome.app.HomeManager;
 import com.smarthome.app.Room;
 import com.smarthome.devices.Device;
+import com.smarthome.devices.DeviceChange;
+import com.smarthome.devices.DeviceChangeListener;
 import com.smarthome.exceptions.RuleConflictException;
 import com.smarthome.exceptions.SceneExecutionException;
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.JournalLevel;
+import com.smarthome.journal.Journals;
+import com.smarthome.metrics.Metrics;
+import com.smarthome.metrics.MetricsRegistry;
+import com.smarthome.metrics.OperationStats;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
-
-/** Evaluates rules and triggers scenes and notifications. */
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Evaluates rules and triggers scenes and notifications.
+ *
+ * <p>Rules are indexed by their normalized trigger: device-specific rules by event then device
+ * name, global rules by event alone. Since two rules with the same trigger conflict, each key holds
+ * at most one rule, so dispatching an event is a single map probe regardless of rule count.
+ *
+ * <p>Events can be handled synchronously with {@link #handleEvent} or queued with {@link
+ * #submitEvent} once {@link #startAsyncIngestion} has been called. Queued events from the same
+ * device are processed in order; rules triggered by different devices may run concurrently, so
+ * scenes shared between them should tolerate that.
+ *
+ * <p>Time windows are checked with a precomputed minute bitmap per rule. Once {@link
+ * #startActivationScheduler} is running, events without an explicit time are matched against a set
+ * of open windows that is refreshed at window boundaries, so they never read the clock.
+ *
+ * <p>With {@link #subscribeToDeviceChanges} the engine also listens to the home's devices, so a
+ * light turning on or a thermostat changing temperature fires rules without anyone calling {@link
+ * #handleEvent}. State rules ({@link Rule#when}) are matched incrementally against those changes
+ * by a {@link ConditionMatcher}, so a change re-evaluates only conditions reading the changed
+ * attribute of the changed device.
+ *
+ * <p>Bursts of events can be debounced or throttled per rule with {@link #setSuppression}, or for
+ * every rule with {@link #setDefaultSuppression}. Suppression windows live in one {@link
+ * TimingWheel} advanced by a single ticker thread, whatever the number of rules.
+ *
+ * <p>"Now" comes from the engine's {@link Clock}. With a {@link VirtualClock} the activation
+ * scheduler and suppression windows run as tasks on the clock rather than on threads, and {@link
+ * #startDeterministicIngestion} queues submitted events there too, so a simulated week of events
+ * replays in the same order on every run and as fast as the rules execute.
+ */
 public class RuleEngine {
 
+  /** Longest chain of rules triggering each other through device changes on one thread. */
+  public static final int MAX_CHAIN_DEPTH = 16;
+
   private final SceneManager sceneManager;
   private final NotificationService notificationService;
-  private final List<Rule> rules;
-
+  private final Clock clock;
+  private final Map<String, Map<String, Rule>> deviceRules;
+  private final Map<String, Rule> globalRules;
+  private final Map<String, Rule> stateRules = new ConcurrentHashMap<>();
+  private final ConditionMatcher conditionMatcher = new ConditionMatcher();
+  private volatile int ruleCount;
+  private volatile AsyncEventDispatcher asyncDispatcher;
+  private volatile VirtualClock deterministicClock;
+  private volatile RuleActivationScheduler activationScheduler;
+  private volatile EventSuppressor suppressor;
+  private volatile Suppression defaultSuppression;
+
+  private final DeviceChangeListener deviceChangeListener = this::deviceChanged;
+  private final Map<Device, String> subscribedDeviceKeys = new ConcurrentHashMap<>();
+  private final Map<HomeManager, HomeChangeListener> followedHomes = new HashMap<>();
+  private final ThreadLocal<int[]> chainDepth = ThreadLocal.withInitial(() -> new int[1]);
 
   public RuleEngine(SceneManager sceneManager, NotificationService notificationService) {
+    this(sceneManager, notificationService, Clock.systemDefaultZone());
+  }
+
+  /** Creates an engine that reads the time of day, and schedules its timers, on {@code clock}. */
+  public RuleEngine(
+      SceneManager sceneManager, NotificationService notificationService, Clock clock) {
     this.sceneManager = sceneManager;
     this.notificationService = notificationService;
-    this.rules = new ArrayList<>();
+    this.clock = Objects.requireNonNull(clock, "clock cannot be null");
+    this.deviceRules = new ConcurrentHashMap<>();
+    this.globalRules = new ConcurrentHashMap<>();
+  }
+
+  public Clock getClock() {
+    return clock;
   }
 
   /** Adds a rule if it does not conflict with existing rules. */
-  public void addRule(Rule rule) throws RuleConflictException {
-    Optional<Rule> conflict =
-        rules.stream()
-            .filter(
-                r -> {
-                  // Check if both rules have the same trigger event
-
-                  boolean eventMatches =
-                      r.getTriggerEvent().equalsIgnoreCase(rule.getTriggerEvent());
-
-                  // Check if device names match (handling null for global events)
-                  boolean deviceMatches;
-                  if (r.getTriggerDeviceName() == null && rule.getTriggerDeviceName() == null) {
-                    deviceMatches = true; // Both are global events
-
-                  } else if (r.getTriggerDeviceName() == null
-                      || rule.getTriggerDeviceName() == null) {
-                    deviceMatches = false; // One is global, one is device-specific
-                  } else {
-                    deviceMatches =
-                        r.getTriggerDeviceName().equalsIgnoreCase(rule.getTriggerDeviceName());
-                  }
-
-                  return eventMatches && deviceMatches;
-                })
-            .findFirst();
-
-    if (conflict.isPresent()) {
+  public synchronized void addRule(Rule rule) throws RuleConflictException {
+    if (rule.isStateRule()) {
+      addStateRule(rule);
+      return;
+    }
+    Rule existing = findRule(rule.getEventKey(), rule.getDeviceKey());
+    if (existing != null) {
       String deviceDescription =
           rule.getTriggerDeviceName() != null
               ? "Device " + rule.getTriggerDeviceName()
@@ -64,111 +122,564 @@ public class RuleEngine {
               + rule.getTriggerEvent());
     }
 
-    rules.add(rule);
+    if (rule.isDeviceSpecific()) {
+      deviceRules
+          .computeIfAbsent(rule.getEventKey(), k -> new ConcurrentHashMap<>())
+          .put(rule.getDeviceKey(), rule);
+    } else {
+      globalRules.put(rule.getEventKey(), rule);
+    }
+    ruleCount++;
+    if (activationScheduler != null) {
+      activationScheduler.track(rule.getActivationWindow());
+    }
+  }
+
+  private void addStateRule(Rule rule) throws RuleConflictException {
+    if (stateRules.containsKey(rule.key())) {
+      throw new RuleConflictException(
+          "Conflict detected: a rule already exists for condition " + rule.getCondition());
+    }
+    stateRules.put(rule.key(), rule);
+    conditionMatcher.add(rule, this::currentDevice);
+    ruleCount++;
+    if (activationScheduler != null) {
+      activationScheduler.track(rule.getActivationWindow());
+    }
+  }
+
+  private Device currentDevice(String name) {
+    HomeManager homeManager = sceneManager.getHomeManager();
+    return homeManager != null ? homeManager.getDevicebyName(name) : null;
+  }
+
+  /** Returns a snapshot of all registered rules: global, then device, then state rules. */
+  public synchronized List<Rule> getRules() {
+    List<Rule> all = new ArrayList<>(ruleCount);
+    all.addAll(globalRules.values());
+    deviceRules.values().forEach(byDevice -> all.addAll(byDevice.values()));
+    all.addAll(stateRules.values());
+    return Collections.unmodifiableList(all);
+  }
+
+  /** Returns the number of registered rules. */
+  public int getRuleCount() {
+    return ruleCount;
   }
 
   /** Handles an incoming event from a device. */
   public void handleEvent(String eventType, String deviceName) {
 
-    handleEvent(eventType, deviceName, LocalTime.now());
+    process(eventType, deviceName, null);
   }
 
   /** Handles an incoming event from a device with specific time (for testing). */
   public void handleEvent(String eventType, String deviceName, LocalTime currentTime) {
-    System.out.println("\nRuleEngine received event: " + eventType + " from " + deviceName);
-
-    for (Rule rule : rules) {
-      if (evaluateRule(rule, eventType, deviceName, currentTime)) {
-        executeActions(rule);
-      }
-    }
+    process(eventType, deviceName, currentTime);
   }
 
   /** Handles global events that are not tied to a specific device. */
   public void handleGlobalEvent(String eventType) {
 
-    handleGlobalEvent(eventType, LocalTime.now());
+    process(eventType, null, null);
   }
 
   /** Handles global events that are not tied to a specific device with specific time (for testing). */
   public void handleGlobalEvent(String eventType, LocalTime currentTime) {
-    System.out.println("\nRuleEngine received global event: " + eventType);
+    process(eventType, null, currentTime);
+  }
+
+  /**
+   * Starts tracking which rule time windows are open, refreshing only when a window opens or
+   * closes. While running, events handled without an explicit time skip per-event clock reads.
+   */
+  public synchronized void startActivationScheduler() {
+    if (activationScheduler != null) {
+      return;
+    }
+    Set<ActivationWindow> windows = new HashSet<>();
+    globalRules.values().forEach(rule -> windows.add(rule.getActivationWindow()));
+    deviceRules
+        .values()
+        .forEach(byDevice -> byDevice.values().forEach(r -> windows.add(r.getActivationWindow())));
+    stateRules.values().forEach(rule -> windows.add(rule.getActivationWindow()));
+    RuleActivationScheduler scheduler = new RuleActivationScheduler(clock);
+    scheduler.trackAll(windows);
+    activationScheduler = scheduler;
+  }
+
+  public synchronized void stopActivationScheduler() {
+    if (activationScheduler != null) {
+      activationScheduler.stop();
+      activationScheduler = null;
+    }
+  }
+
+  public boolean isActivationSchedulerRunning() {
+    return activationScheduler != null;
+  }
+
+  /**
+   * Debounces or throttles the rule with this trigger; null removes its own policy so the default
+   * applies. Changing the policy drops the rule's open window, including a pending trailing edge.
+   *
+   * @return false if no rule has that trigger
+   */
+  public synchronized boolean setSuppression(
+      String eventType, String deviceName, Suppression suppression) {
+    Rule rule = findRule(Rule.normalize(eventType), Rule.normalize(deviceName));
+    return setSuppression(rule, suppression);
+  }
+
+  /**
+   * Debounces or throttles the state rule on this condition, like {@link #setSuppression(String,
+   * String, Suppression)} does for event rules. Conditions match regardless of case.
+   *
+   * @return false if no state rule has that condition
+   */
+  public synchronized boolean setSuppression(Condition condition, Suppression suppression) {
+    Objects.requireNonNull(condition, "condition cannot be null");
+    return setSuppression(stateRules.get(Rule.stateKey(condition)), suppression);
+  }
+
+  private boolean setSuppression(Rule rule, Suppression suppression) {
+    if (rule == null) {
+      return false;
+    }
+    rule.setSuppression(suppression);
+    if (suppressor != null) {
+      suppressor.release(rule);
+    } else if (suppression != null) {
+      suppressor = EventSuppressor.start(EventSuppressor.DEFAULT_TICK, clock, this::fireTrailing);
+    }
+    return true;
+  }
+
+  /** Sets the suppression used by rules without their own; null turns it off. */
+  public synchronized void setDefaultSuppression(Suppression suppression) {
+    defaultSuppression = suppression;
+    if (suppression != null && suppressor == null) {
+      suppressor = EventSuppressor.start(EventSuppressor.DEFAULT_TICK, clock, this::fireTrailing);
+    }
+  }
+
+  public Suppression getDefaultSuppression() {
+    return defaultSuppression;
+  }
+
+  /**
+   * Stops the suppression ticker and forgets open windows; pending trailing edges are dropped.
+   * Policies stay configured and take effect again once a policy is set.
+   */
+  public synchronized void stopSuppression() {
+    if (suppressor == null) {
+      return;
+    }
+    suppressor.stop();
+    for (Rule rule : getRules()) {
+      suppressor.release(rule);
+    }
+    suppressor = null;
+  }
+
+  /** Installs a suppressor that only moves when the caller advances it (for testing). */
+  synchronized EventSuppressor useManualSuppressor(LongSupplier nanoTime) {
+    stopSuppression();
+    suppressor = new EventSuppressor(EventSuppressor.DEFAULT_TICK, nanoTime, this::fireTrailing);
+    return suppressor;
+  }
+
+  /**
+   * Starts async ingestion with {@code workerCount} virtual-thread workers sharing {@code
+   * queueCapacity} queue slots. Each worker's queue holds {@code queueCapacity / workerCount}
+   * events, rounded up; events for one device all go to the same queue.
+   *
+   * @throws IllegalStateException if async ingestion is already running
+   */
+  public synchronized void startAsyncIngestion(
+      int workerCount, int queueCapacity, OverflowPolicy overflowPolicy) {
+    if (isAsyncIngestionRunning()) {
+      throw new IllegalStateException("Async ingestion is already running");
+    }
+    asyncDispatcher =
+        new AsyncEventDispatcher(
+            workerCount,
+            queueCapacity,
+            Objects.requireNonNull(overflowPolicy, "overflowPolicy cannot be null"),
+            this::process);
+  }
+
+  /**
+   * Makes {@link #submitEvent} queue events as tasks on the engine's {@link VirtualClock} instead
+   * of handing them to worker threads. Each event is handled on the thread that next advances the
+   * clock, after the events submitted before it and in time order with the engine's own timers, so
+   * a simulation produces the same firings in the same order on every run.
+   *
+   * @throws IllegalStateException if the clock is not a VirtualClock or ingestion is running
+   */
+  public synchronized void startDeterministicIngestion() {
+    if (!(clock instanceof VirtualClock virtualClock)) {
+      throw new IllegalStateException("Deterministic ingestion needs a VirtualClock");
+    }
+    if (isAsyncIngestionRunning()) {
+      throw new IllegalStateException("Async ingestion is already running");
+    }
+    deterministicClock = virtualClock;
+  }
+
+  /**
+   * Processes events that are already queued, then stops the async workers. Events queued by
+   * deterministic ingestion stay on the clock and are handled when it is next advanced.
+   */
+  public void stopAsyncIngestion() throws InterruptedException {
+    AsyncEventDispatcher dispatcher;
+    synchronized (this) {
+      dispatcher = asyncDispatcher;
+      asyncDispatcher = null;
+      deterministicClock = null;
+    }
+    if (dispatcher != null) {
+      dispatcher.stop();
+    }
+  }
 
-    for (Rule rule : rules) {
-      if (evaluateRule(rule, eventType, null, currentTime)) {
-        executeActions(rule);
+  /** True while {@link #submitEvent} is accepted, by async or deterministic ingestion. */
+  public boolean isAsyncIngestionRunning() {
+    return asyncDispatcher != null || deterministicClock != null;
+  }
+
+  /**
+   * Queues a device event for asynchronous handling. The event time is taken now, so queueing
+   * delay never moves an event out of a rule's time window.
+   *
+   * @return completes with true if a rule fired, false if none matched; cancelled if the event was
+   *     dropped by {@link OverflowPolicy#DROP_OLDEST}, or failed if it was rejected
+   * @throws IllegalStateException if async ingestion has not been started
+   */
+  public CompletableFuture<Boolean> submitEvent(String eventType, String deviceName) {
+    return submitEvent(eventType, deviceName, LocalTime.now(clock));
+  }
+
+  /** Queues a device event with a specific time (for testing). */
+  public CompletableFuture<Boolean> submitEvent(
+      String eventType, String deviceName, LocalTime currentTime) {
+    VirtualClock virtualClock = deterministicClock;
+    if (virtualClock != null) {
+      CompletableFuture<Boolean> handled = new CompletableFuture<>();
+      virtualClock.schedule(
+          Duration.ZERO,
+          () -> {
+            try {
+              handled.complete(process(eventType, deviceName, currentTime));
+            } catch (RuntimeException e) {
+              handled.completeExceptionally(e);
+            }
+          });
+      return handled;
+    }
+    String orderingKey = deviceName != null ? Rule.normalize(deviceName) : Rule.normalize(eventType);
+    return requireAsyncDispatcher().submit(eventType, deviceName, orderingKey, currentTime);
+  }
+
+  /** Queues a global event for asynchronous handling. */
+  public CompletableFuture<Boolean> submitGlobalEvent(String eventType) {
+    return submitEvent(eventType, null, LocalTime.now(clock));
+  }
+
+  private AsyncEventDispatcher requireAsyncDispatcher() {
+    AsyncEventDispatcher dispatcher = asyncDispatcher;
+    if (dispatcher == null) {
+      throw new IllegalStateException("Async ingestion has not been started");
+    }
+    return dispatcher;
+  }
+
+  /**
+   * Feeds state changes of every device in the home into the engine, including devices added
+   * later. A change is dispatched as a device event named by {@link DeviceChange#eventName()}
+   * (e.g. "turned_on") from the changed device, so rules can chain: a scene that turns on a
+   * light can trigger a rule on that light turning on. Chains deeper than {@value
+   * #MAX_CHAIN_DEPTH} on one thread are cut off and logged.
+   */
+  public synchronized void subscribeToDeviceChanges(HomeManager homeManager) {
+    if (followedHomes.containsKey(homeManager)) {
+      return;
+    }
+    HomeChangeListener topologyListener =
+        new HomeChangeListener() {
+          @Override
+          public void deviceAdded(Device device, Room room) {
+            subscribe(device);
+          }
+
+          @Override
+          public void deviceRemoved(Device device, Room room) {
+            unsubscribe(device);
+          }
+
+          @Override
+          public void deviceRenamed(Device device, String oldName) {
+            String deviceKey = Rule.normalize(device.getDeviceName());
+            if (subscribedDeviceKeys.replace(device, deviceKey) != null) {
+              conditionMatcher.refresh(Rule.normalize(oldName), null);
+              conditionMatcher.refresh(deviceKey, device);
+            }
+          }
+        };
+    followedHomes.put(homeManager, topologyListener);
+    homeManager.addChangeListener(topologyListener);
+    for (Device device : homeManager.getAllDevices()) {
+      subscribe(device);
+    }
+  }
+
+  /** Stops feeding the home's device changes into the engine. */
+  public synchronized void unsubscribeFromDeviceChanges(HomeManager homeManager) {
+    HomeChangeListener topologyListener = followedHomes.remove(homeManager);
+    if (topologyListener == null) {
+      return;
+    }
+    homeManager.removeChangeListener(topologyListener);
+    for (Device device : homeManager.getAllDevices()) {
+      unsubscribe(device);
+    }
+  }
+
+  private void subscribe(Device device) {
+    String deviceKey = Rule.normalize(device.getDeviceName());
+    subscribedDeviceKeys.put(device, deviceKey);
+    device.addChangeListener(deviceChangeListener);
+    conditionMatcher.refresh(deviceKey, device);
+  }
+
+  private void unsubscribe(Device device) {
+    device.removeChangeListener(deviceChangeListener);
+    String deviceKey = subscribedDeviceKeys.remove(device);
+    if (deviceKey != null) {
+      conditionMatcher.refresh(deviceKey, null);
+    }
+  }
+
+  /**
+   * Dispatches a device change to the event rule for it and to state rules whose condition it
+   * just made true. Event names are constants and device keys are normalized once at
+   * subscription, so a change no rule listens for costs a few map probes.
+   */
+  private void deviceChanged(DeviceChange change) {
+    String deviceKey = subscribedDeviceKeys.get(change.device());
+    if (deviceKey == null) {
+      return;
+    }
+    Map<String, Rule> byDevice = deviceRules.get(change.eventName());
+    Rule rule = byDevice != null ? byDevice.get(deviceKey) : null;
+    if (rule != null) {
+      fireChained(rule, change);
+    }
+    if (!conditionMatcher.isEmpty()) {
+      for (Rule stateRule : conditionMatcher.changed(deviceKey, change)) {
+        fireChained(stateRule, change);
       }
     }
   }
 
-  /** Evaluates a single rule. */
-  private boolean evaluateRule(Rule rule, String eventType, String deviceName) {
+  /** Fires a rule triggered by a device change, bounding how deep such triggers can nest. */
+  private void fireChained(Rule rule, DeviceChange change) {
+    Journal journal = Journals.get();
+    int[] depth = chainDepth.get();
+    if (depth[0] >= MAX_CHAIN_DEPTH) {
+      journal.error("Rule chain deeper than " + MAX_CHAIN_DEPTH + " stopped at " + rule.key());
+      return;
+    }
+    if (journal.isEnabled(JournalLevel.INFO)) {
+      journal.record(
+          JournalLevel.INFO,
+          "RuleEngine received change: "
+              + change.eventName()
+              + " from "
+              + change.device().getDeviceName());
+    }
+    depth[0]++;
+    try {
+      fire(rule, null);
+    } finally {
+      depth[0]--;
+    }
+  }
 
-    return evaluateRule(rule, eventType, deviceName, LocalTime.now());
+  /**
+   * Logs and dispatches one event; shared by the synchronous and async paths. A null time means
+   * "now".
+   */
+  private boolean process(String eventType, String deviceName, LocalTime currentTime) {
+    Journal journal = Journals.get();
+    if (journal.isEnabled(JournalLevel.INFO)) {
+      journal.record(
+          JournalLevel.INFO,
+          deviceName != null
+              ? "RuleEngine received event: " + eventType + " from " + deviceName
+              : "RuleEngine received global event: " + eventType);
+    }
+    return dispatch(eventType, deviceName, currentTime);
   }
 
-  /** Evaluates a single rule with specific time (for testing). */
-  private boolean evaluateRule(Rule rule, String eventType, String deviceName, LocalTime currentTime) {
-    // Check if event type matches
-    boolean eventMatches = rule.getTriggerEvent().equalsIgnoreCase(eventType);
-    // Check if device matches (handle global events with null device names)
-    boolean deviceMatches;
-    if (rule.getTriggerDeviceName() == null) {
-      // Global event - device name should also be null or match global event pattern
-      deviceMatches = (deviceName == null);
+  /** Looks up the single rule registered for the trigger and runs it if its window is open. */
+  private boolean dispatch(String eventType, String deviceName, LocalTime currentTime) {
+    if (eventType == null) {
+      return false;
+    }
+    return fire(findRule(Rule.normalize(eventType), Rule.normalize(deviceName)), currentTime);
+  }
+
+  /** Runs a looked-up rule (null if none matched) and records the outcome. */
+  private boolean fire(Rule rule, LocalTime currentTime) {
+    MetricsRegistry metrics = Metrics.get();
+    if (!metrics.isEnabled()) {
+      return rule != null && isActive(rule, currentTime) && admit(rule) && executeActions(rule);
+    }
+    if (rule == null) {
+      metrics.eventUnmatched();
+      return false;
+    }
+    if (!isActive(rule, currentTime)) {
+      metrics.eventOutsideWindow();
+      return false;
+    }
+    if (!admit(rule)) {
+      metrics.eventSuppressed();
+      return false;
+    }
+    metrics.eventMatched();
+    return executeTimed(rule);
+  }
+
+  /** Runs a rule whose trailing edge came due on the suppression ticker. */
+  private void fireTrailing(Rule rule) {
+    if (!isActive(rule, null)) {
+      return;
+    }
+    if (Metrics.get().isEnabled()) {
+      executeTimed(rule);
     } else {
-      // Device-specific event
-      deviceMatches = rule.getTriggerDeviceName().equalsIgnoreCase(deviceName);
+      executeActions(rule);
+    }
+  }
+
+  /** Applies the rule's suppression policy, if any, to an event that would fire it. */
+  private boolean admit(Rule rule) {
+    EventSuppressor current = suppressor;
+    if (current == null) {
+      return true;
+    }
+    Suppression policy = rule.getSuppression();
+    if (policy == null) {
+      policy = defaultSuppression;
+      if (policy == null) {
+        return true;
+      }
+    }
+    return current.admit(rule, policy);
+  }
+
+  private boolean executeTimed(Rule rule) {
+    OperationStats stats = rule.stats();
+    long timer = stats.startTimer();
+    boolean succeeded = false;
+    try {
+      succeeded = executeActions(rule);
+      return succeeded;
+    } finally {
+      stats.stopTimer(timer, succeeded);
+    }
+  }
+
+  /** Uses the scheduler's open-window set for "now" when it is running. */
+  private boolean isActive(Rule rule, LocalTime currentTime) {
+    if (currentTime != null) {
+      return rule.isActiveNow(currentTime);
     }
-    // Check time constraints using Rule's actual time window
-    boolean timeMatches = rule.isActiveNow(currentTime);
+    RuleActivationScheduler scheduler = activationScheduler;
+    if (scheduler != null) {
+      return scheduler.isOpen(rule.getActivationWindow());
+    }
+    return rule.isActiveNow(clock);
+  }
 
-    return eventMatches && deviceMatches && timeMatches;
+  private Rule findRule(String eventKey, String deviceKey) {
+    if (deviceKey == null) {
+      return globalRules.get(eventKey);
+    }
+    Map<String, Rule> byDevice = deviceRules.get(eventKey);
+    return byDevice != null ? byDevice.get(deviceKey) : null;
   }
 
-  /** Executes the target scene and sends notification. */
-  private void executeActions(Rule rule) {
+  /** Executes the target scene and sends notification. Returns false if the scene failed. */
+  private boolean executeActions(Rule rule) {
     Scene targetScene = rule.getTargetScene();
 
-    System.out.println("Executing Scene: " + targetScene.getName());
+    Journal journal = Journals.get();
+    if (journal.isEnabled(JournalLevel.INFO)) {
+      journal.record(JournalLevel.INFO, "Executing Scene: " + targetScene.getName());
+    }
 
     try {
       sceneManager.executeScene(targetScene);
     } catch (SceneExecutionException e) {
-      System.err.println(
-          "Failed to execute scene " + targetScene.getName() + ": " + e.getMessage());
-      return; // Don't send notification if scene execution failed
+      journal.error("Failed to execute scene " + targetScene.getName() + ": " + e.getMessage());
+      return false; // Don't send notification if scene execution failed
     }
 
-    // Send notification about the triggered rule
-    String notificationMessage;
+    // Send notification about the triggered rule; the message is formatted only when delivered
+    Alert alert;
     if (rule.isDeviceSpecific()) {
       // Device-specific rule
 
       Device triggeredDevice =
           sceneManager.getHomeManager().getDevicebyName(rule.getTriggerDeviceName());
-      Room room = null;
-      if (triggeredDevice != null) {
-        room =
-            sceneManager.getHomeManager().getRooms().stream()
-                .filter(r -> r.getDevices().contains(triggeredDevice))
-                .findFirst()
-                .orElse(null);
-      }
+      Room room = sceneManager.getHomeManager().getRoomOfDevice(triggeredDevice);
 
       String roomName = room != null ? room.getRoomName() : "Unknown";
-      notificationMessage =
-          String.format(
+      alert =
+          new Alert(
+              rule.key(),
               "ALERT: %s triggered by %s in %s",
-              rule.getTriggerEvent(), rule.getTriggerDeviceName(), roomName);
+              rule.getTriggerEvent(),
+              rule.getTriggerDeviceName(),
+              roomName);
+    } else if (rule.isStateRule()) {
+      alert =
+          new Alert(
+              rule.key(),
+              "ALERT: Condition %s triggered scene %s",
+              rule.getCondition(),
+              targetScene.getName());
     } else {
       // Global event rule
-      notificationMessage =
-          String.format(
+      alert =
+          new Alert(
+              rule.key(),
               "ALERT: Global event %s triggered scene %s",
-              rule.getTriggerEvent(), targetScene.getName());
+              rule.getTriggerEvent(),
+              targetScene.getName());
     }
 
-    notificationService.sendAlert(notificationMessage);
+    sendAlert(alert);
+    return true;
+  }
+
+  private void sendAlert(Alert alert) {
+    MetricsRegistry metrics = Metrics.get();
+    if (!metrics.isEnabled()) {
+      notificationService.send(alert);
+      return;
+    }
+    OperationStats stats = metrics.notifications();
+    long timer = stats.startTimer();
+    boolean succeeded = false;
+    try {
+      notificationService.send(alert);
+      succeeded = true;
+    } finally {
+      stats.stopTimer(timer, succeeded);
+    }
   }
 }
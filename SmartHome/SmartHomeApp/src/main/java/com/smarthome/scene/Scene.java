@@ -6,6 +6,7 @@ import java.util.List;
 public class Scene {
   private final String name;
   private final List<Action> actions;
+  private int version; // bumped on every change so compiled copies can detect staleness
 
   public Scene(String name) {
     this.name = name;
@@ -22,9 +23,16 @@ public class Scene {
 
   public void addAction(Action action) {
     actions.add(action);
+    version++;
   }
 
   public void removeAction(Action action) {
-    actions.remove(action);
+    if (actions.remove(action)) {
+      version++;
+    }
+  }
+
+  int getVersion() {
+    return version;
   }
 }
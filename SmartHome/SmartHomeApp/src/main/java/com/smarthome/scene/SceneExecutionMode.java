@@ -0,0 +1,12 @@
+package com.smarthome.scene;
+
+/** How {@link SceneManager} runs the actions of a scene. */
+public enum SceneExecutionMode {
+  /** One action after another on the calling thread, in declared order. */
+  SEQUENTIAL,
+  /**
+   * Actions on different devices run concurrently on virtual threads; actions on the same device
+   * keep their declared order. Scene latency tracks the slowest device instead of the sum.
+   */
+  PARALLEL
+}
@@ -0,0 +1,66 @@
+package com.smarthome.scene;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/** Per-action results of one scene run, in the scene's declared action order. */
+public class SceneExecutionReport {
+  private final String sceneName;
+  private final SceneExecutionMode mode;
+  private final List<ActionResult> results;
+  private final Duration elapsed;
+
+  public SceneExecutionReport(
+      String sceneName, SceneExecutionMode mode, List<ActionResult> results, Duration elapsed) {
+    this.sceneName = sceneName;
+    this.mode = mode;
+    this.results = Collections.unmodifiableList(results);
+    this.elapsed = elapsed;
+  }
+
+  public String getSceneName() {
+    return sceneName;
+  }
+
+  public SceneExecutionMode getMode() {
+    return mode;
+  }
+
+  public List<ActionResult> getResults() {
+    return results;
+  }
+
+  /** Wall-clock time for the whole scene. */
+  public Duration getElapsed() {
+    return elapsed;
+  }
+
+  public List<ActionResult> getFailures() {
+    return results.stream().filter(r -> !r.isSuccess()).toList();
+  }
+
+  public long count(ActionResult.Status status) {
+    return results.stream().filter(r -> r.getStatus() == status).count();
+  }
+
+  public boolean isSuccessful() {
+    return results.stream().allMatch(ActionResult::isSuccess);
+  }
+
+  @Override
+  public String toString() {
+    long skipped = count(ActionResult.Status.SKIPPED);
+    return "Scene '"
+        + sceneName
+        + "': "
+        + count(ActionResult.Status.SUCCEEDED)
+        + "/"
+        + results.size()
+        + " actions succeeded"
+        + (skipped > 0 ? ", " + skipped + " skipped" : "")
+        + " in "
+        + elapsed.toMillis()
+        + " ms";
+  }
+}
@@ -1,23 +1,101 @@
 package com.smarthome.scene;
 
 import com.smarthome.app.CommandExecutor;
+import com.smarthome.app.CommandOutcome;
+import com.smarthome.app.CommandPlan;
+import com.smarthome.app.HomeChangeListener;
 import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
 import com.smarthome.devices.Device;
-import com.smarthome.exceptions.DeviceNotFoundException;
+import com.smarthome.devices.DeviceChange;
+import com.smarthome.devices.DeviceState;
+import com.smarthome.exceptions.InvalidCommandException;
 import com.smarthome.exceptions.SceneExecutionException;
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.JournalLevel;
+import com.smarthome.journal.Journals;
+import com.smarthome.metrics.Metrics;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class SceneManager implements AutoCloseable {
+  private static final Duration DEFAULT_ACTION_TIMEOUT = Duration.ofSeconds(5);
 
-public class SceneManager {
   private final Map<String, Scene> scenes;
   private final HomeManager homeManager; // Add dependency
+  private final CommandExecutor commandExecutor = new CommandExecutor();
+  private final Map<Scene, CompiledScene> compiledScenes = new ConcurrentHashMap<>();
+  // Actions of registered scenes by case-folded target name, rebound on topology changes
+  private final Map<String, Set<CompiledAction>> boundActions = new ConcurrentHashMap<>();
+
+  private volatile SceneExecutionMode executionMode = SceneExecutionMode.SEQUENTIAL;
+  private volatile Duration actionTimeout = DEFAULT_ACTION_TIMEOUT;
+  private volatile boolean diffing;
+  private final HomeChangeListener topologyListener = topologyListener();
+  // Guarded by this
+  private ExecutorService actionExecutor;
+  private boolean closed;
 
   public SceneManager(HomeManager homeManager) {
     scenes = new LinkedHashMap<>();
     this.homeManager = homeManager;
+    if (homeManager != null) {
+      homeManager.addChangeListener(topologyListener);
+    }
+  }
+
+  /**
+   * Stops the threads that run parallel scenes and stops following the home's topology. Parallel
+   * scenes cannot run afterwards; sequential ones still can.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (actionExecutor != null) {
+      actionExecutor.shutdownNow();
+      actionExecutor = null;
+    }
+    if (homeManager != null) {
+      homeManager.removeChangeListener(topologyListener);
+    }
+  }
+
+  private HomeChangeListener topologyListener() {
+    return new HomeChangeListener() {
+      @Override
+      public void deviceAdded(Device device, Room room) {
+        rebind(device.getDeviceName());
+      }
+
+      @Override
+      public void deviceRemoved(Device device, Room room) {
+        rebind(device.getDeviceName());
+      }
+
+      @Override
+      public void deviceRenamed(Device device, String oldName) {
+        rebind(oldName);
+        rebind(device.getDeviceName());
+      }
+    };
   }
 
 
@@ -25,9 +103,84 @@ public class SceneManager {
     return homeManager;
   }
 
+  public SceneExecutionMode getExecutionMode() {
+    return executionMode;
+  }
+
+  /** Sets how scenes run, including scenes triggered by the RuleEngine. */
+  public void setExecutionMode(SceneExecutionMode executionMode) {
+    this.executionMode = Objects.requireNonNull(executionMode, "executionMode cannot be null");
+  }
+
+  public Duration getActionTimeout() {
+    return actionTimeout;
+  }
+
+  /** Sets how long a single action may take in {@link SceneExecutionMode#PARALLEL} mode. */
+  public void setActionTimeout(Duration actionTimeout) {
+    if (actionTimeout == null || actionTimeout.isNegative() || actionTimeout.isZero()) {
+      throw new IllegalArgumentException("actionTimeout must be positive");
+    }
+    this.actionTimeout = actionTimeout;
+  }
+
+  public boolean isDiffing() {
+    return diffing;
+  }
+
+  /**
+   * When enabled, scenes read the current state of their devices and send only the actions needed
+   * to reach the state the scene would leave them in; the others are reported as {@link
+   * ActionResult.Status#SKIPPED}. Re-running a scene whose devices are already in place sends
+   * nothing. Only the end state counts, so turning a light that is on off and on again is skipped.
+   */
+  public void setDiffing(boolean diffing) {
+    this.diffing = diffing;
+  }
+
+  /**
+   * Registers a scene, binding each action to its device and compiling it. Actions that cannot be
+   * compiled are kept and reported as failures when the scene runs; use {@link #addSceneStrict} to
+   * refuse them instead. Bindings follow devices being added, removed and renamed, so running the
+   * scene never looks devices up by name.
+   */
   public boolean addScene(Scene scene) {
     if (scene == null || scene.getName() == null) return false;
-    return scenes.putIfAbsent(scene.getName(), scene) == null;
+    if (scenes.putIfAbsent(scene.getName(), scene) != null) return false;
+    CompiledScene compiled = CompiledScene.compile(scene);
+    register(compiled);
+    unregister(compiledScenes.put(scene, compiled));
+    return true;
+  }
+
+  /**
+   * Registers a scene only if every action targets an existing device with a valid command.
+   *
+   * @return false if the scene is null, unnamed or a scene with that name already exists
+   * @throws InvalidCommandException naming the first action that failed to compile
+   */
+  public boolean addSceneStrict(Scene scene) throws InvalidCommandException {
+    if (scene == null || scene.getName() == null || scenes.containsKey(scene.getName())) {
+      return false;
+    }
+    CompiledScene compiled = CompiledScene.compile(scene);
+    compiled.bind(homeManager, commandExecutor);
+    for (CompiledAction action : compiled.getActions()) {
+      String error = compileError(action);
+      if (error != null) {
+        throw new InvalidCommandException(
+            "Scene '"
+                + scene.getName()
+                + "' has invalid action "
+                + action.getAction()
+                + ": "
+                + error);
+      }
+    }
+    if (scenes.putIfAbsent(scene.getName(), scene) != null) return false;
+    register(compiled);
+    unregister(compiledScenes.put(scene, compiled));
+    return true;
   }
 
   public Scene getSceneByName(String name) {
@@ -35,7 +188,10 @@ public class SceneManager {
   }
 
   public boolean removeScene(String name) {
-    return scenes.remove(name) != null;
+    Scene removed = scenes.remove(name);
+    if (removed == null) return false;
+    unregister(compiledScenes.remove(removed));
+    return true;
   }
 
   public Collection<Scene> getScenes() {
@@ -51,26 +207,388 @@ public class SceneManager {
     executeScene(scene);
   }
 
+  /** Runs the scene, logging failed actions. Use {@link #executeSceneWithReport} for results. */
   public void executeScene(Scene scene) throws SceneExecutionException {
+    SceneExecutionReport report = executeSceneWithReport(scene);
+    Journal journal = Journals.get();
+    if (!report.isSuccessful() && journal.isEnabled(JournalLevel.ERROR)) {
+      for (ActionResult failure : report.getFailures()) {
+        journal.record(JournalLevel.ERROR, "Failed to execute action: " + failure);
+      }
+    }
+  }
+
+  /**
+   * Runs every action of the scene in the current {@link SceneExecutionMode} and reports each
+   * action's outcome. A failing action never stops the others.
+   */
+  public SceneExecutionReport executeSceneWithReport(Scene scene) throws SceneExecutionException {
     if (scene == null) {
       throw new SceneExecutionException("Scene cannot be null");
     }
 
-    CommandExecutor commandExecutor = new CommandExecutor();
+    SceneExecutionMode mode = executionMode;
+    CompiledScene compiled = compiled(scene);
+    CompiledAction[] actions = compiled.getActions();
+    long start = System.nanoTime();
+    boolean[] skipped = diffing ? findSkippable(actions) : null;
+    ActionResult[] results =
+        mode == SceneExecutionMode.PARALLEL
+            ? runParallel(actions, skipped)
+            : runSequential(actions, skipped);
+    SceneExecutionReport report =
+        new SceneExecutionReport(
+            scene.getName(),
+            mode,
+            Arrays.asList(results),
+            Duration.ofNanos(System.nanoTime() - start));
+    if (Metrics.get().isEnabled()) {
+      compiled.getStats().record(report.getElapsed().toNanos(), report.isSuccessful());
+    }
+    return report;
+  }
+
+  /** Returns the cached compilation of a registered scene, recompiling it if it was edited. */
+  private CompiledScene compiled(Scene scene) {
+    CompiledScene compiled = compiledScenes.get(scene);
+    if (compiled != null && compiled.isCurrent(scene)) {
+      return compiled;
+    }
+    compiled = CompiledScene.compile(scene);
+    if (scenes.get(scene.getName()) == scene) {
+      register(compiled);
+      unregister(compiledScenes.put(scene, compiled));
+    } else {
+      compiled.bind(homeManager, commandExecutor);
+    }
+    return compiled;
+  }
+
+  /** Indexes the actions by target name before binding them, so no topology change is missed. */
+  private void register(CompiledScene compiled) {
+    for (CompiledAction action : compiled.getActions()) {
+      if (action.getDeviceKey() != null) {
+        boundActions
+            .computeIfAbsent(action.getDeviceKey(), key -> ConcurrentHashMap.newKeySet())
+            .add(action);
+      }
+    }
+    compiled.bind(homeManager, commandExecutor);
+  }
+
+  private void unregister(CompiledScene compiled) {
+    if (compiled == null) {
+      return;
+    }
+    for (CompiledAction action : compiled.getActions()) {
+      if (action.getDeviceKey() != null) {
+        boundActions.computeIfPresent(
+            action.getDeviceKey(),
+            (key, actions) -> {
+              actions.remove(action);
+              return actions.isEmpty() ? null : actions;
+            });
+      }
+    }
+  }
+
+  /** Rebinds only the actions targeting a name whose device was added, removed or renamed. */
+  private void rebind(String deviceName) {
+    Set<CompiledAction> actions = boundActions.get(CompiledAction.deviceKey(deviceName));
+    if (actions == null) {
+      return;
+    }
+    Device device = homeManager.getDevicebyName(deviceName);
+    for (CompiledAction action : actions) {
+      action.bind(device, commandExecutor);
+    }
+  }
+
+  private String compileError(CompiledAction action) {
+    Device device = action.getDevice();
+    if (device == null) {
+      return "Device not found: " + action.getAction().getDeviceId();
+    }
+    return action.forDevice(device, commandExecutor).error();
+  }
 
-    for (Action action : scene.getActions()) {
+  /** A device's state as the scene's actions would change it, for {@link #findSkippable}. */
+  private static final class Projection {
+    final DeviceState initial;
+    DeviceState state;
+    // Set once an action's effect cannot be predicted; later actions then run as declared
+    boolean unpredictable;
+    final List<Integer> changing = new ArrayList<>(2);
+
+    Projection(Device device) {
+      initial = DeviceState.of(device);
+      state = initial;
+    }
+  }
+
+  /**
+   * Marks the actions a diffing run can leave out. Each device's state is projected through its
+   * actions in order: an action that leaves the projection unchanged is skipped, and if the
+   * projection ends where the device already is, all of the device's actions are.
+   */
+  private boolean[] findSkippable(CompiledAction[] actions) {
+    boolean[] skipped = new boolean[actions.length];
+    Map<Device, Projection> projections = new IdentityHashMap<>();
+    for (int i = 0; i < actions.length; i++) {
+      Device device = actions[i].getDevice();
+      if (device == null) {
+        continue;
+      }
+      Projection projection = projections.computeIfAbsent(device, Projection::new);
+      if (projection.unpredictable) {
+        continue;
+      }
+      CommandPlan plan = actions[i].forDevice(device, commandExecutor).plan();
+      DeviceState next = plan != null ? plan.predict(projection.state) : null;
+      if (next == null) {
+        projection.unpredictable = true;
+      } else if (next.equals(projection.state)) {
+        skipped[i] = true;
+      } else {
+        projection.state = next;
+        projection.changing.add(i);
+      }
+    }
+    for (Projection projection : projections.values()) {
+      if (!projection.unpredictable && projection.state.equals(projection.initial)) {
+        projection.changing.forEach(i -> skipped[i] = true);
+      }
+    }
+    return skipped;
+  }
+
+  private ActionResult[] runSequential(CompiledAction[] actions, boolean[] skipped) {
+    ActionResult[] results = new ActionResult[actions.length];
+    for (int i = 0; i < results.length; i++) {
+      CompiledAction action = actions[i];
+      if (skipped != null && skipped[i]) {
+        results[i] = ActionResult.skipped(action.getAction());
+        continue;
+      }
+      Device device = action.getDevice();
+      results[i] = device == null ? deviceNotFound(action.getAction()) : runAction(device, action);
+    }
+    return results;
+  }
+
+  /**
+   * Groups actions by target device and runs each group on its own virtual thread. Within a group
+   * each action is awaited with the action timeout before the next one starts; after a timeout the
+   * rest of that device's actions are cancelled so they cannot overtake the stuck one.
+   *
+   * <p>The device changes the groups publish are collected and delivered on the calling thread once
+   * every group is done, group by group, followed by the executed commands in action order. Change
+   * listeners such as a subscribed rule engine or the command log therefore never run
+   * concurrently, as with {@link HomeManager#setGroupFanOut}. Only an action that finishes after
+   * timing out reports its changes from its own thread, since the scene no longer waits for it.
+   */
+  private ActionResult[] runParallel(CompiledAction[] actions, boolean[] skipped) {
+    ActionResult[] results = new ActionResult[actions.length];
+    Map<Device, List<Integer>> actionsByDevice = new IdentityHashMap<>();
+    for (int i = 0; i < results.length; i++) {
+      if (skipped != null && skipped[i]) {
+        results[i] = ActionResult.skipped(actions[i].getAction());
+        continue;
+      }
+      Device device = actions[i].getDevice();
+      if (device == null) {
+        results[i] = deviceNotFound(actions[i].getAction());
+      } else {
+        actionsByDevice.computeIfAbsent(device, d -> new ArrayList<>()).add(i);
+      }
+    }
+
+    ExecutorService executor = actionExecutor();
+    long timeoutNanos = actionTimeout.toNanos();
+    List<Future<List<DeviceChange>>> groups = new ArrayList<>(actionsByDevice.size());
+    for (Map.Entry<Device, List<Integer>> group : actionsByDevice.entrySet()) {
+      groups.add(
+          executor.submit(
+              () ->
+                  runDeviceGroup(
+                      executor, group.getKey(), group.getValue(), actions, results, timeoutNanos)));
+    }
+    List<List<DeviceChange>> groupChanges = new ArrayList<>(groups.size());
+    for (Future<List<DeviceChange>> group : groups) {
       try {
-        Device device = homeManager.getDevicebyName(action.getDeviceId());
-        if (device == null) {
-          throw new DeviceNotFoundException("Device not found: " + action.getDeviceId());
+        groupChanges.add(group.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ExecutionException e) {
+        // runDeviceGroup records its own failures
+      }
+    }
+    for (List<DeviceChange> changes : groupChanges) {
+      changes.forEach(Device::deliver);
+    }
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] != null && results[i].getStatus() == ActionResult.Status.SUCCEEDED) {
+        Action action = actions[i].getAction();
+        homeManager.recordCommand(actions[i].getDevice(), action.getCommand(), action.getValue());
+      }
+    }
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] == null) {
+        results[i] =
+            new ActionResult(
+                actions[i].getAction(),
+                ActionResult.Status.CANCELLED,
+                "Scene interrupted",
+                Duration.ZERO);
+      }
+    }
+    return results;
+  }
+
+  /** Runs one device's actions in order and returns the device changes they published. */
+  private List<DeviceChange> runDeviceGroup(
+      ExecutorService executor,
+      Device device,
+      List<Integer> indexes,
+      CompiledAction[] actions,
+      ActionResult[] results,
+      long timeoutNanos) {
+    List<DeviceChange> changes = new ArrayList<>();
+    boolean timedOut = false;
+    for (int index : indexes) {
+      CompiledAction compiledAction = actions[index];
+      Action action = compiledAction.getAction();
+      if (timedOut) {
+        results[index] =
+            new ActionResult(
+                action,
+                ActionResult.Status.CANCELLED,
+                "Earlier action on " + device.getDeviceName() + " timed out",
+                Duration.ZERO);
+        continue;
+      }
+      long start = System.nanoTime();
+      PendingAction task = new PendingAction(device, compiledAction);
+      Future<ActionResult> pending = executor.submit(task);
+      try {
+        try {
+          results[index] = pending.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+          if (!task.abandon()) {
+            // Finished just as the wait ran out; its changes are still ours to deliver
+            results[index] = pending.get();
+          } else {
+            pending.cancel(true);
+            timedOut = true;
+            results[index] =
+                new ActionResult(
+                    action,
+                    ActionResult.Status.TIMED_OUT,
+                    "No response within " + actionTimeout.toMillis() + " ms",
+                    Duration.ofNanos(System.nanoTime() - start));
+          }
         }
+      } catch (InterruptedException e) {
+        task.abandon();
+        pending.cancel(true);
+        Thread.currentThread().interrupt();
+        return changes;
+      } catch (ExecutionException e) {
+        String error = CommandOutcome.describe(e.getCause());
+        results[index] = ActionResult.failed(action, error, System.nanoTime() - start);
+      }
+      changes.addAll(task.changes());
+    }
+    return changes;
+  }
+
+  /**
+   * One parallel action, run on its own thread so it can be timed out. Its device changes are
+   * collected for the scene; if the scene stopped waiting first, the action reports its changes and
+   * its command itself when it finishes.
+   */
+  private final class PendingAction implements Callable<ActionResult> {
+    private final Device device;
+    private final CompiledAction compiledAction;
+    // Guarded by this
+    private List<DeviceChange> changes = List.of();
+    private boolean finished;
+    private boolean abandoned;
 
-        // Use proper command execution
-        commandExecutor.execute(device, action.getCommand(), action.getValue());
-      } catch (Exception e) {
-        // Print error but continue with other actions
-        System.err.println("Failed to execute action: " + action + ", Error: " + e.getMessage());
+    PendingAction(Device device, CompiledAction compiledAction) {
+      this.device = device;
+      this.compiledAction = compiledAction;
+    }
+
+    @Override
+    public ActionResult call() {
+      ActionResult[] result = new ActionResult[1];
+      List<DeviceChange> collected =
+          Device.collectChanges(() -> result[0] = invokeAction(device, compiledAction));
+      synchronized (this) {
+        if (!abandoned) {
+          changes = collected;
+          finished = true;
+          return result[0];
+        }
+      }
+      collected.forEach(Device::deliver);
+      if (result[0].getStatus() == ActionResult.Status.SUCCEEDED) {
+        Action action = compiledAction.getAction();
+        homeManager.recordCommand(device, action.getCommand(), action.getValue());
       }
+      return result[0];
+    }
+
+    /** Stops the scene waiting for this action; false if it already finished. */
+    synchronized boolean abandon() {
+      abandoned = !finished;
+      return abandoned;
+    }
+
+    synchronized List<DeviceChange> changes() {
+      return abandoned ? List.of() : changes;
+    }
+  }
+
+  private ActionResult runAction(Device device, CompiledAction compiledAction) {
+    ActionResult result = invokeAction(device, compiledAction);
+    if (result.getStatus() == ActionResult.Status.SUCCEEDED) {
+      Action action = compiledAction.getAction();
+      homeManager.recordCommand(device, action.getCommand(), action.getValue());
+    }
+    return result;
+  }
+
+  /** Runs an action without telling the home's change listeners about it. */
+  private ActionResult invokeAction(Device device, CompiledAction compiledAction) {
+    Action action = compiledAction.getAction();
+    CompiledAction.Compilation compilation = compiledAction.forDevice(device, commandExecutor);
+    if (compilation.error() != null) {
+      // Rejected when compiled; nothing to invoke
+      return ActionResult.failed(action, compilation.error(), 0);
+    }
+    long start = System.nanoTime();
+    try {
+      compilation.plan().invoke(device);
+      return ActionResult.succeeded(action, System.nanoTime() - start);
+    } catch (RuntimeException e) {
+      return ActionResult.failed(action, CommandOutcome.describe(e), System.nanoTime() - start);
+    }
+  }
+
+  private static ActionResult deviceNotFound(Action action) {
+    return ActionResult.failed(action, "Device not found: " + action.getDeviceId(), 0);
+  }
+
+  private synchronized ExecutorService actionExecutor() {
+    if (closed) {
+      throw new IllegalStateException("Scene manager is closed");
+    }
+    if (actionExecutor == null) {
+      actionExecutor = Executors.newVirtualThreadPerTaskExecutor();
     }
+    return actionExecutor;
   }
 }
@@ -0,0 +1,44 @@
+package com.smarthome.scene;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Limits how often a rule fires when its event arrives in bursts, e.g. a chattering motion sensor.
+ *
+ * <p>{@link Kind#DEBOUNCE} waits for the events to stop: every event restarts the window. {@link
+ * Kind#THROTTLE} fires at most once per window however long the burst lasts. A leading edge fires
+ * on the event that opens a window; a trailing edge fires once when the window closes, if events
+ * were held back during it.
+ */
+public record Suppression(Kind kind, Duration window, boolean leading, boolean trailing) {
+
+  public enum Kind {
+    DEBOUNCE,
+    THROTTLE
+  }
+
+  public Suppression {
+    Objects.requireNonNull(kind, "kind cannot be null");
+    if (window == null || window.isNegative() || window.isZero()) {
+      throw new IllegalArgumentException("window must be positive");
+    }
+    if (!leading && !trailing) {
+      throw new IllegalArgumentException("At least one of leading and trailing must be set");
+    }
+  }
+
+  /** Fires once, {@code quietPeriod} after the last event of a burst. */
+  public static Suppression debounce(Duration quietPeriod) {
+    return new Suppression(Kind.DEBOUNCE, quietPeriod, false, true);
+  }
+
+  /** Fires on the first event, then at most once per {@code interval}. */
+  public static Suppression throttle(Duration interval) {
+    return new Suppression(Kind.THROTTLE, interval, true, false);
+  }
+
+  public Suppression withEdges(boolean leading, boolean trailing) {
+    return new Suppression(kind, window, leading, trailing);
+  }
+}
@@ -0,0 +1,123 @@
+package com.smarthome.scene;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: a ring of buckets, one per tick, holding intrusively linked timeouts.
+ * Scheduling and cancelling are O(1) and allocate nothing; advancing the wheel visits one bucket
+ * per elapsed tick. Timeouts more than one rotation ahead share a bucket with nearer ones and are
+ * skipped until their tick comes round.
+ *
+ * <p>Time is measured in ticks chosen by the caller. Not thread-safe; callers synchronize.
+ */
+final class TimingWheel {
+
+  /** An entry in the wheel; subclasses carry the state the expiry acts on. */
+  abstract static class Timeout {
+    private long deadline;
+    private Timeout next;
+    private Timeout prev;
+    private int bucket = -1;
+
+    boolean isScheduled() {
+      return bucket >= 0;
+    }
+
+    long deadline() {
+      return deadline;
+    }
+  }
+
+  private final Timeout[] buckets;
+  private final int mask;
+  private final List<Timeout> expired = new ArrayList<>();
+  private long currentTick;
+  private int size;
+
+  /** Creates a wheel with {@code slots} buckets, rounded up to a power of two. */
+  TimingWheel(int slots, long startTick) {
+    int capacity = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+    this.buckets = new Timeout[capacity];
+    this.mask = capacity - 1;
+    this.currentTick = startTick;
+  }
+
+  long currentTick() {
+    return currentTick;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Schedules or moves a timeout; deadlines in the past expire on the next advance. */
+  void schedule(Timeout timeout, long deadline) {
+    if (timeout.isScheduled()) {
+      unlink(timeout);
+    }
+    timeout.deadline = Math.max(deadline, currentTick + 1);
+    int bucket = (int) (timeout.deadline & mask);
+    timeout.bucket = bucket;
+    timeout.prev = null;
+    timeout.next = buckets[bucket];
+    if (timeout.next != null) {
+      timeout.next.prev = timeout;
+    }
+    buckets[bucket] = timeout;
+    size++;
+  }
+
+  void cancel(Timeout timeout) {
+    if (timeout.isScheduled()) {
+      unlink(timeout);
+    }
+  }
+
+  /**
+   * Moves the wheel to {@code tick}, handing every timeout whose deadline has passed to {@code
+   * onExpiry} after unlinking it, so the callback may schedule it again.
+   */
+  void advance(long tick, Consumer<Timeout> onExpiry) {
+    if (tick <= currentTick) {
+      return;
+    }
+    // After a full rotation every bucket has been seen once
+    long last = Math.min(tick, currentTick + buckets.length);
+    for (long t = currentTick + 1; t <= last; t++) {
+      Timeout timeout = buckets[(int) (t & mask)];
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.deadline <= tick) {
+          unlink(timeout);
+          expired.add(timeout);
+        }
+        timeout = next;
+      }
+    }
+    currentTick = tick;
+    try {
+      for (Timeout timeout : expired) {
+        onExpiry.accept(timeout);
+      }
+    } finally {
+      expired.clear();
+    }
+  }
+
+  private void unlink(Timeout timeout) {
+    if (timeout.prev != null) {
+      timeout.prev.next = timeout.next;
+    } else {
+      buckets[timeout.bucket] = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.prev = timeout.prev;
+    }
+    timeout.next = null;
+    timeout.prev = null;
+    timeout.bucket = -1;
+    size--;
+  }
+}
@@ -0,0 +1,32 @@
+package com.smarthome.scene;
+
+/**
+ * Classic token bucket: holds up to {@code burst} tokens and refills at {@code permitsPerSecond}.
+ * {@link #tryAcquire} never blocks.
+ */
+final class TokenBucket {
+  private final double capacity;
+  private final double tokensPerNano;
+  private double tokens;
+  private long lastRefill;
+
+  TokenBucket(double permitsPerSecond, int burst, long now) {
+    this.capacity = burst;
+    this.tokensPerNano = permitsPerSecond / 1e9;
+    this.tokens = burst;
+    this.lastRefill = now;
+  }
+
+  synchronized boolean tryAcquire(long now) {
+    long elapsed = now - lastRefill;
+    if (elapsed > 0) {
+      tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+      lastRefill = now;
+    }
+    if (tokens >= 1) {
+      tokens -= 1;
+      return true;
+    }
+    return false;
+  }
+}
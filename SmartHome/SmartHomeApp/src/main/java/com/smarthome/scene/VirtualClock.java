@@ -0,0 +1,215 @@
+package com.smarthome.scene;
+
+import com.smarthome.journal.Journals;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.PriorityQueue;
+
+/**
+ * A {@link Clock} that only moves when {@link #advance advanced}, for running rules against
+ * simulated time. Give it to a {@link RuleEngine} and the engine's schedulers (activation windows,
+ * debounce and throttle windows) wake on simulated time instead of on threads, so a simulated week
+ * of events takes as long as the rules take to run.
+ *
+ * <p>Tasks scheduled on the clock run on the thread that advances it, ordered by due time and then
+ * by the order they were scheduled in, and see the clock read exactly their due time. Runs are
+ * therefore deterministic: the same schedule produces the same sequence of events every time.
+ * Clocks made with {@link #withZone} share the time and the tasks of the clock they came from.
+ */
+public final class VirtualClock extends Clock {
+
+  /** A task waiting on the clock. */
+  public static final class Task implements Comparable<Task> {
+    private final long due;
+    private final long sequence;
+    private final Runnable action;
+    private volatile boolean cancelled;
+
+    private Task(long due, long sequence, Runnable action) {
+      this.due = due;
+      this.sequence = sequence;
+      this.action = action;
+    }
+
+    /** Stops the task from running; has no effect once it ran. */
+    public void cancel() {
+      cancelled = true;
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override
+    public int compareTo(Task other) {
+      int byDue = Long.compare(due, other.due);
+      return byDue != 0 ? byDue : Long.compare(sequence, other.sequence);
+    }
+  }
+
+  /** Time and tasks, shared between a clock and its copies in other zones. */
+  private static final class Timeline {
+    private final Instant origin;
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private volatile long nanos;
+    private long sequence;
+    private Thread advancing;
+
+    Timeline(Instant origin) {
+      this.origin = origin;
+    }
+  }
+
+  private final Timeline timeline;
+  private final ZoneId zone;
+
+  /** Creates a clock standing at {@code start} in {@code zone}. */
+  public VirtualClock(Instant start, ZoneId zone) {
+    this(new Timeline(requireNonNull(start, "start")), requireNonNull(zone, "zone"));
+  }
+
+  private VirtualClock(Timeline timeline, ZoneId zone) {
+    this.timeline = timeline;
+    this.zone = zone;
+  }
+
+  /** Creates a clock standing at {@code start} in UTC, so runs do not depend on the host zone. */
+  public static VirtualClock at(LocalDateTime start) {
+    Instant instant = requireNonNull(start, "start").toInstant(ZoneOffset.UTC);
+    return new VirtualClock(instant, ZoneOffset.UTC);
+  }
+
+  @Override
+  public ZoneId getZone() {
+    return zone;
+  }
+
+  @Override
+  public VirtualClock withZone(ZoneId zone) {
+    return zone.equals(this.zone) ? this : new VirtualClock(timeline, zone);
+  }
+
+  @Override
+  public Instant instant() {
+    return timeline.origin.plusNanos(timeline.nanos);
+  }
+
+  /** Nanoseconds since the clock was created; the simulated counterpart of System.nanoTime. */
+  public long nanoTime() {
+    return timeline.nanos;
+  }
+
+  /** Schedules {@code action} to run {@code delay} from now; with no delay, on the next advance. */
+  public Task schedule(Duration delay, Runnable action) {
+    if (delay == null || delay.isNegative()) {
+      throw new IllegalArgumentException("delay must not be negative");
+    }
+    return scheduleAtNanos(saturatedAdd(timeline.nanos, delay.toNanos()), action);
+  }
+
+  /** Schedules {@code action} for when {@link #nanoTime} reaches {@code nanoTime}. */
+  Task scheduleAtNanos(long nanoTime, Runnable action) {
+    if (action == null) {
+      throw new IllegalArgumentException("action must not be null");
+    }
+    synchronized (timeline) {
+      Task task = new Task(Math.max(nanoTime, timeline.nanos), timeline.sequence++, action);
+      timeline.tasks.add(task);
+      return task;
+    }
+  }
+
+  /** Number of tasks waiting to run, including cancelled ones not yet reached. */
+  public int getPendingTaskCount() {
+    synchronized (timeline) {
+      return timeline.tasks.size();
+    }
+  }
+
+  /**
+   * Moves the clock forward by {@code duration}, running every task that comes due on the way.
+   * Tasks may schedule further tasks; those due before the end run in the same call.
+   *
+   * @return the number of tasks that ran
+   * @throws IllegalStateException if called from a task or while another thread is advancing
+   */
+  public int advance(Duration duration) {
+    if (duration == null || duration.isNegative()) {
+      throw new IllegalArgumentException("duration must not be negative");
+    }
+    return advanceToNanos(saturatedAdd(timeline.nanos, duration.toNanos()));
+  }
+
+  /** Moves the clock forward to {@code instant}; see {@link #advance}. */
+  public int advanceTo(Instant instant) {
+    long target = Duration.between(timeline.origin, instant).toNanos();
+    if (target < timeline.nanos) {
+      throw new IllegalArgumentException("Cannot move the clock back to " + instant);
+    }
+    return advanceToNanos(target);
+  }
+
+  private int advanceToNanos(long target) {
+    synchronized (timeline) {
+      if (timeline.advancing != null) {
+        throw new IllegalStateException("The clock is already being advanced");
+      }
+      timeline.advancing = Thread.currentThread();
+    }
+    int ran = 0;
+    try {
+      Task task;
+      while ((task = nextDue(target)) != null) {
+        if (task.cancelled) {
+          continue;
+        }
+        ran++;
+        try {
+          task.action.run();
+        } catch (RuntimeException e) {
+          Journals.get().error("Scheduled task failed at " + instant() + ": " + e.getMessage());
+        }
+      }
+    } finally {
+      synchronized (timeline) {
+        timeline.nanos = Math.max(timeline.nanos, target);
+        timeline.advancing = null;
+      }
+    }
+    return ran;
+  }
+
+  /** Removes the next task due by {@code target} and moves the clock to its due time. */
+  private Task nextDue(long target) {
+    synchronized (timeline) {
+      Task head = timeline.tasks.peek();
+      if (head == null || head.due > target) {
+        return null;
+      }
+      timeline.tasks.poll();
+      timeline.nanos = Math.max(timeline.nanos, head.due);
+      return head;
+    }
+  }
+
+  private static long saturatedAdd(long a, long b) {
+    long sum = a + b;
+    return ((a ^ sum) & (b ^ sum)) < 0 ? Long.MAX_VALUE : sum;
+  }
+
+  private static <T> T requireNonNull(T value, String name) {
+    if (value == null) {
+      throw new IllegalArgumentException(name + " must not be null");
+    }
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return "VirtualClock[" + instant() + ", " + zone + "]";
+  }
+}
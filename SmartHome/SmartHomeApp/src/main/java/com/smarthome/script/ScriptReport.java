@@ -0,0 +1,65 @@
+package com.smarthome.script;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Result of a {@link ScriptRunner} run.
+ *
+ * @param counts commands run per verb, including failed ones; lines with an unknown verb are only
+ *     counted in {@code commands}
+ * @param errors the first few failures as "line N: message"
+ */
+public record ScriptReport(
+    long commands,
+    long failed,
+    Map<ScriptVerb, Long> counts,
+    List<String> errors,
+    Duration elapsed) {
+
+  public ScriptReport {
+    counts = Map.copyOf(counts);
+    errors = List.copyOf(errors);
+  }
+
+  /** Commands completed per second of wall-clock time. */
+  public double throughput() {
+    return commands / (Math.max(elapsed.toNanos(), 1) / 1e9);
+  }
+
+  public long count(ScriptVerb verb) {
+    return counts.getOrDefault(verb, 0L);
+  }
+
+  public String format() {
+    StringBuilder report = new StringBuilder();
+    report.append(
+        String.format(
+            Locale.ROOT,
+            "Commands: %d (%d failed), elapsed: %d ms%n",
+            commands,
+            failed,
+            elapsed.toMillis()));
+    report.append(String.format(Locale.ROOT, "Throughput: %.0f commands/s%n", throughput()));
+    StringBuilder perVerb = new StringBuilder();
+    for (ScriptVerb verb : ScriptVerb.values()) {
+      long count = count(verb);
+      if (count > 0) {
+        perVerb.append(perVerb.isEmpty() ? "" : ", ").append(verb.keyword()).append('=');
+        perVerb.append(count);
+      }
+    }
+    if (!perVerb.isEmpty()) {
+      report.append("By command: ").append(perVerb).append('\n');
+    }
+    for (String error : errors) {
+      report.append("  ").append(error).append('\n');
+    }
+    if (failed > errors.size()) {
+      report.append("  ... and ").append(failed - errors.size()).append(" more failures\n");
+    }
+    return report.toString();
+  }
+}
@@ -0,0 +1,353 @@
+package com.smarthome.script;
+
+import com.smarthome.app.CommandExecutor;
+import com.smarthome.app.CommandExecutor.Compilation;
+import com.smarthome.app.CommandOutcome;
+import com.smarthome.app.CommandPlan;
+import com.smarthome.app.HomeChangeListener;
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Device;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SecurityCamera;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.exceptions.InvalidCommandException;
+import com.smarthome.exceptions.RuleConflictException;
+import com.smarthome.exceptions.SceneExecutionException;
+import com.smarthome.scene.Action;
+import com.smarthome.scene.Rule;
+import com.smarthome.scene.RuleEngine;
+import com.smarthome.scene.Scene;
+import com.smarthome.scene.SceneExecutionReport;
+import com.smarthome.scene.SceneManager;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs a command script against a home, one command per line:
+ *
+ * <pre>
+ * add-room Kitchen
+ * add-device Kitchen light KT_LIGHT_01 "Kitchen Light"
+ * send "Kitchen Light" setBrightness 80
+ * add-scene Evening "Kitchen Light" turnOn
+ * add-rule sunset * Evening
+ * event sunset
+ * run-scene Evening
+ * </pre>
+ *
+ * <p>See {@link ScriptVerb} for every command. A failing command is counted and reported with its
+ * line number; the script carries on.
+ *
+ * <p>Parsing and execution are pipelined: a parser thread tokenizes the script into batches of
+ * commands while the calling thread runs the previous batch, and the batches are recycled so a
+ * long script allocates little. Commands still run one at a time in script order, exactly as if
+ * they had been sent one by one. Device lookups and compiled {@link CommandPlan}s are cached per
+ * name and per device type, command and value, so a repeated {@code send} costs two map lookups
+ * and the device call.
+ *
+ * <p>Not thread-safe: run one script at a time.
+ */
+public final class ScriptRunner {
+  static final int BATCH_SIZE = 1024;
+  static final int MAX_REPORTED_ERRORS = 20;
+
+  private static final int BATCHES_IN_FLIGHT = 4;
+  private static final int MAX_ARGS = ScriptTokenizer.MAX_TOKENS - 1;
+  private static final String ANY_DEVICE = "*";
+
+  /** Parsed commands travelling from the parser to the executor, struct-of-arrays style. */
+  private static final class Batch {
+    final ScriptVerb[] verbs = new ScriptVerb[BATCH_SIZE];
+    final String[] args = new String[BATCH_SIZE * MAX_ARGS];
+    final int[] argCounts = new int[BATCH_SIZE];
+    final int[] lines = new int[BATCH_SIZE];
+    final String[] errors = new String[BATCH_SIZE];
+    int size;
+    boolean last;
+  }
+
+  private record PlanKey(Class<? extends Device> deviceType, String command, String value) {}
+
+  /** Running totals of one script. */
+  private static final class Tally {
+    final long[] counts = new long[ScriptVerb.values().length];
+    final List<String> errors = new ArrayList<>();
+    long commands;
+    long failed;
+
+    void record(ScriptVerb verb, int line, String error) {
+      commands++;
+      if (verb != null) {
+        counts[verb.ordinal()]++;
+      }
+      if (error != null) {
+        failed++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+          errors.add("line " + line + ": " + error);
+        }
+      }
+    }
+
+    ScriptReport report(Duration elapsed) {
+      Map<ScriptVerb, Long> byVerb = new EnumMap<>(ScriptVerb.class);
+      for (ScriptVerb verb : ScriptVerb.values()) {
+        if (counts[verb.ordinal()] > 0) {
+          byVerb.put(verb, counts[verb.ordinal()]);
+        }
+      }
+      return new ScriptReport(commands, failed, byVerb, errors, elapsed);
+    }
+  }
+
+  private final HomeManager homeManager;
+  private final SceneManager sceneManager;
+  private final RuleEngine ruleEngine;
+  private final CommandExecutor commandExecutor = new CommandExecutor();
+  private final Map<String, Device> devices = new HashMap<>();
+  private final Map<PlanKey, Compilation> plans = new HashMap<>();
+  // A removed or renamed device must not be found under its old name
+  private final HomeChangeListener deviceCacheInvalidator =
+      new HomeChangeListener() {
+        @Override
+        public void deviceRemoved(Device device, Room room) {
+          devices.clear();
+        }
+
+        @Override
+        public void deviceRenamed(Device device, String oldName) {
+          devices.clear();
+        }
+      };
+
+  public ScriptRunner(HomeManager homeManager, SceneManager sceneManager, RuleEngine ruleEngine) {
+    this.homeManager = homeManager;
+    this.sceneManager = sceneManager;
+    this.ruleEngine = ruleEngine;
+  }
+
+  /**
+   * Runs every command of the script and reports how it went. The reader is not closed.
+   *
+   * @throws IOException if the script cannot be read; commands before the failure have run
+   */
+  public ScriptReport run(Reader script) throws IOException {
+    BlockingQueue<Batch> free = new ArrayBlockingQueue<>(BATCHES_IN_FLIGHT);
+    BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(BATCHES_IN_FLIGHT);
+    for (int i = 0; i < BATCHES_IN_FLIGHT; i++) {
+      free.add(new Batch());
+    }
+    // Written by the parser before it hands over its last batch
+    IOException[] readFailure = new IOException[1];
+    Thread parser =
+        new Thread(
+            () -> parse(new ScriptTokenizer(script), free, parsed, readFailure), "script-parser");
+    parser.setDaemon(true);
+
+    Tally tally = new Tally();
+    homeManager.addChangeListener(deviceCacheInvalidator);
+    long start = System.nanoTime();
+    parser.start();
+    try {
+      boolean last = false;
+      while (!last) {
+        Batch batch = parsed.take();
+        for (int i = 0; i < batch.size; i++) {
+          execute(batch, i, tally);
+        }
+        last = batch.last;
+        batch.size = 0;
+        free.put(batch);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Script interrupted");
+    } finally {
+      parser.interrupt();
+      homeManager.removeChangeListener(deviceCacheInvalidator);
+      devices.clear();
+      plans.clear();
+    }
+    if (readFailure[0] != null) {
+      throw readFailure[0];
+    }
+    return tally.report(Duration.ofNanos(System.nanoTime() - start));
+  }
+
+  private static void parse(
+      ScriptTokenizer tokenizer,
+      BlockingQueue<Batch> free,
+      BlockingQueue<Batch> parsed,
+      IOException[] readFailure) {
+    try {
+      Batch batch = free.take();
+      try {
+        while (tokenizer.next()) {
+          add(batch, tokenizer);
+          if (batch.size == BATCH_SIZE) {
+            parsed.put(batch);
+            batch = free.take();
+          }
+        }
+      } catch (IOException e) {
+        readFailure[0] = e;
+      }
+      batch.last = true;
+      parsed.put(batch);
+    } catch (InterruptedException e) {
+      // The executor gave up
+    }
+  }
+
+  private static void add(Batch batch, ScriptTokenizer tokenizer) {
+    int i = batch.size++;
+    batch.lines[i] = tokenizer.lineNumber();
+    batch.verbs[i] = null;
+    batch.argCounts[i] = 0;
+    batch.errors[i] = tokenizer.error();
+    if (batch.errors[i] != null) {
+      return;
+    }
+
+    String[] tokens = tokenizer.tokens();
+    ScriptVerb verb = ScriptVerb.of(tokens[0]);
+    int args = tokenizer.count() - 1;
+    if (verb == null) {
+      batch.errors[i] = "Unknown command: " + tokens[0];
+    } else if (!verb.accepts(args)) {
+      batch.verbs[i] = verb;
+      batch.errors[i] = "Usage: " + verb.usage();
+    } else {
+      batch.verbs[i] = verb;
+      batch.argCounts[i] = args;
+      System.arraycopy(tokens, 1, batch.args, i * MAX_ARGS, args);
+    }
+  }
+
+  private void execute(Batch batch, int i, Tally tally) {
+    String error = batch.errors[i];
+    if (error == null) {
+      try {
+        error = apply(batch.verbs[i], batch.args, i * MAX_ARGS, batch.argCounts[i]);
+      } catch (InvalidCommandException
+          | SceneExecutionException
+          | RuleConflictException
+          | RuntimeException e) {
+        error = CommandOutcome.describe(e);
+      }
+    }
+    tally.record(batch.verbs[i], batch.lines[i], error);
+  }
+
+  /** Runs one command and returns why it failed, or null. */
+  private String apply(ScriptVerb verb, String[] args, int at, int count)
+      throws InvalidCommandException, SceneExecutionException, RuleConflictException {
+    return switch (verb) {
+      case ADD_ROOM ->
+          homeManager.addRoom(new Room(args[at])) ? null : "Room already exists: " + args[at];
+      case ADD_DEVICE -> addDevice(args[at], args[at + 1], args[at + 2], args[at + 3]);
+      case SEND -> send(args[at], args[at + 1], count > 2 ? args[at + 2] : null);
+      case RUN_SCENE -> runScene(args[at]);
+      case EVENT -> {
+        if (count > 1) {
+          ruleEngine.handleEvent(args[at], args[at + 1]);
+        } else {
+          ruleEngine.handleGlobalEvent(args[at]);
+        }
+        yield null;
+      }
+      case ADD_SCENE ->
+          addSceneAction(args[at], args[at + 1], args[at + 2], count > 3 ? args[at + 3] : null);
+      case ADD_RULE -> addRule(args[at], args[at + 1], args[at + 2]);
+    };
+  }
+
+  private String addDevice(String roomName, String type, String id, String name) {
+    Room room = homeManager.getRoombyName(roomName);
+    Device device =
+        switch (type.toLowerCase(Locale.ROOT)) {
+          case "light" -> new Light(id, name);
+          case "thermostat" -> new Thermostat(id, name);
+          case "camera" -> new SecurityCamera(id, name);
+          default -> null;
+        };
+    if (device == null) {
+      return "Unknown device type: " + type;
+    }
+    return homeManager.addDevice(device, room) ? null : "Device already exists: " + id;
+  }
+
+  private String send(String deviceName, String command, String value)
+      throws InvalidCommandException {
+    Device device = devices.get(deviceName);
+    if (device == null) {
+      device = homeManager.getDevicebyName(deviceName);
+      if (device == null) {
+        return "Device not found: " + deviceName;
+      }
+      devices.put(deviceName, device);
+    }
+    Compilation compiled =
+        plans.computeIfAbsent(
+            new PlanKey(device.getClass(), command, value),
+            key -> commandExecutor.tryCompile(key.deviceType(), key.command(), key.value()));
+    if (compiled.plan() == null) {
+      return compiled.error();
+    }
+    commandExecutor.execute(device, compiled.plan());
+    homeManager.recordCommand(device, command, value);
+    return null;
+  }
+
+  private String runScene(String name) throws SceneExecutionException {
+    Scene scene = sceneManager.getSceneByName(name);
+    if (scene == null) {
+      return "Scene not found: " + name;
+    }
+    SceneExecutionReport report = sceneManager.executeSceneWithReport(scene);
+    if (report.isSuccessful()) {
+      return null;
+    }
+    return report.getFailures().size()
+        + " of "
+        + report.getResults().size()
+        + " actions of "
+        + name
+        + " failed, first: "
+        + report.getFailures().get(0);
+  }
+
+  private String addSceneAction(String sceneName, String deviceName, String command, String value) {
+    Scene scene = sceneManager.getSceneByName(sceneName);
+    if (scene == null) {
+      scene = new Scene(sceneName);
+      sceneManager.addScene(scene);
+    }
+    scene.addAction(
+        value == null ? new Action(deviceName, command) : new Action(deviceName, command, value));
+    return null;
+  }
+
+  private String addRule(String event, String deviceName, String sceneName)
+      throws RuleConflictException {
+    Scene scene = sceneManager.getSceneByName(sceneName);
+    if (scene == null) {
+      return "Scene not found: " + sceneName;
+    }
+    ruleEngine.addRule(
+        ANY_DEVICE.equals(deviceName)
+            ? new Rule(event, scene)
+            : new Rule(event, deviceName, scene));
+    return null;
+  }
+}
@@ -0,0 +1,191 @@
+package com.smarthome.script;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Splits a script into lines of whitespace-separated tokens without building a line string.
+ *
+ * <p>Tokens are separated by spaces or tabs; a token in double quotes may contain spaces, and a
+ * {@code #} at the start of a token comments out the rest of the line. Blank and comment-only lines
+ * are skipped.
+ *
+ * <p>Token strings are interned in a fixed-size table, so the device names and commands that a
+ * script repeats on every line are returned as the same instance and cost no allocation after
+ * their first occurrence. Once the table is full, new tokens are allocated as usual.
+ */
+final class ScriptTokenizer {
+  static final int MAX_TOKENS = 8;
+
+  private static final int INITIAL_BUFFER = 64 * 1024;
+  private static final int TABLE_SIZE = 1 << 14;
+  private static final int MAX_PROBES = 8;
+
+  private final Reader reader;
+  private final String[] tokens = new String[MAX_TOKENS];
+  private final String[] table = new String[TABLE_SIZE];
+  private char[] buffer = new char[INITIAL_BUFFER];
+  private int position;
+  private int limit;
+  private boolean endOfInput;
+  private int lineNumber;
+  private int count;
+  private String error;
+
+  ScriptTokenizer(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Reads the next line that has tokens, or returns false at the end of the input. A line that
+   * cannot be tokenized is still returned, with {@link #error()} set.
+   */
+  boolean next() throws IOException {
+    while (true) {
+      int end = findLineEnd();
+      if (end < 0) {
+        return false;
+      }
+      lineNumber++;
+      int start = position;
+      position = Math.min(end + 1, limit);
+      tokenize(start, end);
+      if (count > 0 || error != null) {
+        return true;
+      }
+    }
+  }
+
+  /** Tokens of the current line; entries at or after {@link #count()} are stale. */
+  String[] tokens() {
+    return tokens;
+  }
+
+  int count() {
+    return count;
+  }
+
+  /** One-based number of the current line. */
+  int lineNumber() {
+    return lineNumber;
+  }
+
+  /** Why the current line could not be tokenized, or null. */
+  String error() {
+    return error;
+  }
+
+  /** Returns the index of the next line's end, reading more input as needed, or -1 at the end. */
+  private int findLineEnd() throws IOException {
+    int scanned = position;
+    while (true) {
+      for (int i = scanned; i < limit; i++) {
+        if (buffer[i] == '\n') {
+          return i;
+        }
+      }
+      if (endOfInput) {
+        return position < limit ? limit : -1;
+      }
+      scanned = fill();
+    }
+  }
+
+  /** Moves the partial line to the front of the buffer and reads after it. */
+  private int fill() throws IOException {
+    int pending = limit - position;
+    if (position > 0) {
+      System.arraycopy(buffer, position, buffer, 0, pending);
+    } else if (pending == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+    position = 0;
+    limit = pending;
+    int read = reader.read(buffer, limit, buffer.length - limit);
+    if (read < 0) {
+      endOfInput = true;
+    } else {
+      limit += read;
+    }
+    return pending;
+  }
+
+  private void tokenize(int start, int end) {
+    count = 0;
+    error = null;
+    if (end > start && buffer[end - 1] == '\r') {
+      end--;
+    }
+    int i = start;
+    while (i < end) {
+      char c = buffer[i];
+      if (c == ' ' || c == '\t') {
+        i++;
+        continue;
+      }
+      if (c == '#') {
+        return;
+      }
+      if (count == MAX_TOKENS) {
+        error = "Too many tokens (at most " + MAX_TOKENS + ")";
+        return;
+      }
+      int tokenStart;
+      int tokenEnd;
+      if (c == '"') {
+        tokenStart = i + 1;
+        tokenEnd = tokenStart;
+        while (tokenEnd < end && buffer[tokenEnd] != '"') {
+          tokenEnd++;
+        }
+        if (tokenEnd == end) {
+          error = "Unterminated quote";
+          return;
+        }
+        i = tokenEnd + 1;
+      } else {
+        tokenStart = i;
+        tokenEnd = i;
+        while (tokenEnd < end && buffer[tokenEnd] != ' ' && buffer[tokenEnd] != '\t') {
+          tokenEnd++;
+        }
+        i = tokenEnd;
+      }
+      tokens[count++] = intern(tokenStart, tokenEnd - tokenStart);
+    }
+  }
+
+  private String intern(int offset, int length) {
+    int hash = 0;
+    for (int i = offset; i < offset + length; i++) {
+      hash = 31 * hash + buffer[i];
+    }
+    int mask = TABLE_SIZE - 1;
+    int slot = (hash ^ (hash >>> 16)) & mask;
+    for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & mask) {
+      String candidate = table[slot];
+      if (candidate == null) {
+        String token = new String(buffer, offset, length);
+        table[slot] = token;
+        return token;
+      }
+      if (matches(candidate, offset, length)) {
+        return candidate;
+      }
+    }
+    return new String(buffer, offset, length);
+  }
+
+  private boolean matches(String candidate, int offset, int length) {
+    if (candidate.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (candidate.charAt(i) != buffer[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,52 @@
+package com.smarthome.script;
+
+/** The commands a {@link ScriptRunner} understands, with their arguments. */
+public enum ScriptVerb {
+  ADD_ROOM("add-room", "<room>", 1, 1),
+  ADD_DEVICE("add-device", "<room> <light|thermostat|camera> <id> <name>", 4, 4),
+  SEND("send", "<device> <command> [value]", 2, 3),
+  RUN_SCENE("run-scene", "<scene>", 1, 1),
+  EVENT("event", "<event> [device]", 1, 2),
+  /** Appends an action to a scene, creating the scene on first use. */
+  ADD_SCENE("add-scene", "<scene> <device> <command> [value]", 3, 4),
+  /** Adds a rule; a device of {@code *} makes it a global rule. */
+  ADD_RULE("add-rule", "<event> <device|*> <scene>", 3, 3);
+
+  private final String keyword;
+  private final String usage;
+  private final int minArgs;
+  private final int maxArgs;
+
+  ScriptVerb(String keyword, String usage, int minArgs, int maxArgs) {
+    this.keyword = keyword;
+    this.usage = usage;
+    this.minArgs = minArgs;
+    this.maxArgs = maxArgs;
+  }
+
+  public String keyword() {
+    return keyword;
+  }
+
+  public String usage() {
+    return keyword + " " + usage;
+  }
+
+  boolean accepts(int args) {
+    return args >= minArgs && args <= maxArgs;
+  }
+
+  /** Returns the verb for a keyword, or null if there is none. */
+  static ScriptVerb of(String keyword) {
+    return switch (keyword) {
+      case "add-room" -> ADD_ROOM;
+      case "add-device" -> ADD_DEVICE;
+      case "send" -> SEND;
+      case "run-scene" -> RUN_SCENE;
+      case "event" -> EVENT;
+      case "add-scene" -> ADD_SCENE;
+      case "add-rule" -> ADD_RULE;
+      default -> null;
+    };
+  }
+}
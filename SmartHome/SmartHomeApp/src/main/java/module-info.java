@@ -1,6 +1,17 @@
 module SmartHomeApp {
+  requires java.management;
+  requires jdk.management;
+
   exports com.smarthome.app;
   exports com.smarthome.devices;
+  exports com.smarthome.energy;
   exports com.smarthome.scene;
   exports com.smarthome.exceptions;
+  exports com.smarthome.hub;
+  exports com.smarthome.liveness;
+  exports com.smarthome.journal;
+  exports com.smarthome.persistence;
+  exports com.smarthome.load;
+  exports com.smarthome.script;
+  exports com.smarthome.metrics;
 }
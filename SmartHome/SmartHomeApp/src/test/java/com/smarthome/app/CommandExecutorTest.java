@@ -386,6 +386,79 @@ public class CommandExecutorTest {
     }
   }
 
+  @Nested
+  @DisplayName("Compiled Command Plans")
+  class CompiledCommandPlans {
+
+    @Test
+    @DisplayName("Should compile once and replay on any device of the type")
+    void testCompileAndReplay() throws InvalidCommandException {
+      CommandPlan plan = commandExecutor.compile(Light.class, "setBrightness", "40");
+      Light first = new Light("L1", "First");
+      Light second = new Light("L2", "Second");
+      first.turnOn();
+      second.turnOn();
+
+      commandExecutor.execute(first, plan);
+      commandExecutor.execute(second, plan);
+
+      assertEquals("setBrightness", plan.getCommand());
+      assertEquals(Light.class, plan.getDeviceType());
+      assertEquals(40, first.getBrightness());
+      assertEquals(40, second.getBrightness());
+    }
+
+    @Test
+    @DisplayName("Should accept subclasses of the required device type")
+    void testCompileForSwitchableTypes() throws InvalidCommandException {
+      CommandPlan plan = commandExecutor.compile(Thermostat.class, "turnOn");
+      Thermostat thermostat = new Thermostat("T1", "Thermostat");
+
+      plan.invoke(thermostat);
+
+      assertTrue(thermostat.isOn());
+      assertTrue(plan.appliesTo(thermostat));
+      assertFalse(plan.appliesTo(new Light("L1", "Light")));
+    }
+
+    @Test
+    @DisplayName("Should reject invalid commands at compile time")
+    void testCompileRejectsInvalidCommands() {
+      InvalidCommandException wrongType =
+          assertThrows(
+              InvalidCommandException.class,
+              () -> commandExecutor.compile(Thermostat.class, "setBrightness", "50"));
+      assertTrue(wrongType.getCause().getMessage().contains("not a Light"));
+
+      InvalidCommandException badValue =
+          assertThrows(
+              InvalidCommandException.class,
+              () -> commandExecutor.compile(Thermostat.class, "setTemp", "warm"));
+      assertTrue(badValue.getCause() instanceof NumberFormatException);
+
+      InvalidCommandException unknown =
+          assertThrows(
+              InvalidCommandException.class,
+              () -> commandExecutor.compile(Light.class, "dance"));
+      assertTrue(unknown.getCause().getMessage().contains("Unknown command: dance"));
+
+      assertThrows(
+          InvalidCommandException.class, () -> commandExecutor.compile(null, "turnOn"));
+    }
+
+    @Test
+    @DisplayName("Should refuse to run a plan on the wrong device type")
+    void testExecutePlanOnWrongDevice() throws InvalidCommandException {
+      CommandPlan plan = commandExecutor.compile(SecurityCamera.class, "startRecording");
+
+      InvalidCommandException exception =
+          assertThrows(
+              InvalidCommandException.class,
+              () -> commandExecutor.execute(new Light("L1", "Light"), plan));
+      assertTrue(exception.getCause().getMessage().contains("does not apply to Light"));
+    }
+  }
+
   @Nested
   @DisplayName("Exception Constructor Tests")
   class ExceptionConstructorTests {
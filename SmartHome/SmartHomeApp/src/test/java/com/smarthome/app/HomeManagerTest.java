@@ -3,10 +3,14 @@ package com.smarthome.app;
 import static org.junit.jupiter.api.Assertions.*;
 
 
+import com.smarthome.devices.Device;
 import com.smarthome.devices.Light;
 import com.smarthome.devices.Thermostat;
 import com.smarthome.exceptions.DeviceNotFoundException;
+import com.smarthome.exceptions.InvalidCommandException;
 import com.smarthome.exceptions.RoomNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -156,6 +160,394 @@ public class HomeManagerTest {
     assertFalse(homeManager.getRooms().contains(room1));
   }
 
+  @Test
+  void testRenamedDeviceIsFoundByNewName() {
+    homeManager.addRoom(room1);
+    homeManager.addDevice(light1, room1);
+
+    light1.setDeviceName("Reading Light");
+
+    assertEquals(light1, homeManager.getDevicebyName("reading light"));
+    assertNull(homeManager.getDevicebyName("Living Room Light"));
+  }
+
+  @Test
+  void testRenameAfterRemovalDoesNotTouchIndex() {
+    homeManager.addRoom(room1);
+    homeManager.addDevice(light1, room1);
+    homeManager.removeDevice(light1);
+
+    light1.setDeviceName("Reading Light");
+
+    assertNull(homeManager.getDevicebyName("Reading Light"));
+  }
+
+  @Test
+  void testGetRoomOfDevice() {
+    homeManager.addRoom(room1);
+    homeManager.addRoom(room2);
+    homeManager.addDevice(light1, room1);
+    homeManager.addDevice(thermostat1, room2);
+
+    assertEquals(room1, homeManager.getRoomOfDevice(light1));
+    assertEquals(room2, homeManager.getRoomOfDevice(thermostat1));
+    assertNull(homeManager.getRoomOfDevice(new Light("L2", "Other")));
+    assertNull(homeManager.getRoomOfDevice(null));
+  }
+
+  @Test
+  void testDeviceCannotBeInTwoRooms() {
+    homeManager.addRoom(room1);
+    homeManager.addRoom(room2);
+    homeManager.addDevice(light1, room1);
+
+    assertFalse(homeManager.addDevice(light1, room2));
+    assertEquals(room1, homeManager.getRoomOfDevice(light1));
+    assertEquals(1, homeManager.getDeviceCount());
+  }
+
+  @Test
+  void testDeleteRoomUnregistersDevices() {
+    homeManager.addRoom(room1);
+    homeManager.addDevice(light1, room1);
+
+    homeManager.deleteRoom(room1);
+
+    assertNull(homeManager.getDevicebyName("Living Room Light"));
+    assertNull(homeManager.getDeviceById("L1"));
+    assertFalse(homeManager.containsDevice(light1));
+    assertEquals(0, homeManager.getDeviceCount());
+  }
+
+  @Test
+  void testDuplicateNameFallsBackToRemainingDevice() {
+    Light twin = new Light("L2", "Living Room Light");
+    homeManager.addRoom(room1);
+    homeManager.addDevice(light1, room1);
+    homeManager.addDevice(twin, room1);
+
+    assertEquals(light1, homeManager.getDevicebyName("Living Room Light"));
+
+    homeManager.removeDevice(light1);
+
+    assertEquals(twin, homeManager.getDevicebyName("Living Room Light"));
+  }
+
+  @Test
+  void testSharedKeysPromoteInRegistrationOrder() {
+    Light second = new Light("l1", "Living Room Light");
+    Light third = new Light("L1", "Living Room Light");
+    Light fourth = new Light("L4", "living room light");
+    homeManager.addRoom(room1);
+    homeManager.addDevice(light1, room1);
+    homeManager.addDevice(second, room1);
+    homeManager.addDevice(third, room1);
+    homeManager.addDevice(fourth, room1);
+
+    homeManager.removeDevice(second);
+    third.setDeviceName("Reading Lamp");
+    homeManager.removeDevice(light1);
+
+    assertEquals(third, homeManager.getDeviceById("L1"));
+    assertEquals(fourth, homeManager.getDevicebyName("Living Room Light"));
+    assertEquals(third, homeManager.getDevicebyName("reading lamp"));
+    homeManager.removeDevice(fourth);
+    assertNull(homeManager.getDevicebyName("Living Room Light"));
+  }
+
+  @Test
+  void testChangeListenerSeesSuccessfulChangesInOrder() throws Exception {
+    List<String> events = new ArrayList<>();
+    homeManager.setChangeListener(
+        new HomeChangeListener() {
+          @Override
+          public void roomAdded(Room room) {
+            events.add("roomAdded " + room.getRoomName());
+          }
+
+          @Override
+          public void roomDeleted(Room room) {
+            events.add("roomDeleted " + room.getRoomName());
+          }
+
+          @Override
+          public void deviceAdded(Device device, Room room) {
+            events.add("deviceAdded " + device.getDeviceId());
+          }
+
+          @Override
+          public void deviceRemoved(Device device, Room room) {
+            events.add("deviceRemoved " + device.getDeviceId());
+          }
+
+          @Override
+          public void deviceRenamed(Device device, String oldName) {
+            events.add("deviceRenamed " + oldName + " -> " + device.getDeviceName());
+          }
+
+          @Override
+          public void commandExecuted(Device device, String command, Object value) {
+            events.add("command " + command + " " + value);
+          }
+        });
+
+    homeManager.addRoom(room1);
+    homeManager.addRoom(room1); // duplicate, not reported
+    homeManager.addDevice(light1, room1);
+    homeManager.sendCommand(light1, "turnOn", null);
+    assertThrows(
+        InvalidCommandException.class, () -> homeManager.sendCommand(light1, "explode", null));
+    light1.setDeviceName("Lamp");
+    homeManager.deleteRoom(room1);
+
+    assertEquals(
+        List.of(
+            "roomAdded Living Room",
+            "deviceAdded L1",
+            "command turnOn null",
+            "deviceRenamed Living Room Light -> Lamp",
+            "deviceRemoved L1",
+            "roomDeleted Living Room"),
+        events);
+  }
+
+  @Test
+  void testAddedChangeListenersAreAllNotified() {
+    List<String> events = new ArrayList<>();
+    HomeChangeListener first =
+        new HomeChangeListener() {
+          @Override
+          public void roomAdded(Room room) {
+            events.add("first " + room.getRoomName());
+          }
+        };
+    HomeChangeListener second =
+        new HomeChangeListener() {
+          @Override
+          public void roomAdded(Room room) {
+            events.add("second " + room.getRoomName());
+          }
+        };
+    homeManager.addChangeListener(first);
+    homeManager.addChangeListener(second);
+
+    homeManager.addRoom(room1);
+    assertTrue(homeManager.removeChangeListener(first));
+    homeManager.addRoom(room2);
+
+    assertEquals(List.of("first Living Room", "second Living Room", "second Bedroom"), events);
+  }
+
+  @Test
+  void testSendCommandsAppliesLastWritePerAttribute() {
+    homeManager.addRoom(room1);
+    homeManager.addDevice(light1, room1);
+    Command on = new Command(light1, "turnOn");
+    Command dim = new Command(light1, "setBrightness", 20);
+    Command bright = new Command(light1, "setBrightness", 90);
+
+    List<CommandOutcome> outcomes = homeManager.sendCommands(List.of(on, dim, bright));
+
+    assertEquals(3, outcomes.size());
+    assertEquals(CommandOutcome.Status.APPLIED, outcomes.get(0).getStatus());
+    assertEquals(CommandOutcome.Status.COALESCED, outcomes.get(1).getStatus());
+    assertEquals(CommandOutcome.Status.APPLIED, outcomes.get(2).getStatus());
+    assertSame(dim, outcomes.get(1).getCommand());
+    assertTrue(light1.isOn());
+    assertEquals(90, light1.getBrightness());
+  }
+
+  @Test
+  void testSendCommandsInvalidLaterWriteDoesNotCoalesceValidOne() {
+    homeManager.addRoom(room1);
+    homeManager.addDevice(light1, room1);
+    light1.turnOn();
+
+    List<CommandOutcome> outcomes =
+        homeManager.sendCommands(
+            List.of(
+                new Command(light1, "setBrightness", 80),
+                new Command(light1, "setBrightness", "abc")));
+
+    assertEquals(CommandOutcome.Status.APPLIED, outcomes.get(0).getStatus());
+    assertEquals(CommandOutcome.Status.FAILED, outcomes.get(1).getStatus());
+    assertEquals(80, light1.getBrightness());
+  }
+
+  @Test
+  void testSendCommandsTurnOnThenOffLeavesDeviceOff() {
+    homeManager.addRoom(room1);
+    homeManager.addDevice(light1, room1);
+
+    List<CommandOutcome> outcomes =
+        homeManager.sendCommands(
+            List.of(new Command(light1, "turnOn"), new Command(light1, "turnOff")));
+
+    assertEquals(CommandOutcome.Status.COALESCED, outcomes.get(0).getStatus());
+    assertEquals(CommandOutcome.Status.APPLIED, outcomes.get(1).getStatus());
+    assertFalse(light1.isOn());
+  }
+
+  @Test
+  void testSendCommandsReportsFailuresPerCommand() {
+    homeManager.addRoom(room1);
+    homeManager.addDevice(light1, room1);
+    homeManager.addDevice(thermostat1, room1);
+    Light stranger = new Light("X1", "Not In Home");
+
+    List<CommandOutcome> outcomes =
+        homeManager.sendCommands(
+            List.of(
+                new Command(stranger, "turnOn"),
+                new Command(light1, "setTemp", 21),
+                new Command(thermostat1, "setTemp", "22.5"),
+                new Command(light1, "explode")));
+
+    assertEquals(CommandOutcome.Status.FAILED, outcomes.get(0).getStatus());
+    assertEquals("Device not found: X1", outcomes.get(0).getError());
+    assertEquals(CommandOutcome.Status.FAILED, outcomes.get(1).getStatus());
+    assertTrue(outcomes.get(1).getError().contains("not a Thermostat"));
+    assertEquals(CommandOutcome.Status.APPLIED, outcomes.get(2).getStatus());
+    assertEquals(22.5, thermostat1.getTemp());
+    assertEquals(CommandOutcome.Status.FAILED, outcomes.get(3).getStatus());
+    assertFalse(stranger.isOn());
+  }
+
+  @Test
+  void testSendCommandsNotifiesListenerOnlyForAppliedCommands() {
+    List<String> executed = new ArrayList<>();
+    homeManager.setChangeListener(
+        new HomeChangeListener() {
+          @Override
+          public void commandExecuted(Device device, String command, Object value) {
+            executed.add(device.getDeviceId() + " " + command + " " + value);
+          }
+        });
+    homeManager.addRoom(room1);
+    homeManager.addDevice(light1, room1);
+    Light light2 = new Light("L2", "Second Light");
+    homeManager.addDevice(light2, room1);
+
+    homeManager.sendCommands(
+        List.of(
+            new Command(light1, "turnOn"),
+            new Command(light2, "turnOn"),
+            new Command(light1, "setBrightness", 10),
+            new Command(light1, "setBrightness", 70)));
+
+    assertEquals(List.of("L1 turnOn null", "L1 setBrightness 70", "L2 turnOn null"), executed);
+    assertEquals(70, light1.getBrightness());
+    assertTrue(light2.isOn());
+  }
+
+  @Test
+  void testGroupCommandSelectsByRoomAndType() {
+    List<String> executed = new ArrayList<>();
+    homeManager.setChangeListener(
+        new HomeChangeListener() {
+          @Override
+          public void commandExecuted(Device device, String command, Object value) {
+            executed.add(device.getDeviceId() + " " + command);
+          }
+        });
+    homeManager.addRoom(room1);
+    homeManager.addRoom(room2);
+    homeManager.addDevice(light1, room1);
+    homeManager.addDevice(thermostat1, room1);
+    Light light2 = new Light("L2", "Bedroom Light");
+    homeManager.addDevice(light2, room2);
+
+    List<CommandOutcome> outcomes =
+        homeManager.sendGroupCommand(room1.asGroup().withType(Light.class), "turnOn", null);
+
+    assertEquals(1, outcomes.size());
+    assertEquals(CommandOutcome.Status.APPLIED, outcomes.get(0).getStatus());
+    assertTrue(light1.isOn());
+    assertFalse(light2.isOn());
+    assertFalse(thermostat1.isOn());
+    assertEquals(List.of("L1 turnOn"), executed);
+
+    homeManager.sendGroupCommand(DeviceGroup.ofType(Light.class), "turnOn", null);
+    homeManager.sendGroupCommand(DeviceGroup.ofType(Light.class), "setBrightness", 40);
+    assertEquals(40, light1.getBrightness());
+    assertEquals(40, light2.getBrightness());
+  }
+
+  @Test
+  void testGroupCommandFailsOnlyTheTypesItDoesNotCompileFor() {
+    homeManager.addRoom(room1);
+    homeManager.addDevice(light1, room1);
+    homeManager.addDevice(thermostat1, room1);
+    light1.turnOn();
+
+    List<CommandOutcome> outcomes =
+        homeManager.sendGroupCommand(DeviceGroup.all(), "setBrightness", "55");
+
+    for (CommandOutcome outcome : outcomes) {
+      boolean isLight = outcome.getCommand().getDevice() == light1;
+      assertEquals(
+          isLight ? CommandOutcome.Status.APPLIED : CommandOutcome.Status.FAILED,
+          outcome.getStatus());
+    }
+    assertEquals(55, light1.getBrightness());
+    assertThrows(
+        RoomNotFoundException.class,
+        () -> homeManager.sendGroupCommand(DeviceGroup.of(room2), "turnOn", null));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> homeManager.sendGroupCommand(DeviceGroup.all(), null, null));
+  }
+
+  @Test
+  void testGroupCommandFansOutButNotifiesOnTheCallingThread() {
+    List<Thread> notifiedOn = new ArrayList<>();
+    homeManager.setChangeListener(
+        new HomeChangeListener() {
+          @Override
+          public void commandExecuted(Device device, String command, Object value) {
+            notifiedOn.add(Thread.currentThread());
+          }
+        });
+    homeManager.addRoom(room1);
+    List<Light> lights = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      Light light = new Light("L" + i, "Light " + i);
+      lights.add(light);
+      homeManager.addDevice(light, room1);
+    }
+    homeManager.setGroupFanOut(8);
+
+    DeviceGroup evenLights =
+        DeviceGroup.ofType(Light.class)
+            .matching(device -> Integer.parseInt(device.getDeviceId().substring(1)) % 2 == 0);
+    List<CommandOutcome> outcomes = homeManager.sendGroupCommand(evenLights, "turnOn", null);
+
+    assertEquals(25, outcomes.size());
+    for (int i = 0; i < lights.size(); i++) {
+      assertEquals(i % 2 == 0, lights.get(i).isOn(), lights.get(i).getDeviceId());
+    }
+    assertEquals(25, notifiedOn.size());
+    assertTrue(notifiedOn.stream().allMatch(thread -> thread == Thread.currentThread()));
+  }
+
+  @Test
+  void testClosedHomeRunsGroupsOnTheCallingThread() {
+    homeManager.addRoom(room1);
+    for (int i = 0; i < 10; i++) {
+      homeManager.addDevice(new Light("L" + i, "Light " + i), room1);
+    }
+    homeManager.setGroupFanOut(2);
+    homeManager.sendGroupCommand(DeviceGroup.ofType(Light.class), "turnOn", null);
+
+    homeManager.close();
+    List<CommandOutcome> outcomes =
+        homeManager.sendGroupCommand(DeviceGroup.ofType(Light.class), "turnOff", null);
+
+    assertEquals(10, outcomes.size());
+    assertTrue(outcomes.stream().allMatch(o -> o.getStatus() == CommandOutcome.Status.APPLIED));
+    homeManager.close();
+  }
+
   // Test exception constructor within context of HomeManager operations
   @Test
   void testRoomNotFoundExceptionConstructor() {
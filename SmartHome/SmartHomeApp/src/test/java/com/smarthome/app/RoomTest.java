@@ -2,7 +2,10 @@ package com.smarthome.app;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.smarthome.devices.Device;
 import com.smarthome.devices.Light;
+import com.smarthome.devices.Thermostat;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -31,4 +34,16 @@ public class RoomTest {
     assertNotNull(room.getRoomID(), "Room ID should not be null");
     assertTrue(room.getDevices().isEmpty(), "Room should have no devices initially");
   }
+
+  @Test
+  void testDevicesOfType() {
+    Thermostat thermostat = new Thermostat("T1", "Thermostat");
+    room.addDevice(light);
+    room.addDevice(thermostat);
+
+    assertEquals(List.of(light), room.getDevices(Light.class));
+    assertEquals(List.of(thermostat), room.getDevices(Thermostat.class));
+    assertEquals(2, room.getDevices(Device.class).size());
+    assertSame(room, room.asGroup().getRoom());
+  }
 }
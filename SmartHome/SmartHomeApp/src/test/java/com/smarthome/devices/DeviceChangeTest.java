@@ -0,0 +1,95 @@
+package com.smarthome.devices;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class DeviceChangeTest {
+
+  private final List<DeviceChange> changes = new ArrayList<>();
+
+  @Test
+  void testLightPublishesPowerThenBrightness() {
+    Light light = new Light("L1", "Hall Light");
+    light.addChangeListener(changes::add);
+
+    light.turnOn();
+
+    assertEquals(
+        List.of(
+            new DeviceChange.PowerChanged(light, true),
+            new DeviceChange.BrightnessChanged(light, 0, 50)),
+        changes);
+    assertEquals(DeviceChange.TURNED_ON, changes.get(0).eventName());
+    assertEquals(DeviceAttribute.BRIGHTNESS, changes.get(1).attribute());
+  }
+
+  @Test
+  void testOnlyRealChangesArePublished() {
+    Light light = new Light("L1", "Hall Light");
+    light.turnOn();
+    light.addChangeListener(changes::add);
+
+    light.turnOn();
+    light.setBrightness(50);
+    light.setBrightness(80);
+
+    assertEquals(List.of(new DeviceChange.BrightnessChanged(light, 50, 80)), changes);
+  }
+
+  @Test
+  void testThermostatAndCameraPublishTypedChanges() {
+    Thermostat thermostat = new Thermostat("T1", "Hall Thermostat");
+    SecurityCamera camera = new SecurityCamera("C1", "Door Camera");
+    thermostat.addChangeListener(changes::add);
+    camera.addChangeListener(changes::add);
+
+    thermostat.setTemp(23.5);
+    thermostat.turnOn();
+    camera.startRecording();
+    camera.stopRecording();
+
+    assertEquals(
+        List.of(
+            new DeviceChange.TemperatureChanged(thermostat, 20.0, 23.5),
+            new DeviceChange.PowerChanged(thermostat, true),
+            new DeviceChange.PowerChanged(camera, true),
+            new DeviceChange.PowerChanged(camera, false)),
+        changes);
+    assertEquals(DeviceChange.TEMPERATURE_CHANGED, changes.get(0).eventName());
+    assertEquals(DeviceChange.TURNED_OFF, changes.get(3).eventName());
+  }
+
+  @Test
+  void testListenersCanBeRemovedAndAreNotDuplicated() {
+    Light light = new Light("L1", "Hall Light");
+    DeviceChangeListener listener = changes::add;
+    light.addChangeListener(listener);
+    light.addChangeListener(listener);
+
+    light.turnOn();
+    assertEquals(2, changes.size());
+
+    assertTrue(light.removeChangeListener(listener));
+    assertFalse(light.removeChangeListener(listener));
+    light.turnOff();
+    assertEquals(2, changes.size());
+  }
+
+  @Test
+  void testFailingListenerDoesNotStopOthers() {
+    Light light = new Light("L1", "Hall Light");
+    light.addChangeListener(
+        change -> {
+          throw new IllegalStateException("boom");
+        });
+    light.addChangeListener(changes::add);
+
+    light.turnOn();
+
+    assertTrue(light.isOn());
+    assertEquals(2, changes.size());
+  }
+}
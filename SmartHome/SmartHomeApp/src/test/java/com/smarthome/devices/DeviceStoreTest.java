@@ -0,0 +1,183 @@
+package com.smarthome.devices;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class DeviceStoreTest {
+  private DeviceStore store;
+
+  @BeforeEach
+  void setUp() {
+    store = new DeviceStore(4);
+  }
+
+  @Test
+  void testViewsBehaveLikeHeapDevices() {
+    Light light = (Light) store.view(store.add(DeviceStore.Kind.LIGHT, "L1", "Lamp"));
+    Thermostat thermostat =
+        (Thermostat) store.view(store.add(DeviceStore.Kind.THERMOSTAT, "T1", "Hall"));
+    SecurityCamera camera =
+        (SecurityCamera) store.view(store.add(DeviceStore.Kind.SECURITY_CAMERA, "C1", "Door"));
+
+    light.setBrightness(80); // ignored while off, as for Light
+    assertEquals(0, light.getBrightness());
+    light.turnOn();
+    assertEquals(50, light.getBrightness());
+    light.setBrightness(150);
+    assertEquals(100, light.getBrightness());
+    assertEquals("Light ID: L1, Status: ON, Brightness: 100", light.getStatus());
+    light.turnOff();
+    assertEquals(0, light.getBrightness());
+
+    assertEquals(20.0, thermostat.getTemp());
+    thermostat.setTemp(22.5);
+    assertEquals(22.5, thermostat.getTemp());
+
+    camera.turnOn();
+    assertTrue(camera.isRecording());
+    assertEquals("Door", camera.getDeviceName());
+  }
+
+  @Test
+  void testViewsOfTheSameSlotAreEqual() {
+    int index = store.add(DeviceStore.Kind.LIGHT, "L1", "Lamp");
+    Device first = store.view(index);
+    Device second = store.findById("L1");
+
+    assertNotSame(first, second);
+    assertEquals(first, second);
+    assertEquals(first.hashCode(), second.hashCode());
+    DeviceStore other = new DeviceStore();
+    assertNotEquals(first, other.view(other.add(DeviceStore.Kind.LIGHT, "L1", "Lamp")));
+  }
+
+  @Test
+  void testStateIsSharedAcrossViews() {
+    int index = store.add(DeviceStore.Kind.LIGHT, "L1", "Lamp");
+    ((Light) store.view(index)).turnOn();
+
+    assertTrue(store.isOn(index));
+    assertTrue(((Light) store.view(index)).isOn());
+    assertEquals(1, store.countOn());
+  }
+
+  @Test
+  void testViewsPublishChangesToListenersSharedPerSlot() {
+    int lamp = store.add(DeviceStore.Kind.LIGHT, "L1", "Lamp");
+    int hall = store.add(DeviceStore.Kind.THERMOSTAT, "T1", "Hall");
+    int door = store.add(DeviceStore.Kind.SECURITY_CAMERA, "C1", "Door");
+    List<String> events = new ArrayList<>();
+    DeviceChangeListener listener =
+        change -> events.add(change.device().getDeviceId() + " " + change.eventName());
+    store.view(lamp).addChangeListener(listener);
+    store.view(hall).addChangeListener(listener);
+    store.view(door).addChangeListener(listener);
+    // A second view of the slot sees the same subscriber, so this add is a no-op
+    store.view(lamp).addChangeListener(listener);
+
+    Light light = (Light) store.view(lamp);
+    light.turnOn();
+    light.turnOn();
+    light.setBrightness(70);
+    ((Thermostat) store.view(hall)).setTemp(22.5);
+    ((SecurityCamera) store.view(door)).startRecording();
+    light.turnOff();
+
+    assertEquals(
+        List.of(
+            "L1 turned_on",
+            "L1 brightness_changed",
+            "L1 brightness_changed",
+            "T1 temperature_changed",
+            "C1 turned_on",
+            "L1 turned_off",
+            "L1 brightness_changed"),
+        events);
+    assertTrue(store.view(lamp).removeChangeListener(listener));
+    assertFalse(store.view(lamp).removeChangeListener(listener));
+    light.turnOn();
+    assertEquals(7, events.size());
+  }
+
+  @Test
+  void testViewsWorkWithHomeManagerCommands() throws Exception {
+    HomeManager home = new HomeManager("columnar");
+    Room room = new Room("Hall");
+    home.addRoom(room);
+    Device light = store.view(store.add(DeviceStore.Kind.LIGHT, "L1", "Hall Light"));
+    home.addDevice(light, room);
+
+    home.sendCommand(home.getDevicebyName("hall light"), "turnOn", null);
+    home.sendCommand(light, "setBrightness", 30);
+    light.setDeviceName("Porch Light");
+
+    assertTrue(light.isLinked());
+    assertEquals(30, store.getBrightness(store.indexOf("L1")));
+    assertEquals("Porch Light", store.nameOf(0));
+    assertSame(light, home.getDevicebyName("Porch Light"));
+  }
+
+  @Test
+  void testGrowsAndFindsFirstDeviceForAnId() {
+    for (int i = 0; i < 1000; i++) {
+      store.add(DeviceStore.Kind.LIGHT, "L" + i, "Ceiling Light");
+    }
+    store.add(DeviceStore.Kind.THERMOSTAT, "L7", "Duplicate id");
+
+    assertEquals(1001, store.size());
+    assertEquals(7, store.indexOf("L7"));
+    assertEquals(-1, store.indexOf("missing"));
+    assertEquals("Ceiling Light", store.nameOf(999));
+    assertThrows(IndexOutOfBoundsException.class, () -> store.view(1001));
+  }
+
+  @Test
+  void testMemoryPerDeviceIsSmall() {
+    DeviceStore large = new DeviceStore(16);
+    for (int i = 0; i < 100_000; i++) {
+      large.add(DeviceStore.Kind.LIGHT, "L_" + i, "Light " + i);
+    }
+    large.trimToSize();
+
+    // A heap Light with its id and name strings is over 130 bytes, and over 400 once a
+    // HomeManager indexes it
+    long perDevice = large.estimatedBytes() / large.size();
+    assertTrue(perDevice < 72, "bytes per device: " + perDevice);
+
+    large.add(DeviceStore.Kind.LIGHT, "after-trim", "Still Growable");
+    assertEquals("Still Growable", large.nameOf(large.indexOf("after-trim")));
+  }
+
+  @Test
+  void testConcurrentUpdatesOfNeighbouringDevicesAreNotLost() throws InterruptedException {
+    DeviceStore shared = new DeviceStore(64);
+    for (int i = 0; i < 64; i++) {
+      shared.add(DeviceStore.Kind.LIGHT, "L" + i, "Light " + i);
+    }
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int offset = t;
+      threads.add(
+          Thread.startVirtualThread(
+              () -> {
+                for (int round = 0; round < 1000; round++) {
+                  for (int i = offset; i < 64; i += 4) {
+                    shared.turnOn(i);
+                  }
+                  Thread.yield();
+                }
+              }));
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(64, shared.countOn());
+  }
+}
@@ -0,0 +1,188 @@
+package com.smarthome.energy;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Device;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SecurityCamera;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.exceptions.DeviceNotFoundException;
+import com.smarthome.exceptions.RoomNotFoundException;
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.Journals;
+import com.smarthome.scene.VirtualClock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EnergyAggregatorTest {
+
+  private static final double EPSILON = 1e-9;
+
+  private final VirtualClock clock = VirtualClock.at(LocalDateTime.of(2026, 1, 5, 0, 0));
+  private HomeManager homeManager;
+  private Room kitchen;
+  private Room hall;
+  private Light kitchenLight;
+  private Light hallLight;
+  private Thermostat thermostat;
+  private SecurityCamera camera;
+  private EnergyAggregator aggregator;
+  private Journal originalJournal;
+
+  @BeforeEach
+  void setUp() {
+    originalJournal = Journals.set(Journal.silent());
+    homeManager = new HomeManager("energy");
+    kitchen = new Room("Kitchen");
+    hall = new Room("Hall");
+    homeManager.addRoom(kitchen);
+    homeManager.addRoom(hall);
+    kitchenLight = new Light("L1", "Kitchen Light");
+    hallLight = new Light("L2", "Hall Light");
+    thermostat = new Thermostat("T1", "Hall Thermostat");
+    camera = new SecurityCamera("C1", "Hall Camera");
+    homeManager.addDevice(kitchenLight, kitchen);
+    homeManager.addDevice(hallLight, hall);
+    homeManager.addDevice(thermostat, hall);
+    homeManager.addDevice(camera, hall);
+    aggregator =
+        EnergyAggregator.builder(homeManager)
+            .clock(clock)
+            .ratedWatts(Light.class, 10)
+            .ratedWatts(Thermostat.class, 1000)
+            .build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    aggregator.close();
+    Journals.set(originalJournal);
+  }
+
+  @Test
+  void testOnTimeAndEnergyPerDeviceRoomAndHome() {
+    kitchenLight.turnOn();
+    kitchenLight.setBrightness(100);
+    hallLight.turnOn(); // default brightness 50
+    clock.advance(Duration.ofHours(2));
+    hallLight.turnOff();
+    thermostat.turnOn();
+    clock.advance(Duration.ofHours(1));
+
+    EnergyUsage kitchenUsage = aggregator.getUsage(kitchenLight);
+    assertEquals(Duration.ofHours(3), kitchenUsage.onTime());
+    assertEquals(30.0, kitchenUsage.wattHours(), EPSILON);
+    assertEquals(1, kitchenUsage.transitions());
+
+    EnergyUsage hallLights = aggregator.getUsage(hall, Light.class);
+    assertEquals(Duration.ofHours(2), hallLights.onTime());
+    assertEquals(10.0, hallLights.wattHours(), EPSILON);
+    assertEquals(2, hallLights.transitions());
+    assertEquals(0, hallLights.devicesOn());
+
+    EnergyUsage hallUsage = aggregator.getUsage(hall);
+    assertEquals(Duration.ofHours(3), hallUsage.onTime());
+    assertEquals(1010.0, hallUsage.wattHours(), EPSILON);
+    assertEquals(1000.0, hallUsage.watts(), EPSILON);
+
+    EnergyUsage home = aggregator.getUsage();
+    assertEquals(Duration.ofHours(6), home.onTime());
+    assertEquals(1040.0, home.wattHours(), EPSILON);
+    assertEquals(2, home.devicesOn());
+    assertEquals(Duration.ofHours(5), aggregator.getUsage(Light.class).onTime());
+    assertEquals(home, aggregator.getUsage(Device.class));
+  }
+
+  @Test
+  void testQueriesExtrapolateRunningDevicesWithoutNewEvents() {
+    camera.startRecording();
+
+    clock.advance(Duration.ofMinutes(30));
+    assertEquals(Duration.ofMinutes(30), aggregator.getUsage(camera).onTime());
+    clock.advance(Duration.ofMinutes(30));
+
+    EnergyUsage usage = aggregator.getUsage(hall, SecurityCamera.class);
+    assertEquals(Duration.ofHours(1), usage.onTime());
+    assertEquals(EnergyAggregator.DEFAULT_CAMERA_WATTS, usage.wattHours(), EPSILON);
+    assertEquals(1, usage.devicesOn());
+  }
+
+  @Test
+  void testRedundantChangesAreNotCounted() throws Exception {
+    homeManager.sendCommand(kitchenLight, "turnOn", null);
+    homeManager.sendCommand(kitchenLight, "turnOn", null);
+    thermostat.setTemp(23.5);
+    clock.advance(Duration.ofMinutes(10));
+    homeManager.sendCommand(kitchenLight, "turnOff", null);
+    homeManager.sendCommand(kitchenLight, "turnOff", null);
+
+    EnergyUsage usage = aggregator.getUsage(kitchenLight);
+    assertEquals(2, usage.transitions());
+    assertEquals(Duration.ofMinutes(10), usage.onTime());
+    assertEquals(0, aggregator.getUsage(thermostat).transitions());
+  }
+
+  @Test
+  void testResetStartsANewDayAndKeepsRunningDevices() {
+    hallLight.turnOn();
+    clock.advance(Duration.ofHours(20));
+
+    aggregator.reset();
+    clock.advance(Duration.ofHours(4));
+
+    EnergyUsage usage = aggregator.getUsage(hall);
+    assertEquals(Duration.ofHours(4), usage.onTime());
+    assertEquals(20.0, usage.wattHours(), EPSILON);
+    assertEquals(0, usage.transitions());
+    assertEquals(1, usage.devicesOn());
+  }
+
+  @Test
+  void testFollowsTheHomeTopology() throws Exception {
+    Room garage = new Room("Garage");
+    homeManager.addRoom(garage);
+    Light garageLight = new Light("L3", "Garage Light");
+    garageLight.turnOn();
+    homeManager.addDevice(garageLight, garage);
+    clock.advance(Duration.ofHours(1));
+
+    assertEquals(Duration.ofHours(1), aggregator.getUsage(garage).onTime());
+    homeManager.removeDevice(garageLight);
+    clock.advance(Duration.ofHours(1));
+    garageLight.turnOff();
+
+    // What the device used stays in the room and the home; the device itself is gone
+    EnergyUsage garageUsage = aggregator.getUsage(garage);
+    assertEquals(Duration.ofHours(1), garageUsage.onTime());
+    assertEquals(0, garageUsage.devicesOn());
+    assertEquals(Duration.ofHours(1), aggregator.getUsage().onTime());
+    assertThrows(DeviceNotFoundException.class, () -> aggregator.getUsage(garageLight));
+
+    homeManager.deleteRoom(garage);
+    assertThrows(RoomNotFoundException.class, () -> aggregator.getUsage(garage));
+    assertThrows(IllegalArgumentException.class, () -> aggregator.getUsage(StubDevice.class));
+  }
+
+  @Test
+  void testDevicesAlreadyOnAreCountedFromTheStart() {
+    aggregator.close();
+    thermostat.turnOn();
+    aggregator = EnergyAggregator.builder(homeManager).clock(clock).build();
+
+    clock.advance(Duration.ofMinutes(6));
+
+    assertEquals(150.0, aggregator.getUsage(thermostat).wattHours(), EPSILON);
+    assertEquals(0, aggregator.getUsage(thermostat).transitions());
+  }
+
+  private abstract static class StubDevice extends Device {
+    StubDevice() {
+      super("S1", "Stub");
+    }
+  }
+}
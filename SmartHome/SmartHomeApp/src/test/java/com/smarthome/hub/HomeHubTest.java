@@ -0,0 +1,297 @@
+package com.smarthome.hub;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Device;
+import com.smarthome.devices.Light;
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.Journals;
+import com.smarthome.scene.Scene;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class HomeHubTest {
+
+  private final AtomicLong nanos = new AtomicLong();
+  private Path directory;
+  private HomeHub hub;
+  private Journal originalJournal;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    originalJournal = Journals.set(Journal.silent());
+    directory = Files.createTempDirectory("home-hub-test");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (hub != null) {
+      hub.close();
+    }
+    Journals.set(originalJournal);
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  private HomeHub.Builder builder() {
+    return HomeHub.builder(directory)
+        .workers(1)
+        .idleTimeout(Duration.ofMinutes(1))
+        .sweepInterval(null)
+        .nanoTime(nanos::get);
+  }
+
+  private static void addKitchenLamp(Home home) {
+    HomeManager homeManager = home.getHomeManager();
+    Room kitchen = new Room("Kitchen");
+    homeManager.addRoom(kitchen);
+    homeManager.addDevice(new Light("L1", "Lamp"), kitchen);
+  }
+
+  private int use(String accountId) {
+    return hub.submit(accountId, home -> home.getHomeManager().getDeviceCount()).join();
+  }
+
+  @Test
+  void testEvictedHomeIsReloadedFromDisk() {
+    hub = builder().build();
+    hub.execute("alice", HomeHubTest::addKitchenLamp).join();
+    assertEquals(1, hub.getResidentCount());
+
+    assertTrue(hub.evict("alice").join());
+    assertEquals(0, hub.getResidentCount());
+
+    assertEquals(1, use("alice"));
+    assertEquals(2, hub.getLoadCount());
+    assertEquals(1, hub.getEvictionCount());
+  }
+
+  @Test
+  void testOnLoadRunsOnEveryLoad() {
+    AtomicInteger loads = new AtomicInteger();
+    hub =
+        builder()
+            .onLoad(
+                home -> {
+                  loads.incrementAndGet();
+                  home.getSceneManager().addScene(new Scene("Away"));
+                })
+            .build();
+
+    assertNotNull(
+        hub.submit("alice", home -> home.getSceneManager().getSceneByName("Away")).join());
+    hub.evict("alice").join();
+    use("alice");
+
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void testSweepEvictsIdleHomes() {
+    hub = builder().build();
+    use("alice");
+    use("bob");
+
+    nanos.addAndGet(Duration.ofSeconds(50).toNanos());
+    use("bob");
+    nanos.addAndGet(Duration.ofSeconds(20).toNanos());
+
+    assertEquals(1, (int) hub.sweep().join());
+    assertEquals(1, hub.getResidentCount());
+    assertEquals(2, hub.getLoadCount());
+    use("bob");
+    assertEquals(2, hub.getLoadCount(), "bob stayed in memory");
+  }
+
+  @Test
+  void testLeastRecentlyUsedHomesGoBeyondTheResidentLimit() {
+    hub = builder().maxResidentHomes(2).build();
+    for (String account : List.of("alice", "bob", "carol")) {
+      use(account);
+      nanos.addAndGet(1_000);
+    }
+
+    hub.sweep().join();
+
+    assertEquals(2, hub.getResidentCount());
+    long loads = hub.getLoadCount();
+    use("carol");
+    use("bob");
+    assertEquals(loads, hub.getLoadCount());
+    use("alice");
+    assertEquals(loads + 1, hub.getLoadCount());
+  }
+
+  @Test
+  void testNoisyAccountDoesNotStarveOthers() throws Exception {
+    hub = builder().tasksPerTurn(4).build();
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    hub.execute("noisy", home -> await(release));
+    List<CompletableFuture<Void>> noisy = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      noisy.add(hub.execute("noisy", home -> order.add("noisy")));
+    }
+    CompletableFuture<Void> quiet = hub.execute("quiet", home -> order.add("quiet"));
+
+    release.countDown();
+    quiet.get(10, TimeUnit.SECONDS);
+    CompletableFuture.allOf(noisy.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+    assertTrue(order.indexOf("quiet") <= 3, "quiet ran at " + order.indexOf("quiet"));
+  }
+
+  @Test
+  void testFullMailboxRejectsTasks() {
+    hub = builder().mailboxCapacity(2).build();
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Void> blocker = hub.execute("noisy", home -> await(release));
+    CompletableFuture<Void> queued = hub.execute("noisy", home -> {});
+
+    CompletableFuture<Void> rejected = hub.execute("noisy", home -> {});
+    release.countDown();
+
+    CompletionException e = assertThrows(CompletionException.class, rejected::join);
+    assertTrue(e.getCause() instanceof RejectedExecutionException);
+    blocker.join();
+    queued.join();
+    assertEquals(1, hub.getRejectedCount());
+    use("quiet");
+  }
+
+  @Test
+  void testNamesAreSharedBetweenHomes() {
+    hub = builder().build();
+    hub.execute("alice", HomeHubTest::addKitchenLamp).join();
+    hub.execute("bob", HomeHubTest::addKitchenLamp).join();
+    hub.evict("alice").join();
+    hub.evict("bob").join();
+
+    Device aliceLamp = lamp("alice");
+    Device bobLamp = lamp("bob");
+
+    assertNotSame(aliceLamp, bobLamp);
+    assertSame(aliceLamp.getDeviceName(), bobLamp.getDeviceName());
+    assertSame(aliceLamp.getDeviceId(), bobLamp.getDeviceId());
+    assertEquals(3, hub.getInternedNameCount());
+  }
+
+  @Test
+  void testTaskFailureIsReportedAndTheAccountCarriesOn() {
+    hub = builder().build();
+
+    CompletableFuture<Object> failed =
+        hub.submit(
+            "alice",
+            home -> {
+              throw new IllegalStateException("boom");
+            });
+
+    CompletionException e = assertThrows(CompletionException.class, failed::join);
+    assertEquals("boom", e.getCause().getMessage());
+    use("alice");
+  }
+
+  @Test
+  void testErrorInATaskFailsItsResultAndTheAccountCarriesOn() {
+    hub = builder().build();
+
+    CompletableFuture<Object> failed =
+        hub.submit(
+            "alice",
+            home -> {
+              throw new StackOverflowError("deep");
+            });
+
+    CompletionException e = assertThrows(CompletionException.class, failed::join);
+    assertTrue(e.getCause() instanceof StackOverflowError);
+    use("alice");
+  }
+
+  @Test
+  void testTasksRacingCloseNeverReloadAHome() throws Exception {
+    hub = builder().workers(2).build();
+    use("alice");
+    AtomicBoolean closing = new AtomicBoolean();
+    CountDownLatch submitting = new CountDownLatch(4);
+    List<CompletableFuture<Void>> submitters = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      submitters.add(
+          CompletableFuture.runAsync(
+              () -> {
+                submitting.countDown();
+                // Submit until the closing hub refuses; a full mailbox just means try again
+                CompletableFuture<Void> task;
+                do {
+                  task = hub.execute("alice", home -> {});
+                } while (!closing.get() || !task.isCompletedExceptionally());
+              }));
+    }
+    await(submitting);
+
+    closing.set(true);
+    hub.close();
+    CompletableFuture.allOf(submitters.toArray(new CompletableFuture<?>[0]))
+        .get(10, TimeUnit.SECONDS);
+
+    assertEquals(0, hub.getResidentCount());
+  }
+
+  @Test
+  void testInvalidAccountIds() {
+    hub = builder().build();
+
+    assertThrows(IllegalArgumentException.class, () -> hub.execute("../etc", home -> {}));
+    assertThrows(IllegalArgumentException.class, () -> hub.execute("", home -> {}));
+    assertThrows(IllegalArgumentException.class, () -> hub.execute(null, home -> {}));
+  }
+
+  @Test
+  void testCloseSavesEveryHome() {
+    hub = builder().build();
+    hub.execute("alice", HomeHubTest::addKitchenLamp);
+    hub.close();
+
+    CompletableFuture<Void> late = hub.execute("alice", home -> {});
+    assertThrows(CompletionException.class, late::join);
+
+    hub = builder().build();
+    assertEquals(1, use("alice"));
+  }
+
+  private Device lamp(String accountId) {
+    return hub.submit(accountId, home -> home.getHomeManager().getDeviceById("L1")).join();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+}
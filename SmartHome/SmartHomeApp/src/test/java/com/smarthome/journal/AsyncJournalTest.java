@@ -0,0 +1,144 @@
+package com.smarthome.journal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class AsyncJournalTest {
+
+  private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+  private AsyncJournal journal;
+
+  @AfterEach
+  void tearDown() {
+    if (journal != null) {
+      journal.close();
+    }
+  }
+
+  @Test
+  void testFlushDeliversEntriesInOrder() {
+    journal = new AsyncJournal(JournalLevel.INFO, 64, (level, message) -> written.add(message));
+
+    for (int i = 0; i < 50; i++) {
+      journal.info("entry " + i);
+    }
+    journal.flush();
+
+    assertEquals(50, written.size());
+    for (int i = 0; i < 50; i++) {
+      assertEquals("entry " + i, written.get(i));
+    }
+  }
+
+  @Test
+  void testLevelFiltersEntries() {
+    journal =
+        new AsyncJournal(
+            JournalLevel.ERROR, 16, (level, message) -> written.add(level + ":" + message));
+
+    journal.info("quiet");
+    journal.error("loud");
+    journal.setLevel(JournalLevel.SILENT);
+    journal.error("muted");
+    journal.flush();
+
+    assertEquals(List.of("ERROR:loud"), written);
+    assertFalse(journal.isEnabled(JournalLevel.ERROR));
+  }
+
+  @Test
+  void testFullRingDropsInsteadOfBlocking() throws InterruptedException {
+    CountDownLatch inSink = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    journal =
+        new AsyncJournal(
+            JournalLevel.INFO,
+            4,
+            (level, message) -> {
+              inSink.countDown();
+              try {
+                release.await(5, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              written.add(message);
+            });
+
+    journal.info("first");
+    assertTrue(inSink.await(5, TimeUnit.SECONDS));
+    // "first" still holds its slot while the sink is stuck, so only three more fit
+    for (int i = 0; i < 10; i++) {
+      journal.info("more " + i);
+    }
+    release.countDown();
+    journal.flush();
+
+    assertEquals(7, journal.getDroppedCount());
+    assertEquals(List.of("first", "more 0", "more 1", "more 2"), written);
+  }
+
+  @Test
+  void testConcurrentProducersLoseNothingWhenRingIsLargeEnough() throws InterruptedException {
+    journal = new AsyncJournal(JournalLevel.INFO, 4096, (level, message) -> written.add(message));
+    List<Thread> producers = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int id = t;
+      producers.add(
+          Thread.startVirtualThread(
+              () -> {
+                for (int i = 0; i < 500; i++) {
+                  journal.info(id + "-" + i);
+                }
+              }));
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    journal.flush();
+
+    assertEquals(2000, written.size());
+    assertEquals(0, journal.getDroppedCount());
+  }
+
+  @Test
+  void testCloseDrainsQueuedEntriesAndStopsRecording() {
+    journal = new AsyncJournal(JournalLevel.INFO, 16, (level, message) -> written.add(message));
+
+    journal.info("before close");
+    journal.close();
+    journal.info("after close");
+
+    assertEquals(List.of("before close"), written);
+    assertFalse(journal.isEnabled(JournalLevel.INFO));
+  }
+
+  @Test
+  void testSilentJournalRecordsNothing() {
+    Journal silent = Journal.silent();
+
+    for (JournalLevel level : JournalLevel.values()) {
+      assertFalse(silent.isEnabled(level));
+    }
+    assertFalse(JournalLevel.DEBUG.includes(JournalLevel.SILENT));
+    assertTrue(JournalLevel.DEBUG.includes(JournalLevel.ERROR));
+    assertFalse(JournalLevel.ERROR.includes(JournalLevel.INFO));
+  }
+
+  @Test
+  void testJournalsSetReturnsPrevious() {
+    Journal original = Journals.get();
+    try {
+      assertSame(original, Journals.set(Journal.silent()));
+      assertSame(Journal.silent(), Journals.get());
+    } finally {
+      Journals.set(original);
+    }
+  }
+}
@@ -0,0 +1,219 @@
+package com.smarthome.liveness;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Device;
+import com.smarthome.devices.DeviceStore;
+import com.smarthome.devices.Light;
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.Journals;
+import com.smarthome.scene.Rule;
+import com.smarthome.scene.RuleEngine;
+import com.smarthome.scene.Scene;
+import com.smarthome.scene.SceneManager;
+import com.smarthome.scene.VirtualClock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LivenessMonitorTest {
+
+  private static final Duration INTERVAL = Duration.ofSeconds(10);
+
+  private final VirtualClock clock = VirtualClock.at(LocalDateTime.of(2026, 1, 5, 8, 0));
+  private final List<String> alerts = new ArrayList<>();
+  private HomeManager homeManager;
+  private RuleEngine ruleEngine;
+  private Light hall;
+  private Light porch;
+  private Journal originalJournal;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    originalJournal = Journals.set(Journal.silent());
+    homeManager = new HomeManager("liveness");
+    Room room = new Room("Hall");
+    homeManager.addRoom(room);
+    hall = new Light("L1", "Hall Light");
+    porch = new Light("L2", "Porch Light");
+    homeManager.addDevice(hall, room);
+    homeManager.addDevice(porch, room);
+    SceneManager sceneManager = new SceneManager(homeManager);
+    Scene scene = new Scene("Noop");
+    sceneManager.addScene(scene);
+    ruleEngine = new RuleEngine(sceneManager, alerts::add, clock);
+    for (Device device : List.of(hall, porch)) {
+      String name = device.getDeviceName();
+      ruleEngine.addRule(new Rule(LivenessMonitor.DEVICE_OFFLINE, name, scene));
+      ruleEngine.addRule(new Rule(LivenessMonitor.DEVICE_ONLINE, name, scene));
+    }
+  }
+
+  @AfterEach
+  void tearDown() {
+    Journals.set(originalJournal);
+  }
+
+  private LivenessMonitor.Builder monitor() {
+    return LivenessMonitor.builder()
+        .heartbeatInterval(INTERVAL)
+        .missedHeartbeats(3)
+        .clock(clock)
+        .ruleEngine(ruleEngine);
+  }
+
+  /** Sends a heartbeat for the device every interval until the given time has passed. */
+  private void beat(LivenessMonitor monitor, Device device, Duration until) {
+    for (Duration at = INTERVAL; at.compareTo(until) <= 0; at = at.plus(INTERVAL)) {
+      clock.schedule(at, () -> monitor.heartbeat(device));
+    }
+  }
+
+  @Test
+  void testSilentDeviceGoesOfflineAfterMissedHeartbeats() {
+    LivenessMonitor monitor = monitor().build().start();
+    monitor.watch(homeManager);
+    beat(monitor, hall, Duration.ofMinutes(5));
+
+    clock.advance(Duration.ofSeconds(29));
+    assertTrue(monitor.isOnline(porch));
+    clock.advance(Duration.ofSeconds(4));
+
+    assertFalse(monitor.isOnline(porch));
+    assertTrue(monitor.isOnline(hall));
+    assertEquals(1, monitor.getOfflineCount());
+    assertEquals(1, alerts.size());
+    assertTrue(alerts.get(0).contains(LivenessMonitor.DEVICE_OFFLINE), alerts.get(0));
+
+    clock.advance(Duration.ofMinutes(10));
+    assertFalse(monitor.isOnline(hall));
+    assertEquals(2, monitor.getOfflineCount());
+    assertEquals(2, alerts.size());
+    monitor.close();
+  }
+
+  @Test
+  void testHeartbeatBringsDeviceBackOnline() {
+    LivenessMonitor monitor = monitor().build().start();
+    monitor.watch(homeManager);
+    clock.advance(Duration.ofMinutes(1));
+    assertEquals(2, monitor.getOfflineCount());
+    alerts.clear();
+
+    monitor.heartbeat(monitor.slotOf(hall));
+
+    assertTrue(monitor.isOnline(hall));
+    assertEquals(1, monitor.getOfflineCount());
+    assertEquals(1, alerts.size());
+    assertTrue(alerts.get(0).contains(LivenessMonitor.DEVICE_ONLINE), alerts.get(0));
+    assertEquals(clock.instant(), monitor.getLastSeen(hall));
+    // Silent again: offline once more after another three intervals
+    clock.advance(Duration.ofSeconds(35));
+    assertFalse(monitor.isOnline(hall));
+    assertEquals(2, alerts.size());
+    monitor.close();
+  }
+
+  @Test
+  void testCommandsCountAsHeartbeats() throws Exception {
+    LivenessMonitor monitor = monitor().build().start();
+    monitor.watch(homeManager);
+    for (int i = 0; i < 12; i++) {
+      clock.advance(INTERVAL);
+      homeManager.sendCommand(hall, "turnOn", null);
+    }
+
+    assertTrue(monitor.isOnline(hall));
+    assertFalse(monitor.isOnline(porch));
+
+    homeManager.removeDevice(porch);
+    assertEquals(1, monitor.getDeviceCount());
+    assertEquals(0, monitor.getOfflineCount());
+    assertEquals(-1, monitor.slotOf(porch));
+    monitor.close();
+  }
+
+  @Test
+  void testCloseStopsFollowingWatchedHomes() throws Exception {
+    LivenessMonitor monitor = monitor().build().start();
+    monitor.watch(homeManager);
+    monitor.watch(homeManager);
+    clock.advance(Duration.ofMinutes(1));
+    alerts.clear();
+
+    monitor.close();
+    homeManager.sendCommand(hall, "turnOn", null);
+    homeManager.removeDevice(porch);
+    homeManager.addDevice(new Light("L3", "Attic Light"), homeManager.getRoombyName("Hall"));
+
+    assertFalse(monitor.isOnline(hall));
+    assertEquals(2, monitor.getDeviceCount());
+    assertTrue(alerts.isEmpty());
+    assertThrows(IllegalStateException.class, () -> monitor.watch(homeManager));
+  }
+
+  @Test
+  void testSlotsAreReusedUpToCapacity() {
+    LivenessMonitor monitor = monitor().capacity(2).build();
+    int first = monitor.register(hall);
+    assertEquals(first, monitor.register(hall));
+    monitor.register(porch);
+    Light extra = new Light("L3", "Extra Light");
+
+    assertThrows(IllegalStateException.class, () -> monitor.register(extra));
+    assertTrue(monitor.unregister(hall));
+    assertFalse(monitor.unregister(hall));
+    assertEquals(first, monitor.register(extra));
+    assertFalse(monitor.isOnline(hall));
+  }
+
+  @Test
+  void testTracksManyStoredDevicesWithoutTimers() {
+    int count = 100_000;
+    DeviceStore store = new DeviceStore(count);
+    LivenessMonitor monitor =
+        LivenessMonitor.builder()
+            .heartbeatInterval(INTERVAL)
+            .missedHeartbeats(2)
+            .capacity(count)
+            .clock(clock)
+            .build();
+    int[] slots = new int[count];
+    for (int i = 0; i < count; i++) {
+      int index = store.add(DeviceStore.Kind.LIGHT, "D" + i, "Device " + i);
+      slots[i] = monitor.register(store.view(index));
+    }
+
+    // Every even device keeps beating for a minute; the odd ones fall silent
+    for (int second = 10; second <= 60; second += 10) {
+      clock.advance(INTERVAL);
+      for (int i = 0; i < count; i += 2) {
+        monitor.heartbeat(slots[i]);
+      }
+      monitor.advance();
+    }
+
+    assertEquals(count / 2, monitor.getOfflineCount());
+    assertTrue(monitor.isOnline(slots[0]));
+    assertFalse(monitor.isOnline(slots[1]));
+  }
+
+  @Test
+  void testBuilderValidation() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> LivenessMonitor.builder().heartbeatInterval(Duration.ZERO));
+    assertThrows(
+        IllegalArgumentException.class, () -> LivenessMonitor.builder().missedHeartbeats(0));
+    assertThrows(IllegalStateException.class, () -> LivenessMonitor.builder().build());
+    LivenessMonitor closed = monitor().build();
+    closed.close();
+    assertThrows(IllegalStateException.class, closed::start);
+  }
+}
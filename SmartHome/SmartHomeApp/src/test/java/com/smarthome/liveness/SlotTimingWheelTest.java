@@ -0,0 +1,116 @@
+package com.smarthome.liveness;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class SlotTimingWheelTest {
+
+  private final SlotTimingWheel wheel = new SlotTimingWheel(16, 0);
+  private final List<Integer> expired = new ArrayList<>();
+
+  private void advance(long tick) {
+    wheel.advance(tick, expired::add);
+  }
+
+  @Test
+  void testExpiresOnlyDueSlots() {
+    wheel.schedule(1, 3);
+    wheel.schedule(2, 5);
+
+    advance(2);
+    assertTrue(expired.isEmpty());
+    advance(4);
+    assertEquals(List.of(1), expired);
+    advance(5);
+    assertEquals(List.of(1, 2), expired);
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  void testCascadesFromCoarserLevelsOnTime() {
+    wheel.schedule(0, 100);
+    wheel.schedule(1, 64 * 64 + 7);
+    wheel.schedule(2, 64L * 64 * 64 * 3 + 1);
+
+    advance(99);
+    assertTrue(expired.isEmpty());
+    advance(100);
+    assertEquals(List.of(0), expired);
+    advance(64 * 64 + 6);
+    assertEquals(List.of(0), expired);
+    advance(64 * 64 + 7);
+    assertEquals(List.of(0, 1), expired);
+    advance(64L * 64 * 64 * 3);
+    assertEquals(List.of(0, 1), expired);
+    advance(64L * 64 * 64 * 3 + 1);
+    assertEquals(List.of(0, 1, 2), expired);
+  }
+
+  @Test
+  void testDeadlinesBeyondTheTopLevelAreReFiled() {
+    long far = (1L << 24) * 2 + 5;
+    wheel.schedule(3, far);
+
+    advance(far - 1);
+    assertTrue(expired.isEmpty());
+    assertTrue(wheel.isScheduled(3));
+    advance(far);
+    assertEquals(List.of(3), expired);
+  }
+
+  @Test
+  void testRescheduleAndCancel() {
+    wheel.schedule(1, 10);
+    wheel.schedule(2, 10);
+    wheel.schedule(1, 20);
+    wheel.cancel(2);
+
+    advance(15);
+    assertTrue(expired.isEmpty());
+    assertEquals(1, wheel.size());
+    advance(20);
+    assertEquals(List.of(1), expired);
+    assertFalse(wheel.isScheduled(1));
+  }
+
+  @Test
+  void testExpiryCallbackMayReschedule() {
+    wheel.schedule(5, 1);
+    List<Long> fired = new ArrayList<>();
+
+    wheel.advance(
+        100,
+        slot -> {
+          fired.add(wheel.currentTick());
+          wheel.schedule(slot, wheel.currentTick() + 30);
+        });
+
+    assertEquals(List.of(1L, 31L, 61L, 91L), fired);
+  }
+
+  @Test
+  void testMatchesEveryDeadlineUnderRandomSchedules() {
+    SlotTimingWheel big = new SlotTimingWheel(500, 0);
+    long[] deadlines = new long[500];
+    Random random = new Random(7);
+    for (int slot = 0; slot < deadlines.length; slot++) {
+      deadlines[slot] = 1 + random.nextInt(300_000);
+      big.schedule(slot, deadlines[slot]);
+    }
+    long[] firedAt = new long[deadlines.length];
+
+    // Uneven steps, so cascades happen both inside and at the end of an advance
+    for (long tick = 0; tick < 300_000; tick += 1 + random.nextInt(5_000)) {
+      big.advance(tick, slot -> firedAt[slot] = big.currentTick());
+    }
+    big.advance(300_000, slot -> firedAt[slot] = big.currentTick());
+
+    assertEquals(Arrays.toString(deadlines), Arrays.toString(firedAt));
+    assertEquals(0, big.size());
+  }
+}
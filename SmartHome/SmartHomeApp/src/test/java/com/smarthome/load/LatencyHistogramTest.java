@@ -0,0 +1,92 @@
+package com.smarthome.load;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void testEmptyHistogramReportsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+    assertEquals(0, histogram.getMax());
+  }
+
+  @Test
+  void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int value = 1; value <= 100; value++) {
+      histogram.record(value);
+    }
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(50, histogram.getValueAtPercentile(50));
+    assertEquals(99, histogram.getValueAtPercentile(99));
+    assertEquals(100, histogram.getValueAtPercentile(100));
+    assertEquals(100, histogram.getMax());
+  }
+
+  @Test
+  void testLargeValuesStayWithinRelativePrecision() {
+    long[] samples = {257, 1_000, 123_456, 9_876_543, 3_000_000_000L, Long.MAX_VALUE / 3};
+    for (long sample : samples) {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(sample);
+      histogram.record(Long.MAX_VALUE / 2);
+
+      long reported = histogram.getValueAtPercentile(50);
+      assertTrue(reported >= sample, "reported " + reported + " below " + sample);
+      assertTrue(reported - sample <= sample / 128, "reported " + reported + " for " + sample);
+    }
+  }
+
+  @Test
+  void testBucketIndexRoundTripsAcrossRange() {
+    for (long value = 1; value > 0 && value < Long.MAX_VALUE / 2; value = value * 3 + 1) {
+      int index = LatencyHistogram.indexOf(value);
+      assertTrue(LatencyHistogram.highestValueIn(index) >= value);
+      if (index > 0) {
+        assertTrue(LatencyHistogram.highestValueIn(index - 1) < value);
+      }
+    }
+    assertEquals(
+        Long.MAX_VALUE, LatencyHistogram.highestValueIn(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+  }
+
+  @Test
+  void testTailPercentilesSeeOutliers() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 9_990; i++) {
+      histogram.record(1_000);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(5_000_000);
+    }
+
+    assertTrue(histogram.getValueAtPercentile(99) < 1_010);
+    assertTrue(histogram.getValueAtPercentile(99.95) >= 5_000_000);
+    assertEquals(5_000_000, histogram.getMax());
+  }
+
+  @Test
+  void testResetClearsCounts() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(42);
+    histogram.reset();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+  }
+
+  @Test
+  void testNegativeValuesCountAsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+
+    assertEquals(1, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(100));
+  }
+}
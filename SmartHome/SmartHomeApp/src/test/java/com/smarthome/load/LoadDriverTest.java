@@ -0,0 +1,83 @@
+package com.smarthome.load;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+class LoadDriverTest {
+
+  @Test
+  void testParseOverridesDefaults() {
+    LoadProfile profile = LoadProfile.parse("devices=50", "rate=200", "duration=300ms", "zipf=0");
+
+    assertEquals(50, profile.devices());
+    assertEquals(200, profile.rate());
+    assertEquals(Duration.ofMillis(300), profile.duration());
+    assertEquals(0.0, profile.zipfExponent());
+    assertEquals(LoadProfile.defaults().warmup(), profile.warmup());
+  }
+
+  @Test
+  void testParseRejectsBadSettings() {
+    assertThrows(IllegalArgumentException.class, () -> LoadProfile.parse("devices"));
+    assertThrows(IllegalArgumentException.class, () -> LoadProfile.parse("speed=3"));
+    assertThrows(IllegalArgumentException.class, () -> LoadProfile.parse("rate=fast"));
+    assertThrows(IllegalArgumentException.class, () -> LoadProfile.parse("global=2"));
+    // 300 years does not fit in nanoseconds
+    assertThrows(
+        IllegalArgumentException.class, () -> LoadProfile.parse("duration=9467280000s"));
+  }
+
+  @Test
+  void testLongRunsAtHighRatesDoNotOverflow() {
+    LoadProfile profile = LoadProfile.parse("rate=" + Integer.MAX_VALUE, "duration=10800s");
+    long events = 10_800L * Integer.MAX_VALUE;
+
+    assertEquals(events, profile.eventsIn(profile.duration()));
+    long last = LoadDriver.dueOffsetNanos(events - 1, Integer.MAX_VALUE);
+    assertTrue(last > 0 && last < Duration.ofHours(3).toNanos());
+    assertEquals(1_500_000_000L, LoadDriver.dueOffsetNanos(3, 2));
+  }
+
+  @Test
+  void testZipfFavoursLowRanks() {
+    ZipfDistribution zipf = new ZipfDistribution(100, 1.0);
+    SplittableRandom random = new SplittableRandom(7);
+    int[] hits = new int[100];
+    for (int i = 0; i < 100_000; i++) {
+      hits[zipf.sample(random)]++;
+    }
+
+    assertTrue(hits[0] > hits[1] && hits[1] > hits[9] && hits[9] > hits[99]);
+    assertEquals(zipf.probability(0), hits[0] / 100_000.0, 0.01);
+  }
+
+  @Test
+  void testZipfExponentZeroIsUniform() {
+    ZipfDistribution uniform = new ZipfDistribution(4, 0);
+
+    for (int rank = 0; rank < 4; rank++) {
+      assertEquals(0.25, uniform.probability(rank), 1e-9);
+    }
+  }
+
+  @Test
+  void testRunReportsEveryScheduledEvent() {
+    LoadProfile profile =
+        LoadProfile.parse(
+            "devices=20", "rate=2000", "duration=250ms", "warmup=50ms", "global=0.2");
+
+    LoadReport report = new LoadDriver(profile).run();
+
+    assertEquals(500, report.events());
+    assertEquals(500, report.latencies().getCount());
+    // Every generated event has a matching rule
+    assertEquals(report.events(), report.firedRules());
+    assertTrue(report.globalEvents() > 0 && report.globalEvents() < report.events());
+    assertTrue(report.latencies().getValueAtPercentile(50) > 0);
+    assertTrue(report.throughput() > 0);
+    assertTrue(report.format().contains("p99.9="));
+  }
+}
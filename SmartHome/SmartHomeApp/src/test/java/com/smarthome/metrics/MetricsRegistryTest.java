@@ -0,0 +1,147 @@
+package com.smarthome.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Light;
+import com.smarthome.exceptions.InvalidCommandException;
+import com.smarthome.exceptions.RuleConflictException;
+import com.smarthome.scene.Action;
+import com.smarthome.scene.Rule;
+import com.smarthome.scene.RuleEngine;
+import com.smarthome.scene.Scene;
+import com.smarthome.scene.SceneManager;
+import java.lang.management.ManagementFactory;
+import java.time.LocalTime;
+import java.util.Map;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MetricsRegistryTest {
+
+  private final MetricsRegistry metrics = Metrics.get();
+
+  @BeforeEach
+  void setUp() {
+    metrics.reset();
+  }
+
+  @AfterEach
+  void tearDown() {
+    metrics.setEnabled(true);
+  }
+
+  @Test
+  void testSampledTimerCountsEveryCall() {
+    OperationStats stats = new MetricsRegistry().command("turnOn");
+    for (int i = 0; i < 1_000; i++) {
+      stats.stopTimer(stats.startTimer(), i % 10 != 0);
+    }
+
+    OperationSnapshot snapshot = stats.snapshot();
+    assertEquals(1_000, snapshot.getCount());
+    assertEquals(100, snapshot.getFailures());
+    assertTrue(snapshot.getTimedCount() > 0 && snapshot.getTimedCount() < 1_000);
+  }
+
+  @Test
+  void testRecordTracksMeanAndMax() {
+    OperationStats stats = new MetricsRegistry().scene("Evening");
+    stats.record(100, true);
+    stats.record(300, false);
+
+    OperationSnapshot snapshot = stats.snapshot();
+    assertEquals(2, snapshot.getCount());
+    assertEquals(1, snapshot.getFailures());
+    assertEquals(200, snapshot.getMeanNanos());
+    assertEquals(300, snapshot.getMaxNanos());
+  }
+
+  @Test
+  void testCommandsAreCountedPerName() throws InvalidCommandException {
+    HomeManager homeManager = new HomeManager("metrics");
+    Room room = new Room("Hall");
+    Light light = new Light("L1", "Hall Light");
+    homeManager.addRoom(room);
+    homeManager.addDevice(light, room);
+
+    homeManager.sendCommand(light, "turnOn", null);
+    homeManager.sendCommand(light, "setBrightness", 40);
+    homeManager.sendCommand(light, "setBrightness", 60);
+    assertThrows(
+        InvalidCommandException.class, () -> homeManager.sendCommand(light, "explode", null));
+    assertThrows(
+        InvalidCommandException.class, () -> homeManager.sendCommand(light, "setTemp", 20));
+
+    Map<String, OperationSnapshot> commands = metrics.getCommands();
+    assertEquals(1, commands.get("turnOn").getCount());
+    assertEquals(2, commands.get("setBrightness").getCount());
+    assertEquals(1, commands.get("setTemp").getFailures());
+    assertEquals(1, commands.get(MetricsRegistry.UNKNOWN_COMMAND).getFailures());
+    assertFalse(commands.containsKey("explode"));
+  }
+
+  @Test
+  void testRulesScenesAndNotificationsAreCounted() throws RuleConflictException {
+    HomeManager homeManager = new HomeManager("metrics");
+    Room room = new Room("Hall");
+    homeManager.addRoom(room);
+    homeManager.addDevice(new Light("L1", "Hall Light"), room);
+    SceneManager sceneManager = new SceneManager(homeManager);
+    Scene scene = new Scene("Welcome");
+    scene.addAction(new Action("Hall Light", "turnOn"));
+    sceneManager.addScene(scene);
+    RuleEngine ruleEngine = new RuleEngine(sceneManager, message -> {});
+    ruleEngine.addRule(new Rule("motion", "Sensor", scene));
+    ruleEngine.addRule(
+        new Rule("door", "Sensor", scene, LocalTime.of(22, 0), LocalTime.of(23, 0)));
+
+    ruleEngine.handleEvent("motion", "Sensor", LocalTime.NOON);
+    ruleEngine.handleEvent("MOTION", "sensor", LocalTime.NOON);
+    ruleEngine.handleEvent("door", "Sensor", LocalTime.NOON);
+    ruleEngine.handleEvent("smoke", "Sensor", LocalTime.NOON);
+
+    assertEquals(2, metrics.getEventsMatched());
+    assertEquals(1, metrics.getEventsOutsideWindow());
+    assertEquals(1, metrics.getEventsUnmatched());
+    assertEquals(2, metrics.getRules().get("motion@sensor").getCount());
+    assertEquals(2, metrics.getScenes().get("Welcome").getCount());
+    assertEquals(2, metrics.getNotifications().getCount());
+    assertTrue(metrics.format().contains("motion@sensor"));
+  }
+
+  @Test
+  void testDisabledRegistryRecordsNothing() throws InvalidCommandException {
+    HomeManager homeManager = new HomeManager("metrics");
+    Room room = new Room("Hall");
+    Light light = new Light("L1", "Hall Light");
+    homeManager.addRoom(room);
+    homeManager.addDevice(light, room);
+    metrics.setEnabled(false);
+
+    homeManager.sendCommand(light, "turnOn", null);
+
+    assertTrue(metrics.getCommands().isEmpty());
+  }
+
+  @Test
+  void testRegistryIsPublishedOverJmx() throws Exception {
+    Metrics.registerMBean();
+    Metrics.registerMBean();
+    metrics.command("turnOff").record(50, true);
+
+    Object commands =
+        ManagementFactory.getPlatformMBeanServer()
+            .getAttribute(new ObjectName(Metrics.OBJECT_NAME), "Commands");
+
+    TabularData table = (TabularData) commands;
+    CompositeData row = table.get(new Object[] {"turnOff"});
+    CompositeData value = (CompositeData) row.get("value");
+    assertEquals(1L, value.get("count"));
+  }
+}
@@ -0,0 +1,314 @@
+package com.smarthome.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SecurityCamera;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.JournalLevel;
+import com.smarthome.journal.Journals;
+import com.smarthome.scene.Action;
+import com.smarthome.scene.Scene;
+import com.smarthome.scene.SceneManager;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class HomeStoreTest {
+
+  private static final String ACCOUNT = "Account123";
+
+  private Path directory;
+  private HomeStore store;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("home-store-test");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (store != null) {
+      store.close();
+    }
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  @Test
+  void testEmptyDirectoryStartsEmptyHome() throws IOException {
+    store = HomeStore.open(directory, ACCOUNT);
+
+    assertFalse(store.wasRestored());
+    assertEquals(0, store.getHomeManager().getDeviceCount());
+    assertEquals(ACCOUNT, store.getHomeManager().getAccountId());
+  }
+
+  @Test
+  void testReopeningAnEmptyLogIsNotARestore() throws IOException {
+    store = HomeStore.open(directory, ACCOUNT);
+
+    reopen();
+
+    assertTrue(Files.exists(directory.resolve("commands-0.log")));
+    assertFalse(store.wasRestored());
+  }
+
+  @Test
+  void testCommandsAndTopologyAreReplayedFromLog() throws Exception {
+    store = HomeStore.open(directory, ACCOUNT);
+    HomeManager home = store.getHomeManager();
+    Room kitchen = new Room("Kitchen");
+    home.addRoom(kitchen);
+    Light light = new Light("KT_LIGHT_01", "Kitchen Light");
+    Thermostat thermostat = new Thermostat("KT_T_01", "Kitchen Thermostat");
+    SecurityCamera camera = new SecurityCamera("KT_CAM_01", "Kitchen Camera");
+    home.addDevice(light, kitchen);
+    home.addDevice(thermostat, kitchen);
+    home.addDevice(camera, kitchen);
+    home.sendCommand(light, "turnOn", null);
+    home.sendCommand(light, "setBrightness", 80);
+    home.sendCommand(thermostat, "setTemp", "22.5");
+    home.sendCommand(camera, "startRecording", null);
+    camera.setDeviceName("Pantry Camera");
+
+    HomeManager restored = reopen();
+
+    assertTrue(store.wasRestored());
+    assertEquals(3, restored.getDeviceCount());
+    Light restoredLight = (Light) restored.getDeviceById("KT_LIGHT_01");
+    assertTrue(restoredLight.isOn());
+    assertEquals(80, restoredLight.getBrightness());
+    assertEquals(22.5, ((Thermostat) restored.getDeviceById("KT_T_01")).getTemp());
+    SecurityCamera restoredCamera = (SecurityCamera) restored.getDevicebyName("Pantry Camera");
+    assertTrue(restoredCamera.isRecording());
+    assertEquals("Kitchen", restored.getRoomOfDevice(restoredCamera).getRoomName());
+  }
+
+  @Test
+  void testRemovalsAreReplayed() throws Exception {
+    store = HomeStore.open(directory, ACCOUNT);
+    HomeManager home = store.getHomeManager();
+    Room kitchen = new Room("Kitchen");
+    Room garage = new Room("Garage");
+    home.addRoom(kitchen);
+    home.addRoom(garage);
+    Light kept = new Light("L1", "Kept");
+    Light removed = new Light("L2", "Removed");
+    home.addDevice(kept, kitchen);
+    home.addDevice(removed, kitchen);
+    home.addDevice(new Light("L3", "Garage Light"), garage);
+    home.removeDevice(removed);
+    home.deleteRoom(garage);
+
+    HomeManager restored = reopen();
+
+    assertEquals(1, restored.getRooms().size());
+    assertEquals(1, restored.getDeviceCount());
+    assertNotNull(restored.getDeviceById("L1"));
+    assertNull(restored.getDeviceById("L2"));
+    assertNull(restored.getDeviceById("L3"));
+  }
+
+  @Test
+  void testSnapshotFoldsLogsAndKeepsLaterChanges() throws Exception {
+    store = HomeStore.open(directory, ACCOUNT);
+    HomeManager home = store.getHomeManager();
+    Room room = new Room("Office");
+    home.addRoom(room);
+    Light light = new Light("L1", "Desk Lamp");
+    home.addDevice(light, room);
+    home.sendCommand(light, "turnOn", null);
+
+    store.snapshot();
+    assertEquals(1, store.getGeneration());
+    assertFalse(Files.exists(directory.resolve("commands-0.log")));
+    home.sendCommand(light, "setBrightness", 30);
+
+    HomeManager restored = reopen();
+
+    Light restoredLight = (Light) restored.getDeviceById("L1");
+    assertTrue(restoredLight.isOn());
+    assertEquals(30, restoredLight.getBrightness());
+  }
+
+  @Test
+  void testRoomsSharingANameStayApartAcrossRestarts() throws Exception {
+    store = HomeStore.open(directory, ACCOUNT);
+    HomeManager home = store.getHomeManager();
+    Room upper = new Room("Hall");
+    Room lower = new Room("hall");
+    Room again = new Room("Hall");
+    home.addRoom(upper);
+    home.addRoom(lower);
+    home.addDevice(new Light("L1", "Upper Lamp"), upper);
+    home.addDevice(new Light("L2", "Lower Lamp"), lower);
+    store.snapshot();
+    home.addRoom(again);
+    home.addDevice(new Light("L3", "Third Lamp"), again);
+    home.addDevice(new Light("L4", "Late Lamp"), lower);
+
+    HomeManager restored = reopen();
+    restored.deleteRoom(restored.getRoomOfDevice(restored.getDeviceById("L1")));
+    restored = reopen();
+
+    assertEquals(2, restored.getRooms().size());
+    assertNull(restored.getDeviceById("L1"));
+    Room restoredLower = restored.getRoomOfDevice(restored.getDeviceById("L2"));
+    assertEquals(lower.getRoomID(), restoredLower.getRoomID());
+    assertSame(restoredLower, restored.getRoomOfDevice(restored.getDeviceById("L4")));
+    Room restoredAgain = restored.getRoomOfDevice(restored.getDeviceById("L3"));
+    assertEquals(again.getRoomID(), restoredAgain.getRoomID());
+  }
+
+  @Test
+  void testSnapshotThresholdTakesSnapshotsOnTheSyncThread() throws Exception {
+    // The sync thread never runs on its own here; sync() stands in for it
+    store = HomeStore.open(directory, ACCOUNT, Duration.ofHours(1), 10);
+    HomeManager home = store.getHomeManager();
+    Room room = new Room("Hall");
+    home.addRoom(room);
+    Light light = new Light("L1", "Hall Light");
+    home.addDevice(light, room);
+    home.sendCommand(light, "turnOn", null);
+    for (int i = 0; i < 30; i++) {
+      home.sendCommand(light, "setBrightness", i);
+    }
+
+    assertEquals(0, store.getGeneration());
+    store.sync();
+    assertEquals(1, store.getGeneration());
+    assertFalse(Files.exists(directory.resolve("commands-0.log")));
+    store.sync();
+    assertEquals(1, store.getGeneration());
+    assertEquals(29, ((Light) reopen().getDeviceById("L1")).getBrightness());
+  }
+
+  @Test
+  void testFailedBackgroundSnapshotIsJournaledAndLosesNothing() throws Exception {
+    List<String> errors = new CopyOnWriteArrayList<>();
+    Journal previous = Journals.set(recordingErrors(errors));
+    try {
+      // A directory where the snapshot's temporary file should go makes every write fail
+      Files.createDirectory(directory.resolve("home.snapshot.tmp"));
+      store = HomeStore.open(directory, ACCOUNT, Duration.ofMillis(1), 1);
+      HomeManager home = store.getHomeManager();
+      Room room = new Room("Hall");
+      home.addRoom(room);
+      home.addDevice(new Light("L1", "Hall Light"), room);
+
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (errors.isEmpty() && System.nanoTime() < deadline) {
+        Thread.sleep(1);
+      }
+      assertFalse(errors.isEmpty());
+      assertTrue(errors.get(0).startsWith("Failed to sync home store"));
+    } finally {
+      Journals.set(previous);
+    }
+    store.close();
+    Files.delete(directory.resolve("home.snapshot.tmp"));
+
+    assertEquals("Hall Light", reopen().getDeviceById("L1").getDeviceName());
+  }
+
+  @Test
+  void testSceneActionsArePersisted() throws Exception {
+    store = HomeStore.open(directory, ACCOUNT);
+    HomeManager home = store.getHomeManager();
+    Room room = new Room("Living Room");
+    home.addRoom(room);
+    home.addDevice(new Light("LR_1", "Main Light"), room);
+    SceneManager sceneManager = new SceneManager(home);
+    Scene scene = new Scene("Evening");
+    scene.addAction(new Action("Main Light", "turnOn"));
+    scene.addAction(new Action("Main Light", "setBrightness", "65"));
+    sceneManager.addScene(scene);
+    sceneManager.executeScene(scene);
+
+    Light restored = (Light) reopen().getDeviceById("LR_1");
+
+    assertTrue(restored.isOn());
+    assertEquals(65, restored.getBrightness());
+  }
+
+  @Test
+  void testSnapshotOfAnotherAccountIsRejected() throws IOException {
+    store = HomeStore.open(directory, ACCOUNT);
+    store.snapshot();
+    store.close();
+    store = null;
+
+    assertThrows(IOException.class, () -> HomeStore.open(directory, "SomeoneElse"));
+  }
+
+  @Test
+  void testClosedStoreStopsRecording() throws Exception {
+    store = HomeStore.open(directory, ACCOUNT, Duration.ofMillis(1), 1000);
+    HomeManager home = store.getHomeManager();
+    home.addRoom(new Room("Before"));
+    store.close();
+    home.addRoom(new Room("After"));
+
+    assertThrows(IllegalStateException.class, store::snapshot);
+    assertEquals(1, reopen().getRooms().size());
+  }
+
+  @Test
+  void testStoresOpenedWithSharedResourcesShareNames() throws Exception {
+    try (HomeStore.Shared shared = new HomeStore.Shared()) {
+      store = HomeStore.open(directory.resolve("a"), "a", shared);
+      HomeStore other = HomeStore.open(directory.resolve("b"), "b", shared);
+      for (HomeStore each : new HomeStore[] {store, other}) {
+        Room room = new Room("Hall");
+        each.getHomeManager().addRoom(room);
+        each.getHomeManager().addDevice(new Light("H1", "Hall Light"), room);
+        each.close();
+      }
+
+      store = HomeStore.open(directory.resolve("a"), "a", shared);
+      other = HomeStore.open(directory.resolve("b"), "b", shared);
+      assertSame(
+          store.getHomeManager().getDeviceById("H1").getDeviceName(),
+          other.getHomeManager().getDeviceById("H1").getDeviceName());
+      assertEquals(3, shared.internedCount());
+      assertTrue(Files.size(directory.resolve("a").resolve("commands-0.log")) < 1 << 20);
+      other.close();
+    }
+  }
+
+  private static Journal recordingErrors(List<String> errors) {
+    return new Journal() {
+      @Override
+      public boolean isEnabled(JournalLevel level) {
+        return level == JournalLevel.ERROR;
+      }
+
+      @Override
+      public void record(JournalLevel level, String message) {
+        errors.add(message);
+      }
+    };
+  }
+
+  private HomeManager reopen() throws IOException {
+    store.close();
+    store = HomeStore.open(directory, ACCOUNT);
+    return store.getHomeManager();
+  }
+}
@@ -0,0 +1,76 @@
+package com.smarthome.scene;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalTime;
+import org.junit.jupiter.api.Test;
+
+class ActivationWindowTest {
+
+  @Test
+  void testNoBoundsMeansAlwaysActive() {
+    assertNull(ActivationWindow.of(null, null));
+  }
+
+  @Test
+  void testWindowsAreInterned() {
+    assertSame(
+        ActivationWindow.of(LocalTime.of(9, 0), LocalTime.of(17, 0)),
+        ActivationWindow.of(LocalTime.of(9, 0), LocalTime.of(17, 0)));
+    assertNotSame(
+        ActivationWindow.of(LocalTime.of(9, 0), LocalTime.of(17, 0)),
+        ActivationWindow.of(LocalTime.of(9, 0), null));
+  }
+
+  @Test
+  void testBitmapMatchesExactCheckForEveryMinute() {
+    assertMatchesExactEverywhere(LocalTime.of(9, 0), LocalTime.of(17, 0));
+    assertMatchesExactEverywhere(LocalTime.of(22, 0), LocalTime.of(6, 0));
+    assertMatchesExactEverywhere(LocalTime.of(7, 15, 30), LocalTime.of(7, 45, 10));
+    assertMatchesExactEverywhere(LocalTime.of(18, 0), null);
+    assertMatchesExactEverywhere(null, LocalTime.of(8, 30));
+  }
+
+  @Test
+  void testBoundaryMinutesAreSecondPrecise() {
+    ActivationWindow window = ActivationWindow.of(LocalTime.of(22, 0), LocalTime.of(6, 0));
+
+    assertTrue(window.isActiveAt(LocalTime.of(6, 0)));
+    assertFalse(window.isActiveAt(LocalTime.of(6, 0, 1)));
+    assertFalse(window.isActiveAt(LocalTime.of(21, 59, 59)));
+    assertTrue(window.isActiveAt(LocalTime.of(22, 0)));
+  }
+
+  @Test
+  void testNextTransitionAfter() {
+    ActivationWindow window = ActivationWindow.of(LocalTime.of(9, 0), LocalTime.of(17, 0));
+
+    assertEquals(LocalTime.of(9, 0), window.nextTransitionAfter(LocalTime.of(8, 0)));
+    assertEquals(LocalTime.of(17, 0).plusNanos(1), window.nextTransitionAfter(LocalTime.NOON));
+    // Past the last transition of the day, wraps to the earliest one tomorrow
+    assertEquals(LocalTime.MIDNIGHT, window.nextTransitionAfter(LocalTime.of(20, 0)));
+  }
+
+  private static void assertMatchesExactEverywhere(LocalTime startAfter, LocalTime endBefore) {
+    ActivationWindow window = ActivationWindow.of(startAfter, endBefore);
+    for (int minute = 0; minute < 24 * 60; minute++) {
+      for (int second : new int[] {0, 30, 59}) {
+        LocalTime time = LocalTime.of(minute / 60, minute % 60, second);
+        assertEquals(
+            exactlyActive(startAfter, endBefore, time),
+            window.isActiveAt(time),
+            window + " at " + time);
+      }
+    }
+  }
+
+  /** The original Rule.isActiveNow logic, kept here as the reference behaviour. */
+  private static boolean exactlyActive(LocalTime startAfter, LocalTime endBefore, LocalTime now) {
+    if (startAfter == null) return !now.isAfter(endBefore);
+    if (endBefore == null) return !now.isBefore(startAfter);
+    if (endBefore.isBefore(startAfter)) {
+      return !now.isBefore(startAfter) || !now.isAfter(endBefore);
+    }
+    return !now.isBefore(startAfter) && !now.isAfter(endBefore);
+  }
+}
@@ -0,0 +1,83 @@
+package com.smarthome.scene;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class AsyncEventDispatcherTest {
+
+  private static final LocalTime NOON = LocalTime.NOON;
+
+  private final CountDownLatch started = new CountDownLatch(1);
+  private final CountDownLatch gate = new CountDownLatch(1);
+  private AsyncEventDispatcher dispatcher;
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    gate.countDown();
+    if (dispatcher != null) {
+      dispatcher.stop();
+    }
+  }
+
+  private boolean blockUntilReleased(String eventType, String deviceName, LocalTime time) {
+    started.countDown();
+    try {
+      return gate.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  @Test
+  void testShardCapacityRoundsUp() throws Exception {
+    // 3 slots over 2 workers: each shard holds 2 events, not 1
+    dispatcher = new AsyncEventDispatcher(2, 3, OverflowPolicy.REJECT, this::blockUntilReleased);
+
+    CompletableFuture<Boolean> running = dispatcher.submit("motion", "S1", "s1", NOON);
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    List<CompletableFuture<Boolean>> queued = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      queued.add(dispatcher.submit("motion", "S1", "s1", NOON));
+    }
+
+    assertFalse(queued.get(0).isDone());
+    assertFalse(queued.get(1).isDone());
+    CompletionException failure = assertThrows(CompletionException.class, queued.get(2)::join);
+    assertTrue(failure.getCause() instanceof RejectedExecutionException);
+    gate.countDown();
+    assertTrue(running.join());
+    assertTrue(queued.get(1).join());
+  }
+
+  @Test
+  void testWorkerResubmittingToItsFullShardIsRejectedInsteadOfBlocking() {
+    List<CompletableFuture<Boolean>> resubmitted = new ArrayList<>();
+    AsyncEventDispatcher.EventHandler handler =
+        (eventType, deviceName, time) -> {
+          if (eventType.equals("motion")) {
+            // The first fills the only slot; the second would wait for this very worker
+            resubmitted.add(dispatcher.submit("echo", deviceName, "s1", time));
+            resubmitted.add(dispatcher.submit("echo", deviceName, "s1", time));
+          }
+          return true;
+        };
+    dispatcher = new AsyncEventDispatcher(1, 1, OverflowPolicy.BLOCK, handler);
+
+    assertTrue(dispatcher.submit("motion", "S1", "s1", NOON).orTimeout(5, TimeUnit.SECONDS).join());
+
+    assertTrue(resubmitted.get(0).orTimeout(5, TimeUnit.SECONDS).join());
+    CompletionException failure = assertThrows(CompletionException.class, resubmitted.get(1)::join);
+    assertTrue(failure.getCause() instanceof RejectedExecutionException);
+  }
+}
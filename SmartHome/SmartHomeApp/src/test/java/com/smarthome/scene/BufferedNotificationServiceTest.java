@@ -0,0 +1,174 @@
+package com.smarthome.scene;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.exceptions.RuleConflictException;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class BufferedNotificationServiceTest {
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+  private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+  private BufferedNotificationService service;
+
+  @AfterEach
+  void tearDown() {
+    if (service != null) {
+      service.close();
+    }
+  }
+
+  @Test
+  void testAlertsAreDeliveredOnFlush() {
+    service = BufferedNotificationService.builder(sent::add).build();
+
+    service.sendAlert("first");
+    service.sendAlert("second");
+
+    assertTrue(service.flush(TIMEOUT));
+    assertEquals(List.of("first", "second"), sent);
+    assertEquals(2, service.getDeliveredCount());
+  }
+
+  @Test
+  void testIdenticalAlertsInOneWindowAreMerged() {
+    service =
+        BufferedNotificationService.builder(sent::add).batchWindow(Duration.ofSeconds(10)).build();
+
+    for (int i = 0; i < 5; i++) {
+      service.send(new Alert("motion@sensor", "ALERT: %s by %s", "motion", "Sensor"));
+    }
+    service.send(new Alert("door@sensor", "ALERT: %s by %s", "door", "Sensor"));
+
+    assertTrue(service.flush(TIMEOUT));
+    assertEquals(List.of("ALERT: motion by Sensor (x5)", "ALERT: door by Sensor"), sent);
+    assertEquals(4, service.getDuplicateCount());
+  }
+
+  @Test
+  void testRateLimitIsPerSource() {
+    service =
+        BufferedNotificationService.builder(sent::add)
+            .batchWindow(Duration.ZERO)
+            .rateLimit(0.001, 2)
+            .build();
+
+    for (int i = 0; i < 10; i++) {
+      service.send(new Alert("flapping", "flap %d", i));
+    }
+    service.send(new Alert("quiet", "quiet"));
+
+    assertTrue(service.flush(TIMEOUT));
+    assertEquals(List.of("flap 0", "flap 1", "quiet"), sent);
+    assertEquals(8, service.getRateLimitedCount());
+  }
+
+  @Test
+  void testSlowSinkNeverBlocksTheCaller() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    service =
+        BufferedNotificationService.builder(
+                message -> {
+                  try {
+                    release.await(5, TimeUnit.SECONDS);
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                  sent.add(message);
+                })
+            .capacity(4)
+            .batchWindow(Duration.ZERO)
+            .build();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < 100; i++) {
+      service.send(new Alert(null, "alert %d", i));
+    }
+    long elapsed = System.nanoTime() - start;
+
+    assertTrue(elapsed < TimeUnit.SECONDS.toNanos(1), "caller waited " + elapsed + "ns");
+    assertTrue(service.getDroppedCount() >= 100 - 4 - 1);
+    release.countDown();
+  }
+
+  @Test
+  void testMessagesAreFormattedLazilyAndOnce() {
+    AtomicInteger formatted = new AtomicInteger();
+    Object argument =
+        new Object() {
+          @Override
+          public String toString() {
+            formatted.incrementAndGet();
+            return "Sensor";
+          }
+        };
+    Alert alert = new Alert("motion@sensor", "ALERT: motion by %s", argument);
+    Alert duplicate = new Alert("motion@sensor", "ALERT: motion by %s", argument);
+
+    assertEquals(alert, duplicate);
+    assertEquals(0, formatted.get());
+    assertEquals("ALERT: motion by Sensor", alert.getMessage());
+    assertEquals("ALERT: motion by Sensor", alert.getMessage());
+    assertEquals(1, formatted.get());
+  }
+
+  @Test
+  void testFailingSinkIsCountedAndSkipped() {
+    service =
+        BufferedNotificationService.builder(
+                message -> {
+                  if (message.contains("bad")) {
+                    throw new IllegalStateException("sink down");
+                  }
+                  sent.add(message);
+                })
+            .batchWindow(Duration.ZERO)
+            .build();
+
+    service.sendAlert("bad one");
+    service.sendAlert("good one");
+
+    assertTrue(service.flush(TIMEOUT));
+    assertEquals(List.of("good one"), sent);
+    assertEquals(1, service.getFailedCount());
+  }
+
+  @Test
+  void testCloseDeliversQueuedAlertsThenDropsNewOnes() {
+    service =
+        BufferedNotificationService.builder(sent::add).batchWindow(Duration.ofSeconds(10)).build();
+    service.sendAlert("queued");
+
+    service.close();
+    service.sendAlert("late");
+
+    assertEquals(List.of("queued"), sent);
+    assertEquals(1, service.getDroppedCount());
+  }
+
+  @Test
+  void testRuleEngineAlertsGoThroughTheBuffer() throws RuleConflictException {
+    service =
+        BufferedNotificationService.builder(sent::add).batchWindow(Duration.ofSeconds(10)).build();
+    RuleEngine ruleEngine = new RuleEngine(new SceneManager(new HomeManager("alerts")), service);
+    ruleEngine.addRule(new Rule("sunset", new Scene("Evening")));
+
+    for (int i = 0; i < 3; i++) {
+      ruleEngine.handleGlobalEvent("sunset", LocalTime.NOON);
+    }
+
+    assertTrue(service.flush(TIMEOUT));
+    assertEquals(List.of("ALERT: Global event sunset triggered scene Evening (x3)"), sent);
+  }
+}
@@ -0,0 +1,98 @@
+package com.smarthome.scene;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.DeviceAttribute;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.Thermostat;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ConditionTest {
+
+  @Test
+  void testParseConjunction() {
+    Condition condition = Condition.parse("Hall Thermostat temp > 26 and Living Room Light is off");
+
+    assertEquals(
+        List.of(
+            new Condition.Comparison(
+                "Hall Thermostat", DeviceAttribute.TEMPERATURE, Condition.Operator.GREATER, 26),
+            Condition.Comparison.isOff("Living Room Light")),
+        condition.comparisons());
+    assertEquals(
+        "Hall Thermostat temperature > 26 AND Living Room Light is off", condition.toString());
+  }
+
+  @Test
+  void testAndInsideADeviceNameIsNotASeparator() {
+    Condition condition =
+        Condition.parse("Rock and Roll Lamp is on AND Salt And Pepper Light brightness > 10");
+
+    assertEquals(
+        List.of(
+            Condition.Comparison.isOn("Rock and Roll Lamp"),
+            new Condition.Comparison(
+                "Salt And Pepper Light",
+                DeviceAttribute.BRIGHTNESS,
+                Condition.Operator.GREATER,
+                10)),
+        condition.comparisons());
+    assertEquals(
+        Condition.Comparison.isOff("Black and White TV"),
+        Condition.parse("Black and White TV is off"));
+  }
+
+  @Test
+  void testParseSingleComparison() {
+    Condition condition = Condition.parse("Lamp brightness <= 40.5");
+
+    assertEquals(
+        new Condition.Comparison(
+            "Lamp", DeviceAttribute.BRIGHTNESS, Condition.Operator.LESS_OR_EQUAL, 40.5),
+        condition);
+    assertEquals("Lamp brightness <= 40.5", condition.toString());
+  }
+
+  @Test
+  void testParseRejectsMalformedClauses() {
+    assertThrows(IllegalArgumentException.class, () -> Condition.parse(" "));
+    assertThrows(IllegalArgumentException.class, () -> Condition.parse("Lamp is dim"));
+    assertThrows(IllegalArgumentException.class, () -> Condition.parse("Lamp color > 3"));
+    assertThrows(IllegalArgumentException.class, () -> Condition.parse("Lamp brightness ~ 3"));
+    assertThrows(IllegalArgumentException.class, () -> Condition.parse("Lamp brightness > x"));
+    assertThrows(IllegalArgumentException.class, () -> Condition.parse("brightness > 3"));
+  }
+
+  @Test
+  void testIsSatisfiedReadsCurrentState() {
+    HomeManager homeManager = new HomeManager("conditions");
+    Room room = new Room("Hall");
+    homeManager.addRoom(room);
+    Thermostat thermostat = new Thermostat("T1", "Thermostat");
+    Light lamp = new Light("L1", "Lamp");
+    homeManager.addDevice(thermostat, room);
+    homeManager.addDevice(lamp, room);
+    Condition condition = Condition.parse("thermostat temp > 26 AND lamp is off");
+
+    assertFalse(condition.isSatisfied(homeManager));
+    thermostat.setTemp(27);
+    assertTrue(condition.isSatisfied(homeManager));
+    lamp.turnOn();
+    assertFalse(condition.isSatisfied(homeManager));
+  }
+
+  @Test
+  void testMissingDeviceOrAttributeIsFalse() {
+    HomeManager homeManager = new HomeManager("conditions");
+    Room room = new Room("Hall");
+    homeManager.addRoom(room);
+    homeManager.addDevice(new Light("L1", "Lamp"), room);
+
+    assertFalse(Condition.parse("Ghost is off").isSatisfied(homeManager));
+    assertFalse(Condition.parse("Lamp temp != 1000").isSatisfied(homeManager));
+    assertTrue(Condition.parse("Lamp is off").isSatisfied(homeManager));
+  }
+}
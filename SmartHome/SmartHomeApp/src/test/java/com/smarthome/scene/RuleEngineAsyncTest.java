@@ -0,0 +1,197 @@
+package com.smarthome.scene;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.exceptions.RuleConflictException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RuleEngineAsyncTest {
+
+  private static final LocalTime NOON = LocalTime.NOON;
+
+  private RecordingSceneManager sceneManager;
+  private RuleEngine ruleEngine;
+
+  @BeforeEach
+  void setUp() {
+    sceneManager = new RecordingSceneManager();
+    ruleEngine = new RuleEngine(sceneManager, message -> {});
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    sceneManager.release();
+    ruleEngine.stopAsyncIngestion();
+  }
+
+  @Test
+  void testSubmitEventBeforeStartThrows() {
+    assertFalse(ruleEngine.isAsyncIngestionRunning());
+    assertThrows(
+        IllegalStateException.class, () -> ruleEngine.submitEvent("motion", "Sensor1", NOON));
+  }
+
+  @Test
+  void testStartTwiceThrows() {
+    ruleEngine.startAsyncIngestion(2, 16, OverflowPolicy.BLOCK);
+    assertThrows(
+        IllegalStateException.class,
+        () -> ruleEngine.startAsyncIngestion(2, 16, OverflowPolicy.BLOCK));
+  }
+
+  @Test
+  void testInvalidConfigurationIsRejected() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ruleEngine.startAsyncIngestion(0, 16, OverflowPolicy.BLOCK));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ruleEngine.startAsyncIngestion(4, 2, OverflowPolicy.BLOCK));
+  }
+
+  @Test
+  void testSubmitEventFiresMatchingRule() throws RuleConflictException {
+    ruleEngine.addRule(new Rule("motion", "Sensor1", new Scene("Lights")));
+    ruleEngine.startAsyncIngestion(2, 16, OverflowPolicy.BLOCK);
+
+    assertTrue(ruleEngine.submitEvent("motion", "Sensor1", NOON).join());
+    assertFalse(ruleEngine.submitEvent("motion", "Sensor2", NOON).join());
+    assertEquals(List.of("Lights"), sceneManager.executed());
+  }
+
+  @Test
+  void testSubmitGlobalEventFiresGlobalRule() throws RuleConflictException {
+    ruleEngine.addRule(new Rule("sunset", new Scene("Evening")));
+    ruleEngine.startAsyncIngestion(1, 4, OverflowPolicy.BLOCK);
+
+    assertTrue(ruleEngine.submitGlobalEvent("sunset").join());
+  }
+
+  @Test
+  void testEventsFromSameDeviceKeepOrder() throws RuleConflictException {
+    int eventCount = 200;
+    for (int i = 0; i < eventCount; i++) {
+      ruleEngine.addRule(new Rule("event_" + i, "Sensor1", new Scene("scene_" + i)));
+    }
+    ruleEngine.startAsyncIngestion(4, 256, OverflowPolicy.BLOCK);
+
+    List<CompletableFuture<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < eventCount; i++) {
+      // Mixed case still maps to the same device, so it must stay ordered
+      results.add(ruleEngine.submitEvent("event_" + i, i % 2 == 0 ? "Sensor1" : "SENSOR1", NOON));
+    }
+    results.forEach(CompletableFuture::join);
+
+    List<String> executed = sceneManager.executed();
+    assertEquals(eventCount, executed.size());
+    for (int i = 0; i < eventCount; i++) {
+      assertEquals("scene_" + i, executed.get(i));
+    }
+  }
+
+  @Test
+  void testRejectPolicyFailsWhenQueueIsFull() throws Exception {
+    ruleEngine.addRule(new Rule("motion", "Sensor1", new Scene("Slow")));
+    sceneManager.blockUntilReleased();
+    ruleEngine.startAsyncIngestion(1, 1, OverflowPolicy.REJECT);
+
+    CompletableFuture<Boolean> running = ruleEngine.submitEvent("motion", "Sensor1", NOON);
+    sceneManager.awaitStarted();
+    CompletableFuture<Boolean> queued = ruleEngine.submitEvent("motion", "Sensor1", NOON);
+    CompletableFuture<Boolean> rejected = ruleEngine.submitEvent("motion", "Sensor1", NOON);
+
+    CompletionException failure = assertThrows(CompletionException.class, rejected::join);
+    assertTrue(failure.getCause() instanceof RejectedExecutionException);
+
+    sceneManager.release();
+    assertTrue(running.join());
+    assertTrue(queued.join());
+  }
+
+  @Test
+  void testDropOldestPolicyCancelsOldestQueuedEvent() throws Exception {
+    ruleEngine.addRule(new Rule("motion", "Sensor1", new Scene("Slow")));
+    sceneManager.blockUntilReleased();
+    ruleEngine.startAsyncIngestion(1, 1, OverflowPolicy.DROP_OLDEST);
+
+    CompletableFuture<Boolean> running = ruleEngine.submitEvent("motion", "Sensor1", NOON);
+    sceneManager.awaitStarted();
+    CompletableFuture<Boolean> oldest = ruleEngine.submitEvent("motion", "Sensor1", NOON);
+    CompletableFuture<Boolean> newest = ruleEngine.submitEvent("motion", "Sensor1", NOON);
+
+    assertTrue(oldest.isCancelled());
+
+    sceneManager.release();
+    assertTrue(running.join());
+    assertTrue(newest.join());
+  }
+
+  @Test
+  void testStopProcessesQueuedEventsThenRejectsNewOnes() throws Exception {
+    ruleEngine.addRule(new Rule("motion", "Sensor1", new Scene("Lights")));
+    ruleEngine.startAsyncIngestion(2, 64, OverflowPolicy.BLOCK);
+
+    List<CompletableFuture<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      results.add(ruleEngine.submitEvent("motion", "Sensor1", NOON));
+    }
+    ruleEngine.stopAsyncIngestion();
+
+    results.forEach(result -> assertTrue(result.isDone()));
+    assertFalse(ruleEngine.isAsyncIngestionRunning());
+    assertThrows(
+        IllegalStateException.class, () -> ruleEngine.submitEvent("motion", "Sensor1", NOON));
+  }
+
+  /** Records executed scene names and can hold execution until released. */
+  private static class RecordingSceneManager extends SceneManager {
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    RecordingSceneManager() {
+      super(new HomeManager("async-test"));
+    }
+
+    @Override
+    public void executeScene(Scene scene) {
+      started.countDown();
+      try {
+        gate.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      executed.add(scene.getName());
+    }
+
+    void blockUntilReleased() {
+      gate = new CountDownLatch(1);
+    }
+
+    void release() {
+      gate.countDown();
+    }
+
+    void awaitStarted() throws InterruptedException {
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    List<String> executed() {
+      synchronized (executed) {
+        return new ArrayList<>(executed);
+      }
+    }
+  }
+}
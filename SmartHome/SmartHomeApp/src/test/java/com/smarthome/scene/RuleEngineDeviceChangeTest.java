@@ -0,0 +1,257 @@
+package com.smarthome.scene;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.CommandOutcome;
+import com.smarthome.app.DeviceGroup;
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.DeviceChange;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.exceptions.InvalidCommandException;
+import com.smarthome.exceptions.RuleConflictException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RuleEngineDeviceChangeTest {
+
+  private HomeManager homeManager;
+  private SceneManager sceneManager;
+  private RuleEngine ruleEngine;
+  private Room room;
+  private Light hallLight;
+  private Light porchLight;
+  private final List<String> alerts = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    homeManager = new HomeManager("changes");
+    room = new Room("Hall");
+    homeManager.addRoom(room);
+    hallLight = new Light("L1", "Hall Light");
+    porchLight = new Light("L2", "Porch Light");
+    homeManager.addDevice(hallLight, room);
+    homeManager.addDevice(porchLight, room);
+    sceneManager = new SceneManager(homeManager);
+    ruleEngine = new RuleEngine(sceneManager, alerts::add);
+  }
+
+  private Scene scene(String name, String device, String command) {
+    Scene scene = new Scene(name);
+    scene.addAction(new Action(device, command));
+    sceneManager.addScene(scene);
+    return scene;
+  }
+
+  @Test
+  void testCommandOnDeviceFiresRuleChain() throws Exception {
+    ruleEngine.addRule(
+        new Rule(
+            DeviceChange.TURNED_ON, "Hall Light", scene("Porch On", "Porch Light", "turnOn")));
+    ruleEngine.subscribeToDeviceChanges(homeManager);
+
+    homeManager.sendCommand(hallLight, "turnOn", null);
+
+    assertTrue(porchLight.isOn());
+    assertEquals(List.of("ALERT: turned_on triggered by Hall Light in Hall"), alerts);
+  }
+
+  @Test
+  void testFannedOutGroupCommandFiresRulesOnTheCallingThread() throws Exception {
+    List<Thread> alertedOn = new ArrayList<>();
+    RuleEngine engine =
+        new RuleEngine(sceneManager, alert -> alertedOn.add(Thread.currentThread()));
+    List<Light> lamps = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      Light lamp = new Light("LA" + i, "Lamp " + i);
+      lamps.add(lamp);
+      homeManager.addDevice(lamp, room);
+      homeManager.addDevice(new Light("MI" + i, "Mirror " + i), room);
+      Scene mirror = scene("Mirror " + i, "Mirror " + i, "turnOn");
+      engine.addRule(new Rule(DeviceChange.TURNED_ON, "Lamp " + i, mirror));
+    }
+    engine.subscribeToDeviceChanges(homeManager);
+    homeManager.setGroupFanOut(4);
+
+    List<CommandOutcome> outcomes =
+        homeManager.sendGroupCommand(
+            DeviceGroup.ofType(Light.class).matching(lamps::contains), "turnOn", null);
+
+    assertEquals(40, outcomes.size());
+    assertEquals(40, alertedOn.size());
+    assertTrue(alertedOn.stream().allMatch(thread -> thread == Thread.currentThread()));
+    for (int i = 0; i < 40; i++) {
+      assertTrue(((Light) homeManager.getDevicebyName("Mirror " + i)).isOn(), "Mirror " + i);
+    }
+  }
+
+  @Test
+  void testChangesWithoutMatchingRuleAreIgnored() throws Exception {
+    ruleEngine.addRule(
+        new Rule(
+            DeviceChange.TURNED_ON, "Hall Light", scene("Porch On", "Porch Light", "turnOn")));
+    ruleEngine.subscribeToDeviceChanges(homeManager);
+
+    homeManager.sendCommand(porchLight, "turnOn", null);
+    homeManager.sendCommand(porchLight, "setBrightness", 70);
+
+    assertFalse(hallLight.isOn());
+    assertTrue(alerts.isEmpty());
+  }
+
+  @Test
+  void testDevicesAddedAndRenamedLaterAreFollowed() throws Exception {
+    ruleEngine.subscribeToDeviceChanges(homeManager);
+    Thermostat thermostat = new Thermostat("T1", "Thermostat");
+    homeManager.addDevice(thermostat, room);
+    thermostat.setDeviceName("Hall Thermostat");
+    ruleEngine.addRule(
+        new Rule(
+            DeviceChange.TEMPERATURE_CHANGED,
+            "hall thermostat",
+            scene("Cool Down", "Hall Light", "turnOff")));
+    hallLight.turnOn();
+
+    homeManager.sendCommand(thermostat, "setTemp", 27.0);
+
+    assertFalse(hallLight.isOn());
+    assertEquals(1, alerts.size());
+  }
+
+  @Test
+  void testUnsubscribeAndRemovedDevicesStopFeedingEvents() throws Exception {
+    ruleEngine.addRule(
+        new Rule(
+            DeviceChange.TURNED_ON, "Hall Light", scene("Porch On", "Porch Light", "turnOn")));
+    ruleEngine.subscribeToDeviceChanges(homeManager);
+
+    ruleEngine.unsubscribeFromDeviceChanges(homeManager);
+    hallLight.turnOn();
+
+    assertFalse(porchLight.isOn());
+
+    ruleEngine.subscribeToDeviceChanges(homeManager);
+    homeManager.removeDevice(hallLight);
+    hallLight.turnOff();
+    hallLight.turnOn();
+
+    assertFalse(porchLight.isOn());
+  }
+
+  @Test
+  void testCyclicRulesAreCutOff() throws RuleConflictException, InvalidCommandException {
+    ruleEngine.addRule(
+        new Rule(DeviceChange.TURNED_ON, "Hall Light", scene("Off", "Hall Light", "turnOff")));
+    ruleEngine.addRule(
+        new Rule(DeviceChange.TURNED_OFF, "Hall Light", scene("On", "Hall Light", "turnOn")));
+    ruleEngine.subscribeToDeviceChanges(homeManager);
+
+    homeManager.sendCommand(hallLight, "turnOn", null);
+
+    assertEquals(RuleEngine.MAX_CHAIN_DEPTH, alerts.size());
+  }
+
+  @Test
+  void testStateRuleFiresWhenConditionBecomesTrue() throws Exception {
+    Thermostat thermostat = new Thermostat("T1", "Thermostat");
+    homeManager.addDevice(thermostat, room);
+    ruleEngine.addRule(
+        Rule.when(
+            Condition.parse("Thermostat temp > 26 AND Hall Light is off"),
+            scene("Porch On", "Porch Light", "turnOn")));
+    ruleEngine.subscribeToDeviceChanges(homeManager);
+
+    homeManager.sendCommand(thermostat, "setTemp", 25.0);
+    assertFalse(porchLight.isOn());
+
+    homeManager.sendCommand(thermostat, "setTemp", 27.0);
+    assertTrue(porchLight.isOn());
+    assertEquals(
+        List.of(
+            "ALERT: Condition Thermostat temperature > 26 AND Hall Light is off"
+                + " triggered scene Porch On"),
+        alerts);
+
+    // Still true: no refiring
+    porchLight.turnOff();
+    homeManager.sendCommand(thermostat, "setTemp", 28.0);
+    assertFalse(porchLight.isOn());
+
+    // False, then true again through the other comparison
+    hallLight.turnOn();
+    hallLight.turnOff();
+    assertTrue(porchLight.isOn());
+    assertEquals(2, alerts.size());
+  }
+
+  @Test
+  void testStateRuleAlreadyTrueWaitsForNextEdge() throws Exception {
+    ruleEngine.addRule(
+        Rule.when(
+            Condition.parse("Hall Light is off"), scene("Porch On", "Porch Light", "turnOn")));
+    ruleEngine.subscribeToDeviceChanges(homeManager);
+
+    homeManager.sendCommand(porchLight, "setBrightness", 10);
+    assertFalse(porchLight.isOn());
+
+    hallLight.turnOn();
+    hallLight.turnOff();
+    assertTrue(porchLight.isOn());
+  }
+
+  @Test
+  void testStateRuleFollowsDevicesAddedLater() throws Exception {
+    ruleEngine.addRule(
+        Rule.when(
+            Condition.parse("Attic Thermostat temp >= 30"),
+            scene("Porch On", "Porch Light", "turnOn")));
+    ruleEngine.subscribeToDeviceChanges(homeManager);
+    Thermostat thermostat = new Thermostat("T1", "Thermostat");
+    homeManager.addDevice(thermostat, room);
+
+    thermostat.setTemp(31);
+    assertFalse(porchLight.isOn());
+
+    thermostat.setDeviceName("Attic Thermostat");
+    thermostat.setTemp(29);
+    thermostat.setTemp(30);
+    assertTrue(porchLight.isOn());
+  }
+
+  @Test
+  void testDuplicateStateRulesConflict() throws Exception {
+    Scene scene = scene("Porch On", "Porch Light", "turnOn");
+    ruleEngine.addRule(Rule.when(Condition.parse("Hall Light is on"), scene));
+
+    assertThrows(
+        RuleConflictException.class,
+        () -> ruleEngine.addRule(Rule.when(Condition.parse("hall light is on"), scene)));
+    assertEquals(1, ruleEngine.getRuleCount());
+    assertTrue(ruleEngine.getRules().get(0).isStateRule());
+    assertNull(ruleEngine.getRules().get(0).getTriggerEvent());
+  }
+
+  @Test
+  void testStateRulesAreAddressedByCondition() throws Exception {
+    Scene scene = scene("Porch On", "Porch Light", "turnOn");
+    ruleEngine.addRule(Rule.when(Condition.parse("Hall Light is on"), scene));
+    // An event named like the condition is not the state rule
+    ruleEngine.addRule(new Rule("hall light is on", scene));
+
+    assertTrue(
+        ruleEngine.setSuppression(
+            Condition.parse("HALL LIGHT is on"), Suppression.throttle(Duration.ofMinutes(1))));
+    assertFalse(
+        ruleEngine.setSuppression(
+            Condition.parse("Porch Light is on"), Suppression.throttle(Duration.ofMinutes(1))));
+    Rule stateRule =
+        ruleEngine.getRules().stream().filter(Rule::isStateRule).findFirst().orElseThrow();
+    assertNotNull(stateRule.getSuppression());
+    assertEquals(2, ruleEngine.getRuleCount());
+    ruleEngine.stopSuppression();
+  }
+}
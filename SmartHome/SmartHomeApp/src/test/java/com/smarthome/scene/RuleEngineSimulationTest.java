@@ -0,0 +1,173 @@
+package com.smarthome.scene;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.SecurityCamera;
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.Journals;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Runs the engine on a {@link VirtualClock}, compressing days of events into one test. */
+class RuleEngineSimulationTest {
+
+  private static final LocalDateTime MONDAY = LocalDateTime.of(2026, 1, 5, 0, 0);
+
+  private Journal originalJournal;
+
+  @BeforeEach
+  void setUp() {
+    originalJournal = Journals.set(Journal.silent());
+  }
+
+  @AfterEach
+  void tearDown() {
+    Journals.set(originalJournal);
+  }
+
+  /** One simulated home; alerts are stamped with the simulated time they were sent at. */
+  private static final class Simulation {
+    final VirtualClock clock = VirtualClock.at(MONDAY);
+    final List<String> alerts = new ArrayList<>();
+    final Scene scene = new Scene("Record");
+    final RuleEngine ruleEngine;
+
+    Simulation() {
+      HomeManager homeManager = new HomeManager("simulation");
+      Room room = new Room("Hall");
+      homeManager.addRoom(room);
+      homeManager.addDevice(new SecurityCamera("C1", "Door Camera"), room);
+      homeManager.addDevice(new SecurityCamera("C2", "Yard Camera"), room);
+      SceneManager sceneManager = new SceneManager(homeManager);
+      sceneManager.addScene(scene);
+      ruleEngine =
+          new RuleEngine(
+              sceneManager,
+              message -> alerts.add(LocalDateTime.now(clock) + " " + message),
+              clock);
+    }
+
+    /** Sends an event from the device every {@code period}, starting one period from now. */
+    void every(Duration period, String device) {
+      clock.schedule(
+          period,
+          () -> {
+            ruleEngine.handleEvent("motion_detected", device);
+            every(period, device);
+          });
+    }
+  }
+
+  @Test
+  void testAWeekOfEventsAgainstANightWindow() throws Exception {
+    Simulation simulation = new Simulation();
+    Rule night =
+        new Rule(
+            "motion_detected",
+            "Door Camera",
+            simulation.scene,
+            LocalTime.of(22, 0),
+            LocalTime.of(6, 0));
+    simulation.ruleEngine.addRule(night);
+    simulation.ruleEngine.startActivationScheduler();
+    simulation.every(Duration.ofMinutes(1), "Door Camera");
+
+    int tasks = simulation.clock.advance(Duration.ofDays(7));
+
+    int activeMinutesPerDay = 0;
+    for (int minute = 0; minute < 24 * 60; minute++) {
+      if (night.isActiveNow(LocalTime.MIDNIGHT.plusMinutes(minute))) {
+        activeMinutesPerDay++;
+      }
+    }
+    assertTrue(tasks >= 7 * 24 * 60);
+    assertEquals(7 * activeMinutesPerDay, simulation.alerts.size());
+    assertTrue(simulation.alerts.get(0).startsWith("2026-01-05T00:01 "));
+    simulation.ruleEngine.stopActivationScheduler();
+  }
+
+  @Test
+  void testSuppressionWindowsCloseOnSimulatedTime() throws Exception {
+    Simulation simulation = new Simulation();
+    simulation.ruleEngine.addRule(new Rule("motion_detected", "Door Camera", simulation.scene));
+    simulation.ruleEngine.setSuppression(
+        "motion_detected", "Door Camera", Suppression.debounce(Duration.ofMinutes(5)));
+    // Motion every 30 seconds for ten minutes
+    for (int i = 1; i <= 20; i++) {
+      simulation.clock.schedule(
+          Duration.ofSeconds(30L * i),
+          () -> simulation.ruleEngine.handleEvent("motion_detected", "Door Camera"));
+    }
+
+    simulation.clock.advance(Duration.ofMinutes(14));
+    assertEquals(List.of(), simulation.alerts);
+    simulation.clock.advance(Duration.ofHours(1));
+
+    assertEquals(1, simulation.alerts.size());
+    String alert = simulation.alerts.get(0);
+    assertTrue(alert.startsWith("2026-01-05T00:15 "), alert);
+    simulation.ruleEngine.stopSuppression();
+  }
+
+  @Test
+  void testReleasedWindowLeavesNoTaskOnTheClock() throws Exception {
+    Simulation simulation = new Simulation();
+    simulation.ruleEngine.addRule(new Rule("motion_detected", "Door Camera", simulation.scene));
+    simulation.ruleEngine.setSuppression(
+        "motion_detected", "Door Camera", Suppression.debounce(Duration.ofMinutes(5)));
+    simulation.ruleEngine.handleEvent("motion_detected", "Door Camera");
+
+    simulation.ruleEngine.setSuppression("motion_detected", "Door Camera", null);
+
+    assertEquals(0, simulation.clock.advance(Duration.ofHours(1)));
+    assertEquals(List.of(), simulation.alerts);
+    simulation.ruleEngine.stopSuppression();
+  }
+
+  @Test
+  void testDeterministicIngestionReplaysIdentically() throws Exception {
+    List<String> first = simulateSubmittedEvents();
+    List<String> second = simulateSubmittedEvents();
+
+    assertEquals(first, second);
+    assertEquals(200, first.size());
+  }
+
+  private static List<String> simulateSubmittedEvents() throws Exception {
+    Simulation simulation = new Simulation();
+    simulation.ruleEngine.addRule(new Rule("motion_detected", "Door Camera", simulation.scene));
+    simulation.ruleEngine.addRule(new Rule("motion_detected", "Yard Camera", simulation.scene));
+    simulation.ruleEngine.startDeterministicIngestion();
+    List<CompletableFuture<Boolean>> handled = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      handled.add(simulation.ruleEngine.submitEvent("motion_detected", "Yard Camera"));
+      handled.add(simulation.ruleEngine.submitEvent("motion_detected", "Door Camera"));
+      simulation.clock.advance(Duration.ofSeconds(i % 7));
+    }
+    simulation.ruleEngine.stopAsyncIngestion();
+
+    assertTrue(handled.stream().allMatch(future -> future.getNow(false)));
+    return simulation.alerts;
+  }
+
+  @Test
+  void testDeterministicIngestionNeedsAVirtualClock() {
+    Simulation simulation = new Simulation();
+    RuleEngine wallClock = new RuleEngine(new SceneManager(null), alert -> {});
+
+    assertThrows(IllegalStateException.class, wallClock::startDeterministicIngestion);
+    simulation.ruleEngine.startDeterministicIngestion();
+    assertThrows(
+        IllegalStateException.class,
+        () -> simulation.ruleEngine.startAsyncIngestion(1, 8, OverflowPolicy.BLOCK));
+  }
+}
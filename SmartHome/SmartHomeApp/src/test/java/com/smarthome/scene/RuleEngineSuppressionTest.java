@@ -0,0 +1,178 @@
+package com.smarthome.scene;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.app.Room;
+import com.smarthome.devices.SecurityCamera;
+import com.smarthome.metrics.Metrics;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RuleEngineSuppressionTest {
+
+  private static final LocalTime NOON = LocalTime.NOON;
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final List<String> alerts = new ArrayList<>();
+  private RuleEngine ruleEngine;
+  private EventSuppressor suppressor;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    HomeManager homeManager = new HomeManager("suppression");
+    Room room = new Room("Hall");
+    homeManager.addRoom(room);
+    homeManager.addDevice(new SecurityCamera("C1", "Door Camera"), room);
+    homeManager.addDevice(new SecurityCamera("C2", "Yard Camera"), room);
+    SceneManager sceneManager = new SceneManager(homeManager);
+    Scene scene = new Scene("Record");
+    sceneManager.addScene(scene);
+    ruleEngine = new RuleEngine(sceneManager, alerts::add);
+    ruleEngine.addRule(new Rule("motion_detected", "Door Camera", scene));
+    ruleEngine.addRule(new Rule("motion_detected", "Yard Camera", scene));
+    suppressor = ruleEngine.useManualSuppressor(nanos::get);
+  }
+
+  @AfterEach
+  void tearDown() {
+    ruleEngine.stopSuppression();
+  }
+
+  /** Sends one event every {@code spacingMillis}, advancing the wheel as time passes. */
+  private void burst(String device, int events, long spacingMillis) {
+    for (int i = 0; i < events; i++) {
+      ruleEngine.handleEvent("motion_detected", device, NOON);
+      sleep(spacingMillis);
+    }
+  }
+
+  private void sleep(long millis) {
+    nanos.addAndGet(Duration.ofMillis(millis).toNanos());
+    suppressor.advance();
+  }
+
+  @Test
+  void testThrottleFiresOncePerInterval() {
+    ruleEngine.setSuppression(
+        "motion_detected", "Door Camera", Suppression.throttle(Duration.ofMillis(100)));
+
+    // 50 Hz for one second
+    burst("Door Camera", 50, 20);
+
+    assertEquals(10, alerts.size());
+  }
+
+  @Test
+  void testTrailingDebounceFiresOnceAfterBurst() {
+    ruleEngine.setSuppression(
+        "motion_detected", "Door Camera", Suppression.debounce(Duration.ofMillis(200)));
+
+    burst("Door Camera", 50, 20);
+    assertTrue(alerts.isEmpty());
+
+    sleep(200);
+    assertEquals(1, alerts.size());
+    sleep(1_000);
+    assertEquals(1, alerts.size());
+  }
+
+  @Test
+  void testLeadingAndTrailingDebounce() {
+    ruleEngine.setSuppression(
+        "motion_detected",
+        "Door Camera",
+        Suppression.debounce(Duration.ofMillis(100)).withEdges(true, true));
+
+    ruleEngine.handleEvent("motion_detected", "Door Camera", NOON);
+    assertEquals(1, alerts.size());
+    sleep(200);
+    assertEquals(1, alerts.size(), "A lone event has no trailing edge");
+
+    burst("Door Camera", 10, 20);
+    sleep(200);
+    assertEquals(3, alerts.size());
+  }
+
+  @Test
+  void testThrottleWithTrailingEdge() {
+    ruleEngine.setSuppression(
+        "motion_detected",
+        "Door Camera",
+        Suppression.throttle(Duration.ofMillis(100)).withEdges(true, true));
+
+    burst("Door Camera", 3, 20);
+    assertEquals(1, alerts.size());
+    sleep(100);
+    assertEquals(2, alerts.size());
+  }
+
+  @Test
+  void testDefaultSuppressionAppliesPerDevice() {
+    ruleEngine.setDefaultSuppression(Suppression.throttle(Duration.ofSeconds(1)));
+
+    for (int i = 0; i < 5; i++) {
+      ruleEngine.handleEvent("motion_detected", "Door Camera", NOON);
+      ruleEngine.handleEvent("motion_detected", "Yard Camera", NOON);
+    }
+
+    assertEquals(2, alerts.size());
+    assertEquals(2, suppressor.openWindows());
+  }
+
+  @Test
+  void testRuleOwnPolicyOverridesDefault() {
+    ruleEngine.setDefaultSuppression(Suppression.throttle(Duration.ofSeconds(1)));
+    ruleEngine.setSuppression(
+        "motion_detected", "Yard Camera", Suppression.throttle(Duration.ofMillis(10)));
+
+    burst("Door Camera", 5, 20);
+    burst("Yard Camera", 5, 20);
+
+    assertEquals(1 + 5, alerts.size());
+  }
+
+  @Test
+  void testSuppressedEventsAreCounted() {
+    Metrics.get().reset();
+    ruleEngine.setSuppression(
+        "motion_detected", "Door Camera", Suppression.throttle(Duration.ofSeconds(1)));
+
+    burst("Door Camera", 4, 0);
+
+    assertEquals(3, Metrics.get().getEventsSuppressed());
+  }
+
+  @Test
+  void testAnEqualDefaultPolicyKeepsOpenWindows() {
+    ruleEngine.setDefaultSuppression(Suppression.throttle(Duration.ofMillis(100)));
+    ruleEngine.handleEvent("motion_detected", "Door Camera", NOON);
+    assertEquals(1, alerts.size());
+
+    ruleEngine.setDefaultSuppression(Suppression.throttle(Duration.ofMillis(100)));
+    ruleEngine.handleEvent("motion_detected", "Door Camera", NOON);
+
+    assertEquals(1, alerts.size());
+  }
+
+  @Test
+  void testSuppressionNeedsAnExistingRule() {
+    assertFalse(
+        ruleEngine.setSuppression(
+            "door_opened", "Door Camera", Suppression.debounce(Duration.ofMillis(10))));
+  }
+
+  @Test
+  void testInvalidPolicies() {
+    assertThrows(IllegalArgumentException.class, () -> Suppression.debounce(Duration.ZERO));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> Suppression.throttle(Duration.ofMillis(10)).withEdges(false, false));
+  }
+}
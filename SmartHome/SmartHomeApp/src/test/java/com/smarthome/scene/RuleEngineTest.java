@@ -197,6 +197,101 @@ class RuleEngineTest {
     assertEquals(0, sceneManager.getExecutionCount());
   }
 
+  @Test
+  void testHandleEvent_MatchesIgnoringCase() throws RuleConflictException {
+    ruleEngine.addRule(new Rule("motion_detected", "MotionSensor1", mockScene));
+
+    ruleEngine.handleEvent("MOTION_DETECTED", "motionsensor1");
+
+    assertEquals(1, sceneManager.getExecutionCount());
+  }
+
+  @Test
+  void testHandleEvent_DoesNotFireGlobalRule() throws RuleConflictException {
+    ruleEngine.addRule(new Rule("motion_detected", mockScene));
+
+    ruleEngine.handleEvent("motion_detected", "MotionSensor1");
+
+    assertEquals(0, sceneManager.getExecutionCount());
+  }
+
+  @Test
+  void testHandleGlobalEvent_DoesNotFireDeviceRule() throws RuleConflictException {
+    ruleEngine.addRule(new Rule("motion_detected", "MotionSensor1", mockScene));
+
+    ruleEngine.handleGlobalEvent("motion_detected");
+
+    assertEquals(0, sceneManager.getExecutionCount());
+  }
+
+  @Test
+  void testHandleEvent_OutsideTimeWindowIsIgnored() throws RuleConflictException {
+    ruleEngine.addRule(
+        new Rule(
+            "motion_detected", "MotionSensor1", mockScene, LocalTime.of(22, 0), LocalTime.of(6, 0)));
+
+    ruleEngine.handleEvent("motion_detected", "MotionSensor1", LocalTime.of(12, 0));
+    assertEquals(0, sceneManager.getExecutionCount());
+
+    ruleEngine.handleEvent("motion_detected", "MotionSensor1", LocalTime.of(23, 0));
+    assertEquals(1, sceneManager.getExecutionCount());
+  }
+
+  @Test
+  void testGetRulesAndCount() throws RuleConflictException {
+    Rule deviceRule = new Rule("motion_detected", "MotionSensor1", mockScene);
+    Rule globalRule = new Rule("sunset", mockScene);
+    ruleEngine.addRule(deviceRule);
+    ruleEngine.addRule(globalRule);
+
+    assertEquals(2, ruleEngine.getRuleCount());
+    assertTrue(ruleEngine.getRules().contains(deviceRule));
+    assertTrue(ruleEngine.getRules().contains(globalRule));
+  }
+
+  @Test
+  void testAddRule_ConflictDoesNotChangeCount() throws RuleConflictException {
+    ruleEngine.addRule(new Rule("sunset", mockScene));
+
+    assertThrows(
+        RuleConflictException.class, () -> ruleEngine.addRule(new Rule("Sunset", mockScene)));
+    assertEquals(1, ruleEngine.getRuleCount());
+  }
+
+  @Test
+  void testActivationScheduler_FiresRuleWhoseWindowIsOpen() throws RuleConflictException {
+    ruleEngine.addRule(
+        new Rule("motion_detected", "MotionSensor1", mockScene, LocalTime.MIN, LocalTime.MAX));
+    ruleEngine.startActivationScheduler();
+    try {
+      assertTrue(ruleEngine.isActivationSchedulerRunning());
+
+      ruleEngine.handleEvent("motion_detected", "MotionSensor1");
+
+      assertEquals(1, sceneManager.getExecutionCount());
+    } finally {
+      ruleEngine.stopActivationScheduler();
+    }
+    assertFalse(ruleEngine.isActivationSchedulerRunning());
+  }
+
+  @Test
+  void testActivationScheduler_SkipsRuleWhoseWindowIsClosed() throws RuleConflictException {
+    ruleEngine.startActivationScheduler();
+    try {
+      // Added after start: the scheduler must pick up the new window
+      LocalTime start = LocalTime.now().plusHours(2);
+      ruleEngine.addRule(
+          new Rule("motion_detected", "MotionSensor1", mockScene, start, start.plusHours(1)));
+
+      ruleEngine.handleEvent("motion_detected", "MotionSensor1");
+
+      assertEquals(0, sceneManager.getExecutionCount());
+    } finally {
+      ruleEngine.stopActivationScheduler();
+    }
+  }
+
   // Test helper classes
   private static class TestSceneManager extends SceneManager {
     private int executionCount = 0;
@@ -244,11 +339,11 @@ class RuleEngineTest {
 
     @Override
     public java.util.Set<com.smarthome.app.Room> getRooms() {
-      java.util.Set<com.smarthome.app.Room> rooms = new java.util.HashSet<>();
+      com.smarthome.app.HomeManager home = new com.smarthome.app.HomeManager("TestAccount");
       com.smarthome.app.Room testRoom = new com.smarthome.app.Room("TestRoom");
-      testRoom.addDevice(new TestDevice("sensor1", "MotionSensor1"));
-      rooms.add(testRoom);
-      return rooms;
+      home.addRoom(testRoom);
+      home.addDevice(new TestDevice("sensor1", "MotionSensor1"), testRoom);
+      return home.getRooms();
     }
   }
 
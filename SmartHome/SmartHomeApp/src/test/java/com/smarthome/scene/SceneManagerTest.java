@@ -2,11 +2,18 @@ package com.smarthome.scene;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.smarthome.app.HomeChangeListener;
 import com.smarthome.app.HomeManager;
 import com.smarthome.app.Room;
+import com.smarthome.devices.Device;
 import com.smarthome.devices.Light;
 import com.smarthome.devices.Thermostat;
+import com.smarthome.exceptions.InvalidCommandException;
 import com.smarthome.exceptions.SceneExecutionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -175,6 +182,385 @@ public class SceneManagerTest {
     }
   }
 
+  @Nested
+  @DisplayName("Execution Reports")
+  class ExecutionReports {
+
+    @Test
+    @DisplayName("Should report each action outcome in declared order")
+    void testSequentialReport() throws SceneExecutionException {
+      Scene scene = new Scene("Mixed");
+      scene.addAction(new Action("Test Light", "turnOn"));
+      scene.addAction(new Action("Missing", "turnOn"));
+      scene.addAction(new Action("Test Thermostat", "setTemp", "not-a-number"));
+
+      SceneExecutionReport report = sceneManager.executeSceneWithReport(scene);
+
+      assertEquals("Mixed", report.getSceneName());
+      assertEquals(SceneExecutionMode.SEQUENTIAL, report.getMode());
+      assertEquals(3, report.getResults().size());
+      assertEquals(ActionResult.Status.SUCCEEDED, report.getResults().get(0).getStatus());
+      assertEquals(ActionResult.Status.FAILED, report.getResults().get(1).getStatus());
+      assertTrue(report.getResults().get(1).getError().contains("Missing"));
+      assertEquals(ActionResult.Status.FAILED, report.getResults().get(2).getStatus());
+      assertFalse(report.isSuccessful());
+      assertEquals(2, report.getFailures().size());
+      assertTrue(light.isOn());
+    }
+
+    @Test
+    @DisplayName("Should reject non-positive action timeouts")
+    void testInvalidActionTimeout() {
+      assertThrows(IllegalArgumentException.class, () -> sceneManager.setActionTimeout(null));
+      assertThrows(
+          IllegalArgumentException.class, () -> sceneManager.setActionTimeout(Duration.ZERO));
+    }
+  }
+
+  @Nested
+  @DisplayName("Compiled Scenes")
+  class CompiledScenes {
+
+    @Test
+    @DisplayName("Should register a fully valid scene in strict mode")
+    void testAddSceneStrictAcceptsValidScene() throws InvalidCommandException {
+      assertTrue(sceneManager.addSceneStrict(testScene));
+      assertSame(testScene, sceneManager.getSceneByName("Test Scene"));
+      assertFalse(sceneManager.addSceneStrict(testScene));
+    }
+
+    @Test
+    @DisplayName("Should refuse scenes with invalid actions in strict mode")
+    void testAddSceneStrictRejectsInvalidActions() {
+      Scene badValue = new Scene("Bad Value");
+      badValue.addAction(new Action("Test Thermostat", "setTemp", "warm"));
+      Scene wrongType = new Scene("Wrong Type");
+      wrongType.addAction(new Action("Test Thermostat", "setBrightness", "50"));
+      Scene missingDevice = new Scene("Missing Device");
+      missingDevice.addAction(new Action("Ghost", "turnOn"));
+
+      assertThrows(InvalidCommandException.class, () -> sceneManager.addSceneStrict(badValue));
+      assertThrows(InvalidCommandException.class, () -> sceneManager.addSceneStrict(wrongType));
+      InvalidCommandException missing =
+          assertThrows(
+              InvalidCommandException.class, () -> sceneManager.addSceneStrict(missingDevice));
+      assertTrue(missing.getMessage().contains("Device not found: Ghost"));
+      assertNull(sceneManager.getSceneByName("Bad Value"));
+      assertNull(sceneManager.getSceneByName("Missing Device"));
+    }
+
+    @Test
+    @DisplayName("Should report compile errors without running the action")
+    void testCompileErrorReportedOnReplay() throws SceneExecutionException {
+      Scene scene = new Scene("Bad Brightness");
+      scene.addAction(new Action("Test Light", "setBrightness", "bright"));
+      scene.addAction(new Action("Test Light", "turnOn"));
+      sceneManager.addScene(scene);
+
+      SceneExecutionReport report = sceneManager.executeSceneWithReport(scene);
+
+      assertEquals(ActionResult.Status.FAILED, report.getResults().get(0).getStatus());
+      assertTrue(report.getResults().get(0).getError().contains("bright"));
+      assertTrue(report.getResults().get(1).isSuccess());
+    }
+
+    @Test
+    @DisplayName("Should pick up actions added after registration")
+    void testSceneEditedAfterRegistration() throws SceneExecutionException {
+      sceneManager.addScene(testScene);
+      sceneManager.executeScene(testScene);
+
+      testScene.addAction(new Action("Test Light", "setBrightness", "35"));
+      SceneExecutionReport report = sceneManager.executeSceneWithReport(testScene);
+
+      assertEquals(3, report.getResults().size());
+      assertEquals(35, light.getBrightness());
+    }
+
+    @Test
+    @DisplayName("Should compile actions for devices added after the scene")
+    void testDeviceAddedAfterScene() throws SceneExecutionException {
+      Scene scene = new Scene("Late Device");
+      scene.addAction(new Action("Late Light", "turnOn"));
+      sceneManager.addScene(scene);
+
+      Light late = new Light("L999", "Late Light");
+      homeManager.addDevice(late, room);
+      sceneManager.executeScene("Late Device");
+
+      assertTrue(late.isOn());
+    }
+
+    @Test
+    @DisplayName("Should follow devices that are renamed after the scene")
+    void testBindingFollowsRenames() throws SceneExecutionException {
+      sceneManager.addScene(testScene);
+
+      light.setDeviceName("Desk Light");
+      SceneExecutionReport report = sceneManager.executeSceneWithReport(testScene);
+      assertEquals("Device not found: Test Light", report.getResults().get(0).getError());
+      assertFalse(light.isOn());
+
+      Light replacement = new Light("L002", "test light");
+      homeManager.addDevice(replacement, room);
+      sceneManager.executeScene(testScene);
+      assertTrue(replacement.isOn());
+      assertFalse(light.isOn());
+    }
+
+    @Test
+    @DisplayName("Should unbind removed devices and rebind to the next one with the name")
+    void testBindingFollowsRemovals() throws Exception {
+      Light twin = new Light("L002", "Test Light");
+      homeManager.addDevice(twin, room);
+      sceneManager.addScene(testScene);
+
+      homeManager.removeDevice(light);
+      sceneManager.executeScene(testScene);
+      assertTrue(twin.isOn());
+
+      homeManager.deleteRoom(room);
+      SceneExecutionReport report = sceneManager.executeSceneWithReport(testScene);
+      assertEquals(2, report.getFailures().size());
+    }
+  }
+
+  @Nested
+  @DisplayName("Parallel Execution")
+  class ParallelExecution {
+
+    @BeforeEach
+    void enableParallel() {
+      sceneManager.setExecutionMode(SceneExecutionMode.PARALLEL);
+    }
+
+    @Test
+    @DisplayName("Should keep declared order for actions on the same device")
+    void testSameDeviceOrder() throws SceneExecutionException {
+      List<String> log = Collections.synchronizedList(new ArrayList<>());
+      RecordingLight recorder = new RecordingLight("R001", "Recorder", log, 0);
+      homeManager.addDevice(recorder, room);
+
+      Scene scene = new Scene("Ordered");
+      for (int i = 0; i < 20; i++) {
+        scene.addAction(new Action("Recorder", i % 2 == 0 ? "turnOn" : "turnOff"));
+        scene.addAction(new Action("Test Thermostat", "setTemp", String.valueOf(18 + i)));
+      }
+
+      SceneExecutionReport report = sceneManager.executeSceneWithReport(scene);
+
+      assertTrue(report.isSuccessful());
+      assertEquals(20, log.size());
+      for (int i = 0; i < 20; i++) {
+        assertEquals(i % 2 == 0 ? "on" : "off", log.get(i));
+      }
+      assertEquals(37.0, thermostat.getTemp());
+    }
+
+    @Test
+    @DisplayName("Should overlap slow devices instead of summing their latency")
+    void testLatencyTracksSlowestDevice() throws SceneExecutionException {
+      Scene scene = new Scene("Slow Lights");
+      for (int i = 0; i < 4; i++) {
+        homeManager.addDevice(new RecordingLight("S" + i, "Slow " + i, null, 300), room);
+        scene.addAction(new Action("Slow " + i, "turnOn"));
+      }
+
+      SceneExecutionReport report = sceneManager.executeSceneWithReport(scene);
+
+      assertTrue(report.isSuccessful());
+      assertTrue(
+          report.getElapsed().toMillis() < 900, "Took " + report.getElapsed().toMillis() + " ms");
+    }
+
+    @Test
+    @DisplayName("Should time out a stuck action and cancel the rest of that device")
+    void testActionTimeout() throws SceneExecutionException {
+      sceneManager.setActionTimeout(Duration.ofMillis(100));
+      homeManager.addDevice(new RecordingLight("S001", "Stuck", null, 5_000), room);
+
+      Scene scene = new Scene("Timeout");
+      scene.addAction(new Action("Stuck", "turnOn"));
+      scene.addAction(new Action("Stuck", "turnOff"));
+      scene.addAction(new Action("Test Light", "turnOn"));
+
+      SceneExecutionReport report = sceneManager.executeSceneWithReport(scene);
+
+      assertEquals(ActionResult.Status.TIMED_OUT, report.getResults().get(0).getStatus());
+      assertEquals(ActionResult.Status.CANCELLED, report.getResults().get(1).getStatus());
+      assertEquals(ActionResult.Status.SUCCEEDED, report.getResults().get(2).getStatus());
+      assertTrue(report.getElapsed().toMillis() < 2_000);
+      assertTrue(light.isOn());
+    }
+
+    @Test
+    @DisplayName("Should report changes and commands on the calling thread after the scene")
+    void testChangesAreDeliveredOnTheCallingThread() throws SceneExecutionException {
+      List<String> events = Collections.synchronizedList(new ArrayList<>());
+      List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+      homeManager.addChangeListener(
+          new HomeChangeListener() {
+            @Override
+            public void commandExecuted(Device device, String command, Object value) {
+              threads.add(Thread.currentThread());
+              events.add("command " + device.getDeviceName());
+            }
+          });
+      Scene scene = new Scene("Slow Lights");
+      for (int i = 0; i < 4; i++) {
+        RecordingLight slow = new RecordingLight("S" + i, "Slow " + i, null, 50);
+        slow.addChangeListener(
+            change -> {
+              threads.add(Thread.currentThread());
+              events.add("change " + change.device().getDeviceName());
+            });
+        homeManager.addDevice(slow, room);
+        scene.addAction(new Action("Slow " + i, "turnOn"));
+      }
+
+      sceneManager.executeSceneWithReport(scene);
+
+      // Every change comes before the commands, which follow the scene's order
+      int changes = events.size() - 4;
+      for (int i = 0; i < 4; i++) {
+        assertTrue(events.subList(0, changes).contains("change Slow " + i), events.toString());
+        assertEquals("command Slow " + i, events.get(changes + i));
+      }
+      threads.forEach(thread -> assertSame(Thread.currentThread(), thread));
+    }
+
+    @Test
+    @DisplayName("Should refuse parallel scenes once closed")
+    void testCloseStopsParallelScenes() throws SceneExecutionException {
+      sceneManager.close();
+
+      assertThrows(IllegalStateException.class, () -> sceneManager.executeScene(testScene));
+      sceneManager.setExecutionMode(SceneExecutionMode.SEQUENTIAL);
+      sceneManager.executeScene(testScene);
+      assertTrue(light.isOn());
+    }
+  }
+
+  @Nested
+  @DisplayName("Diffing Execution")
+  class DiffingExecution {
+
+    @BeforeEach
+    void enableDiffing() {
+      sceneManager.setDiffing(true);
+    }
+
+    @Test
+    @DisplayName("Should send only actions that change device state")
+    void testSkipsActionsAlreadyInPlace() throws SceneExecutionException {
+      thermostat.setTemp(22.0);
+
+      SceneExecutionReport report = sceneManager.executeSceneWithReport(testScene);
+
+      assertTrue(report.isSuccessful());
+      assertEquals(ActionResult.Status.SUCCEEDED, report.getResults().get(0).getStatus());
+      assertEquals(ActionResult.Status.SKIPPED, report.getResults().get(1).getStatus());
+      assertTrue(light.isOn());
+      assertTrue(report.toString().contains("1/2 actions succeeded, 1 skipped"));
+    }
+
+    @Test
+    @DisplayName("Should send nothing when a scene is repeated")
+    void testRepeatedSceneIsFree() throws SceneExecutionException {
+      List<String> log = new ArrayList<>();
+      homeManager.addDevice(new RecordingLight("R001", "Recorder", log, 0), room);
+      Scene scene = new Scene("Dim");
+      scene.addAction(new Action("Recorder", "turnOn"));
+      scene.addAction(new Action("Recorder", "setBrightness", "20"));
+
+      sceneManager.executeSceneWithReport(scene);
+      SceneExecutionReport repeat = sceneManager.executeSceneWithReport(scene);
+
+      // turnOn alone would reset the brightness to 50, but the scene as a whole changes nothing
+      assertEquals(List.of("on"), log);
+      assertEquals(2, repeat.count(ActionResult.Status.SKIPPED));
+      assertEquals(20, ((Light) homeManager.getDevicebyName("Recorder")).getBrightness());
+    }
+
+    @Test
+    @DisplayName("Should keep actions needed to reach the end state")
+    void testKeepsActionsOnChangedPath() throws SceneExecutionException {
+      light.turnOn();
+      light.setBrightness(80);
+      Scene scene = new Scene("Dim");
+      scene.addAction(new Action("Test Light", "turnOn"));
+      scene.addAction(new Action("Test Light", "setBrightness", "20"));
+      scene.addAction(new Action("Test Thermostat", "getTemp"));
+
+      SceneExecutionReport report = sceneManager.executeSceneWithReport(scene);
+
+      assertEquals(3, report.count(ActionResult.Status.SUCCEEDED));
+      assertEquals(20, light.getBrightness());
+    }
+
+    @Test
+    @DisplayName("Should still report failures and skip in parallel mode")
+    void testParallelAndFailures() throws SceneExecutionException {
+      sceneManager.setExecutionMode(SceneExecutionMode.PARALLEL);
+      light.turnOn();
+      Scene scene = new Scene("Mixed");
+      scene.addAction(new Action("Test Light", "turnOn"));
+      scene.addAction(new Action("Missing", "turnOn"));
+      scene.addAction(new Action("Test Thermostat", "setTemp", "25"));
+
+      SceneExecutionReport report = sceneManager.executeSceneWithReport(scene);
+
+      assertEquals(ActionResult.Status.SKIPPED, report.getResults().get(0).getStatus());
+      assertEquals(ActionResult.Status.FAILED, report.getResults().get(1).getStatus());
+      assertEquals(ActionResult.Status.SUCCEEDED, report.getResults().get(2).getStatus());
+      assertEquals(25.0, thermostat.getTemp());
+    }
+  }
+
+  /** Light that optionally records switch calls and simulates device latency. */
+  private static class RecordingLight extends Light {
+    private final List<String> log;
+    private final long delayMillis;
+
+    RecordingLight(String id, String name, List<String> log, long delayMillis) {
+      super(id, name);
+      this.log = log;
+      this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public void turnOn() {
+      pause();
+      record("on");
+      super.turnOn();
+    }
+
+    @Override
+    public void turnOff() {
+      pause();
+      record("off");
+      super.turnOff();
+    }
+
+    private void record(String entry) {
+      if (log != null) {
+        log.add(entry);
+      }
+    }
+
+    private void pause() {
+      if (delayMillis == 0) {
+        return;
+      }
+      try {
+        Thread.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted", e);
+      }
+    }
+  }
+
   @Nested
   @DisplayName("Exception Testing")
   class ExceptionTesting {
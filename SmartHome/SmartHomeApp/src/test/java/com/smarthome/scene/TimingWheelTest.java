@@ -0,0 +1,110 @@
+package com.smarthome.scene;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTest {
+
+  private static final class Named extends TimingWheel.Timeout {
+    final String name;
+
+    Named(String name) {
+      this.name = name;
+    }
+  }
+
+  private final TimingWheel wheel = new TimingWheel(8, 0);
+  private final List<String> expired = new ArrayList<>();
+
+  private void advance(long tick) {
+    wheel.advance(tick, timeout -> expired.add(((Named) timeout).name));
+  }
+
+  @Test
+  void testExpiresOnlyDueTimeouts() {
+    wheel.schedule(new Named("a"), 3);
+    wheel.schedule(new Named("b"), 5);
+
+    advance(2);
+    assertTrue(expired.isEmpty());
+    advance(4);
+    assertEquals(List.of("a"), expired);
+    advance(5);
+    assertEquals(List.of("a", "b"), expired);
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  void testDeadlinesBeyondOneRotation() {
+    wheel.schedule(new Named("near"), 2);
+    wheel.schedule(new Named("far"), 2 + 8 * 3);
+
+    advance(10);
+    assertEquals(List.of("near"), expired);
+    advance(25);
+    assertEquals(List.of("near"), expired);
+    advance(26);
+    assertEquals(List.of("near", "far"), expired);
+  }
+
+  @Test
+  void testLargeJumpExpiresEverything() {
+    for (int i = 1; i <= 20; i++) {
+      wheel.schedule(new Named("t" + i), i);
+    }
+
+    advance(1_000);
+
+    assertEquals(20, expired.size());
+    assertEquals(1_000, wheel.currentTick());
+  }
+
+  @Test
+  void testCancelAndMove() {
+    Named cancelled = new Named("cancelled");
+    Named moved = new Named("moved");
+    wheel.schedule(cancelled, 2);
+    wheel.schedule(moved, 2);
+
+    wheel.cancel(cancelled);
+    wheel.schedule(moved, 6);
+    advance(5);
+    assertTrue(expired.isEmpty());
+    assertFalse(cancelled.isScheduled());
+    advance(6);
+    assertEquals(List.of("moved"), expired);
+  }
+
+  @Test
+  void testPastDeadlineExpiresOnNextTick() {
+    advance(10);
+    Named late = new Named("late");
+    wheel.schedule(late, 4);
+
+    assertEquals(11, late.deadline());
+    advance(11);
+    assertEquals(List.of("late"), expired);
+  }
+
+  @Test
+  void testExpiryCallbackMayReschedule() {
+    Named repeating = new Named("repeating");
+    wheel.schedule(repeating, 1);
+    int[] fired = new int[1];
+
+    for (long tick = 1; tick <= 10; tick++) {
+      wheel.advance(
+          tick,
+          timeout -> {
+            fired[0]++;
+            wheel.schedule(timeout, timeout.deadline() + 2);
+          });
+    }
+
+    assertEquals(5, fired[0]);
+    assertTrue(repeating.isScheduled());
+  }
+}
@@ -0,0 +1,94 @@
+package com.smarthome.scene;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.Journals;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class VirtualClockTest {
+
+  private final VirtualClock clock = VirtualClock.at(LocalDateTime.of(2026, 1, 5, 8, 0));
+
+  @Test
+  void testTimeOnlyMovesWhenAdvanced() {
+    assertEquals(LocalTime.of(8, 0), LocalTime.now(clock));
+
+    assertEquals(0, clock.advance(Duration.ofHours(30)));
+
+    assertEquals(LocalDateTime.of(2026, 1, 6, 14, 0), LocalDateTime.now(clock));
+    assertEquals(Duration.ofHours(30).toNanos(), clock.nanoTime());
+  }
+
+  @Test
+  void testTasksRunInDueOrderThenSchedulingOrderAtTheirDueTime() {
+    List<String> ran = new ArrayList<>();
+    clock.schedule(Duration.ofMinutes(10), () -> ran.add("b " + LocalTime.now(clock)));
+    clock.schedule(Duration.ofMinutes(5), () -> ran.add("a " + LocalTime.now(clock)));
+    clock.schedule(Duration.ofMinutes(10), () -> ran.add("c " + LocalTime.now(clock)));
+    VirtualClock.Task cancelled = clock.schedule(Duration.ofMinutes(1), () -> ran.add("x"));
+    cancelled.cancel();
+
+    assertEquals(3, clock.advance(Duration.ofHours(1)));
+
+    assertEquals(List.of("a 08:05", "b 08:10", "c 08:10"), ran);
+    assertEquals(LocalTime.of(9, 0), LocalTime.now(clock));
+    assertEquals(0, clock.getPendingTaskCount());
+  }
+
+  @Test
+  void testTasksScheduledByTasksRunInTheSameAdvance() {
+    List<LocalTime> ticks = new ArrayList<>();
+    Runnable[] tick = new Runnable[1];
+    tick[0] =
+        () -> {
+          ticks.add(LocalTime.now(clock));
+          clock.schedule(Duration.ofMinutes(15), tick[0]);
+        };
+    clock.schedule(Duration.ZERO, tick[0]);
+
+    clock.advance(Duration.ofHours(1));
+
+    assertEquals(5, ticks.size());
+    assertEquals(LocalTime.of(9, 0), ticks.get(4));
+    assertEquals(1, clock.getPendingTaskCount());
+  }
+
+  @Test
+  void testMisuse() {
+    Journal original = Journals.set(Journal.silent());
+    try {
+      // Advancing from a task fails that task; failing tasks are logged and the clock carries on
+      clock.schedule(Duration.ZERO, () -> clock.advance(Duration.ofSeconds(1)));
+      List<String> ran = new ArrayList<>();
+      clock.schedule(Duration.ZERO, () -> ran.add("after"));
+
+      assertEquals(2, clock.advance(Duration.ofSeconds(1)));
+      assertEquals(List.of("after"), ran);
+    } finally {
+      Journals.set(original);
+    }
+    assertThrows(IllegalArgumentException.class, () -> clock.advance(Duration.ofSeconds(-1)));
+    assertThrows(
+        IllegalArgumentException.class, () -> clock.advanceTo(clock.instant().minusNanos(1)));
+    assertThrows(IllegalArgumentException.class, () -> clock.schedule(Duration.ZERO, null));
+  }
+
+  @Test
+  void testZonesShareTheTimeline() {
+    VirtualClock paris = clock.withZone(ZoneId.of("Europe/Paris"));
+    paris.schedule(Duration.ofMinutes(1), () -> {});
+
+    clock.advance(Duration.ofMinutes(2));
+
+    assertEquals(clock.instant(), paris.instant());
+    assertEquals(LocalTime.of(9, 2), LocalTime.now(paris));
+    assertEquals(0, paris.getPendingTaskCount());
+  }
+}
@@ -0,0 +1,185 @@
+package com.smarthome.script;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.smarthome.app.HomeManager;
+import com.smarthome.devices.Light;
+import com.smarthome.devices.SecurityCamera;
+import com.smarthome.devices.Thermostat;
+import com.smarthome.journal.Journal;
+import com.smarthome.journal.Journals;
+import com.smarthome.scene.RuleEngine;
+import com.smarthome.scene.SceneManager;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ScriptRunnerTest {
+
+  private static final String PROVISIONING =
+      """
+      # Provision a small home
+      add-room Kitchen
+      add-device Kitchen light KT_LIGHT_01 "Kitchen Light"
+      add-device Kitchen thermostat KT_TEMP_01 "Kitchen Thermostat"
+      add-device Kitchen camera KT_CAM_01 "Kitchen Camera"
+
+      send "Kitchen Light" turnOn
+      send "Kitchen Light" setBrightness 80   # trailing comment
+      send "Kitchen Thermostat" setTemp 21.5
+      """;
+
+  private final List<String> alerts = new ArrayList<>();
+  private HomeManager homeManager;
+  private ScriptRunner runner;
+  private Journal originalJournal;
+
+  @BeforeEach
+  void setUp() {
+    originalJournal = Journals.set(Journal.silent());
+    homeManager = new HomeManager("script");
+    SceneManager sceneManager = new SceneManager(homeManager);
+    RuleEngine ruleEngine = new RuleEngine(sceneManager, alerts::add);
+    runner = new ScriptRunner(homeManager, sceneManager, ruleEngine);
+  }
+
+  @AfterEach
+  void tearDown() {
+    Journals.set(originalJournal);
+  }
+
+  private ScriptReport run(String script) throws IOException {
+    return runner.run(new StringReader(script));
+  }
+
+  @Test
+  void testProvisionsAndSendsCommands() throws IOException {
+    ScriptReport report = run(PROVISIONING);
+
+    assertEquals(7, report.commands());
+    assertEquals(0, report.failed(), report.errors().toString());
+    assertEquals(3, report.count(ScriptVerb.ADD_DEVICE));
+    assertEquals(3, report.count(ScriptVerb.SEND));
+    Light light = (Light) homeManager.getDevicebyName("Kitchen Light");
+    assertTrue(light.isOn());
+    assertEquals(80, light.getBrightness());
+    assertEquals(21.5, ((Thermostat) homeManager.getDeviceById("KT_TEMP_01")).getTemp());
+  }
+
+  @Test
+  void testScenesRulesAndEvents() throws IOException {
+    ScriptReport report =
+        run(
+            PROVISIONING
+                + """
+                add-scene Away "Kitchen Light" turnOff
+                add-scene Away "Kitchen Camera" startRecording
+                add-scene Evening "Kitchen Light" setBrightness 30
+                add-rule leave_home * Away
+                add-rule motion_detected "Kitchen Camera" Evening
+                event leave_home
+                """);
+
+    assertEquals(0, report.failed(), report.errors().toString());
+    assertFalse(((Light) homeManager.getDevicebyName("Kitchen Light")).isOn());
+    assertTrue(((SecurityCamera) homeManager.getDevicebyName("Kitchen Camera")).isRecording());
+    assertEquals(1, alerts.size());
+
+    run(
+        """
+        send "Kitchen Light" turnOn
+        event motion_detected "Kitchen Camera"
+        run-scene Away
+        """);
+    assertEquals(2, alerts.size());
+    assertFalse(((Light) homeManager.getDevicebyName("Kitchen Light")).isOn());
+  }
+
+  @Test
+  void testFailuresAreReportedWithLineNumbersAndTheScriptCarriesOn() throws IOException {
+    ScriptReport report =
+        run(
+            PROVISIONING
+                + """
+                send "Garage Light" turnOn
+                send "Kitchen Light" setTemp 20
+                dance
+                send "Kitchen Light"
+                add-device Garage light G1 Garage
+                add-room "Kitchen
+                run-scene Nothing
+                send "Kitchen Light" turnOff
+                """);
+
+    assertEquals(15, report.commands());
+    assertEquals(7, report.failed());
+    assertEquals(7, report.errors().size());
+    assertEquals("line 10: Device not found: Garage Light", report.errors().get(0));
+    assertTrue(report.errors().get(1).startsWith("line 11: "));
+    assertEquals("line 12: Unknown command: dance", report.errors().get(2));
+    assertEquals("line 13: Usage: " + ScriptVerb.SEND.usage(), report.errors().get(3));
+    assertEquals("line 15: Unterminated quote", report.errors().get(5));
+    assertFalse(((Light) homeManager.getDevicebyName("Kitchen Light")).isOn());
+    assertTrue(report.format().contains("Commands: 15 (7 failed)"));
+  }
+
+  @Test
+  void testLongScriptsKeepTheirOrderAcrossBatches() throws IOException {
+    StringBuilder script = new StringBuilder("add-room Hall\r\nadd-device Hall light L1 Lamp\r\n");
+    script.append("send Lamp turnOn\r\n");
+    int sends = ScriptRunner.BATCH_SIZE * 5 + 17;
+    for (int i = 0; i < sends; i++) {
+      script.append("send Lamp setBrightness ").append(i % 100).append("\r\n");
+    }
+    // No newline after the last command
+    script.append("send Lamp setBrightness 7");
+
+    ScriptReport report = run(script.toString());
+
+    assertEquals(sends + 4, report.commands());
+    assertEquals(0, report.failed(), report.errors().toString());
+    assertEquals(7, ((Light) homeManager.getDevicebyName("Lamp")).getBrightness());
+  }
+
+  @Test
+  void testRenamedDeviceIsNotFoundUnderItsOldName() throws IOException {
+    run(PROVISIONING);
+    homeManager.getDevicebyName("Kitchen Light").setDeviceName("Counter Light");
+
+    ScriptReport report = run("send \"Kitchen Light\" turnOff\nsend \"Counter Light\" turnOff\n");
+
+    assertEquals(1, report.failed());
+    assertFalse(((Light) homeManager.getDevicebyName("Counter Light")).isOn());
+  }
+
+  @Test
+  void testTokenizerInternsRepeatedTokens() throws IOException {
+    ScriptTokenizer tokenizer =
+        new ScriptTokenizer(new StringReader("send \"Hall Lamp\" turnOn\nsend Hall\tturnOn\n"));
+
+    assertTrue(tokenizer.next());
+    String[] first = tokenizer.tokens().clone();
+    assertEquals(3, tokenizer.count());
+    assertEquals("Hall Lamp", first[1]);
+    assertTrue(tokenizer.next());
+    assertEquals(2, tokenizer.lineNumber());
+    assertEquals("Hall", tokenizer.tokens()[1]);
+    assertSame(first[0], tokenizer.tokens()[0]);
+    assertSame(first[2], tokenizer.tokens()[2]);
+    assertFalse(tokenizer.next());
+  }
+
+  @Test
+  void testTokenizerHandlesLinesLongerThanItsBuffer() throws IOException {
+    String name = "x".repeat(200_000);
+    ScriptTokenizer tokenizer = new ScriptTokenizer(new StringReader("add-room " + name + "\n"));
+
+    assertTrue(tokenizer.next());
+    assertEquals(name, tokenizer.tokens()[1]);
+    assertFalse(tokenizer.next());
+  }
+}